@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.common.DataModelConstants
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class OrderMassServicesTests extends OFBizTestCase {
+
+    OrderMassServicesTests(String name) {
+        super(name)
+    }
+
+    private String createApprovedOrder() {
+        Map serviceResult = dispatcher.runSync('createTestSalesOrderSingle', [productId: 'GZ-1004', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert from('OrderHeader').where(orderId: serviceResult.orderId).queryOne().statusId == 'ORDER_APPROVED'
+        return serviceResult.orderId
+    }
+
+    // starts a mass operation, which is run by a persisted job once the service is committed
+    private String startMassOperation(String serviceName, List<String> orderIds) {
+        long jobCount = from('JobSandbox').where(serviceName: 'runOrderMassOperation').queryCount()
+        Map serviceResult = dispatcher.runSync(serviceName, [orderIdList: orderIds, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        String massOperationId = serviceResult.massOperationId
+        assert massOperationId
+        assert from('OrderMassOperationItem').where(massOperationId: massOperationId).queryCount() == orderIds.size()
+        assert from('JobSandbox').where(serviceName: 'runOrderMassOperation').queryCount() > jobCount
+        return massOperationId
+    }
+
+    private Map waitForMassOperation(String massOperationId) {
+        Map serviceResult = null
+        for (int i = 0; i < 120; i++) {
+            serviceResult = dispatcher.runSync('getOrderMassOperationStatus', [massOperationId: massOperationId, userLogin: userLogin])
+            assert ServiceUtil.isSuccess(serviceResult)
+            if (serviceResult.statusId in ['SERVICE_FINISHED', 'SERVICE_FAILED']) {
+                break
+            }
+            Thread.sleep(500)
+        }
+        assert serviceResult.statusId == 'SERVICE_FINISHED'
+        return serviceResult
+    }
+
+    // each order is processed once, in the partitions of the facility of its first ship group
+    private void assertProcessedByFacility(String massOperationId, List<String> orderIds) {
+        for (String orderId : orderIds) {
+            GenericValue shipGroup = from('OrderItemShipGroup').where(orderId: orderId).orderBy('shipGroupSeqId')
+                    .queryList().find { it.facilityId }
+            GenericValue item = from('OrderMassOperationItem').where(massOperationId: massOperationId, orderId: orderId).queryOne()
+            assert item.processedDate
+            assert !item.errorMessage
+            assert item.facilityId == (shipGroup ? shipGroup.facilityId : DataModelConstants.SEQ_ID_NA)
+        }
+    }
+
+    void testMassStatusChange() {
+        List<String> orderIds = [createApprovedOrder(), createApprovedOrder(), createApprovedOrder()]
+        String massOperationId = startMassOperation('massHoldOrders', orderIds)
+        GenericValue massOperation = from('OrderMassOperation').where(massOperationId: massOperationId).queryOne()
+        assert massOperation.serviceName == 'changeOrderStatus'
+        assert massOperation.createdByUserLogin == userLogin.userLoginId
+
+        Map serviceResult = waitForMassOperation(massOperationId)
+        assert serviceResult.orderCount == 3
+        assert serviceResult.processedCount == 3
+        assert !serviceResult.orderErrors
+        assertProcessedByFacility(massOperationId, orderIds)
+        for (String orderId : orderIds) {
+            assert from('OrderHeader').where(orderId: orderId).queryOne().statusId == 'ORDER_HOLD'
+        }
+    }
+
+    void testMassQuickShip() {
+        List<String> orderIds = [createApprovedOrder(), createApprovedOrder()]
+        String massOperationId = startMassOperation('massQuickShipOrders', orderIds)
+        assert from('OrderMassOperation').where(massOperationId: massOperationId).queryOne().serviceName == 'quickShipEntireOrder'
+
+        Map serviceResult = waitForMassOperation(massOperationId)
+        assert serviceResult.processedCount == 2
+        assert !serviceResult.orderErrors
+        assertProcessedByFacility(massOperationId, orderIds)
+        for (String orderId : orderIds) {
+            assert from('OrderHeader').where(orderId: orderId).queryOne().statusId == 'ORDER_COMPLETED'
+        }
+    }
+
+    void testMassOperationNotFound() {
+        List<String> orderIds = ['TEST_DEMO10090', 'TEST_MASS_NOT_FOUND']
+        Map serviceResult = dispatcher.runSync('massHoldOrders', [orderIdList: orderIds, userLogin: userLogin])
+        assert ServiceUtil.isFailure(serviceResult)
+        assert !serviceResult.massOperationId
+    }
+
+    void testMassOperationStatusPermission() {
+        String massOperationId = delegator.getNextSeqId('OrderMassOperation')
+        delegator.create('OrderMassOperation', [massOperationId: massOperationId, serviceName: 'changeOrderStatus',
+                statusId: 'SERVICE_FINISHED', orderCount: 0L, createdDate: UtilDateTime.nowTimestamp(), createdByUserLogin: 'DemoCustomer'])
+
+        // the user who started it sees it, the others need to be allowed to view the orders
+        Map serviceResult = dispatcher.runSync('getOrderMassOperationStatus', [massOperationId: massOperationId,
+                userLogin: getUserLogin('DemoCustomer')])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.statusId == 'SERVICE_FINISHED'
+        serviceResult = dispatcher.runSync('getOrderMassOperationStatus', [massOperationId: massOperationId,
+                userLogin: getUserLogin('DemoSupplier')])
+        assert ServiceUtil.isError(serviceResult)
+        serviceResult = dispatcher.runSync('getOrderMassOperationStatus', [massOperationId: massOperationId,
+                userLogin: getUserLogin('DemoRepStore')])
+        assert ServiceUtil.isSuccess(serviceResult)
+    }
+
+}
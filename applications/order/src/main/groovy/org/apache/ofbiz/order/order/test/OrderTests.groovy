@@ -18,6 +18,8 @@
  *******************************************************************************/
 package org.apache.ofbiz.order.order.test
 
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.order.order.OrderReadHelper
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -105,4 +107,38 @@ class OrderTests extends OFBizTestCase {
         assert ServiceUtil.isSuccess(serviceResult)
     }
 
+    // the totals kept by a helper follow the changes of its items and adjustments
+    void testOrderReadHelperTotalsFollowChanges() {
+        GenericValue orderItem = delegator.makeValue('OrderItem', [orderId: 'TEST_READ_HELPER', orderItemSeqId: '00001',
+                orderItemTypeId: 'PRODUCT_ORDER_ITEM', statusId: 'ITEM_APPROVED', quantity: new BigDecimal('2'), unitPrice: new BigDecimal('10')])
+        List<GenericValue> orderItems = [orderItem]
+        List<GenericValue> adjustments = []
+        OrderReadHelper orh = new OrderReadHelper(adjustments, orderItems)
+        assert orh.getOrderItemsSubTotal() == 20
+        assert orh.getOrderGrandTotal() == 20
+
+        orderItem.set('quantity', new BigDecimal('3'))
+        assert orh.getOrderItemsSubTotal() == 30
+        assert orh.getOrderGrandTotal() == 30
+
+        GenericValue itemAdjustment = delegator.makeValue('OrderAdjustment', [orderAdjustmentId: 'TEST_READ_HELPER1',
+                orderAdjustmentTypeId: 'PROMOTION_ADJUSTMENT', orderId: 'TEST_READ_HELPER', orderItemSeqId: '00001', shipGroupSeqId: '_NA_',
+                amount: new BigDecimal('-5')])
+        adjustments.add(itemAdjustment)
+        assert orh.getOrderItemsSubTotal() == 25
+        assert orh.getOrderGrandTotal() == 25
+
+        adjustments.add(delegator.makeValue('OrderAdjustment', [orderAdjustmentId: 'TEST_READ_HELPER2',
+                orderAdjustmentTypeId: 'SHIPPING_CHARGES', orderId: 'TEST_READ_HELPER', orderItemSeqId: '_NA_', shipGroupSeqId: '_NA_',
+                amount: new BigDecimal('7')]))
+        assert orh.getOrderItemsSubTotal() == 25
+        assert orh.getOrderGrandTotal() == 32
+
+        itemAdjustment.set('amount', new BigDecimal('-8'))
+        assert orh.getOrderItemsSubTotal() == 22
+        assert orh.getOrderGrandTotal() == 29
+        assert orh.getOrderItemsSubTotal() == OrderReadHelper.getOrderItemsSubTotal(orderItems, adjustments)
+        assert orh.getOrderGrandTotal() == OrderReadHelper.getOrderGrandTotal(orderItems, adjustments)
+    }
+
 }
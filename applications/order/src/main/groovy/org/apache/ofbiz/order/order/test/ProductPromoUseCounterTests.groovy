@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.transaction.TransactionUtil
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoUseCounter
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class ProductPromoUseCounterTests extends OFBizTestCase {
+
+    ProductPromoUseCounterTests(String name) {
+        super(name)
+    }
+
+    private void createProductPromo(String productPromoId, Long useLimitPerPromotion, Long useLimitPerCustomer) {
+        delegator.createOrStore(delegator.makeValue('ProductPromo', [productPromoId: productPromoId, promoName: productPromoId,
+                useLimitPerPromotion: useLimitPerPromotion, useLimitPerCustomer: useLimitPerCustomer]))
+    }
+
+    private GenericValue makeUse(String productPromoId, String partyId) {
+        return delegator.makeValue('ProductPromoUse', [promoSequenceId: '00001', productPromoId: productPromoId, partyId: partyId])
+    }
+
+    private GenericValue getCounter(String productPromoId, String partyId) {
+        return from('ProductPromoUseCount').where(productPromoId: productPromoId, productPromoCodeId: '_NA_',
+                partyId: partyId ?: '_NA_').queryOne()
+    }
+
+    private Map storeOrder(String productPromoId) {
+        GenericValue orderItem = delegator.makeValue('OrderItem', [orderItemSeqId: '00001', orderItemTypeId: 'PRODUCT_ORDER_ITEM',
+                prodCatalogId: 'DemoCatalog', productId: 'GZ-2644', quantity: 1.0, selectedAmount: 0.0, isPromo: 'N',
+                isModifiedPrice: 'N', unitPrice: 38.4, unitListPrice: 48.0, statusId: 'ITEM_CREATED'])
+        Map serviceCtx = [
+                partyId: 'DemoCustomer',
+                orderTypeId: 'SALES_ORDER',
+                currencyUom: 'USD',
+                productStoreId: '9000',
+                billToCustomerPartyId: 'DemoCustomer',
+                billFromVendorPartyId: 'Company',
+                orderItems: [orderItem],
+                orderAdjustments: [],
+                orderTerms: [],
+                orderProductPromoUses: [makeUse(productPromoId, 'DemoCustomer')],
+                userLogin: userLogin
+        ]
+        return dispatcher.runSync('storeOrder', serviceCtx)
+    }
+
+    // Test an order using a promotion whose limit is reached is not created, and its use is not counted.
+    void testUseLimitReachedAtOrderCreate() {
+        createProductPromo('PPUC_LIMIT', 1L, null)
+
+        Map serviceResult = storeOrder('PPUC_LIMIT')
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert getCounter('PPUC_LIMIT', null).useCount == 1
+        assert getCounter('PPUC_LIMIT', 'DemoCustomer').useCount == 1
+
+        serviceResult = storeOrder('PPUC_LIMIT')
+        assert ServiceUtil.isError(serviceResult)
+        assert ServiceUtil.getErrorMessage(serviceResult).contains('PPUC_LIMIT')
+        assert getCounter('PPUC_LIMIT', null).useCount == 1
+        assert ProductPromoUseCounter.getUseCount(delegator, 'PPUC_LIMIT', null, null) == 1
+    }
+
+    // Test the uses of an order cancelled are released once, even when the order gets another end status.
+    void testUsesReleasedOnceOnCancel() {
+        createProductPromo('PPUC_CANCEL', 1L, null)
+        Map serviceResult = storeOrder('PPUC_CANCEL')
+        assert ServiceUtil.isSuccess(serviceResult)
+        String orderId = serviceResult.orderId
+        assert getCounter('PPUC_CANCEL', null).useCount == 1
+
+        serviceResult = dispatcher.runSync('changeOrderStatus', [orderId: orderId, statusId: 'ORDER_CANCELLED', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert getCounter('PPUC_CANCEL', null).useCount == 0
+        assert getCounter('PPUC_CANCEL', 'DemoCustomer').useCount == 0
+
+        // the entity ECA runs again for this status, the uses were already released
+        delegator.create('OrderStatus', [orderStatusId: delegator.getNextSeqId('OrderStatus'), orderId: orderId,
+                statusId: 'ORDER_REJECTED', statusDatetime: UtilDateTime.nowTimestamp()])
+        assert getCounter('PPUC_CANCEL', null).useCount == 0
+
+        // the promotion can be used again by another order
+        assert ServiceUtil.isSuccess(storeOrder('PPUC_CANCEL'))
+        assert getCounter('PPUC_CANCEL', null).useCount == 1
+    }
+
+    // Test the edit of an order only changes the counts of the promotions added or removed.
+    void testChangeUsesOfOrderEdited() {
+        createProductPromo('PPUC_EDIT_1', null, null)
+        createProductPromo('PPUC_EDIT_2', 1L, null)
+        List<GenericValue> previousUses = [makeUse('PPUC_EDIT_1', 'DemoCustomer')]
+        assert ProductPromoUseCounter.reserveUses(delegator, previousUses) == null
+        assert getCounter('PPUC_EDIT_1', null).useCount == 1
+
+        List<GenericValue> uses = [makeUse('PPUC_EDIT_1', 'DemoCustomer'), makeUse('PPUC_EDIT_2', 'DemoCustomer')]
+        assert ProductPromoUseCounter.changeUses(delegator, previousUses, uses) == null
+        assert getCounter('PPUC_EDIT_1', null).useCount == 1
+        assert getCounter('PPUC_EDIT_1', 'DemoCustomer').useCount == 1
+        assert getCounter('PPUC_EDIT_2', null).useCount == 1
+
+        // the order keeps its use of PPUC_EDIT_2, whose limit is reached
+        assert ProductPromoUseCounter.changeUses(delegator, uses, uses) == null
+        assert getCounter('PPUC_EDIT_2', null).useCount == 1
+        // as for the edit of an order, the counts changed before the limit is reached are rolled back with the transaction
+        boolean beganTransaction = TransactionUtil.begin()
+        try {
+            assert ProductPromoUseCounter.changeUses(delegator, previousUses, uses) == 'PPUC_EDIT_2'
+        } finally {
+            TransactionUtil.rollback(beganTransaction, 'Use limit reached', null)
+        }
+        assert getCounter('PPUC_EDIT_2', null).useCount == 1
+        assert getCounter('PPUC_EDIT_2', 'DemoCustomer').useCount == 1
+
+        assert ProductPromoUseCounter.changeUses(delegator, uses, []) == null
+        assert getCounter('PPUC_EDIT_1', null).useCount == 0
+        assert getCounter('PPUC_EDIT_2', null).useCount == 0
+    }
+
+    // Test a count is computed from the ProductPromoUse of the orders neither cancelled nor rejected the first time it is used.
+    void testCountSeededFromProductPromoUses() {
+        createProductPromo('PPUC_SEED', null, null)
+        ['PPUC_SEED_1': 'ORDER_APPROVED', 'PPUC_SEED_2': 'ORDER_COMPLETED', 'PPUC_SEED_3': 'ORDER_CANCELLED'].each { orderId, statusId ->
+            delegator.createOrStore(delegator.makeValue('OrderHeader', [orderId: orderId, orderTypeId: 'SALES_ORDER', statusId: statusId,
+                    orderDate: UtilDateTime.nowTimestamp(), currencyUom: 'USD']))
+            GenericValue productPromoUse = makeUse('PPUC_SEED', orderId == 'PPUC_SEED_2' ? 'admin' : 'DemoCustomer')
+            productPromoUse.orderId = orderId
+            delegator.createOrStore(productPromoUse)
+        }
+        assert getCounter('PPUC_SEED', null) == null
+        assert ProductPromoUseCounter.getUseCount(delegator, 'PPUC_SEED', null, null) == 2
+        assert ProductPromoUseCounter.getUseCount(delegator, 'PPUC_SEED', null, 'DemoCustomer') == 1
+
+        assert ProductPromoUseCounter.reserveUses(delegator, [makeUse('PPUC_SEED', 'DemoCustomer')]) == null
+        assert getCounter('PPUC_SEED', null).useCount == 3
+        assert getCounter('PPUC_SEED', 'DemoCustomer').useCount == 2
+        assert ProductPromoUseCounter.getUseCount(delegator, 'PPUC_SEED', null, null) == 3
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import java.nio.charset.StandardCharsets
+
+import org.apache.ofbiz.base.util.Debug
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.base.util.UtilObject
+import org.apache.ofbiz.base.util.UtilProperties
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartSnapshot
+import org.apache.ofbiz.order.shoppingcart.WebShoppingCart
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class ShoppingCartSnapshotTests extends OFBizTestCase {
+
+    ShoppingCartSnapshotTests(String name) {
+        super(name)
+    }
+
+    private static final String SNAPSHOT_PROPERTY = 'shoppingcart.session.snapshot'
+
+    private ShoppingCart makeCart() {
+        ShoppingCart cart = new ShoppingCart(delegator, '9000', null, Locale.US, 'USD')
+        cart.setUserLogin(from('UserLogin').where('userLoginId', 'DemoCustomer').queryOne(), dispatcher)
+        cart.addOrIncreaseItem('GZ-2644', null, 2.0, null, null, null, null, null, null, null, 'DemoCatalog', null, null, null, null, dispatcher)
+        cart.addOrIncreaseItem('GZ-8544', null, 3.0, null, null, null, null, null, null, null, 'DemoCatalog', null, null, null, null, dispatcher)
+        ProductPromoWorker.doPromotions(cart, dispatcher)
+        return cart
+    }
+
+    private static boolean isSnapshot(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1).contains(ShoppingCartSnapshot.class.getName())
+    }
+
+    // Test the cart is rebuilt from its snapshot, and the snapshot is smaller and faster than the serialized cart.
+    void testRestoreShoppingCartSnapshot() {
+        ShoppingCart cart = makeCart()
+        assert ShoppingCartSnapshot.isSupported(cart)
+
+        long start = System.nanoTime()
+        byte[] cartBytes = UtilObject.getBytes(cart)
+        long cartNanos = System.nanoTime() - start
+        start = System.nanoTime()
+        byte[] snapshotBytes = UtilObject.getBytes(new ShoppingCartSnapshot(cart, dispatcher.getName()))
+        long snapshotNanos = System.nanoTime() - start
+        Debug.logInfo("Serialized cart: ${cartBytes.length} bytes in ${cartNanos} ns, "
+                + "snapshot: ${snapshotBytes.length} bytes in ${snapshotNanos} ns", 'ShoppingCartSnapshotTests')
+        assert snapshotBytes.length < cartBytes.length
+
+        ShoppingCart restored = UtilObject.getObject(snapshotBytes) as ShoppingCart
+        assert restored.getProductStoreId() == '9000'
+        assert restored.getUserLogin().userLoginId == 'DemoCustomer'
+        assert restored.items().findAll { !it.getIsPromo() }.size() == 2
+        assert restored.findCartItem(0).getProductId() == 'GZ-2644'
+        assert restored.findCartItem(0).getQuantity() == 2
+        assert restored.findCartItem(1).getProductId() == 'GZ-8544'
+        assert restored.findCartItem(1).getQuantity() == 3
+        assert restored.getGrandTotal() == cart.getGrandTotal()
+    }
+
+    // Test the cart of a session is serialized as a snapshot when enabled, and in full when it has state the snapshot doesn't keep.
+    void testWebShoppingCartWriteReplace() {
+        // a cart of the web tier, knowing the dispatcher rebuilding it
+        WebShoppingCart cart = new ShoppingCartSnapshot(makeCart(), dispatcher.getName()).restore() as WebShoppingCart
+        String snapshotProperty = UtilProperties.getPropertyValue('order', SNAPSHOT_PROPERTY)
+        try {
+            UtilProperties.setPropertyValueInMemory('order', SNAPSHOT_PROPERTY, 'N')
+            assert !isSnapshot(UtilObject.getBytes(cart))
+
+            UtilProperties.setPropertyValueInMemory('order', SNAPSHOT_PROPERTY, 'Y')
+            byte[] bytes = UtilObject.getBytes(cart)
+            assert isSnapshot(bytes)
+            ShoppingCart restored = UtilObject.getObject(bytes) as ShoppingCart
+            assert restored instanceof WebShoppingCart
+            assert restored.findCartItem(0).getProductId() == 'GZ-2644'
+            assert restored.findCartItem(1).getQuantity() == 3
+            assert restored.getGrandTotal() == cart.getGrandTotal()
+
+            cart.setPoNumber('PO-SNAPSHOT')
+            cart.setShippingInstructions(0, 'Leave at the door')
+            bytes = UtilObject.getBytes(cart)
+            assert !isSnapshot(bytes)
+            restored = UtilObject.getObject(bytes) as ShoppingCart
+            assert restored.getPoNumber() == 'PO-SNAPSHOT'
+            assert restored.getShippingInstructions(0) == 'Leave at the door'
+        } finally {
+            UtilProperties.setPropertyValueInMemory('order', SNAPSHOT_PROPERTY, snapshotProperty)
+        }
+    }
+
+    // Test the carts having state the snapshot doesn't keep are not supported.
+    void testUnsupportedCarts() {
+        Map<String, Closure> changes = [
+                shippingInstructions: { ShoppingCart cart -> cart.setShippingInstructions(0, 'Leave at the door') },
+                giftMessage: { ShoppingCart cart -> cart.setGiftMessage(0, 'Happy birthday') },
+                maySplit: { ShoppingCart cart -> cart.setMaySplit(0, true) },
+                poNumber: { ShoppingCart cart -> cart.setPoNumber('PO-SNAPSHOT') },
+                orderName: { ShoppingCart cart -> cart.setOrderName('Snapshot order') },
+                orderAttribute: { ShoppingCart cart -> cart.setOrderAttribute('source', 'snapshot') },
+                cartAttribute: { ShoppingCart cart -> cart.setAttribute('addpty', 'Y') },
+                contactMech: { ShoppingCart cart -> cart.addContactMech('ORDER_EMAIL', '9026') },
+                additionalEmails: { ShoppingCart cart -> cart.setOrderAdditionalEmails('demo@example.com') },
+                additionalPartyRole: { ShoppingCart cart -> cart.addAdditionalPartyRole('DemoCustomer', 'END_USER_CUSTOMER') },
+                agreement: { ShoppingCart cart -> cart.setAgreementId('AGR_SNAPSHOT') },
+                autoSaveList: { ShoppingCart cart -> cart.setAutoSaveListId('SL_SNAPSHOT') },
+                lastListRestore: { ShoppingCart cart -> cart.setLastListRestore(UtilDateTime.nowTimestamp()) },
+                itemAttribute: { ShoppingCart cart -> cart.findCartItem(0).setAttribute('surveyResponses', ['9000']) },
+                alternateGift: { ShoppingCart cart -> cart.setDesiredAlternateGiftByAction(delegator.makePK('ProductPromoAction',
+                        [productPromoId: '9017', productPromoRuleId: '01', productPromoActionSeqId: '01']), 'GZ-1000') },
+                noPromotions: { ShoppingCart cart -> cart.setDoPromotions(false) },
+                billingAccount: { ShoppingCart cart -> cart.setBillingAccount('9010', 10.0) },
+                orderTerm: { ShoppingCart cart -> cart.addOrderTerm('FIN_PAYMENT_TERM', 0.0, 30L) },
+                externalId: { ShoppingCart cart -> cart.setExternalId('EXT-SNAPSHOT') },
+                defaultItemComment: { ShoppingCart cart -> cart.setDefaultItemComment('Gift wrap') },
+                shipToParty: { ShoppingCart cart -> cart.setShipToCustomerPartyId('DemoCustomerAgent') },
+                facility: { ShoppingCart cart -> cart.setFacilityId('WebStoreWarehouseAtp') }
+        ]
+        changes.each { name, change ->
+            ShoppingCart cart = makeCart()
+            assert ShoppingCartSnapshot.isSupported(cart)
+            change(cart)
+            assert !ShoppingCartSnapshot.isSupported(cart), "Cart with ${name} supported"
+        }
+
+        // the comments and desired delivery dates of the lines are kept
+        ShoppingCart cart = makeCart()
+        cart.findCartItem(0).setItemComment('Gift wrap')
+        cart.findCartItem(0).setDesiredDeliveryDate(UtilDateTime.nowTimestamp())
+        assert ShoppingCartSnapshot.isSupported(cart)
+    }
+}
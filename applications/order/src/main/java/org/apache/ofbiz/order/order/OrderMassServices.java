@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.order;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.DataModelConstants;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.security.Security;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * The mass order operations: the changes of many orders at once, selected in the order list.
+ * <p>
+ * An operation is run by a job once the request starting it is committed. The orders are changed
+ * one transaction per order, the orders of each facility being split in partitions run in parallel,
+ * at most <code>order.mass.operation.facility.threads</code> orders of a facility being changed at a
+ * time by all the running operations together. The result of each order is stored in
+ * <code>OrderMassOperationItem</code> as soon as it is known, so that the progress and the errors
+ * can be polled through <code>getOrderMassOperationStatus</code> while the job runs.
+ */
+public final class OrderMassServices {
+
+    private static final String MODULE = OrderMassServices.class.getName();
+    private static final String RESOURCE = "OrderUiLabels";
+    private static final String RES_ERROR = "OrderErrorUiLabels";
+    private static final int FACILITY_THREADS = Math.max(1,
+            UtilProperties.getPropertyAsInteger("order", "order.mass.operation.facility.threads", 2));
+    // the orders whose facilities are read by one query
+    private static final int CHUNK_SIZE = 500;
+    // the service creating one pick list for all the orders of a facility
+    private static final String PICK_SERVICE = "createPicklistFromOrders";
+    // the orders being changed in each facility by all the running operations, at most FACILITY_THREADS at a time
+    private static final Map<String, Semaphore> FACILITY_PERMITS = new ConcurrentHashMap<>();
+
+    private OrderMassServices() { }
+
+    /**
+     * Starts a mass operation on the orders of <code>orderIdList</code>.
+     * @param dctx the dispatch context
+     * @param context the context of the mass order service
+     * @param serviceName the service run for each order, or for the orders of each facility for <code>createPicklistFromOrders</code>
+     * @param serviceContext the parameters of the service, the order and the user being added
+     * @return the result, with the <code>massOperationId</code> to poll
+     */
+    static Map<String, Object> startMassOperation(DispatchContext dctx, Map<String, ? extends Object> context, String serviceName,
+            Map<String, Object> serviceContext) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        Locale locale = (Locale) context.get("locale");
+        Set<String> orderIds = new LinkedHashSet<>();
+        List<String> orderIdList = UtilGenerics.cast(context.get("orderIdList"));
+        for (String orderId : orderIdList) {
+            if (UtilValidate.isNotEmpty(orderId)) {
+                orderIds.add(orderId);
+            }
+        }
+        String massOperationId;
+        try {
+            Set<String> foundOrderIds = new LinkedHashSet<>();
+            for (List<String> chunk : chunks(orderIds)) {
+                foundOrderIds.addAll(EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).select("orderId").from("OrderHeader")
+                        .where(EntityCondition.makeCondition("orderId", EntityOperator.IN, chunk)).queryList(), "orderId", true));
+            }
+            for (String orderId : orderIds) {
+                if (!foundOrderIds.contains(orderId)) {
+                    return ServiceUtil.returnFailure(UtilProperties.getMessage(RESOURCE,
+                            "OrderOrderNotFound", UtilMisc.toMap("orderId", orderId), locale));
+                }
+            }
+
+            massOperationId = delegator.getNextSeqId("OrderMassOperation");
+            List<GenericValue> toBeStored = new LinkedList<>();
+            toBeStored.add(delegator.makeValue("OrderMassOperation", UtilMisc.toMap("massOperationId", massOperationId,
+                    "serviceName", serviceName, "statusId", "SERVICE_PENDING", "orderCount", (long) orderIds.size(),
+                    "createdDate", UtilDateTime.nowTimestamp(), "createdByUserLogin", userLogin != null ? userLogin.get("userLoginId") : null)));
+            for (String orderId : orderIds) {
+                toBeStored.add(delegator.makeValue("OrderMassOperationItem", UtilMisc.toMap("massOperationId", massOperationId, "orderId", orderId)));
+            }
+            delegator.createAll(toBeStored);
+
+            // the job can't read the operation before it is committed
+            dispatcher.addCommitService("runOrderMassOperation", UtilMisc.toMap("massOperationId", massOperationId,
+                    "serviceContext", serviceContext, "userLogin", userLogin, "locale", locale), true);
+        } catch (GenericEntityException | GenericServiceException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess(UtilProperties.getMessage(RESOURCE, "OrderMassOperationStarted",
+                UtilMisc.toMap("massOperationId", massOperationId, "orderCount", orderIds.size()), locale));
+        result.put("massOperationId", massOperationId);
+        return result;
+    }
+
+    /**
+     * Runs a mass operation, changing the orders not processed yet.
+     * @param dctx the dispatch context
+     * @param context the operation and the parameters of its service
+     * @return the result
+     */
+    public static Map<String, Object> runOrderMassOperation(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        Locale locale = (Locale) context.get("locale");
+        String massOperationId = (String) context.get("massOperationId");
+        Map<String, Object> serviceContext = UtilGenerics.cast(context.get("serviceContext"));
+        GenericValue massOperation = null;
+        try {
+            massOperation = EntityQuery.use(delegator).from("OrderMassOperation").where("massOperationId", massOperationId).queryOne();
+            if (massOperation == null) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR, "OrderMassOperationNotFound",
+                        UtilMisc.toMap("massOperationId", massOperationId), locale));
+            }
+            String serviceName = massOperation.getString("serviceName");
+            massOperation.set("statusId", "SERVICE_RUNNING");
+            massOperation.set("startDateTime", UtilDateTime.nowTimestamp());
+            massOperation.store();
+
+            // the orders already processed are skipped when the job is run again
+            List<String> orderIds = EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).from("OrderMassOperationItem")
+                    .where("massOperationId", massOperationId, "processedDate", null).orderBy("orderId").queryList(), "orderId", true);
+            Map<String, List<String>> ordersByFacility = PICK_SERVICE.equals(serviceName)
+                    ? getPickOrdersByFacility(delegator, massOperationId, orderIds) : getOrdersByFacility(delegator, orderIds);
+
+            List<Future<Integer>> futures = new LinkedList<>();
+            for (Map.Entry<String, List<String>> facilityOrders : ordersByFacility.entrySet()) {
+                String facilityId = facilityOrders.getKey();
+                for (List<String> partition : partition(serviceName, facilityOrders.getValue())) {
+                    futures.add(ExecutionPool.GLOBAL_BATCH.submit(() -> runPartition(dctx, massOperationId, serviceName, serviceContext,
+                            userLogin, facilityId, partition)));
+                }
+            }
+            int errorCount = 0;
+            for (Integer partitionErrorCount : ExecutionPool.getAllFutures(futures)) {
+                errorCount += partitionErrorCount;
+            }
+            if (errorCount > 0) {
+                Debug.logWarning("The mass order operation [" + massOperationId + "] has failed for " + errorCount + " orders", MODULE);
+            }
+
+            massOperation.set("statusId", "SERVICE_FINISHED");
+            massOperation.set("finishDateTime", UtilDateTime.nowTimestamp());
+            massOperation.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            if (massOperation != null) {
+                try {
+                    massOperation.set("statusId", "SERVICE_FAILED");
+                    massOperation.store();
+                } catch (GenericEntityException e2) {
+                    Debug.logError(e2, MODULE);
+                }
+            }
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Gets the progress and the errors of a mass operation, to the users allowed to view the orders
+     * or to the user who started it.
+     * @param dctx the dispatch context
+     * @param context the operation
+     * @return the status of the operation, the orders processed and the errors of the orders
+     */
+    public static Map<String, Object> getOrderMassOperationStatus(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Security security = dctx.getSecurity();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        Locale locale = (Locale) context.get("locale");
+        String massOperationId = (String) context.get("massOperationId");
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        try {
+            GenericValue massOperation = EntityQuery.use(delegator).from("OrderMassOperation").where("massOperationId", massOperationId).queryOne();
+            if (massOperation == null) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR, "OrderMassOperationNotFound",
+                        UtilMisc.toMap("massOperationId", massOperationId), locale));
+            }
+            if (!security.hasEntityPermission("ORDERMGR", "_VIEW", userLogin)
+                    && (userLogin == null || !userLogin.getString("userLoginId").equals(massOperation.getString("createdByUserLogin")))) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR, "OrderMassOperationPermissionError",
+                        UtilMisc.toMap("massOperationId", massOperationId), locale));
+            }
+            long processedCount = EntityQuery.use(delegator).from("OrderMassOperationItem").where(
+                    EntityCondition.makeCondition("massOperationId", massOperationId),
+                    EntityCondition.makeCondition("processedDate", EntityOperator.NOT_EQUAL, null)).queryCount();
+            List<Map<String, Object>> orderErrors = new LinkedList<>();
+            for (GenericValue item : EntityQuery.use(delegator).from("OrderMassOperationItem").where(
+                    EntityCondition.makeCondition("massOperationId", massOperationId),
+                    EntityCondition.makeCondition("errorMessage", EntityOperator.NOT_EQUAL, null)).orderBy("orderId").queryList()) {
+                orderErrors.add(UtilMisc.toMap("orderId", item.get("orderId"), "facilityId", item.get("facilityId"),
+                        "errorMessage", item.get("errorMessage")));
+            }
+            result.put("statusId", massOperation.get("statusId"));
+            result.put("orderCount", massOperation.get("orderCount"));
+            result.put("processedCount", processedCount);
+            result.put("orderErrors", orderErrors);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return result;
+    }
+
+    // the orders grouped by the facility of their first ship group
+    private static Map<String, List<String>> getOrdersByFacility(Delegator delegator, List<String> orderIds) throws GenericEntityException {
+        Map<String, String> facilityByOrder = new HashMap<>();
+        for (List<String> chunk : chunks(orderIds)) {
+            List<GenericValue> shipGroups = EntityQuery.use(delegator).select("orderId", "facilityId").from("OrderItemShipGroup")
+                    .where(EntityCondition.makeCondition("orderId", EntityOperator.IN, chunk),
+                            EntityCondition.makeCondition("facilityId", EntityOperator.NOT_EQUAL, null))
+                    .orderBy("orderId", "shipGroupSeqId").queryList();
+            for (GenericValue shipGroup : shipGroups) {
+                facilityByOrder.putIfAbsent(shipGroup.getString("orderId"), shipGroup.getString("facilityId"));
+            }
+        }
+        Map<String, List<String>> ordersByFacility = new LinkedHashMap<>();
+        for (String orderId : orderIds) {
+            String facilityId = facilityByOrder.getOrDefault(orderId, DataModelConstants.SEQ_ID_NA);
+            ordersByFacility.computeIfAbsent(facilityId, k -> new ArrayList<>()).add(orderId);
+        }
+        return ordersByFacility;
+    }
+
+    // the orders grouped by the facilities of their approved items with reserved inventory, as massPickOrders did
+    private static Map<String, List<String>> getPickOrdersByFacility(Delegator delegator, String massOperationId, List<String> orderIds)
+            throws GenericEntityException {
+        Map<String, List<String>> ordersByFacility = new LinkedHashMap<>();
+        Set<String> pickedOrderIds = new LinkedHashSet<>();
+        for (List<String> chunk : chunks(orderIds)) {
+            List<GenericValue> reservations = EntityQuery.use(delegator).select("orderId", "facilityId").from("OrderItemAndShipGrpInvResAndItem")
+                    .where(EntityCondition.makeCondition("orderId", EntityOperator.IN, chunk),
+                            EntityCondition.makeCondition("statusId", "ITEM_APPROVED"))
+                    .distinct().orderBy("orderId").queryList();
+            for (GenericValue reservation : reservations) {
+                List<String> facilityOrderIds = ordersByFacility.computeIfAbsent(reservation.getString("facilityId"), k -> new ArrayList<>());
+                // ordered by order, the reservations of an order in a facility follow each other
+                if (facilityOrderIds.isEmpty() || !facilityOrderIds.get(facilityOrderIds.size() - 1).equals(reservation.getString("orderId"))) {
+                    facilityOrderIds.add(reservation.getString("orderId"));
+                }
+                pickedOrderIds.add(reservation.getString("orderId"));
+            }
+        }
+        // nothing to pick for the other orders
+        for (String orderId : orderIds) {
+            if (!pickedOrderIds.contains(orderId)) {
+                storeResult(delegator, massOperationId, orderId, null, null);
+            }
+        }
+        return ordersByFacility;
+    }
+
+    // the partitions of the orders of a facility run in parallel, a pick list being created for all the orders of the facility
+    private static List<List<String>> partition(String serviceName, List<String> orderIds) {
+        List<List<String>> partitions = new ArrayList<>();
+        if (PICK_SERVICE.equals(serviceName)) {
+            partitions.add(orderIds);
+            return partitions;
+        }
+        int partitionCount = Math.min(FACILITY_THREADS, orderIds.size());
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < orderIds.size(); i++) {
+            partitions.get(i % partitionCount).add(orderIds.get(i));
+        }
+        return partitions;
+    }
+
+    // runs the service for each order of a partition, returning the count of orders failed
+    private static int runPartition(DispatchContext dctx, String massOperationId, String serviceName, Map<String, Object> serviceContext,
+            GenericValue userLogin, String facilityId, List<String> orderIds) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        int errorCount = 0;
+        if (PICK_SERVICE.equals(serviceName)) {
+            Map<String, Object> ctx = new HashMap<>(serviceContext);
+            ctx.put("userLogin", userLogin);
+            ctx.put("orderIdList", orderIds);
+            ctx.put("facilityId", facilityId);
+            String errorMessage = runFacilityService(dispatcher, facilityId, serviceName, ctx);
+            for (String orderId : orderIds) {
+                if (!recordResult(delegator, massOperationId, orderId, facilityId, errorMessage)) {
+                    errorCount++;
+                }
+            }
+            return errorCount;
+        }
+        for (String orderId : orderIds) {
+            Map<String, Object> ctx = new HashMap<>(serviceContext);
+            ctx.put("userLogin", userLogin);
+            if ("sendPrintFromScreen".equals(serviceName)) {
+                ctx.put("screenContext", UtilMisc.toMap("orderId", orderId));
+            } else {
+                ctx.put("orderId", orderId);
+            }
+            if (!recordResult(delegator, massOperationId, orderId, facilityId, runFacilityService(dispatcher, facilityId, serviceName, ctx))) {
+                errorCount++;
+            }
+        }
+        return errorCount;
+    }
+
+    // runs a service for orders of a facility once one of the permits of the facility is free, returning its error if any
+    private static String runFacilityService(LocalDispatcher dispatcher, String facilityId, String serviceName, Map<String, Object> ctx) {
+        Semaphore permits = FACILITY_PERMITS.computeIfAbsent(String.valueOf(facilityId), k -> new Semaphore(FACILITY_THREADS));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting to run " + serviceName + " in the facility [" + facilityId + "]";
+        }
+        try {
+            return runService(dispatcher, serviceName, ctx);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // runs a service in its own transaction, returning its error if any
+    private static String runService(LocalDispatcher dispatcher, String serviceName, Map<String, Object> ctx) {
+        try {
+            Map<String, Object> result = dispatcher.runSync(serviceName, ctx, -1, true);
+            if (ServiceUtil.isError(result) || ServiceUtil.isFailure(result)) {
+                return ServiceUtil.getErrorMessage(result);
+            }
+            return null;
+        } catch (GenericServiceException e) {
+            Debug.logError(e, "Error running " + serviceName + " for " + ctx.get("orderId"), MODULE);
+            return e.getMessage();
+        }
+    }
+
+    private static boolean recordResult(Delegator delegator, String massOperationId, String orderId, String facilityId, String errorMessage) {
+        try {
+            storeResult(delegator, massOperationId, orderId, facilityId, errorMessage);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to store the result of the order [" + orderId + "] in the mass operation [" + massOperationId + "]", MODULE);
+        }
+        return errorMessage == null;
+    }
+
+    private static void storeResult(Delegator delegator, String massOperationId, String orderId, String facilityId, String errorMessage)
+            throws GenericEntityException {
+        Map<String, Object> pk = UtilMisc.toMap("massOperationId", massOperationId, "orderId", orderId);
+        Map<String, Object> fields = UtilMisc.toMap("processedDate", UtilDateTime.nowTimestamp());
+        if (facilityId != null) {
+            fields.put("facilityId", facilityId);
+        }
+        TransactionUtil.doNewTransaction(() -> {
+            // locks the row first, an order picked in several facilities getting the errors of each of them
+            if (delegator.storeByCondition("OrderMassOperationItem", fields, EntityCondition.makeCondition(pk)) == 0 || errorMessage == null) {
+                return null;
+            }
+            GenericValue item = EntityQuery.use(delegator).from("OrderMassOperationItem").where(pk).queryOne();
+            String previousError = item.getString("errorMessage");
+            item.set("errorMessage", previousError != null ? previousError + "\n" + errorMessage : errorMessage);
+            item.store();
+            return null;
+        }, "Unable to store the result of the order [" + orderId + "] in the mass operation [" + massOperationId + "]", 0, false);
+    }
+
+    private static List<List<String>> chunks(Iterable<String> orderIds) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        for (String orderId : orderIds) {
+            if (chunk.size() == CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+            chunk.add(orderId);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -24,17 +24,21 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.Observer;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilFormatOut;
 import org.apache.ofbiz.base.util.UtilMisc;
@@ -86,7 +90,13 @@ public class OrderReadHelper {
     private List<GenericValue> orderReturnItems = null;
     private Map<String, GenericValue> orderAttributeMap = null;
     private List<GenericValue> orderItemAttributes = null;
-    private BigDecimal totalPrice = null;
+    private List<GenericValue> orderItemShipGroupAssocs = null;
+    private Map<String, List<GenericValue>> orderPaymentsByPreference = null;
+    // the aggregates computed from the items and the adjustments, dropped as soon as one of them is changed
+    private final Map<List<Object>, Object> memo = new HashMap<>();
+    private final Observer memoObserver = (observable, arg) -> memo.clear();
+    private int memoItemCount = -1;
+    private int memoAdjustmentCount = -1;
     protected OrderReadHelper() { }
 
     /**
@@ -351,24 +361,53 @@ public class OrderReadHelper {
      */
     public List<GenericValue> getOrderPayments(GenericValue orderPaymentPreference) {
         List<GenericValue> orderPayments = new LinkedList<>();
-        List<GenericValue> prefs = null;
-
+        Map<String, List<GenericValue>> paymentsByPreference = getOrderPaymentsByPreference();
+        if (paymentsByPreference == null) {
+            return null;
+        }
         if (orderPaymentPreference == null) {
-            prefs = getPaymentPreferences();
+            for (List<GenericValue> payments : paymentsByPreference.values()) {
+                orderPayments.addAll(payments);
+            }
+        } else if (paymentsByPreference.containsKey(orderPaymentPreference.getString("orderPaymentPreferenceId"))) {
+            orderPayments.addAll(paymentsByPreference.get(orderPaymentPreference.getString("orderPaymentPreferenceId")));
         } else {
-            prefs = UtilMisc.toList(orderPaymentPreference);
+            try {
+                orderPayments.addAll(orderPaymentPreference.getRelated("Payment", null, null, false));
+            } catch (GenericEntityException e) {
+                Debug.logError(e, MODULE);
+                return null;
+            }
         }
-        if (prefs != null) {
-            for (GenericValue payPref : prefs) {
+        return orderPayments;
+    }
+
+    // the payments of all the payment preferences of the order, read at once
+    private Map<String, List<GenericValue>> getOrderPaymentsByPreference() {
+        if (orderPaymentsByPreference == null) {
+            Map<String, List<GenericValue>> paymentsByPreference = new LinkedHashMap<>();
+            List<GenericValue> prefs = getPaymentPreferences();
+            if (prefs != null) {
+                for (GenericValue payPref : prefs) {
+                    paymentsByPreference.put(payPref.getString("orderPaymentPreferenceId"), new LinkedList<>());
+                }
+            }
+            if (!paymentsByPreference.isEmpty()) {
                 try {
-                    orderPayments.addAll(payPref.getRelated("Payment", null, null, false));
+                    List<GenericValue> payments = EntityQuery.use(orderHeader.getDelegator()).from("Payment")
+                            .where(EntityCondition.makeCondition("paymentPreferenceId", EntityOperator.IN, paymentsByPreference.keySet()))
+                            .orderBy("paymentId").queryList();
+                    for (GenericValue payment : payments) {
+                        paymentsByPreference.get(payment.getString("paymentPreferenceId")).add(payment);
+                    }
                 } catch (GenericEntityException e) {
                     Debug.logError(e, MODULE);
                     return null;
                 }
             }
+            orderPaymentsByPreference = paymentsByPreference;
         }
-        return orderPayments;
+        return orderPaymentsByPreference;
     }
 
     /**
@@ -939,7 +978,8 @@ public class OrderReadHelper {
      * @return the shipping total
      */
     public BigDecimal getShippingTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, false, true);
+        return memoize(Arrays.asList("shippingTotal"),
+                () -> OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, false, true));
     }
 
     /**
@@ -947,7 +987,8 @@ public class OrderReadHelper {
      * @return the header tax total
      */
     public BigDecimal getHeaderTaxTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, true, false);
+        return memoize(Arrays.asList("headerTaxTotal"),
+                () -> OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, true, false));
     }
 
     /**
@@ -955,7 +996,8 @@ public class OrderReadHelper {
      * @return the tax total
      */
     public BigDecimal getTaxTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getAdjustments(), getOrderItemsSubTotal(), false, true, false);
+        return memoize(Arrays.asList("taxTotal"),
+                () -> OrderReadHelper.calcOrderAdjustments(getAdjustments(), getOrderItemsSubTotal(), false, true, false));
     }
 
     /**
@@ -1131,7 +1173,7 @@ public class OrderReadHelper {
                 }
                 if (product != null) {
                     if (ProductWorker.shippingApplies(product)) {
-                        shippableTotal = shippableTotal.add(OrderReadHelper.getOrderItemSubTotal(item, getAdjustments(), false, true))
+                        shippableTotal = shippableTotal.add(OrderReadHelper.getOrderItemSubTotal(item, getItemAdjustments(item), false, true))
                                 .setScale(DECIMALS, ROUNDING);
                     }
                 }
@@ -1529,10 +1571,21 @@ public class OrderReadHelper {
      * @return the order grand total
      */
     public BigDecimal getOrderGrandTotal() {
-        if (totalPrice == null) {
-            totalPrice = getOrderGrandTotal(getValidOrderItems(), getAdjustments());
-        } // else already set
-        return totalPrice;
+        // as getOrderGrandTotal(orderItems, adjustments), the sales tax being added by tax authority and party
+        return memoize(Arrays.asList("orderGrandTotal"), () -> {
+            BigDecimal taxGrandTotal = (BigDecimal) getOrderTaxByTaxAuthGeoAndParty(getAdjustments()).get("taxGrandTotal");
+            BigDecimal itemsTotal = ZERO;
+            Iterator<GenericValue> itemIter = UtilMisc.toIterator(getValidOrderItems());
+            while (itemIter != null && itemIter.hasNext()) {
+                GenericValue orderItem = itemIter.next();
+                // the sub total of an item never includes its tax
+                itemsTotal = itemsTotal.add(getOrderItemSubTotal(orderItem))
+                        .add(getOrderItemAdjustmentsTotal(orderItem, withoutSalesTax(getItemAdjustments(orderItem)), false, true, true));
+            }
+            BigDecimal adjustmentsTotal = calcOrderAdjustments(withoutSalesTax(getOrderHeaderAdjustments()), getOrderItemsSubTotal(),
+                    true, true, true);
+            return itemsTotal.setScale(DECIMALS, ROUNDING).add(taxGrandTotal).add(adjustmentsTotal).setScale(DECIMALS, ROUNDING);
+        });
     }
 
     /**
@@ -1627,7 +1680,8 @@ public class OrderReadHelper {
      * @return the order adjustments total
      */
     public BigDecimal getOrderAdjustmentsTotal() {
-        return getOrderAdjustmentsTotal(getValidOrderItems(), getAdjustments());
+        return memoize(Arrays.asList("orderAdjustmentsTotal"),
+                () -> calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), true, true, true));
     }
 
     /**
@@ -1671,7 +1725,9 @@ public class OrderReadHelper {
     public List<GenericValue> getOrderItems() {
         if (orderItems == null) {
             try {
-                orderItems = orderHeader.getRelated("OrderItem", null, UtilMisc.toList("orderItemSeqId"), false);
+                // the products of the items are read by most of the methods looping over them
+                orderItems = EntityQuery.use(orderHeader.getDelegator()).from("OrderItem")
+                        .where("orderId", orderHeader.get("orderId")).orderBy("orderItemSeqId").prefetch("Product").queryList();
             } catch (GenericEntityException e) {
                 Debug.logWarning(e, MODULE);
             }
@@ -1900,7 +1956,7 @@ public class OrderReadHelper {
      * @return the order item adjustments
      */
     public List<GenericValue> getOrderItemAdjustments(GenericValue orderItem) {
-        return getOrderItemAdjustmentList(orderItem, getAdjustments());
+        return new LinkedList<>(getItemAdjustments(orderItem));
     }
 
     /**
@@ -1981,6 +2037,18 @@ public class OrderReadHelper {
         if (orderItem == null) {
             return null;
         }
+        if (orderHeader != null && orderHeader.getString("orderId").equals(orderItem.getString("orderId"))) {
+            if (orderItemShipGroupAssocs == null) {
+                try {
+                    orderItemShipGroupAssocs = EntityQuery.use(orderHeader.getDelegator()).from("OrderItemShipGroupAssoc")
+                            .where("orderId", orderHeader.get("orderId")).orderBy("shipGroupSeqId").queryList();
+                } catch (GenericEntityException e) {
+                    Debug.logWarning(e, MODULE);
+                    return null;
+                }
+            }
+            return EntityUtil.filterByAnd(orderItemShipGroupAssocs, UtilMisc.toMap("orderItemSeqId", orderItem.get("orderItemSeqId")));
+        }
         try {
             return orderHeader.getDelegator().findByAnd("OrderItemShipGroupAssoc",
                     UtilMisc.toMap("orderId", orderItem.getString("orderId"), "orderItemSeqId", orderItem.getString("orderItemSeqId")),
@@ -2600,7 +2668,14 @@ public class OrderReadHelper {
      * @return the order items sub total
      */
     public BigDecimal getOrderItemsSubTotal() {
-        return getOrderItemsSubTotal(getValidOrderItems(), getAdjustments());
+        return memoize(Arrays.asList("orderItemsSubTotal"), () -> {
+            BigDecimal result = ZERO;
+            Iterator<GenericValue> itemIter = UtilMisc.toIterator(getValidOrderItems());
+            while (itemIter != null && itemIter.hasNext()) {
+                result = result.add(getOrderItemSubTotal(itemIter.next())).setScale(DECIMALS, ROUNDING);
+            }
+            return result;
+        });
     }
 
     /**
@@ -2609,7 +2684,7 @@ public class OrderReadHelper {
      * @return the order item sub total
      */
     public BigDecimal getOrderItemSubTotal(GenericValue orderItem) {
-        return getOrderItemSubTotal(orderItem, getAdjustments());
+        return memoize(Arrays.asList("orderItemSubTotal", orderItem), () -> getOrderItemSubTotal(orderItem, getItemAdjustments(orderItem)));
     }
 
     /**
@@ -2617,7 +2692,14 @@ public class OrderReadHelper {
      * @return the order items total
      */
     public BigDecimal getOrderItemsTotal() {
-        return getOrderItemsTotal(getValidOrderItems(), getAdjustments());
+        return memoize(Arrays.asList("orderItemsTotal"), () -> {
+            BigDecimal result = ZERO;
+            Iterator<GenericValue> itemIter = UtilMisc.toIterator(getValidOrderItems());
+            while (itemIter != null && itemIter.hasNext()) {
+                result = result.add(getOrderItemTotal(itemIter.next()));
+            }
+            return result.setScale(DECIMALS, ROUNDING);
+        });
     }
 
     /**
@@ -2626,7 +2708,7 @@ public class OrderReadHelper {
      * @return the order item total
      */
     public BigDecimal getOrderItemTotal(GenericValue orderItem) {
-        return getOrderItemTotal(orderItem, getAdjustments());
+        return getOrderItemSubTotal(orderItem).add(getOrderItemAdjustmentsTotal(orderItem, false, true, true));
     }
 
     /**
@@ -2656,7 +2738,8 @@ public class OrderReadHelper {
      * @return the order item adjustments total
      */
     public BigDecimal getOrderItemAdjustmentsTotal(GenericValue orderItem, boolean includeOther, boolean includeTax, boolean includeShipping) {
-        return getOrderItemAdjustmentsTotal(orderItem, getAdjustments(), includeOther, includeTax, includeShipping);
+        return memoize(Arrays.asList("orderItemAdjustmentsTotal", orderItem, includeOther, includeTax, includeShipping),
+                () -> getOrderItemAdjustmentsTotal(orderItem, getItemAdjustments(orderItem), includeOther, includeTax, includeShipping));
     }
 
     /**
@@ -2668,6 +2751,55 @@ public class OrderReadHelper {
         return getOrderItemAdjustmentsTotal(orderItem, true, false, false);
     }
 
+    // the adjustments of an item, all the adjustments of the order being grouped by item in one pass
+    private List<GenericValue> getItemAdjustments(GenericValue orderItem) {
+        Map<Object, List<GenericValue>> adjustmentsByItem = memoize(Arrays.asList("adjustmentsByItem"), () -> {
+            Map<Object, List<GenericValue>> byItem = new HashMap<>();
+            for (GenericValue adjustment : getAdjustments()) {
+                byItem.computeIfAbsent(adjustment.get("orderItemSeqId"), k -> new LinkedList<>()).add(adjustment);
+            }
+            return byItem;
+        });
+        return adjustmentsByItem.getOrDefault(orderItem.get("orderItemSeqId"), Collections.emptyList());
+    }
+
+    private static List<GenericValue> withoutSalesTax(List<GenericValue> adjustments) {
+        return EntityUtil.filterByAnd(adjustments, UtilMisc.toList(EntityCondition.makeCondition("orderAdjustmentTypeId",
+                EntityOperator.NOT_EQUAL, "SALES_TAX")));
+    }
+
+    // a value computed from the items and the adjustments only the first time it is asked,
+    // dropped as soon as an item or an adjustment is added, removed or changed
+    @SuppressWarnings("unchecked")
+    private <T> T memoize(List<Object> key, Supplier<T> supplier) {
+        int itemCount = orderItems != null ? orderItems.size() : -1;
+        int adjustmentCount = adjustments != null ? adjustments.size() : -1;
+        if (itemCount != memoItemCount || adjustmentCount != memoAdjustmentCount) {
+            memo.clear();
+            observe(orderItems);
+            observe(adjustments);
+            memoItemCount = itemCount;
+            memoAdjustmentCount = adjustmentCount;
+        }
+        if (memo.containsKey(key)) {
+            return (T) memo.get(key);
+        }
+        T value = supplier.get();
+        memo.put(key, value);
+        return value;
+    }
+
+    private void observe(List<GenericValue> values) {
+        if (values != null) {
+            for (GenericValue value : values) {
+                // the values of the entity cache can't be changed, and must not keep the helper
+                if (value.isMutable()) {
+                    value.addObserver(memoObserver);
+                }
+            }
+        }
+    }
+
     /**
      * Gets order item adjustment total.
      * @param orderItem  the order item
@@ -2702,7 +2834,9 @@ public class OrderReadHelper {
      * @return the order item statuses
      */
     public List<GenericValue> getOrderItemStatuses(GenericValue orderItem) {
-        return getOrderItemStatuses(orderItem, getOrderStatuses());
+        List<GenericValue> orderItemStatuses = memoize(Arrays.asList("orderItemStatuses", orderItem),
+                () -> getOrderItemStatuses(orderItem, getOrderStatuses()));
+        return orderItemStatuses != null ? new LinkedList<>(orderItemStatuses) : null;
     }
 
     /**
@@ -23,10 +23,13 @@ import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -47,15 +50,19 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilNumber;
 import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.common.DataModelConstants;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelRelation;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityFindOptions;
@@ -69,6 +76,7 @@ import org.apache.ofbiz.order.shoppingcart.CheckOutHelper;
 import org.apache.ofbiz.order.shoppingcart.ItemNotFoundException;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoUseCounter;
 import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
 import org.apache.ofbiz.order.shoppingcart.shipping.ShippingEvents;
 import org.apache.ofbiz.party.contact.ContactHelper;
@@ -194,6 +202,8 @@ public class OrderServices {
         List<GenericValue> toBeStored = new LinkedList<>();
         Locale locale = (Locale) context.get("locale");
         Map<String, Object> successResult = ServiceUtil.returnSuccess();
+        // the time of each phase, logged at the timing level
+        UtilTimer timer = new UtilTimer("createOrder", true, Debug.timingOn());
 
         GenericValue userLogin = (GenericValue) context.get("userLogin");
         // get the order type
@@ -580,6 +590,24 @@ public class OrderServices {
             orderHeader.set("invoicePerShipment", invoicePerShipment);
         }
 
+        // count the promotion uses before creating the order, to check their limits against the other orders being placed
+        List<GenericValue> orderProductPromoUses = UtilGenerics.cast(context.get("orderProductPromoUses"));
+        if (UtilValidate.isNotEmpty(orderProductPromoUses)) {
+            try {
+                String productPromoId = ProductPromoUseCounter.reserveUses(delegator, orderProductPromoUses);
+                if (productPromoId != null) {
+                    return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR, "OrderProductPromoUseLimitReached",
+                            UtilMisc.toMap("productPromoId", productPromoId), locale));
+                }
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Cannot count the promotion uses of the order", MODULE);
+                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR,
+                        "OrderOrderCreationFailedPleaseNotifyCustomerService", locale));
+            }
+        }
+
+        timer.timerString("Order values made", MODULE);
+
         // first try to create the OrderHeader; if this does not fail, continue.
         try {
             delegator.create(orderHeader);
@@ -940,7 +968,6 @@ public class OrderServices {
         }
 
         // store the orderProductPromoUseInfos
-        List<GenericValue> orderProductPromoUses = UtilGenerics.cast(context.get("orderProductPromoUses"));
         if (UtilValidate.isNotEmpty(orderProductPromoUses)) {
             for (GenericValue productPromoUse : orderProductPromoUses) {
                 productPromoUse.set("orderId", orderId);
@@ -1073,7 +1100,8 @@ public class OrderServices {
 
         try {
             // store line items, etc so that they will be there for the foreign key checks
-            delegator.storeAll(toBeStored);
+            storeNewOrderValues(delegator, orderId, toBeStored);
+            timer.timerString("Order values stored", MODULE);
 
             List<String> resErrorMessages = new LinkedList<>();
             GenericValue permUserLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").cache().queryOne();
@@ -1082,7 +1110,7 @@ public class OrderServices {
             if (UtilValidate.isNotEmpty(orderItems)) {
                 for (GenericValue orderItem : orderItems) {
                     String productId = (String) orderItem.get("productId");
-                    GenericValue product = delegator.getRelatedOne("Product", orderItem, false);
+                    GenericValue product = delegator.getRelatedOne("Product", orderItem, true);
 
                     if (product != null && ("SERVICE_PRODUCT".equals(product.get("productTypeId")) || "AGGREGATEDSERV_CONF".equals(product.get(
                             "productTypeId")))) {
@@ -1138,6 +1166,8 @@ public class OrderServices {
                 }
             }
 
+            timer.timerString("Service products received", MODULE);
+
             // START inventory reservation
             try {
                 reserveInventory(delegator, dispatcher, permUserLogin, locale, orderItemShipGroupInfo, dropShipGroupIds, itemValuesBySeqId,
@@ -1145,6 +1175,7 @@ public class OrderServices {
             } catch (GeneralException e) {
                 return ServiceUtil.returnError(e.getMessage());
             }
+            timer.timerString("Inventory reserved", MODULE);
 
             if (!resErrorMessages.isEmpty()) {
                 return ServiceUtil.returnError(resErrorMessages);
@@ -1161,6 +1192,72 @@ public class OrderServices {
         return successResult;
     }
 
+    /**
+     * Stores the values of a new order. The values of the order itself can't exist yet and are
+     * created by a JDBC batch for each entity, each entity after the entities it refers to; the
+     * other values, such as the roles of the parties or the survey responses, are stored one by one
+     * as they may already exist.
+     */
+    private static void storeNewOrderValues(Delegator delegator, String orderId, List<GenericValue> values) throws GenericEntityException {
+        List<GenericValue> otherValues = new LinkedList<>();
+        Map<String, Map<GenericPK, GenericValue>> orderValuesByEntity = new LinkedHashMap<>();
+        for (GenericValue value : values) {
+            if (orderId.equals(value.get("orderId")) && refersToOrder(value.getModelEntity())) {
+                // a value added twice is created once, as the last one added
+                orderValuesByEntity.computeIfAbsent(value.getEntityName(), k -> new LinkedHashMap<>()).put(value.getPrimaryKey(), value);
+            } else {
+                otherValues.add(value);
+            }
+        }
+        delegator.storeAll(otherValues);
+
+        List<GenericValue> orderValues = new ArrayList<>(values.size());
+        Set<String> remaining = new LinkedHashSet<>(orderValuesByEntity.keySet());
+        while (!remaining.isEmpty()) {
+            String nextEntityName = null;
+            for (String entityName : remaining) {
+                if (!refersToAny(delegator.getModelEntity(entityName), remaining)) {
+                    nextEntityName = entityName;
+                    break;
+                }
+            }
+            if (nextEntityName == null) {
+                // the entities refer to each other, their values are created in the order they have been added
+                for (GenericValue value : values) {
+                    Map<GenericPK, GenericValue> entityValues = orderValuesByEntity.get(value.getEntityName());
+                    if (remaining.contains(value.getEntityName()) && entityValues.get(value.getPrimaryKey()) == value) {
+                        orderValues.add(value);
+                    }
+                }
+                break;
+            }
+            orderValues.addAll(orderValuesByEntity.get(nextEntityName).values());
+            remaining.remove(nextEntityName);
+        }
+        delegator.createAll(orderValues);
+    }
+
+    // checks if the values of an entity have a foreign key to an order or order item, so belong to a single order
+    private static boolean refersToOrder(ModelEntity modelEntity) {
+        for (ModelRelation relation : modelEntity.getRelationsList(true, false, false)) {
+            if (("OrderHeader".equals(relation.getRelEntityName()) || "OrderItem".equals(relation.getRelEntityName()))
+                    && relation.findKeyMap("orderId") != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // checks if an entity has a foreign key to another of the entities
+    private static boolean refersToAny(ModelEntity modelEntity, Set<String> entityNames) {
+        for (ModelRelation relation : modelEntity.getRelationsList(true, false, false)) {
+            if (!relation.getRelEntityName().equals(modelEntity.getEntityName()) && entityNames.contains(relation.getRelEntityName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static Map<String, Object> countProductQuantityOrdered(DispatchContext ctx, Map<String, Object> context) {
         Delegator delegator = ctx.getDelegator();
         Locale locale = (Locale) context.get("locale");
@@ -1236,7 +1333,12 @@ public class OrderServices {
         // START inventory reservation
         // decrement inventory available for each OrderItemShipGroupAssoc, within the same transaction
         if (UtilValidate.isNotEmpty(orderItemShipGroupInfo)) {
-            for (GenericValue orderItemShipGroupAssoc : orderItemShipGroupInfo) {
+            // the items are reserved by product, so that the orders reserving the same products lock their inventory items in the same
+            // order: they still wait for each other on the items they share, but can't deadlock
+            List<GenericValue> orderItemShipGroupAssocs = new ArrayList<>(orderItemShipGroupInfo);
+            orderItemShipGroupAssocs.sort(Comparator.comparing((GenericValue value) -> reservationKey(value, itemValuesBySeqId)));
+            Map<String, GenericValue> orderItemShipGroups = new HashMap<>();
+            for (GenericValue orderItemShipGroupAssoc : orderItemShipGroupAssocs) {
                 if ("OrderItemShipGroupAssoc".equals(orderItemShipGroupAssoc.getEntityName())) {
                     if (dropShipGroupIds != null && dropShipGroupIds.contains(orderItemShipGroupAssoc.getString("shipGroupSeqId"))) {
                         // the items in the drop ship groups are not reserved
@@ -1259,7 +1361,11 @@ public class OrderServices {
                                 continue;
                             }
                         }
-                        GenericValue orderItemShipGroup = orderItemShipGroupAssoc.getRelatedOne("OrderItemShipGroup", false);
+                        GenericValue orderItemShipGroup = orderItemShipGroups.get(orderItemShipGroupAssoc.getString("shipGroupSeqId"));
+                        if (orderItemShipGroup == null) {
+                            orderItemShipGroup = orderItemShipGroupAssoc.getRelatedOne("OrderItemShipGroup", false);
+                            orderItemShipGroups.put(orderItemShipGroupAssoc.getString("shipGroupSeqId"), orderItemShipGroup);
+                        }
                         String shipGroupFacilityId = orderItemShipGroup.getString("facilityId");
                         String itemStatus = null;
                         itemStatus = orderItem.getString("statusId");
@@ -1275,7 +1381,7 @@ public class OrderServices {
                                 && !"RENTAL_ORDER_ITEM".equals(orderItem.getString("orderItemTypeId"))) {  // ignore for rental
                             try {
                                 // get the product of the order item
-                                GenericValue product = orderItem.getRelatedOne("Product", false);
+                                GenericValue product = orderItem.getRelatedOne("Product", true);
                                 if (product == null) {
                                     Debug.logError("Error when looking up product in reserveInventory service", MODULE);
                                     resErrorMessages.add("Error when looking up product in reserveInventory service");
@@ -1373,7 +1479,7 @@ public class OrderServices {
                                 && "RENTAL_ORDER_ITEM".equals(orderItem.getString("orderItemTypeId"))) {
                             try {
                                 // get the product of the order item
-                                GenericValue product = orderItem.getRelatedOne("Product", false);
+                                GenericValue product = orderItem.getRelatedOne("Product", true);
                                 if (product == null) {
                                     Debug.logError("Error when looking up product in reserveInventory service", MODULE);
                                     resErrorMessages.add("Error when looking up product in reserveInventory service");
@@ -1475,6 +1581,16 @@ public class OrderServices {
         }
     }
 
+    // the key of the reservation of an order item in a ship group: its product, then the item and the group
+    private static String reservationKey(GenericValue orderItemShipGroupAssoc, Map<String, GenericValue> itemValuesBySeqId) {
+        if (!"OrderItemShipGroupAssoc".equals(orderItemShipGroupAssoc.getEntityName()) || itemValuesBySeqId == null) {
+            return "";
+        }
+        GenericValue orderItem = itemValuesBySeqId.get(orderItemShipGroupAssoc.getString("orderItemSeqId"));
+        String productId = orderItem != null && orderItem.getString("productId") != null ? orderItem.getString("productId") : "";
+        return productId + "::" + orderItemShipGroupAssoc.getString("orderItemSeqId") + "::" + orderItemShipGroupAssoc.getString("shipGroupSeqId");
+    }
+
     public static String getProductName(GenericValue product, GenericValue orderItem) {
         if (UtilValidate.isNotEmpty(product.getString("productName"))) {
             return product.getString("productName");
@@ -1499,6 +1615,29 @@ public class OrderServices {
         return null;
     }
 
+    /**
+     * Service releasing the promotion uses of an order cancelled or rejected, only the first time it is cancelled or rejected
+     */
+    public static Map<String, Object> releaseOrderProductPromoUses(DispatchContext ctx, Map<String, ? extends Object> context) {
+        Delegator delegator = ctx.getDelegator();
+        String orderId = (String) context.get("orderId");
+        try {
+            long endStatusCount = EntityQuery.use(delegator).from("OrderStatus")
+                    .where(EntityCondition.makeCondition("orderId", orderId),
+                            EntityCondition.makeCondition("statusId", EntityOperator.IN, UtilMisc.toList("ORDER_CANCELLED", "ORDER_REJECTED")))
+                    .queryCount();
+            if (endStatusCount > 1) {
+                return ServiceUtil.returnSuccess();
+            }
+            List<GenericValue> productPromoUses = EntityQuery.use(delegator).from("ProductPromoUse").where("orderId", orderId).queryList();
+            ProductPromoUseCounter.releaseUses(delegator, productPromoUses);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Cannot release the promotion uses of order " + orderId, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
     /**
      * Service for resetting the OrderHeader grandTotal
      */
@@ -4487,7 +4626,8 @@ public class OrderServices {
             orderProductPromoCode.set("productPromoCodeId", promoCodeEntered);
             toStore.add(orderProductPromoCode);
         }
-        for (GenericValue promoUse : cart.makeProductPromoUses()) {
+        List<GenericValue> promoUses = cart.makeProductPromoUses();
+        for (GenericValue promoUse : promoUses) {
             promoUse.set("orderId", orderId);
             toStore.add(promoUse);
         }
@@ -4500,6 +4640,16 @@ public class OrderServices {
         } catch (GenericEntityException e) {
             Debug.logError(e, MODULE);
         }
+        try {
+            String productPromoId = ProductPromoUseCounter.changeUses(delegator, existingPromoUses, promoUses);
+            if (productPromoId != null) {
+                throw new GeneralException(UtilProperties.getMessage(RES_ERROR, "OrderProductPromoUseLimitReached",
+                        UtilMisc.toMap("productPromoId", productPromoId), locale));
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            throw new GeneralException(e.getMessage());
+        }
         toRemove.addAll(existingPromoCodes);
         toRemove.addAll(existingPromoUses);
 
@@ -4893,45 +5043,8 @@ public class OrderServices {
     }
 
     public static Map<String, Object> massChangeOrderStatus(DispatchContext dctx, Map<String, ? extends Object> context, String statusId) {
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        Delegator delegator = dctx.getDelegator();
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
-        List<String> orderIds = UtilGenerics.cast(context.get("orderIdList"));
-        Locale locale = (Locale) context.get("locale");
-        for (String orderId : orderIds) {
-            if (UtilValidate.isEmpty(orderId)) {
-                continue;
-            }
-            GenericValue orderHeader = null;
-            try {
-                orderHeader = EntityQuery.use(delegator).from("OrderHeader").where("orderId", orderId).queryOne();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, MODULE);
-                return ServiceUtil.returnError(e.getMessage());
-            }
-            if (orderHeader == null) {
-                return ServiceUtil.returnFailure(UtilProperties.getMessage(RESOURCE,
-                        "OrderOrderNotFound", UtilMisc.toMap("orderId", orderId), locale));
-            }
-
-            Map<String, Object> ctx = new HashMap<>();
-            ctx.put("statusId", statusId);
-            ctx.put("orderId", orderId);
-            ctx.put("setItemStatus", "Y");
-            ctx.put("userLogin", userLogin);
-            Map<String, Object> resp = null;
-            try {
-                resp = dispatcher.runSync("changeOrderStatus", ctx);
-            } catch (GenericServiceException e) {
-                Debug.logError(e, MODULE);
-                return ServiceUtil.returnError(e.getMessage());
-            }
-            if (ServiceUtil.isError(resp)) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR,
-                        "OrderErrorCouldNotChangeOrderStatus", locale), null, null, resp);
-            }
-        }
-        return ServiceUtil.returnSuccess();
+        return OrderMassServices.startMassOperation(dctx, context, "changeOrderStatus",
+                UtilMisc.toMap("statusId", statusId, "setItemStatus", "Y"));
     }
 
     public static Map<String, Object> massChangeItemStatus(DispatchContext dctx, Map<String, ? extends Object> context, String statusId) {
@@ -4976,120 +5089,20 @@ public class OrderServices {
     }
 
     public static Map<String, Object> massQuickShipOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
-        List<String> orderIds = UtilGenerics.cast(context.get("orderIdList"));
-        Locale locale = (Locale) context.get("locale");
-        for (Object orderId : orderIds) {
-            if (UtilValidate.isEmpty(orderId)) {
-                continue;
-            }
-            Map<String, Object> ctx = new HashMap<>();
-            ctx.put("userLogin", userLogin);
-            ctx.put("orderId", orderId);
-
-            Map<String, Object> resp = null;
-            try {
-                resp = dispatcher.runSync("quickShipEntireOrder", ctx);
-            } catch (GenericServiceException e) {
-                Debug.logError(e, MODULE);
-                return ServiceUtil.returnError(e.getMessage());
-            }
-            if (ServiceUtil.isError(resp)) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
-                        "OrderOrderQuickShipEntireOrderError", locale), null, null, resp);
-            }
-        }
-        return ServiceUtil.returnSuccess();
+        return OrderMassServices.startMassOperation(dctx, context, "quickShipEntireOrder", new HashMap<>());
     }
 
     public static Map<String, Object> massPickOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        Delegator delegator = dctx.getDelegator();
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
-        Locale locale = (Locale) context.get("locale");
-        // grouped by facility
-        Map<String, List<String>> facilityOrdersMap = new HashMap<>();
-
-        // make the list per facility
-        List<String> orderIds = UtilGenerics.cast(context.get("orderIdList"));
-        for (String orderId : orderIds) {
-            if (UtilValidate.isEmpty(orderId)) {
-                continue;
-            }
-            List<GenericValue> invInfo = null;
-            try {
-                invInfo = EntityQuery.use(delegator).from("OrderItemAndShipGrpInvResAndItem").where("orderId", orderId, "statusId",
-                        "ITEM_APPROVED").queryList();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, MODULE);
-                return ServiceUtil.returnError(e.getMessage());
-            }
-            if (invInfo != null) {
-                for (GenericValue inv : invInfo) {
-                    String facilityId = inv.getString("facilityId");
-                    List<String> orderIdsByFacility = facilityOrdersMap.get(facilityId);
-                    if (orderIdsByFacility == null) {
-                        orderIdsByFacility = new ArrayList<>();
-                    }
-                    orderIdsByFacility.add(orderId);
-                    facilityOrdersMap.put(facilityId, orderIdsByFacility);
-                }
-            }
-        }
-
-        // now create the pick lists for each facility
-        for (String facilityId : facilityOrdersMap.keySet()) {
-            List<String> orderIdList = facilityOrdersMap.get(facilityId);
-
-            Map<String, Object> ctx = new HashMap<>();
-            ctx.put("userLogin", userLogin);
-            ctx.put("orderIdList", orderIdList);
-            ctx.put("facilityId", facilityId);
-
-            Map<String, Object> resp = null;
-            try {
-                resp = dispatcher.runSync("createPicklistFromOrders", ctx);
-            } catch (GenericServiceException e) {
-                Debug.logError(e, MODULE);
-                return ServiceUtil.returnError(e.getMessage());
-            }
-            if (ServiceUtil.isError(resp)) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
-                        "OrderOrderPickingListCreationError", locale), null, null, resp);
-            }
-        }
-
-        return ServiceUtil.returnSuccess();
+        // a pick list is created for the orders of each facility
+        return OrderMassServices.startMassOperation(dctx, context, "createPicklistFromOrders", new HashMap<>());
     }
 
     public static Map<String, Object> massPrintOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
-        String screenLocation = (String) context.get("screenLocation");
-        String printerName = (String) context.get("printerName");
-
-        // make the list per facility
-        List<String> orderIds = UtilGenerics.cast(context.get("orderIdList"));
-        for (String orderId : orderIds) {
-            if (UtilValidate.isEmpty(orderId)) {
-                continue;
-            }
-            Map<String, Object> ctx = new HashMap<>();
-            ctx.put("userLogin", userLogin);
-            ctx.put("screenLocation", screenLocation);
-            if (UtilValidate.isNotEmpty(printerName)) {
-                ctx.put("printerName", printerName);
-            }
-            ctx.put("screenContext", UtilMisc.toMap("orderId", orderId));
-
-            try {
-                dispatcher.runAsync("sendPrintFromScreen", ctx);
-            } catch (GenericServiceException e) {
-                Debug.logError(e, MODULE);
-            }
+        Map<String, Object> serviceContext = UtilMisc.toMap("screenLocation", context.get("screenLocation"));
+        if (UtilValidate.isNotEmpty(context.get("printerName"))) {
+            serviceContext.put("printerName", context.get("printerName"));
         }
-        return ServiceUtil.returnSuccess();
+        return OrderMassServices.startMassOperation(dctx, context, "sendPrintFromScreen", serviceContext);
     }
 
     public static Map<String, Object> massCreateFileForOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
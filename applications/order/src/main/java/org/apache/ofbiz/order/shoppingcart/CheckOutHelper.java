@@ -39,6 +39,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilNumber;
 import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -662,6 +663,8 @@ public class CheckOutHelper {
         String supplierPartyId = (String) this.cart.getAttribute("supplierPartyId");
         String originOrderId = (String) this.cart.getAttribute("originOrderId");
 
+        // the time of each phase of the checkout, logged at the timing level
+        UtilTimer timer = new UtilTimer("checkoutCreateOrder", true, Debug.timingOn());
         this.cart.clearAllItemStatus();
         this.cart.removeEmptyCartItems();
 
@@ -669,6 +672,7 @@ public class CheckOutHelper {
 
         // store the order - build the context
         Map<String, Object> context = this.cart.makeCartMap(this.dispatcher, areOrderItemsExploded);
+        timer.timerString("Cart map made", MODULE);
 
         //get the TrackingCodeOrder List
         context.put("trackingCodeOrders", trackingCodeOrders);
@@ -724,6 +728,7 @@ public class CheckOutHelper {
             resErrorMessages.add(ServiceUtil.getErrorMessage(storeResult));
             return ServiceUtil.returnError(resErrorMessages);
         }
+        timer.timerString("Order stored", MODULE);
 
         // ----------
         // If needed, the production runs are created and linked to the order lines.
@@ -734,13 +739,14 @@ public class CheckOutHelper {
             String productId = orderItem.getString("productId");
             if (productId != null) {
                 try {
-                    // do something tricky here: run as the "system" user
-                    // that can actually create and run a production run
-                    GenericValue permUserLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").cache().queryOne();
-                    GenericValue productStore = ProductStoreWorker.getProductStore(productStoreId, delegator);
-                    GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+                    GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).cache().queryOne();
                     if (EntityTypeUtil.hasParentType(delegator, "ProductType", "productTypeId", product.getString("productTypeId"), "parentTypeId",
                             "AGGREGATED")) {
+                        // do something tricky here: run as the "system" user
+                        // that can actually create and run a production run
+                        GenericValue permUserLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").cache()
+                                .queryOne();
+                        GenericValue productStore = ProductStoreWorker.getProductStore(productStoreId, delegator);
                         org.apache.ofbiz.product.config.ProductConfigWrapper config = this.cart.findCartItem(counter).getConfigWrapper();
                         Map<String, Object> inputMap = new HashMap<>();
                         inputMap.put("config", config);
@@ -798,6 +804,7 @@ public class CheckOutHelper {
             }
         }
         // ----------
+        timer.timerString("Production runs and requirements done", MODULE);
 
         // set the orderId for use by chained events
         Map<String, Object> result = ServiceUtil.returnSuccess();
@@ -861,6 +868,7 @@ public class CheckOutHelper {
                         MODULE);
             }
         }
+        timer.timerString("Order emails stored", MODULE);
 
         return result;
     }
@@ -64,6 +64,7 @@ import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.order.finaccount.FinAccountHelper;
 import org.apache.ofbiz.order.order.OrderReadHelper;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoScope;
 import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
 import org.apache.ofbiz.order.shoppingcart.shipping.ShippingEstimateWrapper;
 import org.apache.ofbiz.order.shoppingcart.shipping.ShippingEvents;
@@ -163,6 +164,8 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     /** Note that even though this is promotion info, it should NOT be cleared when the promos are cleared,
      * it is a preference that will be used in the next promo calculation */
     private Map<GenericPK, String> desiredAlternateGiftByAction = new HashMap<>();
+    /** The last evaluation of the promotions, dropped when the promotion information is cleared */
+    private transient ProductPromoScope.Evaluation promoEvaluation = null;
     private Timestamp cartCreatedTs = UtilDateTime.nowTimestamp();
 
     private transient Delegator delegator = null;
@@ -434,6 +437,10 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     public <T> T getAttribute(String name) {
         return (T) this.attributes.get(name);
     }
+    /** get attributes */
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
     /** remove order attribute */
     public void removeOrderAttribute(String name) {
         this.orderAttributes.remove(name);
@@ -1733,6 +1740,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
         this.orderAdditionalEmails = null;
 
         this.readOnlyCart = false;
+        this.promoEvaluation = null;
 
         this.lastListRestore = null;
 
@@ -3904,6 +3912,14 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     public Map<GenericPK, String> getAllDesiredAlternateGiftByActionCopy() {
         return new HashMap<>(this.desiredAlternateGiftByAction);
     }
+    /** get the last evaluation of the promotions, null when it has been cleared since */
+    public ProductPromoScope.Evaluation getPromoEvaluation() {
+        return this.promoEvaluation;
+    }
+    /** set the last evaluation of the promotions */
+    public void setPromoEvaluation(ProductPromoScope.Evaluation promoEvaluation) {
+        this.promoEvaluation = promoEvaluation;
+    }
     /** add product promo use */
     public void addProductPromoUse(String productPromoId, String productPromoCodeId, BigDecimal totalDiscountAmount, BigDecimal
             quantityLeftInActions, Map<ShoppingCartItem, BigDecimal> usageInfoMap) {
@@ -3935,6 +3951,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     /** clear out info for general promo use */
     public void clearProductPromoUseInfo() {
         this.productPromoUseInfoList.clear();
+        this.promoEvaluation = null;
     }
     /** clear cart item use in promo info */
     public void clearCartItemUseInPromoInfo() {
@@ -3942,6 +3959,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
         for (ShoppingCartItem cartLine : this) {
             cartLine.clearPromoRuleUseInfo();
         }
+        this.promoEvaluation = null;
     }
     /** get product promo use info iter */
     public Iterator<ProductPromoUseInfo> getProductPromoUseInfoIter() {
@@ -4030,6 +4048,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     }
     /** clear all promotion adjustments */
     public void clearAllPromotionAdjustments() {
+        this.promoEvaluation = null;
         // remove cart adjustments from promo actions
         List<GenericValue> cartAdjustments = this.getAdjustments();
         if (cartAdjustments != null) {
@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.shoppingcart;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
+import org.apache.ofbiz.product.store.ProductStoreWorker;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceContainer;
+
+/**
+ * A compact copy of a shopping cart, keeping only the ids and the quantities the cart can be
+ * rebuilt from: the store, the parties, the promotion codes, the shipping options and the lines.
+ * <p>
+ * It replaces a {@link WebShoppingCart} when the session is serialized for replication or
+ * persistence, instead of the whole graph of the cart with its entity values. The cart is rebuilt
+ * when the snapshot is read, the products and prices being read again from the entity cache and
+ * the promotions evaluated again. The carts with state the snapshot doesn't keep, such as a payment,
+ * an edited order, shipping instructions, a purchase order number, order or cart attributes, a gift
+ * chosen for a promotion, are not supported and serialized as they are, see {@link #isSupported(ShoppingCart)}.
+ */
+public final class ShoppingCartSnapshot implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+    private static final String MODULE = ShoppingCartSnapshot.class.getName();
+    private static final int VERSION = 1;
+
+    private String delegatorName;
+    private String dispatcherName;
+    private String productStoreId;
+    private String webSiteId;
+    private String localeTag;
+    private String currencyUom;
+    private String orderType;
+    private String channelType;
+    private String billToCustomerPartyId;
+    private String billFromVendorPartyId;
+    private String orderPartyId;
+    private String placingCustomerPartyId;
+    private String userLoginId;
+    private String autoUserLoginId;
+    private String shippingContactMechId;
+    private String shipmentMethodTypeId;
+    private String carrierPartyId;
+    private List<String> productPromoCodes = new ArrayList<>();
+    private List<Line> lines = new ArrayList<>();
+
+    /** Instantiates a new empty snapshot, to be read by {@link #readExternal}. */
+    public ShoppingCartSnapshot() { }
+
+    /**
+     * Instantiates a new snapshot of a cart.
+     * @param cart the cart, supported by the snapshots
+     * @param dispatcherName the name of the dispatcher rebuilding the cart
+     */
+    public ShoppingCartSnapshot(ShoppingCart cart, String dispatcherName) {
+        this.delegatorName = cart.getDelegator().getDelegatorName();
+        this.dispatcherName = dispatcherName;
+        this.productStoreId = cart.getProductStoreId();
+        this.webSiteId = cart.getWebSiteId();
+        this.localeTag = cart.getLocale() != null ? cart.getLocale().toLanguageTag() : null;
+        this.currencyUom = cart.getCurrency();
+        this.orderType = cart.getOrderType();
+        this.channelType = cart.getChannelType();
+        this.billToCustomerPartyId = cart.getBillToCustomerPartyId();
+        this.billFromVendorPartyId = cart.getBillFromVendorPartyId();
+        this.orderPartyId = cart.getOrderPartyId();
+        this.placingCustomerPartyId = cart.getPlacingCustomerPartyId();
+        this.userLoginId = cart.getUserLogin() != null ? cart.getUserLogin().getString("userLoginId") : null;
+        this.autoUserLoginId = cart.getAutoUserLogin() != null ? cart.getAutoUserLogin().getString("userLoginId") : null;
+        if (cart.getShipGroupSize() > 0) {
+            this.shippingContactMechId = cart.getShippingContactMechId(0);
+            this.shipmentMethodTypeId = cart.getShipmentMethodTypeId(0);
+            this.carrierPartyId = cart.getCarrierPartyId(0);
+        }
+        this.productPromoCodes.addAll(new TreeSet<>(cart.getProductPromoCodesEntered()));
+        for (ShoppingCartItem item : cart) {
+            // the promotional lines are added again by the promotions
+            if (!item.getIsPromo()) {
+                lines.add(new Line(item));
+            }
+        }
+    }
+
+    /**
+     * Checks if a cart can be rebuilt from its snapshot.
+     * @param cart the cart
+     * @return <code>true</code> if the cart has no state the snapshot would lose
+     */
+    public static boolean isSupported(ShoppingCart cart) {
+        if (cart.isReadOnlyCart() || UtilValidate.isNotEmpty(cart.getOrderId()) || UtilValidate.isNotEmpty(cart.getQuoteId())
+                || cart.getShipGroupSize() > 1 || cart.selectedPayments() > 0 || hasManualAdjustment(cart.getAdjustments())) {
+            return false;
+        }
+        // the order header fields and the attributes set by the checkout are not kept
+        if (UtilValidate.isNotEmpty(cart.getPoNumber()) || UtilValidate.isNotEmpty(cart.getOrderName())
+                || UtilValidate.isNotEmpty(cart.getAgreementId()) || UtilValidate.isNotEmpty(cart.getOrderAdditionalEmails())
+                || UtilValidate.isNotEmpty(cart.getAutoSaveListId()) || cart.getLastListRestore() != null
+                || UtilValidate.isNotEmpty(cart.getOrderAttributes()) || UtilValidate.isNotEmpty(cart.getAttributes())
+                || UtilValidate.isNotEmpty(cart.getOrderContactMechIds()) || UtilValidate.isNotEmpty(cart.getAdditionalPartyRoleMap())
+                || UtilValidate.isNotEmpty(cart.getInternalCode()) || UtilValidate.isNotEmpty(cart.getOrderNotes())
+                || UtilValidate.isNotEmpty(cart.getInternalOrderNotes())) {
+            return false;
+        }
+        // nor the options of the ship group other than its address, method and carrier
+        if (cart.getShipGroupSize() == 1 && (UtilValidate.isNotEmpty(cart.getShippingInstructions(0))
+                || UtilValidate.isNotEmpty(cart.getGiftMessage(0)) || "Y".equals(cart.getIsGift(0)) || "Y".equals(cart.getMaySplit(0)))) {
+            return false;
+        }
+        // nor the gifts chosen for the promotions and the other settings of the order
+        if (UtilValidate.isNotEmpty(cart.getAllDesiredAlternateGiftByActionCopy()) || !cart.getDoPromotions()
+                || UtilValidate.isNotEmpty(cart.getBillingAccountId()) || UtilValidate.isNotEmpty(cart.getOrderTerms())
+                || UtilValidate.isNotEmpty(cart.getExternalId()) || UtilValidate.isNotEmpty(cart.getWorkEffortId())
+                || UtilValidate.isNotEmpty(cart.getFirstAttemptOrderId()) || UtilValidate.isNotEmpty(cart.getTerminalId())
+                || UtilValidate.isNotEmpty(cart.getTransactionId()) || UtilValidate.isNotEmpty(cart.getAutoOrderShoppingListId())
+                || UtilValidate.isNotEmpty(cart.getDefaultItemDeliveryDate()) || UtilValidate.isNotEmpty(cart.getDefaultItemComment())
+                || cart.getDefaultShipAfterDate() != null || cart.getDefaultShipBeforeDate() != null
+                || cart.getDefaultReserveAfterDate() != null) {
+            return false;
+        }
+        // nor the parties of the other roles and the facility, unless they are the defaults of the rebuilt cart
+        String partyId = cart.getPartyId();
+        if (!Objects.equals(cart.getShipToCustomerPartyId(), partyId) || !Objects.equals(cart.getEndUserCustomerPartyId(), partyId)
+                || !Objects.equals(cart.getShipFromVendorPartyId(), partyId) || !Objects.equals(cart.getSupplierAgentPartyId(), partyId)) {
+            return false;
+        }
+        GenericValue productStore = cart.getProductStoreId() != null
+                ? ProductStoreWorker.getProductStore(cart.getProductStoreId(), cart.getDelegator()) : null;
+        if (!Objects.equals(cart.getFacilityId(), productStore != null ? productStore.getString("inventoryFacilityId") : null)) {
+            return false;
+        }
+        for (ShoppingCartItem item : cart) {
+            if (item.getIsPromo()) {
+                continue;
+            }
+            if (UtilValidate.isEmpty(item.getProductId()) || item.getConfigWrapper() != null || item.getItemGroup() != null
+                    || UtilValidate.isNotEmpty(item.getAdditionalProductFeatureAndAppls()) || hasManualAdjustment(item.getAdjustments())
+                    || hasOtherAttribute(item) || UtilValidate.isNotEmpty(item.getOrderItemContactMechIds())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the comment and desired delivery date of the lines are kept, the other item attributes are not
+    private static boolean hasOtherAttribute(ShoppingCartItem item) {
+        if (item.getAttributes() != null) {
+            for (String name : item.getAttributes().keySet()) {
+                if (!"itemComment".equals(name) && !"itemDesiredDeliveryDate".equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasManualAdjustment(List<GenericValue> adjustments) {
+        if (adjustments != null) {
+            for (GenericValue adjustment : adjustments) {
+                if (UtilValidate.isEmpty(adjustment.getString("productPromoId"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds the cart. The lines whose product can no longer be added are left out.
+     * @return the cart
+     * @throws GeneralException if the cart can't be rebuilt
+     */
+    public ShoppingCart restore() throws GeneralException {
+        Delegator delegator = DelegatorFactory.getDelegator(delegatorName);
+        if (delegator == null) {
+            throw new GeneralException("Unable to find the delegator [" + delegatorName + "] of the cart");
+        }
+        LocalDispatcher dispatcher = ServiceContainer.getLocalDispatcher(dispatcherName, delegator);
+        WebShoppingCart cart = new WebShoppingCart(delegator, dispatcherName, productStoreId, webSiteId,
+                localeTag != null ? Locale.forLanguageTag(localeTag) : null, currencyUom, billToCustomerPartyId, billFromVendorPartyId);
+        cart.setOrderType(orderType);
+        cart.setChannelType(channelType);
+        cart.setOrderPartyId(orderPartyId);
+        cart.setPlacingCustomerPartyId(placingCustomerPartyId);
+        if (userLoginId != null) {
+            cart.setUserLogin(EntityQuery.use(delegator).from("UserLogin").where("userLoginId", userLoginId).queryOne());
+        }
+        if (autoUserLoginId != null) {
+            cart.setAutoUserLogin(EntityQuery.use(delegator).from("UserLogin").where("userLoginId", autoUserLoginId).queryOne());
+        }
+        for (Line line : lines) {
+            try {
+                int index = cart.addOrIncreaseItem(line.productId, line.selectedAmount, line.quantity, line.reservStart, line.reservLength,
+                        line.reservPersons, line.accommodationMapId, line.accommodationSpotId, line.shipBeforeDate, line.shipAfterDate, null,
+                        null, line.orderItemAttributes, line.prodCatalogId, null, line.itemType, null, line.parentProductId, dispatcher);
+                ShoppingCartItem item = cart.findCartItem(index);
+                item.setItemComment(line.itemComment);
+                item.setDesiredDeliveryDate(line.desiredDeliveryDate);
+                if (line.modifiedPrice != null) {
+                    item.setBasePrice(line.modifiedPrice);
+                    item.setIsModifiedPrice(true);
+                }
+            } catch (CartItemModifyException | ItemNotFoundException e) {
+                Debug.logWarning("Unable to restore the product [" + line.productId + "] in the cart: " + e.getMessage(), MODULE);
+            }
+        }
+        if (UtilValidate.isNotEmpty(shippingContactMechId)) {
+            try {
+                cart.setShippingContactMechId(0, shippingContactMechId);
+            } catch (IllegalArgumentException e) {
+                Debug.logWarning("Unable to restore the shipping address [" + shippingContactMechId + "] of the cart: " + e.getMessage(), MODULE);
+            }
+        }
+        if (UtilValidate.isNotEmpty(shipmentMethodTypeId)) {
+            cart.setShipmentMethodTypeId(0, shipmentMethodTypeId);
+        }
+        if (UtilValidate.isNotEmpty(carrierPartyId)) {
+            cart.setCarrierPartyId(0, carrierPartyId);
+        }
+        for (String productPromoCodeId : productPromoCodes) {
+            String error = cart.addProductPromoCode(productPromoCodeId, dispatcher);
+            if (error != null) {
+                Debug.logWarning("Unable to restore the promotion code [" + productPromoCodeId + "] in the cart: " + error, MODULE);
+            }
+        }
+        ProductPromoWorker.doPromotions(cart, dispatcher);
+        return cart;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        try {
+            return restore();
+        } catch (GeneralException | RuntimeException e) {
+            Debug.logError(e, "Unable to restore the cart of the store [" + productStoreId + "]", MODULE);
+            InvalidObjectException ioe = new InvalidObjectException("Unable to restore the cart: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        writeString(out, delegatorName);
+        writeString(out, dispatcherName);
+        writeString(out, productStoreId);
+        writeString(out, webSiteId);
+        writeString(out, localeTag);
+        writeString(out, currencyUom);
+        writeString(out, orderType);
+        writeString(out, channelType);
+        writeString(out, billToCustomerPartyId);
+        writeString(out, billFromVendorPartyId);
+        writeString(out, orderPartyId);
+        writeString(out, placingCustomerPartyId);
+        writeString(out, userLoginId);
+        writeString(out, autoUserLoginId);
+        writeString(out, shippingContactMechId);
+        writeString(out, shipmentMethodTypeId);
+        writeString(out, carrierPartyId);
+        out.writeInt(productPromoCodes.size());
+        for (String productPromoCodeId : productPromoCodes) {
+            writeString(out, productPromoCodeId);
+        }
+        out.writeInt(lines.size());
+        for (Line line : lines) {
+            line.write(out);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException("Unsupported version [" + version + "] of the cart snapshot");
+        }
+        delegatorName = readString(in);
+        dispatcherName = readString(in);
+        productStoreId = readString(in);
+        webSiteId = readString(in);
+        localeTag = readString(in);
+        currencyUom = readString(in);
+        orderType = readString(in);
+        channelType = readString(in);
+        billToCustomerPartyId = readString(in);
+        billFromVendorPartyId = readString(in);
+        orderPartyId = readString(in);
+        placingCustomerPartyId = readString(in);
+        userLoginId = readString(in);
+        autoUserLoginId = readString(in);
+        shippingContactMechId = readString(in);
+        shipmentMethodTypeId = readString(in);
+        carrierPartyId = readString(in);
+        int codeCount = in.readInt();
+        productPromoCodes = new ArrayList<>(codeCount);
+        for (int i = 0; i < codeCount; i++) {
+            productPromoCodes.add(readString(in));
+        }
+        int lineCount = in.readInt();
+        lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(new Line(in));
+        }
+    }
+
+    private static void writeString(ObjectOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDecimal(ObjectOutput out, BigDecimal value) throws IOException {
+        writeString(out, value != null ? value.toString() : null);
+    }
+
+    private static BigDecimal readDecimal(ObjectInput in) throws IOException {
+        String value = readString(in);
+        return value != null ? new BigDecimal(value) : null;
+    }
+
+    private static void writeTimestamp(ObjectOutput out, Timestamp value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    private static Timestamp readTimestamp(ObjectInput in) throws IOException {
+        return in.readBoolean() ? new Timestamp(in.readLong()) : null;
+    }
+
+    // a line of the cart, by product and quantity
+    private static final class Line {
+        private final String productId;
+        private final String parentProductId;
+        private final String prodCatalogId;
+        private final String itemType;
+        private final BigDecimal quantity;
+        private final BigDecimal selectedAmount;
+        private final BigDecimal modifiedPrice;
+        private final String itemComment;
+        private final Timestamp desiredDeliveryDate;
+        private final Timestamp shipBeforeDate;
+        private final Timestamp shipAfterDate;
+        private final Timestamp reservStart;
+        private final BigDecimal reservLength;
+        private final BigDecimal reservPersons;
+        private final String accommodationMapId;
+        private final String accommodationSpotId;
+        private final Map<String, String> orderItemAttributes;
+
+        Line(ShoppingCartItem item) {
+            productId = item.getProductId();
+            parentProductId = item.getParentProductId();
+            prodCatalogId = item.getProdCatalogId();
+            itemType = item.getItemType();
+            quantity = item.getQuantity();
+            selectedAmount = item.getSelectedAmount();
+            modifiedPrice = item.getIsModifiedPrice() ? item.getBasePrice() : null;
+            itemComment = item.getItemComment();
+            desiredDeliveryDate = item.getDesiredDeliveryDate();
+            shipBeforeDate = item.getShipBeforeDate();
+            shipAfterDate = item.getShipAfterDate();
+            reservStart = item.getReservStart();
+            reservLength = item.getReservLength();
+            reservPersons = item.getReservPersons();
+            accommodationMapId = item.getAccommodationMapId();
+            accommodationSpotId = item.getAccommodationSpotId();
+            orderItemAttributes = item.getOrderItemAttributes() != null ? new HashMap<>(item.getOrderItemAttributes()) : new HashMap<>();
+        }
+
+        Line(ObjectInput in) throws IOException {
+            productId = readString(in);
+            parentProductId = readString(in);
+            prodCatalogId = readString(in);
+            itemType = readString(in);
+            quantity = readDecimal(in);
+            selectedAmount = readDecimal(in);
+            modifiedPrice = readDecimal(in);
+            itemComment = readString(in);
+            desiredDeliveryDate = readTimestamp(in);
+            shipBeforeDate = readTimestamp(in);
+            shipAfterDate = readTimestamp(in);
+            reservStart = readTimestamp(in);
+            reservLength = readDecimal(in);
+            reservPersons = readDecimal(in);
+            accommodationMapId = readString(in);
+            accommodationSpotId = readString(in);
+            int attributeCount = in.readInt();
+            orderItemAttributes = new HashMap<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                orderItemAttributes.put(readString(in), readString(in));
+            }
+        }
+
+        void write(ObjectOutput out) throws IOException {
+            writeString(out, productId);
+            writeString(out, parentProductId);
+            writeString(out, prodCatalogId);
+            writeString(out, itemType);
+            writeDecimal(out, quantity);
+            writeDecimal(out, selectedAmount);
+            writeDecimal(out, modifiedPrice);
+            writeString(out, itemComment);
+            writeTimestamp(out, desiredDeliveryDate);
+            writeTimestamp(out, shipBeforeDate);
+            writeTimestamp(out, shipAfterDate);
+            writeTimestamp(out, reservStart);
+            writeDecimal(out, reservLength);
+            writeDecimal(out, reservPersons);
+            writeString(out, accommodationMapId);
+            writeString(out, accommodationSpotId);
+            out.writeInt(orderItemAttributes.size());
+            for (Map.Entry<String, String> entry : orderItemAttributes.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+}
@@ -18,15 +18,18 @@
  *******************************************************************************/
 package org.apache.ofbiz.order.shoppingcart;
 
+import java.io.ObjectStreamException;
 import java.util.Locale;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.product.store.ProductStoreWorker;
+import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.webapp.website.WebSiteWorker;
 
 /**
@@ -38,6 +41,10 @@ import org.apache.ofbiz.webapp.website.WebSiteWorker;
  */
 @SuppressWarnings("serial")
 public class WebShoppingCart extends ShoppingCart {
+
+    // the dispatcher rebuilding the cart from its snapshot
+    private String dispatcherName = null;
+
     public WebShoppingCart(HttpServletRequest request, Locale locale, String currencyUom) {
         // for purchase orders, bill to customer partyId must be set - otherwise, no way to know who we're purchasing for.
         // supplierPartyId is furnished by order manager for PO entry.
@@ -52,6 +59,8 @@ public class WebShoppingCart extends ShoppingCart {
         this.setUserLogin((GenericValue) session.getAttribute("userLogin"));
         this.setAutoUserLogin((GenericValue) session.getAttribute("autoUserLogin"));
         this.setOrderPartyId((String) session.getAttribute("orderPartyId"));
+        LocalDispatcher dispatcher = (LocalDispatcher) request.getAttribute("dispatcher");
+        this.dispatcherName = dispatcher != null ? dispatcher.getName() : null;
     }
 
     public WebShoppingCart(HttpServletRequest request) {
@@ -61,5 +70,24 @@ public class WebShoppingCart extends ShoppingCart {
     /** Creates a new cloned ShoppingCart Object. */
     public WebShoppingCart(ShoppingCart cart) {
         super(cart);
+        if (cart instanceof WebShoppingCart) {
+            this.dispatcherName = ((WebShoppingCart) cart).dispatcherName;
+        }
+    }
+
+    /** Creates a new empty cart rebuilt from a {@link ShoppingCartSnapshot}. */
+    WebShoppingCart(Delegator delegator, String dispatcherName, String productStoreId, String webSiteId, Locale locale, String currencyUom,
+            String billToCustomerPartyId, String billFromVendorPartyId) {
+        super(delegator, productStoreId, webSiteId, locale, currencyUom, billToCustomerPartyId, billFromVendorPartyId);
+        this.dispatcherName = dispatcherName;
+    }
+
+    /** Serializes the cart as a {@link ShoppingCartSnapshot} when enabled and when the snapshot keeps all of the cart. */
+    private Object writeReplace() throws ObjectStreamException {
+        if (dispatcherName != null && UtilProperties.getPropertyAsBoolean("order", "shoppingcart.session.snapshot", false)
+                && ShoppingCartSnapshot.isSupported(this)) {
+            return new ShoppingCartSnapshot(this, dispatcherName);
+        }
+        return this;
     }
 }
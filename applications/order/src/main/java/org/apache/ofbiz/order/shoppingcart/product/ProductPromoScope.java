@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+
+/**
+ * The cart lines a promotion depends on: the lines of the products of its product conditions and
+ * actions, unless the promotion has a condition or an action reading the whole cart (order total,
+ * shipping, tax, custom service...) or changing at any time of the day (promotion recurrence).
+ * <p>
+ * The scopes are cached in <code>order.promo.scope</code>. They let
+ * {@link ProductPromoWorker#doPromotions} keep the promotions of a cart as they are when none of
+ * the lines, codes and parties they depend on has changed since the last evaluation, which is then
+ * kept by the cart as an {@link Evaluation}.
+ */
+public final class ProductPromoScope {
+
+    private static final String MODULE = ProductPromoScope.class.getName();
+    private static final UtilCache<String, ProductPromoScope> SCOPE_CACHE = UtilCache.createUtilCache("order.promo.scope", true);
+
+    // the condition services only reading the lines of the products of the condition
+    private static final Set<String> PRODUCT_CONDS = UtilMisc.toSet("productPromoCondProductAmount", "productPromoCondProductTotal",
+            "productPromoCondProductQuant");
+    // the condition services not reading the lines of the cart, and not changing during a day; a promotion
+    // recurrence can start or end at any time, so productPromoCondPromoRecurrence depends on the whole cart
+    private static final Set<String> LINE_INDEPENDENT_CONDS = UtilMisc.toSet("productPromoCondNewACCT", "productPromoCondPartyID",
+            "productPromoCondPartyGM", "productPromoCondPartyClass", "productPromoCondRoleType", "productPromoCondOrderHist",
+            "productPromoCondOrderYear", "productPromoCondOrderLastYear", "productPromoCondListPriceMinAmount",
+            "productPromoCondListPriceMinPercent");
+    // the action services only reading and adjusting the lines of the products of the action
+    private static final Set<String> PRODUCT_ACTIONS = UtilMisc.toSet("productPromoActGiftGWP", "productPromoActProdDISC",
+            "productPromoActProdAMDISC", "productPromoActProdPrice", "productPromoActProdSpecialPrice");
+
+    private final Set<String> productIds;
+    private final boolean cartWide;
+    private final long loadedMillis = System.currentTimeMillis();
+
+    private ProductPromoScope(Set<String> productIds, boolean cartWide) {
+        this.productIds = Collections.unmodifiableSet(productIds);
+        this.cartWide = cartWide;
+    }
+
+    /**
+     * Gets the scope of a promotion.
+     * @param delegator the delegator
+     * @param productPromoId the promotion
+     * @return the scope, the whole cart when the promotion can't be read
+     */
+    public static ProductPromoScope getInstance(Delegator delegator, String productPromoId) {
+        String key = delegator.getDelegatorName() + "::" + productPromoId;
+        ProductPromoScope scope = SCOPE_CACHE.get(key);
+        if (scope == null) {
+            scope = SCOPE_CACHE.putIfAbsentAndGet(key, load(delegator, productPromoId));
+        }
+        return scope;
+    }
+
+    private static ProductPromoScope load(Delegator delegator, String productPromoId) {
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+        Set<String> productIds = new HashSet<>();
+        try {
+            List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoId)
+                    .cache(true).queryList();
+            for (GenericValue productPromoCond : productPromoConds) {
+                String serviceName = ProductPromoWorker.getConditionServiceName(productPromoCond, delegator);
+                if (PRODUCT_CONDS.contains(serviceName)) {
+                    productIds.addAll(ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp));
+                } else if (!LINE_INDEPENDENT_CONDS.contains(serviceName)) {
+                    return new ProductPromoScope(productIds, true);
+                }
+            }
+            List<GenericValue> productPromoActions = EntityQuery.use(delegator).from("ProductPromoAction").where("productPromoId", productPromoId)
+                    .cache(true).queryList();
+            for (GenericValue productPromoAction : productPromoActions) {
+                String serviceName = ProductPromoWorker.getActionServiceName(productPromoAction, delegator);
+                if (!PRODUCT_ACTIONS.contains(serviceName)) {
+                    return new ProductPromoScope(productIds, true);
+                }
+                productIds.addAll(ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp));
+                if (UtilValidate.isNotEmpty(productPromoAction.getString("productId"))) {
+                    productIds.add(productPromoAction.getString("productId"));
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logWarning(e, "Unable to get the products of the promotion [" + productPromoId + "], it depends on the whole cart", MODULE);
+            return new ProductPromoScope(productIds, true);
+        }
+        return new ProductPromoScope(productIds, false);
+    }
+
+    /**
+     * Gets the products of the lines the promotion depends on.
+     * @return the product ids, meaningless when the promotion depends on the whole cart
+     */
+    public Set<String> getProductIds() {
+        return productIds;
+    }
+
+    /**
+     * Checks if the promotion depends on the whole cart.
+     * @return <code>true</code> if any change of the cart may change the promotion
+     */
+    public boolean isCartWide() {
+        return cartWide;
+    }
+
+    /**
+     * Gets what the promotions of a cart depend on: the promotions and their scopes, the parties,
+     * the codes and the current day, and the lines of the products of the promotions.
+     * @param cart the cart
+     * @param productPromoList the promotions
+     * @return the inputs, or <code>null</code> when a promotion depends on the whole cart
+     */
+    public static List<Object> getInputs(ShoppingCart cart, List<GenericValue> productPromoList) {
+        Delegator delegator = cart.getDelegator();
+        List<Object> inputs = new ArrayList<>();
+        Set<String> productIds = new HashSet<>();
+        for (GenericValue productPromo : productPromoList) {
+            ProductPromoScope scope = getInstance(delegator, productPromo.getString("productPromoId"));
+            if (scope.isCartWide()) {
+                return null;
+            }
+            productIds.addAll(scope.getProductIds());
+            inputs.add(productPromo);
+            inputs.add(scope.loadedMillis);
+        }
+        inputs.add(UtilDateTime.getDayStart(UtilDateTime.nowTimestamp()));
+        inputs.add(cart.getOrderType());
+        inputs.add(cart.getProductStoreId());
+        inputs.add(cart.getCurrency());
+        inputs.add(cart.getOrderId());
+        inputs.add(cart.getPartyId());
+        inputs.add(cart.getUserLogin() != null ? cart.getUserLogin().getString("partyId") : null);
+        inputs.add(cart.getAutoUserLogin() != null ? cart.getAutoUserLogin().getString("partyId") : null);
+        inputs.add(new TreeSet<>(cart.getProductPromoCodesEntered()));
+        inputs.add(cart.getAllDesiredAlternateGiftByActionCopy());
+        for (ShoppingCartItem item : cart) {
+            // the promotional lines are the results of the evaluation
+            String parentProductId = item.getParentProductId();
+            boolean inScope = productIds.contains(item.getProductId()) || (parentProductId != null && productIds.contains(parentProductId));
+            if (item.getIsPromo() || !inScope) {
+                continue;
+            }
+            inputs.add(item);
+            inputs.add(item.getProductId());
+            inputs.add(item.getQuantity());
+            inputs.add(item.getBasePrice());
+            inputs.add(item.getSpecialPromoPrice());
+            inputs.add(item.getRentalAdjustment());
+            inputs.add(item.getItemType());
+            inputs.add(item.getProduct() != null ? item.getProduct().getString("includeInPromotions") : null);
+            for (GenericValue adjustment : item.getAdjustments()) {
+                if (!isPromoAdjustment(adjustment)) {
+                    inputs.add(adjustment.clone());
+                }
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Gets what the promotions have added to a cart: the promotional lines and the adjustments.
+     * @param cart the cart
+     * @return the results, compared with those of the last evaluation to detect a change made by another way
+     */
+    public static List<Object> getResults(ShoppingCart cart) {
+        List<Object> results = new ArrayList<>();
+        if (cart.getAdjustments() != null) {
+            for (GenericValue adjustment : cart.getAdjustments()) {
+                if (isPromoAdjustment(adjustment)) {
+                    results.add(adjustment.clone());
+                }
+            }
+        }
+        for (ShoppingCartItem item : cart) {
+            if (item.getIsPromo()) {
+                results.add(item);
+                results.add(item.getQuantity());
+            }
+            for (GenericValue adjustment : item.getAdjustments()) {
+                if (isPromoAdjustment(adjustment)) {
+                    results.add(item);
+                    results.add(adjustment.clone());
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean isPromoAdjustment(GenericValue adjustment) {
+        return UtilValidate.isNotEmpty(adjustment.getString("productPromoId"))
+                && UtilValidate.isNotEmpty(adjustment.getString("productPromoRuleId"))
+                && UtilValidate.isNotEmpty(adjustment.getString("productPromoActionSeqId"));
+    }
+
+    /**
+     * The last evaluation of the promotions of a cart, dropped by the cart when its promotion
+     * information is cleared.
+     */
+    public static final class Evaluation {
+        private final List<Object> inputs;
+        private final List<Object> results;
+        private final long maxUseCount;
+        private final long maxUseLimit;
+
+        /**
+         * Instantiates a new Evaluation.
+         * @param inputs the inputs of the promotions before the evaluation
+         * @param results the results of the evaluation
+         * @param maxUseCount the most uses of a promotion during the evaluation
+         * @param maxUseLimit the limit of the uses of a promotion during the evaluation
+         */
+        public Evaluation(List<Object> inputs, List<Object> results, long maxUseCount, long maxUseLimit) {
+            this.inputs = inputs;
+            this.results = results;
+            this.maxUseCount = maxUseCount;
+            this.maxUseLimit = maxUseLimit;
+        }
+
+        /**
+         * Checks if a new evaluation would give the same results.
+         * @param cart the cart, as changed since the evaluation
+         * @param newInputs the current inputs of the promotions
+         * @param newMaxUseLimit the current limit of the uses of a promotion
+         * @return <code>true</code> if the inputs and the results are unchanged, and no limit was reached
+         */
+        public boolean isCurrent(ShoppingCart cart, List<Object> newInputs, long newMaxUseLimit) {
+            return newInputs != null && maxUseCount < Math.min(maxUseLimit, newMaxUseLimit) && inputs.equals(newInputs)
+                    && results.equals(getResults(cart));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.DataModelConstants;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * The counts of the uses of the promotions, kept in <code>ProductPromoUseCount</code> for each
+ * promotion, promotion and party, code, and code and party.
+ * <p>
+ * The counts are changed by conditional updates, applied only when the count is still the one
+ * read, so that orders placed at the same time on different servers can't go beyond the limits
+ * of the promotions. A count is computed from the <code>ProductPromoUse</code> of the orders the
+ * first time the promotion is used after it has been created.
+ */
+public final class ProductPromoUseCounter {
+
+    private static final String MODULE = ProductPromoUseCounter.class.getName();
+    // the updates tried before giving up when the count is changed meanwhile by other orders
+    private static final int MAX_ATTEMPTS = 20;
+
+    private ProductPromoUseCounter() { }
+
+    /**
+     * Gets the uses of a promotion by the orders neither cancelled nor rejected.
+     * @param delegator the delegator
+     * @param productPromoId the promotion
+     * @param productPromoCodeId the code, or <code>null</code> for the uses with any code
+     * @param partyId the party, or <code>null</code> for the uses by any party
+     * @return the count of uses
+     * @throws GenericEntityException if the count can't be read
+     */
+    public static long getUseCount(Delegator delegator, String productPromoId, String productPromoCodeId, String partyId)
+            throws GenericEntityException {
+        Map<String, Object> pk = makePk(productPromoId, productPromoCodeId, partyId);
+        GenericValue counter = EntityQuery.use(delegator).from("ProductPromoUseCount").where(pk).queryOne();
+        return counter != null ? counter.getLong("useCount") : countUses(delegator, pk);
+    }
+
+    /**
+     * Counts the uses of the promotions by a new order, checking the use limits of the promotions and codes.
+     * @param delegator the delegator
+     * @param productPromoUses the <code>ProductPromoUse</code> of the order
+     * @return <code>null</code> when counted, or the promotion whose limit would be exceeded; then nothing is counted
+     *         when the transaction is rolled back
+     * @throws GenericEntityException if the counts can't be changed
+     */
+    public static String reserveUses(Delegator delegator, List<GenericValue> productPromoUses) throws GenericEntityException {
+        Map<String, Change> changes = new TreeMap<>();
+        addUses(delegator, productPromoUses, 1, changes);
+        // the order is not created yet, so the counts can be created in their own transaction without waiting for it
+        return apply(delegator, changes, true);
+    }
+
+    /**
+     * Changes the counts of the uses of the promotions by an order edited.
+     * @param delegator the delegator
+     * @param previousUses the <code>ProductPromoUse</code> of the order before the edit, still stored
+     * @param productPromoUses the <code>ProductPromoUse</code> of the order after the edit
+     * @return <code>null</code> when counted, or the promotion whose limit would be exceeded
+     * @throws GenericEntityException if the counts can't be changed
+     */
+    public static String changeUses(Delegator delegator, List<GenericValue> previousUses, List<GenericValue> productPromoUses)
+            throws GenericEntityException {
+        Map<String, Change> changes = new TreeMap<>();
+        addUses(delegator, previousUses, -1, changes);
+        addUses(delegator, productPromoUses, 1, changes);
+        return apply(delegator, changes, false);
+    }
+
+    /**
+     * Releases the uses of the promotions by an order cancelled or rejected.
+     * @param delegator the delegator
+     * @param productPromoUses the <code>ProductPromoUse</code> of the order
+     * @throws GenericEntityException if the counts can't be changed
+     */
+    public static void releaseUses(Delegator delegator, List<GenericValue> productPromoUses) throws GenericEntityException {
+        Map<String, Change> changes = new TreeMap<>();
+        addUses(delegator, productPromoUses, -1, changes);
+        apply(delegator, changes, false);
+    }
+
+    // adds the changes of the counts of each use, each count keeping its limit
+    private static void addUses(Delegator delegator, List<GenericValue> productPromoUses, long delta, Map<String, Change> changes)
+            throws GenericEntityException {
+        if (productPromoUses == null) {
+            return;
+        }
+        for (GenericValue productPromoUse : productPromoUses) {
+            String productPromoId = productPromoUse.getString("productPromoId");
+            String productPromoCodeId = productPromoUse.getString("productPromoCodeId");
+            String partyId = productPromoUse.getString("partyId");
+            if (UtilValidate.isEmpty(productPromoId)) {
+                continue;
+            }
+            GenericValue productPromo = EntityQuery.use(delegator).from("ProductPromo").where("productPromoId", productPromoId).cache().queryOne();
+            GenericValue productPromoCode = UtilValidate.isEmpty(productPromoCodeId) ? null
+                    : EntityQuery.use(delegator).from("ProductPromoCode").where("productPromoCodeId", productPromoCodeId).cache().queryOne();
+            addUse(changes, productPromoId, null, null, productPromo != null ? productPromo.getLong("useLimitPerPromotion") : null, delta);
+            if (UtilValidate.isNotEmpty(partyId)) {
+                addUse(changes, productPromoId, null, partyId, productPromo != null ? productPromo.getLong("useLimitPerCustomer") : null, delta);
+            }
+            if (productPromoCode != null) {
+                addUse(changes, productPromoId, productPromoCodeId, null, productPromoCode.getLong("useLimitPerCode"), delta);
+                if (UtilValidate.isNotEmpty(partyId)) {
+                    addUse(changes, productPromoId, productPromoCodeId, partyId, productPromoCode.getLong("useLimitPerCustomer"), delta);
+                }
+            }
+        }
+    }
+
+    private static void addUse(Map<String, Change> changes, String productPromoId, String productPromoCodeId, String partyId, Long useLimit,
+                               long delta) {
+        Map<String, Object> pk = makePk(productPromoId, productPromoCodeId, partyId);
+        String key = pk.get("productPromoId") + "::" + pk.get("productPromoCodeId") + "::" + pk.get("partyId");
+        changes.computeIfAbsent(key, k -> new Change(pk, useLimit)).delta += delta;
+    }
+
+    // applies the changes in the order of the keys, so that two orders changing the same counts can't deadlock
+    private static String apply(Delegator delegator, Map<String, Change> changes, boolean createInNewTransaction) throws GenericEntityException {
+        for (Change change : changes.values()) {
+            if (change.delta != 0 && !add(delegator, change.pk, change.delta, change.useLimit, createInNewTransaction)) {
+                return (String) change.pk.get("productPromoId");
+            }
+        }
+        return null;
+    }
+
+    private static boolean add(Delegator delegator, Map<String, Object> pk, long delta, Long useLimit, boolean createInNewTransaction)
+            throws GenericEntityException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            GenericValue counter = EntityQuery.use(delegator).from("ProductPromoUseCount").where(pk).queryOne();
+            if (counter == null) {
+                if (delta < 0) {
+                    // not counted yet, the count will be computed without the released uses
+                    return true;
+                }
+                counter = create(delegator, pk, createInNewTransaction);
+            }
+            long useCount = counter.getLong("useCount");
+            long newUseCount = Math.max(0, useCount + delta);
+            if (delta > 0 && useLimit != null && newUseCount > useLimit) {
+                return false;
+            }
+            EntityCondition condition = EntityCondition.makeCondition(EntityCondition.makeCondition(pk),
+                    EntityOperator.AND, EntityCondition.makeCondition("useCount", useCount));
+            if (delegator.storeByCondition("ProductPromoUseCount", UtilMisc.toMap("useCount", newUseCount), condition) == 1) {
+                return true;
+            }
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("The use count " + pk + " has been changed by another order, trying again", MODULE);
+            }
+        }
+        throw new GenericEntityException("The use count " + pk + " has been changed by other orders " + MAX_ATTEMPTS + " times, giving up");
+    }
+
+    private static GenericValue create(Delegator delegator, Map<String, Object> pk, boolean inNewTransaction) throws GenericEntityException {
+        if (!inNewTransaction) {
+            GenericValue counter = delegator.makeValue("ProductPromoUseCount", pk);
+            counter.set("useCount", countUses(delegator, pk));
+            return delegator.create(counter);
+        }
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                GenericValue counter = delegator.makeValue("ProductPromoUseCount", pk);
+                counter.set("useCount", countUses(delegator, pk));
+                return delegator.create(counter);
+            }, "Unable to create the use count " + pk, 0, false);
+        } catch (GenericEntityException e) {
+            // created meanwhile by another order
+            Debug.logInfo("The use count " + pk + " has not been created: " + e.getMessage(), MODULE);
+        }
+        GenericValue counter = EntityQuery.use(delegator).from("ProductPromoUseCount").where(pk).queryOne();
+        if (counter == null) {
+            throw new GenericEntityException("Unable to create the use count " + pk);
+        }
+        return counter;
+    }
+
+    // counts the uses of the orders as ProductPromoWorker did before the counts were kept
+    private static long countUses(Delegator delegator, Map<String, Object> pk) throws GenericEntityException {
+        List<EntityCondition> conditions = UtilMisc.toList(
+                EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_REJECTED"),
+                EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_CANCELLED"));
+        if (DataModelConstants.SEQ_ID_NA.equals(pk.get("productPromoCodeId"))) {
+            conditions.add(EntityCondition.makeCondition("productPromoId", pk.get("productPromoId")));
+        } else {
+            conditions.add(EntityCondition.makeCondition("productPromoCodeId", pk.get("productPromoCodeId")));
+        }
+        if (!DataModelConstants.SEQ_ID_NA.equals(pk.get("partyId"))) {
+            conditions.add(EntityCondition.makeCondition("partyId", pk.get("partyId")));
+        }
+        return EntityQuery.use(delegator).from("ProductPromoUseCheck").where(EntityCondition.makeCondition(conditions)).queryCount();
+    }
+
+    private static Map<String, Object> makePk(String productPromoId, String productPromoCodeId, String partyId) {
+        return UtilMisc.toMap("productPromoId", productPromoId,
+                "productPromoCodeId", UtilValidate.isNotEmpty(productPromoCodeId) ? productPromoCodeId : DataModelConstants.SEQ_ID_NA,
+                "partyId", UtilValidate.isNotEmpty(partyId) ? partyId : DataModelConstants.SEQ_ID_NA);
+    }
+
+    private static final class Change {
+        private final Map<String, Object> pk;
+        private final Long useLimit;
+        private long delta;
+
+        Change(Map<String, Object> pk, Long useLimit) {
+            this.pk = pk;
+            this.useLimit = useLimit;
+        }
+    }
+}
@@ -321,9 +321,8 @@ public final class ProductPromoWorker {
         // ProductPromoUses are ignored if the corresponding order is cancelled
         // limits sub total for promos to not use gift cards (products with a don't use in promo indicator), also exclude gift cards from all other
         // promotion considerations including subTotals for discounts, etc
-        // TODO: (not done, delay, still considering...) add code to check ProductPromoUse limits per promo (customer, promo), and per code
-        // (customer, code) to avoid use of promos or codes getting through due to multiple carts getting promos applied at the same time, possibly
-        // on totally different servers
+        // the limits per promo, customer and code are checked again when the order is created, by ProductPromoUseCounter, to avoid use of
+        // promos or codes getting through due to multiple carts getting promos applied at the same time, possibly on totally different servers
 
         if (!cart.getDoPromotions()) {
             return;
@@ -331,23 +330,42 @@ public final class ProductPromoWorker {
         Delegator delegator = cart.getDelegator();
         Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
 
+        if (productPromoList == null) {
+            if ("SALES_ORDER".equals(cart.getOrderType())) {
+                productPromoList = ProductPromoWorker.getProductStorePromotions(cart, nowTimestamp, dispatcher);
+            } else {
+                productPromoList = ProductPromoWorker.getAgreementPromotions(cart, nowTimestamp, dispatcher);
+            }
+        }
+
+        // when none of the lines the promotions depend on has changed, the promotions in the cart are still those that apply
+        List<Object> promoInputs = ProductPromoScope.getInputs(cart, productPromoList);
+        BigDecimal quantity = BigDecimal.ZERO;
+        for (ShoppingCartItem item : cart) {
+            if (!item.getIsPromo()) {
+                quantity = quantity.add(item.getQuantity());
+            }
+        }
+        long maxUseLimit = getMaxUseLimit(quantity);
+        ProductPromoScope.Evaluation lastEvaluation = cart.getPromoEvaluation();
+        if (lastEvaluation != null && lastEvaluation.isCurrent(cart, promoInputs, maxUseLimit)) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("The promotions of the cart are unchanged, not running them", MODULE);
+            }
+            return;
+        }
+
         // start out by clearing all existing promotions, then we can just add all that apply
         cart.clearAllPromotionInformation();
 
         // there will be a ton of db access, so just do a big catch entity exception block
         try {
-            if (productPromoList == null) {
-                if ("SALES_ORDER".equals(cart.getOrderType())) {
-                    productPromoList = ProductPromoWorker.getProductStorePromotions(cart, nowTimestamp, dispatcher);
-                } else {
-                    productPromoList = ProductPromoWorker.getAgreementPromotions(cart, nowTimestamp, dispatcher);
-                }
-            }
             // do a calculate only run through the promotions, then order by descending totalDiscountAmount for each promotion
             // NOTE: on this run, with isolatedTestRun passed as false it should not apply any adjustments
             //  or track which cart items are used for which promotions, but it will track ProductPromoUseInfo and
             //  useLimits; we are basically just trying to run each promo "independently" to see how much each is worth
             runProductPromos(productPromoList, cart, delegator, dispatcher, nowTimestamp, true);
+            long maxUseCount = getMaxProductPromoUseCount(cart);
 
             // NOTE: we can easily recognize the promos for the order total: they are the ones with usage set to 0
             Iterator<ProductPromoUseInfo> promoUses = cart.getProductPromoUseInfoIter();
@@ -402,6 +420,11 @@ public final class ProductPromoWorker {
             // okay, all ready, do the real run, clearing the temporary result first...
             cart.clearAllPromotionInformation();
             runProductPromos(sortedExplodedProductPromoList, cart, delegator, dispatcher, nowTimestamp, false);
+            if (promoInputs != null) {
+                maxUseCount = Math.max(maxUseCount, getMaxProductPromoUseCount(cart));
+                cart.setPromoEvaluation(new ProductPromoScope.Evaluation(promoInputs, ProductPromoScope.getResults(cart), maxUseCount,
+                        maxUseLimit));
+            }
         } catch (NumberFormatException e) {
             Debug.logError(e, "Number not formatted correctly in promotion rules, not completed...", MODULE);
         } catch (GenericEntityException e) {
@@ -440,8 +463,7 @@ public final class ProductPromoWorker {
 
         // set a max limit on how many times each promo can be run, for cases where there is no use limit this will be the use limit
         //default to 2 times the number of items in the cart
-        long maxUseLimit = cart.getTotalQuantity().multiply(BigDecimal.valueOf(2)).setScale(0, RoundingMode.CEILING).longValue();
-        maxUseLimit = Math.max(1, maxUseLimit);
+        long maxUseLimit = getMaxUseLimit(cart.getTotalQuantity());
 
         try {
             // repeat until no more rules to run: either all rules are run, or no changes to the cart in a loop
@@ -544,6 +566,19 @@ public final class ProductPromoWorker {
         }
     }
 
+    private static long getMaxUseLimit(BigDecimal totalQuantity) {
+        return Math.max(1, totalQuantity.multiply(BigDecimal.valueOf(2)).setScale(0, RoundingMode.CEILING).longValue());
+    }
+
+    private static long getMaxProductPromoUseCount(ShoppingCart cart) {
+        Map<String, Long> useCounts = new HashMap<>();
+        Iterator<ProductPromoUseInfo> promoUses = cart.getProductPromoUseInfoIter();
+        while (promoUses.hasNext()) {
+            useCounts.merge(promoUses.next().getProductPromoId(), 1L, Long::sum);
+        }
+        return useCounts.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
     /**
      * calculate low use limit for this promo for the current "order", check per order, customer, promo
      */
@@ -563,12 +598,7 @@ public final class ProductPromoWorker {
             long productPromoCustomerUseSize = 0;
             if (UtilValidate.isNotEmpty(partyId)) {
                 // check to see how many times this has been used for other orders for this customer, the remainder is the limit for this order
-                EntityCondition checkCondition = EntityCondition.makeCondition(UtilMisc.toList(
-                        EntityCondition.makeCondition("productPromoId", EntityOperator.EQUALS, productPromoId),
-                        EntityCondition.makeCondition("partyId", EntityOperator.EQUALS, partyId),
-                        EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_REJECTED"),
-                        EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_CANCELLED")), EntityOperator.AND);
-                productPromoCustomerUseSize = EntityQuery.use(delegator).from("ProductPromoUseCheck").where(checkCondition).queryCount();
+                productPromoCustomerUseSize = ProductPromoUseCounter.getUseCount(delegator, productPromoId, null, partyId);
             }
             long perCustomerThisOrder = useLimitPerCustomer - productPromoCustomerUseSize;
             if (candidateUseLimit == null || candidateUseLimit > perCustomerThisOrder) {
@@ -579,11 +609,7 @@ public final class ProductPromoWorker {
         Long useLimitPerPromotion = productPromo.getLong("useLimitPerPromotion");
         if (useLimitPerPromotion != null) {
             // check to see how many times this has been used for other orders for this customer, the remainder is the limit for this order
-            EntityCondition checkCondition = EntityCondition.makeCondition(UtilMisc.toList(
-                    EntityCondition.makeCondition("productPromoId", EntityOperator.EQUALS, productPromoId),
-                    EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_REJECTED"),
-                    EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_CANCELLED")), EntityOperator.AND);
-            long productPromoUseSize = EntityQuery.use(delegator).from("ProductPromoUseCheck").where(checkCondition).queryCount();
+            long productPromoUseSize = ProductPromoUseCounter.getUseCount(delegator, productPromoId, null, null);
             long perPromotionThisOrder = useLimitPerPromotion - productPromoUseSize;
             if (candidateUseLimit == null || candidateUseLimit > perPromotionThisOrder) {
                 candidateUseLimit = perPromotionThisOrder;
@@ -603,12 +629,8 @@ public final class ProductPromoWorker {
             long productPromoCustomerUseSize = 0;
             if (UtilValidate.isNotEmpty(partyId)) {
                 // check to see how many times this has been used for other orders for this customer, the remainder is the limit for this order
-                EntityCondition checkCondition = EntityCondition.makeCondition(UtilMisc.toList(
-                        EntityCondition.makeCondition("productPromoCodeId", EntityOperator.EQUALS, productPromoCodeId),
-                        EntityCondition.makeCondition("partyId", EntityOperator.EQUALS, partyId),
-                        EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_REJECTED"),
-                        EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_CANCELLED")), EntityOperator.AND);
-                productPromoCustomerUseSize = EntityQuery.use(delegator).from("ProductPromoUseCheck").where(checkCondition).queryCount();
+                productPromoCustomerUseSize = ProductPromoUseCounter.getUseCount(delegator, productPromoCode.getString("productPromoId"),
+                        productPromoCodeId, partyId);
             }
             codeUseLimit = codeUseLimitPerCustomer - productPromoCustomerUseSize;
         }
@@ -616,11 +638,8 @@ public final class ProductPromoWorker {
         Long codeUseLimitPerCode = productPromoCode.getLong("useLimitPerCode");
         if (codeUseLimitPerCode != null) {
             // check to see how many times this has been used for other orders for this customer, the remainder is the limit for this order
-            EntityCondition checkCondition = EntityCondition.makeCondition(UtilMisc.toList(
-                    EntityCondition.makeCondition("productPromoCodeId", EntityOperator.EQUALS, productPromoCodeId),
-                    EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_REJECTED"),
-                    EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "ORDER_CANCELLED")), EntityOperator.AND);
-            long productPromoCodeUseSize = EntityQuery.use(delegator).from("ProductPromoUseCheck").where(checkCondition).queryCount();
+            long productPromoCodeUseSize = ProductPromoUseCounter.getUseCount(delegator, productPromoCode.getString("productPromoId"),
+                    productPromoCodeId, null);
             long perCodeThisOrder = codeUseLimitPerCode - productPromoCodeUseSize;
             if (codeUseLimit == null || codeUseLimit > perCodeThisOrder) {
                 codeUseLimit = perCodeThisOrder;
@@ -1005,9 +1024,7 @@ public final class ProductPromoWorker {
 
     private static boolean checkCondition(GenericValue productPromoCond, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher,
                                           Timestamp nowTimestamp) throws GenericEntityException {
-        String condValue = productPromoCond.getString("condValue");
         String otherValue = productPromoCond.getString("otherValue");
-        String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
         String operatorEnumId = productPromoCond.getString("operatorEnumId");
         if (otherValue != null && otherValue.contains("@")) {
             otherValue = "";
@@ -1022,30 +1039,7 @@ public final class ProductPromoWorker {
         }
         Integer compareBase = null;
 
-        //resolve the service name to use
-        String serviceName = null;
-        GenericValue customMethod = productPromoCond.getRelatedOne("CustomMethod", true);
-        if (customMethod != null) {
-            serviceName = customMethod.getString("customMethodName");
-        } else {
-            if ("PPIP_SERVICE".equals(inputParamEnumId)) {
-                serviceName = condValue;
-            } else {
-                //for backward compatibility resolve customMethodId from enumCode
-                GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", inputParamEnumId).cache().queryOne();
-                if (condEnum != null) {
-                    customMethod =
-                            EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
-                    if (customMethod == null) {
-                        Debug.logWarning("The oldest enumeration " + inputParamEnumId + " for promo " + productPromoCond.getPkShortValueString()
-                                + " haven't the new customMethod to use, please check your data or load seed data", MODULE);
-                        return false;
-                    }
-                    serviceName = customMethod.getString("customMethodName");
-                }
-            }
-        }
-
+        String serviceName = getConditionServiceName(productPromoCond, delegator);
         if (serviceName != null) {
             Map<String, Object> serviceCtx = UtilMisc.<String, Object>toMap("productPromoCond", productPromoCond, "shoppingCart", cart,
                     "nowTimestamp", nowTimestamp);
@@ -1089,6 +1083,35 @@ public final class ProductPromoWorker {
         return false;
     }
 
+    /**
+     * Resolves the service evaluating a promotion condition.
+     * @param productPromoCond the condition
+     * @param delegator the delegator
+     * @return the service name, or <code>null</code> when the condition has none and so is never met
+     */
+    public static String getConditionServiceName(GenericValue productPromoCond, Delegator delegator) throws GenericEntityException {
+        GenericValue customMethod = productPromoCond.getRelatedOne("CustomMethod", true);
+        if (customMethod != null) {
+            return customMethod.getString("customMethodName");
+        }
+        String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
+        if ("PPIP_SERVICE".equals(inputParamEnumId)) {
+            return productPromoCond.getString("condValue");
+        }
+        //for backward compatibility resolve customMethodId from enumCode
+        GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", inputParamEnumId).cache().queryOne();
+        if (condEnum != null) {
+            customMethod = EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
+            if (customMethod == null) {
+                Debug.logWarning("The oldest enumeration " + inputParamEnumId + " for promo " + productPromoCond.getPkShortValueString()
+                        + " haven't the new customMethod to use, please check your data or load seed data", MODULE);
+                return null;
+            }
+            return customMethod.getString("customMethodName");
+        }
+        return null;
+    }
+
     public static boolean checkConditionsForItem(GenericValue productPromoActionOrCond, ShoppingCart cart, ShoppingCartItem cartItem,
                                                  Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp)
             throws GenericEntityException {
@@ -1189,26 +1212,7 @@ public final class ProductPromoWorker {
     public static void performAction(ActionResultInfo actionResultInfo, GenericValue productPromoAction, ShoppingCart cart, Delegator delegator,
                                      LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException, CartItemModifyException {
         String productPromoActionEnumId = productPromoAction.getString("productPromoActionEnumId");
-        String serviceName = null;
-        GenericValue customMethod = productPromoAction.getRelatedOne("CustomMethod", true);
-        if (customMethod != null) {
-            serviceName = customMethod.getString("customMethodName");
-        } else {
-            if ("PROMO_SERVICE".equals(productPromoActionEnumId)) {
-                serviceName = productPromoAction.getString("serviceName");
-            } else {
-                //for backware compatibility resolve customMethodId from enumCode
-                GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", productPromoActionEnumId).cache().queryOne();
-                if (condEnum != null) {
-                    customMethod =
-                            EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
-                    if (customMethod != null) {
-                        serviceName = customMethod.getString("customMethodName");
-                    }
-                }
-            }
-        }
-
+        String serviceName = getActionServiceName(productPromoAction, delegator);
         if (serviceName != null) {
             Map<String, Object> serviceCtx = UtilMisc.<String, Object>toMap("productPromoAction", productPromoAction, "shoppingCart", cart,
                     "nowTimestamp", nowTimestamp, "actionResultInfo", actionResultInfo);
@@ -1242,6 +1246,32 @@ public final class ProductPromoWorker {
         }
     }
 
+    /**
+     * Resolves the service performing a promotion action.
+     * @param productPromoAction the action
+     * @param delegator the delegator
+     * @return the service name, or <code>null</code> when the action type is not supported
+     */
+    public static String getActionServiceName(GenericValue productPromoAction, Delegator delegator) throws GenericEntityException {
+        GenericValue customMethod = productPromoAction.getRelatedOne("CustomMethod", true);
+        if (customMethod != null) {
+            return customMethod.getString("customMethodName");
+        }
+        String productPromoActionEnumId = productPromoAction.getString("productPromoActionEnumId");
+        if ("PROMO_SERVICE".equals(productPromoActionEnumId)) {
+            return productPromoAction.getString("serviceName");
+        }
+        //for backware compatibility resolve customMethodId from enumCode
+        GenericValue condEnum = EntityQuery.use(delegator).from("Enumeration").where("enumId", productPromoActionEnumId).cache().queryOne();
+        if (condEnum != null) {
+            customMethod = EntityQuery.use(delegator).from("CustomMethod").where("customMethodId", condEnum.get("enumCode")).cache().queryOne();
+            if (customMethod != null) {
+                return customMethod.getString("customMethodName");
+            }
+        }
+        return null;
+    }
+
     public static List<ShoppingCartItem> getCartItemsUsed(ShoppingCart cart, GenericValue productPromoAction) {
         List<ShoppingCartItem> cartItemsUsed = new LinkedList<>();
         for (ShoppingCartItem cartItem : cart) {
@@ -18,6 +18,9 @@
  *******************************************************************************/
 package org.apache.ofbiz.product.product.test
 
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.transaction.TransactionUtil
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -51,4 +54,113 @@ class InventoryTests extends OFBizTestCase {
         assert serviceResult.physicalInventoryId
     }
 
+    private void createProduct(String productId) {
+        delegator.createOrStore(delegator.makeValue('Product', [productId: productId, productTypeId: 'FINISHED_GOOD',
+                internalName: productId, isVirtual: 'N', isVariant: 'N']))
+    }
+
+    private String receiveInventory(String productId, BigDecimal quantity) {
+        Map serviceResult = dispatcher.runSync('receiveInventoryProduct', [
+                facilityId: 'WebStoreWarehouse',
+                productId: productId,
+                quantityAccepted: quantity,
+                quantityRejected: BigDecimal.ZERO,
+                unitCost: BigDecimal.ONE,
+                inventoryItemTypeId: 'NON_SERIAL_INV_ITEM',
+                datetimeReceived: UtilDateTime.nowTimestamp(),
+                userLogin: userLogin
+        ])
+        assert ServiceUtil.isSuccess(serviceResult)
+        return serviceResult.inventoryItemId
+    }
+
+    private GenericValue getProductFacilityInventory(String productId) {
+        return from('ProductFacilityInventory').where(productId: productId, facilityId: 'WebStoreWarehouse').queryOne()
+    }
+
+    private Map getInventoryAvailable(String productId) {
+        Map serviceResult = dispatcher.runSync('getInventoryAvailableByFacility', [productId: productId, facilityId: 'WebStoreWarehouse',
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        return serviceResult
+    }
+
+    // the totals summed from the items, as when they are not kept
+    private Map sumInventoryAvailable(String productId) {
+        boolean beganTransaction = TransactionUtil.begin()
+        try {
+            delegator.removeByAnd('ProductFacilityInventory', [productId: productId, facilityId: 'WebStoreWarehouse'])
+            return getInventoryAvailable(productId)
+        } finally {
+            TransactionUtil.rollback(beganTransaction, 'Keeping the inventory totals', null)
+        }
+    }
+
+    private void assertSameAsSummed(String productId) {
+        Map kept = getInventoryAvailable(productId)
+        Map summed = sumInventoryAvailable(productId)
+        assert getProductFacilityInventory(productId)
+        assert kept.availableToPromiseTotal == summed.availableToPromiseTotal
+        assert kept.quantityOnHandTotal == summed.quantityOnHandTotal
+        assert kept.accountingQuantityTotal == summed.accountingQuantityTotal
+    }
+
+    void testRebuildProductFacilityInventory() {
+        String productId = 'PFI-TEST-REBUILD'
+        createProduct(productId)
+        receiveInventory(productId, new BigDecimal('10'))
+        receiveInventory(productId, new BigDecimal('5'))
+        // the totals are not kept until they are rebuilt
+        assert !getProductFacilityInventory(productId)
+        assert getInventoryAvailable(productId).quantityOnHandTotal == 15
+
+        Map serviceResult = dispatcher.runSync('rebuildProductFacilityInventory', [productId: productId, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.rebuiltCount == 1
+        GenericValue productFacilityInventory = getProductFacilityInventory(productId)
+        assert productFacilityInventory.quantityOnHandTotal == 15
+        assert productFacilityInventory.availableToPromiseTotal == 15
+        assertSameAsSummed(productId)
+
+        // rebuilding again changes nothing
+        serviceResult = dispatcher.runSync('rebuildProductFacilityInventory', [productId: productId, facilityId: 'WebStoreWarehouse',
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert getProductFacilityInventory(productId).quantityOnHandTotal == 15
+        assertSameAsSummed(productId)
+    }
+
+    void testProductFacilityInventoryMaintained() {
+        String productId = 'PFI-TEST-MAINTAINED'
+        createProduct(productId)
+        String inventoryItemId = receiveInventory(productId, new BigDecimal('10'))
+        Map serviceResult = dispatcher.runSync('rebuildProductFacilityInventory', [productId: productId, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        // the items created and changed from then on change the totals kept
+        receiveInventory(productId, new BigDecimal('4'))
+        GenericValue productFacilityInventory = getProductFacilityInventory(productId)
+        assert productFacilityInventory.quantityOnHandTotal == 14
+        assert productFacilityInventory.availableToPromiseTotal == 14
+        assertSameAsSummed(productId)
+
+        serviceResult = dispatcher.runSync('createPhysicalInventoryAndVariance', [inventoryItemId: inventoryItemId,
+                varianceReasonId: 'VAR_LOST', availableToPromiseVar: new BigDecimal('-3'), quantityOnHandVar: new BigDecimal('-3'),
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        productFacilityInventory = getProductFacilityInventory(productId)
+        assert productFacilityInventory.quantityOnHandTotal == 11
+        assert productFacilityInventory.availableToPromiseTotal == 11
+        assertSameAsSummed(productId)
+
+        // an item moved to another facility is removed from the totals of the facility
+        GenericValue inventoryItem = from('InventoryItem').where(inventoryItemId: inventoryItemId).queryOne()
+        inventoryItem.facilityId = 'WebStoreWarehouseAtp'
+        inventoryItem.store()
+        productFacilityInventory = getProductFacilityInventory(productId)
+        assert productFacilityInventory.quantityOnHandTotal == 4
+        assert productFacilityInventory.availableToPromiseTotal == 4
+        assertSameAsSummed(productId)
+    }
+
 }
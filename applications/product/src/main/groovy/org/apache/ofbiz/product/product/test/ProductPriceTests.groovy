@@ -18,7 +18,14 @@
  *******************************************************************************/
 package org.apache.ofbiz.product.product.test
 
+import java.sql.Timestamp
+
+import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.util.EntityUtil
+import org.apache.ofbiz.product.price.PriceRuleSet
+import org.apache.ofbiz.product.price.PriceServices
+import org.apache.ofbiz.product.product.ProductWorker
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -63,4 +70,97 @@ class ProductPriceTests extends OFBizTestCase {
         assert resultMap.defaultPrice == 10
     }
 
+    void testCalculateProductPrices() {
+        // the bulk service gives the results of calculateProductPrice for each product
+        List<String> productIds = ['GZ-2002', 'GZ-1006-3', 'WG-1111', 'DemoProduct']
+        Map resultMap = dispatcher.runSync('calculateProductPrices', [productIds: productIds, partyId: 'DemoCustomer'])
+        assert ServiceUtil.isSuccess(resultMap)
+        assert resultMap.productPrices.keySet() as Set == productIds as Set
+        for (String productId : productIds) {
+            GenericValue product = from('Product').where('productId', productId).queryOne()
+            Map singleResult = dispatcher.runSync('calculateProductPrice', [product: product, partyId: 'DemoCustomer'])
+            Map bulkResult = resultMap.productPrices[productId]
+            for (String key : ['price', 'listPrice', 'defaultPrice', 'isSale', 'validPriceFound', 'currencyUsed']) {
+                assert singleResult[key] == bulkResult[key], "${key} of ${productId}"
+            }
+            assert singleResult.orderItemPriceInfos*.productPriceRuleId == bulkResult.orderItemPriceInfos*.productPriceRuleId
+        }
+    }
+
+    void testCalculateProductPricesOfUnknownProduct() {
+        // an unknown product gets an error result, after the prices of the products found
+        Map resultMap = dispatcher.runSync('calculateProductPrices', [productIds: ['GZ-2002', 'NO-SUCH-PRODUCT'],
+                surveyResponseId: 'NO-SURVEY-RESPONSE', customAttributes: [test: 'Y']])
+        assert ServiceUtil.isSuccess(resultMap)
+        assert resultMap.productPrices.keySet() as List == ['GZ-2002', 'NO-SUCH-PRODUCT']
+        assert ServiceUtil.isSuccess(resultMap.productPrices['GZ-2002'])
+        assert ServiceUtil.isError(resultMap.productPrices['NO-SUCH-PRODUCT'])
+        assert ServiceUtil.getErrorMessage(resultMap.productPrices['NO-SUCH-PRODUCT']).contains('NO-SUCH-PRODUCT')
+    }
+
+    void testCompiledPriceRulesMatchPriceRules() {
+        // the compiled rules give the prices found by evaluating all the price rules
+        for (String productId : ['GZ-2002', 'GZ-1006-3', 'WG-1111', 'FAJITA_BEEF', 'DemoProduct']) {
+            for (String partyId : [null, 'DemoCustomer', 'EuroCustomer']) {
+                assertSamePrices(productId, partyId, false)
+                assertSamePrices(productId, partyId, true)
+            }
+        }
+    }
+
+    void testCompiledPriceRulesReloadChangedRule() {
+        GenericValue rule = delegator.makeValue('ProductPriceRule', [productPriceRuleId: 'TestCompiledRule',
+                ruleName: 'Test compiled rule', isSale: 'N', fromDate: UtilDateTime.nowTimestamp()])
+        GenericValue cond = delegator.makeValue('ProductPriceCond', [productPriceRuleId: 'TestCompiledRule', productPriceCondSeqId: '01',
+                inputParamEnumId: 'PRIP_PRODUCT_ID', operatorEnumId: 'PRC_EQ', condValue: 'GZ-2002'])
+        GenericValue action = delegator.makeValue('ProductPriceAction', [productPriceRuleId: 'TestCompiledRule', productPriceActionSeqId: '01',
+                productPriceActionTypeId: 'PRICE_FLAT', amount: 12.5])
+        PriceRuleSet.getInstance(delegator)
+        try {
+            rule.create()
+            cond.create()
+            action.create()
+            assertSamePrices('GZ-2002', null, false)
+            Map compiledResult = calcPrice('GZ-2002', null, false, PriceRuleSet.getInstance(delegator))
+            assert compiledResult.price == 12.5
+
+            action.set('amount', 11.5)
+            action.store()
+            compiledResult = calcPrice('GZ-2002', null, false, PriceRuleSet.getInstance(delegator))
+            assert compiledResult.price == 11.5
+        } finally {
+            action.remove()
+            cond.remove()
+            rule.remove()
+        }
+        assert !PriceRuleSet.getInstance(delegator).getProductPriceRules(false, 'GZ-2002', null, null, null, null, null, 'USD',
+                UtilDateTime.nowTimestamp())*.productPriceRuleId.contains('TestCompiledRule')
+    }
+
+    private void assertSamePrices(String productId, String partyId, boolean optimizeForLargeRuleSet) {
+        Map legacyResult = calcPrice(productId, partyId, optimizeForLargeRuleSet, null)
+        Map compiledResult = calcPrice(productId, partyId, optimizeForLargeRuleSet, PriceRuleSet.getInstance(delegator))
+        String message = "${productId} for ${partyId}, optimizeForLargeRuleSet ${optimizeForLargeRuleSet}"
+        assert legacyResult.price == compiledResult.price, message
+        assert legacyResult.isSale == compiledResult.isSale, message
+        assert legacyResult.validPriceFound == compiledResult.validPriceFound, message
+        assert legacyResult.orderItemPriceInfos*.productPriceRuleId == compiledResult.orderItemPriceInfos*.productPriceRuleId, message
+        assert legacyResult.orderItemPriceInfos*.description == compiledResult.orderItemPriceInfos*.description, message
+    }
+
+    private Map calcPrice(String productId, String partyId, boolean optimizeForLargeRuleSet, PriceRuleSet priceRuleSet) {
+        GenericValue product = from('Product').where('productId', productId).queryOne()
+        String virtualProductId = 'Y' == product.isVariant ? ProductWorker.getVariantVirtualId(product) : null
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp()
+        List<GenericValue> rules = priceRuleSet != null
+                ? priceRuleSet.getProductPriceRules(optimizeForLargeRuleSet, productId, virtualProductId, null, null, null, partyId, 'USD',
+                        nowTimestamp)
+                : PriceServices.makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId, null, null, null,
+                        partyId, 'USD')
+        BigDecimal listPrice = new BigDecimal('100')
+        return PriceServices.calcPriceResultFromRules(EntityUtil.filterByDate(rules, true), listPrice, listPrice, null, null, null, null,
+                true, null, productId, virtualProductId, null, null, null, partyId, BigDecimal.ONE, 'USD', delegator, nowTimestamp,
+                Locale.getDefault(), priceRuleSet)
+    }
+
 }
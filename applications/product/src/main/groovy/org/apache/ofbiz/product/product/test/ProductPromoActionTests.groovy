@@ -18,12 +18,16 @@
  */
 package org.apache.ofbiz.product.product.test
 
+import java.sql.Timestamp
+
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.order.shoppingcart.CheckOutHelper
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart
 import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem
 import org.apache.ofbiz.service.testtools.OFBizTestCase
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoScope
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker
 import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker.ActionResultInfo
 import org.apache.ofbiz.service.ServiceUtil
 
@@ -331,6 +335,83 @@ class ProductPromoActionTests extends OFBizTestCase {
         assert serviceResult.actionResultInfo.totalDiscountAmount != null
     }
 
+    /**
+     * This test check that the promotions of a cart are only evaluated again when a line they depend on changes
+     *  1. test the promotions are kept when a line out of their scope is added
+     *  2. test the promotions are evaluated again when a line of their scope changes
+     */
+    void testDoPromotionsOnLineChanges() {
+        ShoppingCart cart = loadOrder('DEMO10090')
+        List<GenericValue> productPromos = from('ProductPromo').where('productPromoId', '9015').queryList()
+        cart.setDoPromotions(false)
+        ShoppingCartItem promoItem = cart.findAllCartItems('GZ-2644').get(0)
+        promoItem.setQuantity(4, dispatcher, cart)
+        cart.setDoPromotions(true)
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+        ProductPromoScope.Evaluation evaluation = cart.getPromoEvaluation()
+        BigDecimal promoTotal = cart.getProductPromoTotal()
+        assert evaluation
+        assert promoTotal != 0
+
+        cart.setDoPromotions(false)
+        cart.addOrIncreaseItem('SV-1001', null, BigDecimal.ONE, null, null, null, null, null, null, null, 'DemoCatalog', null, null,
+                null, null, dispatcher)
+        cart.setDoPromotions(true)
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+        assert cart.getPromoEvaluation().is(evaluation)
+        assert cart.getProductPromoTotal() == promoTotal
+        cart.clearAllPromotionInformation()
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+        assert cart.getProductPromoTotal() == promoTotal
+
+        evaluation = cart.getPromoEvaluation()
+        cart.setDoPromotions(false)
+        promoItem.setQuantity(8, dispatcher, cart)
+        cart.setDoPromotions(true)
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+        assert !cart.getPromoEvaluation().is(evaluation)
+        assert cart.getProductPromoTotal() != promoTotal
+    }
+
+    /**
+     * This test check that a promotion with a recurrence condition is evaluated again at each call
+     *  1. test the promotion applies while its recurrence is current
+     *  2. test the promotion is removed once its recurrence ends, the cart and the day being unchanged
+     */
+    void testDoPromotionsOnRecurrenceChange() {
+        String recurrenceId = 'TEST_PROMO_FLIP'
+        List<GenericValue> values = [
+                delegator.makeValue('RecurrenceRule', [recurrenceRuleId: recurrenceId, frequency: 'DAILY', intervalNumber: 1L,
+                        countNumber: -1L, byDayList: 'MO,TU,WE,TH,FR,SA,SU']),
+                delegator.makeValue('RecurrenceInfo', [recurrenceInfoId: recurrenceId, startDateTime: Timestamp.valueOf('2008-01-01 00:00:00.000'),
+                        recurrenceRuleId: recurrenceId, recurrenceCount: 0L]),
+                delegator.makeValue('ProductPromo', [productPromoId: 'TEST-RECUR', promoName: 'Test recurrence', userEntered: 'N',
+                        requireCode: 'N']),
+                delegator.makeValue('ProductPromoRule', [productPromoId: 'TEST-RECUR', productPromoRuleId: '01']),
+                delegator.makeValue('ProductPromoCond', [productPromoId: 'TEST-RECUR', productPromoRuleId: '01', productPromoCondSeqId: '01',
+                        inputParamEnumId: 'PPIP_RECURRENCE', operatorEnumId: 'PPC_EQ', condValue: recurrenceId]),
+                delegator.makeValue('ProductPromoAction', [productPromoId: 'TEST-RECUR', productPromoRuleId: '01', productPromoActionSeqId: '01',
+                        productPromoActionEnumId: 'PROMO_PROD_DISC', orderAdjustmentTypeId: 'PROMOTION_ADJUSTMENT', quantity: 1.0, amount: 10.0]),
+                delegator.makeValue('ProductPromoProduct', [productPromoId: 'TEST-RECUR', productPromoRuleId: '01', productPromoActionSeqId: '01',
+                        productPromoCondSeqId: '_NA_', productId: 'GZ-2644', productPromoApplEnumId: 'PPPA_INCLUDE'])]
+        try {
+            values.each { delegator.createOrStore(it) }
+            ShoppingCart cart = loadOrder('DEMO10090')
+            List<GenericValue> productPromos = from('ProductPromo').where('productPromoId', 'TEST-RECUR').queryList()
+            ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+            assert cart.getProductPromoTotal() != 0
+
+            // the recurrence ends during the day, without any change of the cart
+            GenericValue recurrenceRule = from('RecurrenceRule').where('recurrenceRuleId', recurrenceId).queryOne()
+            recurrenceRule.untilDateTime = UtilDateTime.nowTimestamp()
+            recurrenceRule.store()
+            ProductPromoWorker.doPromotions(cart, productPromos, dispatcher)
+            assert cart.getProductPromoTotal() == 0
+        } finally {
+            values.reverse().each { delegator.removeValue(it) }
+        }
+    }
+
     private ShoppingCart loadOrder(String orderId) {
         Map<String, Object> serviceCtx = [orderId: orderId,
                                           skipInventoryChecks: true, // the items are already reserved, no need to check again
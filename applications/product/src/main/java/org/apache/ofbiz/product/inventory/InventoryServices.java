@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
@@ -37,6 +39,7 @@ import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
@@ -44,6 +47,7 @@ import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
 import org.apache.ofbiz.entity.model.ModelKeyMap;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityTypeUtil;
@@ -62,6 +66,8 @@ public class InventoryServices {
     private static final String MODULE = InventoryServices.class.getName();
     private static final String RESOURCE = "ProductUiLabels";
     private static final MathContext GEN_ROUNDING = new MathContext(10);
+    // the updates of the totals of a product in a facility tried before giving up when changed meanwhile by other transactions
+    private static final int MAX_TOTALS_ATTEMPTS = 20;
 
     public static Map<String, Object> prepareInventoryTransfer(DispatchContext dctx, Map<String, ? extends Object> context) {
         Delegator delegator = dctx.getDelegator();
@@ -1029,4 +1035,196 @@ public class InventoryServices {
         }
         return result;
     }
+
+    /**
+     * Applies the change of an inventory item to the totals of its product in its facility, kept in
+     * <code>ProductFacilityInventory</code>. Run by an ECA before the item is created, stored or
+     * removed, while the previous item can still be read. The totals not built yet are left to
+     * {@link #rebuildProductFacilityInventory}.
+     * @param dctx the dispatch context
+     * @param context the item as it will be stored, and <code>removed</code> Y when it will be removed
+     * @return the result
+     */
+    public static Map<String, Object> updateProductFacilityInventory(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        GenericEntity inventoryItem = (GenericEntity) context.get("inventoryItem");
+        boolean removed = "Y".equals(context.get("removed"));
+        try {
+            GenericValue previousItem = EntityQuery.use(delegator).from("InventoryItem")
+                    .where("inventoryItemId", inventoryItem.get("inventoryItemId")).queryOne();
+            Map<String, BigDecimal[]> changes = new TreeMap<>();
+            if (previousItem != null) {
+                addInventoryTotals(changes, previousItem, null, BigDecimal.ONE.negate());
+            }
+            if (!removed) {
+                addInventoryTotals(changes, inventoryItem, previousItem, BigDecimal.ONE);
+            }
+            // the totals are changed in the order of their keys, so that two transactions changing the same totals can't deadlock
+            for (Map.Entry<String, BigDecimal[]> change : changes.entrySet()) {
+                BigDecimal[] diffs = change.getValue();
+                if (diffs[0].signum() != 0 || diffs[1].signum() != 0 || diffs[2].signum() != 0) {
+                    String[] key = change.getKey().split("::", 2);
+                    changeProductFacilityInventory(delegator, key[0], key[1], diffs);
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Rebuilds the totals of the available inventory items of the products in the facilities.
+     * <p>
+     * The totals of each product in each facility are rebuilt in a transaction of their own, having
+     * locked the row of the totals before summing the items: the changes of the items by the
+     * transactions holding the lock are then summed, and the changes by the transactions waiting for
+     * it are applied by {@link #updateProductFacilityInventory} to the totals rebuilt.
+     * @param dctx the dispatch context
+     * @param context the product and facility to rebuild, all of them when empty
+     * @return the result, with the count of totals rebuilt
+     */
+    public static Map<String, Object> rebuildProductFacilityInventory(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Map<String, Object> fields = new HashMap<>();
+        if (UtilValidate.isNotEmpty(context.get("productId"))) {
+            fields.put("productId", context.get("productId"));
+        }
+        if (UtilValidate.isNotEmpty(context.get("facilityId"))) {
+            fields.put("facilityId", context.get("facilityId"));
+        }
+        Set<String> keys = new TreeSet<>();
+        try {
+            for (String entityName : UtilMisc.toList("InventoryItem", "ProductFacilityInventory")) {
+                for (GenericValue value : EntityQuery.use(delegator).select("productId", "facilityId").from(entityName).where(fields)
+                        .distinct().queryList()) {
+                    if (UtilValidate.isNotEmpty(value.getString("productId")) && UtilValidate.isNotEmpty(value.getString("facilityId"))) {
+                        keys.add(value.getString("productId") + "::" + value.getString("facilityId"));
+                    }
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        long rebuiltCount = 0;
+        List<String> errorMessages = new LinkedList<>();
+        for (String key : keys) {
+            String[] ids = key.split("::", 2);
+            try {
+                rebuildProductFacilityInventory(delegator, ids[0], ids[1]);
+                rebuiltCount++;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Unable to rebuild the inventory totals of the product [" + ids[0] + "] in the facility [" + ids[1] + "]",
+                        MODULE);
+                errorMessages.add(e.getMessage());
+            }
+        }
+        if (!errorMessages.isEmpty()) {
+            return ServiceUtil.returnError(errorMessages);
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("rebuiltCount", rebuiltCount);
+        return result;
+    }
+
+    private static void rebuildProductFacilityInventory(Delegator delegator, String productId, String facilityId)
+            throws GenericEntityException {
+        Map<String, Object> pk = UtilMisc.toMap("productId", productId, "facilityId", facilityId);
+        if (EntityQuery.use(delegator).from("ProductFacilityInventory").where(pk).queryOne() == null) {
+            // created before the items are summed, so that the changes of the items committed from then on are applied to it
+            try {
+                TransactionUtil.doNewTransaction(() -> delegator.create(makeProductFacilityInventory(delegator, productId, facilityId,
+                        new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO})),
+                        "Unable to create the inventory totals " + pk, 0, false);
+            } catch (GenericEntityException e) {
+                // created meanwhile by another rebuild
+                Debug.logInfo("The inventory totals " + pk + " have not been created: " + e.getMessage(), MODULE);
+            }
+        }
+        TransactionUtil.doNewTransaction(() -> {
+            EntityCondition pkCondition = EntityCondition.makeCondition(pk);
+            // locks the totals first, the transactions changing the items of the product in the facility wait for this one
+            if (delegator.storeByCondition("ProductFacilityInventory", UtilMisc.toMap("lastUpdatedStamp", UtilDateTime.nowTimestamp()),
+                    pkCondition) != 1) {
+                throw new GenericEntityException("Unable to find the inventory totals " + pk);
+            }
+            Map<String, BigDecimal[]> totals = new TreeMap<>();
+            for (GenericValue inventoryItem : EntityQuery.use(delegator).from("InventoryItem").where(pk).queryList()) {
+                addInventoryTotals(totals, inventoryItem, null, BigDecimal.ONE);
+            }
+            BigDecimal[] itemTotals = totals.getOrDefault(productId + "::" + facilityId,
+                    new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO});
+            return delegator.storeByCondition("ProductFacilityInventory", UtilMisc.toMap("availableToPromiseTotal", itemTotals[0],
+                    "quantityOnHandTotal", itemTotals[1], "accountingQuantityTotal", itemTotals[2]), pkCondition);
+        }, "Unable to rebuild the inventory totals " + pk, 0, true);
+    }
+
+    // adds the totals of an item to the totals of its product in its facility, when counted as available by getProductInventoryAvailable
+    private static void addInventoryTotals(Map<String, BigDecimal[]> totals, GenericEntity inventoryItem, GenericValue previousItem,
+            BigDecimal sign) {
+        String productId = (String) getItemField(inventoryItem, previousItem, "productId");
+        String facilityId = (String) getItemField(inventoryItem, previousItem, "facilityId");
+        String statusId = (String) getItemField(inventoryItem, previousItem, "statusId");
+        if (UtilValidate.isEmpty(productId) || UtilValidate.isEmpty(facilityId)) {
+            return;
+        }
+        if (UtilValidate.isNotEmpty(statusId) && !"INV_AVAILABLE".equals(statusId) && !"INV_NS_RETURNED".equals(statusId)
+                && !"SERIALIZED_INV_ITEM".equals(getItemField(inventoryItem, previousItem, "inventoryItemTypeId"))) {
+            return;
+        }
+        BigDecimal[] itemTotals = totals.computeIfAbsent(productId + "::" + facilityId,
+                k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO});
+        String[] fieldNames = {"availableToPromiseTotal", "quantityOnHandTotal", "accountingQuantityTotal"};
+        for (int i = 0; i < fieldNames.length; i++) {
+            BigDecimal value = (BigDecimal) getItemField(inventoryItem, previousItem, fieldNames[i]);
+            if (value != null) {
+                itemTotals[i] = itemTotals[i].add(value.multiply(sign));
+            }
+        }
+    }
+
+    // the field of an item, or of the stored item when the item stored doesn't have it
+    private static Object getItemField(GenericEntity inventoryItem, GenericValue previousItem, String fieldName) {
+        if (inventoryItem.containsKey(fieldName) || previousItem == null) {
+            return inventoryItem.get(fieldName);
+        }
+        return previousItem.get(fieldName);
+    }
+
+    private static void changeProductFacilityInventory(Delegator delegator, String productId, String facilityId, BigDecimal[] diffs)
+            throws GenericEntityException {
+        // the totals are changed only if they are still those read, trying again when changed meanwhile by another transaction
+        for (int attempt = 0; attempt < MAX_TOTALS_ATTEMPTS; attempt++) {
+            GenericValue productFacilityInventory = EntityQuery.use(delegator).from("ProductFacilityInventory")
+                    .where("productId", productId, "facilityId", facilityId).queryOne();
+            if (productFacilityInventory == null) {
+                return;
+            }
+            BigDecimal[] newTotals = new BigDecimal[3];
+            List<EntityCondition> conditions = UtilMisc.toList(EntityCondition.makeCondition(productFacilityInventory.getPrimaryKey()));
+            String[] fieldNames = {"availableToPromiseTotal", "quantityOnHandTotal", "accountingQuantityTotal"};
+            for (int i = 0; i < fieldNames.length; i++) {
+                BigDecimal total = productFacilityInventory.getBigDecimal(fieldNames[i]);
+                conditions.add(EntityCondition.makeCondition(fieldNames[i], total));
+                newTotals[i] = (total != null ? total : BigDecimal.ZERO).add(diffs[i]);
+            }
+            Map<String, Object> fieldsToSet = UtilMisc.toMap(fieldNames[0], newTotals[0], fieldNames[1], newTotals[1], fieldNames[2], newTotals[2]);
+            if (delegator.storeByCondition("ProductFacilityInventory", fieldsToSet, EntityCondition.makeCondition(conditions)) == 1) {
+                return;
+            }
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("The inventory totals of the product [" + productId + "] in the facility [" + facilityId
+                        + "] have been changed by another transaction, trying again", MODULE);
+            }
+        }
+        throw new GenericEntityException("The inventory totals of the product [" + productId + "] in the facility [" + facilityId
+                + "] have been changed by other transactions " + MAX_TOTALS_ATTEMPTS + " times, giving up");
+    }
+
+    private static GenericValue makeProductFacilityInventory(Delegator delegator, String productId, String facilityId, BigDecimal[] totals) {
+        return delegator.makeValue("ProductFacilityInventory", UtilMisc.toMap("productId", productId, "facilityId", facilityId,
+                "availableToPromiseTotal", totals[0], "quantityOnHandTotal", totals[1], "accountingQuantityTotal", totals[2]));
+    }
 }
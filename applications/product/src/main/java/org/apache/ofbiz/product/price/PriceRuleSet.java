@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.product.price;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.Synchronization;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * The ProductPriceRule records of a delegator with their conditions and actions, loaded once and
+ * indexed so that calculateProductPrice only evaluates the rules which may apply to a product.
+ * <p>
+ * A rule having an equality condition on an input known before the rule is evaluated (product,
+ * category, feature, catalog, store group, web site, party or currency) is indexed by the value
+ * of that condition; the other rules are always evaluated. The conditions of the selected rules
+ * are still checked by {@link PriceServices#checkPriceCondition}, so the prices found are the ones
+ * found by evaluating all the rules.
+ * <p>
+ * The sets are kept in the <code>product.price.rules</code> cache. The ECAs of the rule entities
+ * mark the changed rules, which are reloaded one by one on the next use of the set.
+ */
+public final class PriceRuleSet {
+
+    private static final String MODULE = PriceRuleSet.class.getName();
+    private static final UtilCache<String, PriceRuleSet> RULE_SETS = UtilCache.createUtilCache("product.price.rules", false);
+
+    // the inputs indexing a rule, from the most to the least selective
+    private static final List<String> INDEX_INPUTS = UtilMisc.toList("PRIP_PRODUCT_ID", "PRIP_PROD_FEAT_ID", "PRIP_PROD_CAT_ID",
+            "PRIP_PARTY_ID", "PRIP_PROD_CLG_ID", "PRIP_WEBSITE_ID", "PRIP_PROD_SGRP_ID", "PRIP_CURRENCY_UOMID");
+    // the inputs for which PriceServices.makeProducePriceRuleList always selects the rules when optimizing for a large rule set
+    private static final Set<String> LARGE_SET_INPUTS = new HashSet<>(UtilMisc.toList("PRIP_PROD_CAT_ID", "PRIP_PROD_FEAT_ID",
+            "PRIP_QUANTITY", "PRIP_ROLE_TYPE", "PRIP_PARTY_CLASS", "PRIP_LIST_PRICE"));
+
+    private final Delegator delegator;
+    private final Set<String> changedRuleIds = ConcurrentHashMap.newKeySet();
+    private volatile Rules rules;
+
+    private PriceRuleSet(Delegator delegator) throws GenericEntityException {
+        this.delegator = delegator;
+        Map<String, List<GenericValue>> conds = groupByRule(EntityQuery.use(delegator).from("ProductPriceCond")
+                .orderBy("productPriceRuleId", "productPriceCondSeqId").queryList());
+        Map<String, List<GenericValue>> actions = groupByRule(EntityQuery.use(delegator).from("ProductPriceAction")
+                .orderBy("productPriceRuleId", "productPriceActionSeqId").queryList());
+        // the rules keep the order in which PriceServices.makeProducePriceRuleList lists them
+        Map<String, CompiledRule> ruleMap = new LinkedHashMap<>();
+        int position = 0;
+        for (GenericValue rule : EntityQuery.use(delegator).from("ProductPriceRule").queryList()) {
+            String productPriceRuleId = rule.getString("productPriceRuleId");
+            ruleMap.put(productPriceRuleId, new CompiledRule(rule, conds.get(productPriceRuleId), actions.get(productPriceRuleId), position++));
+        }
+        this.rules = new Rules(ruleMap, position);
+    }
+
+    /**
+     * Gets the rule set of a delegator, loading it when it is not cached.
+     * @param delegator the delegator
+     * @return the rule set
+     * @throws GenericEntityException if the rules can't be loaded
+     */
+    public static PriceRuleSet getInstance(Delegator delegator) throws GenericEntityException {
+        PriceRuleSet ruleSet = RULE_SETS.get(delegator.getDelegatorName());
+        if (ruleSet == null) {
+            long startTime = System.currentTimeMillis();
+            ruleSet = RULE_SETS.putIfAbsentAndGet(delegator.getDelegatorName(), new PriceRuleSet(delegator));
+            if (Debug.infoOn()) {
+                Debug.logInfo("Loaded " + ruleSet.rules.byId.size() + " price rules of delegator " + delegator.getDelegatorName()
+                        + " in " + (System.currentTimeMillis() - startTime) + "ms", MODULE);
+            }
+        }
+        return ruleSet;
+    }
+
+    /**
+     * Marks a rule as changed in the rule set of a delegator, if it is loaded. The rule is marked
+     * again when the current transaction completes, so that a reload done before the commit can't
+     * keep the previous version.
+     * @param delegator the delegator
+     * @param productPriceRuleId the id of the created, updated or removed rule
+     */
+    public static void ruleChanged(Delegator delegator, String productPriceRuleId) {
+        PriceRuleSet ruleSet = RULE_SETS.get(delegator.getDelegatorName());
+        if (ruleSet == null || productPriceRuleId == null) {
+            return;
+        }
+        ruleSet.changedRuleIds.add(productPriceRuleId);
+        try {
+            TransactionUtil.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    ruleSet.changedRuleIds.add(productPriceRuleId);
+                }
+            });
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to reload the price rule " + productPriceRuleId + " after the transaction, clearing the price rules", MODULE);
+            RULE_SETS.remove(delegator.getDelegatorName());
+        }
+    }
+
+    /**
+     * Gets the rules which may apply to a product. These are the rules listed by
+     * {@link PriceServices#makeProducePriceRuleList} less the ones having an equality condition
+     * which can't be met.
+     * @param optimizeForLargeRuleSet select the rules as the large rule set optimization does,
+     *        listing them by id
+     * @param productId the product id
+     * @param virtualProductId the virtual product id, or <code>null</code>
+     * @param prodCatalogId the catalog id, or <code>null</code>
+     * @param productStoreGroupId the product store group id, or <code>null</code>
+     * @param webSiteId the web site id, or <code>null</code>
+     * @param partyId the party id, or <code>null</code>
+     * @param currencyUomId the currency
+     * @param nowTimestamp the date of the category members and feature applications considered
+     * @return the rules, not filtered by date
+     * @throws GenericEntityException if a changed rule can't be reloaded
+     */
+    public List<GenericValue> getProductPriceRules(boolean optimizeForLargeRuleSet, String productId, String virtualProductId,
+            String prodCatalogId, String productStoreGroupId, String webSiteId, String partyId, String currencyUomId,
+            Timestamp nowTimestamp) throws GenericEntityException {
+        Rules current = getRules();
+        Set<CompiledRule> candidates = new HashSet<>();
+        if (optimizeForLargeRuleSet) {
+            candidates.addAll(current.largeSetAlways);
+            current.addLargeSetRules(candidates, "PRIP_PRODUCT_ID", productId);
+            if (virtualProductId != null) {
+                current.addLargeSetRules(candidates, "PRIP_PRODUCT_ID", virtualProductId);
+            }
+            if (UtilValidate.isNotEmpty(prodCatalogId)) {
+                current.addLargeSetRules(candidates, "PRIP_PROD_CLG_ID", prodCatalogId);
+            }
+            if (UtilValidate.isNotEmpty(productStoreGroupId)) {
+                current.addLargeSetRules(candidates, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+            }
+            if (UtilValidate.isNotEmpty(webSiteId)) {
+                current.addLargeSetRules(candidates, "PRIP_WEBSITE_ID", webSiteId);
+            }
+            if (UtilValidate.isNotEmpty(partyId)) {
+                current.addLargeSetRules(candidates, "PRIP_PARTY_ID", partyId);
+            }
+            current.addLargeSetRules(candidates, "PRIP_CURRENCY_UOMID", currencyUomId);
+        } else {
+            candidates.addAll(current.unindexed);
+            current.addIndexedRules(candidates, "PRIP_PRODUCT_ID", productId);
+            current.addIndexedRules(candidates, "PRIP_PRODUCT_ID", virtualProductId);
+            if (current.isIndexed("PRIP_PROD_CAT_ID")) {
+                for (String productCategoryId : getRelatedIds("ProductCategoryMember", "productCategoryId", productId, nowTimestamp)) {
+                    current.addIndexedRules(candidates, "PRIP_PROD_CAT_ID", productCategoryId);
+                }
+                if (UtilValidate.isNotEmpty(virtualProductId)) {
+                    for (String productCategoryId : getRelatedIds("ProductCategoryMember", "productCategoryId", virtualProductId, nowTimestamp)) {
+                        current.addIndexedRules(candidates, "PRIP_PROD_CAT_ID", productCategoryId);
+                    }
+                }
+            }
+            // as in PriceServices.checkPriceCondition, the features of the virtual product don't apply
+            if (current.isIndexed("PRIP_PROD_FEAT_ID")) {
+                for (String productFeatureId : getRelatedIds("ProductFeatureAppl", "productFeatureId", productId, nowTimestamp)) {
+                    current.addIndexedRules(candidates, "PRIP_PROD_FEAT_ID", productFeatureId);
+                }
+            }
+            if (UtilValidate.isNotEmpty(prodCatalogId)) {
+                current.addIndexedRules(candidates, "PRIP_PROD_CLG_ID", prodCatalogId);
+            }
+            if (UtilValidate.isNotEmpty(productStoreGroupId)) {
+                current.addIndexedRules(candidates, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+            }
+            if (UtilValidate.isNotEmpty(webSiteId)) {
+                current.addIndexedRules(candidates, "PRIP_WEBSITE_ID", webSiteId);
+            }
+            if (UtilValidate.isNotEmpty(partyId)) {
+                current.addIndexedRules(candidates, "PRIP_PARTY_ID", partyId);
+            }
+            current.addIndexedRules(candidates, "PRIP_CURRENCY_UOMID", currencyUomId);
+        }
+
+        List<CompiledRule> sorted = new ArrayList<>(candidates);
+        sorted.sort(optimizeForLargeRuleSet ? Comparator.comparing(CompiledRule::getProductPriceRuleId)
+                : Comparator.comparingInt(CompiledRule::getPosition));
+        List<GenericValue> productPriceRules = new ArrayList<>(sorted.size());
+        for (CompiledRule rule : sorted) {
+            productPriceRules.add(rule.rule);
+        }
+        return productPriceRules;
+    }
+
+    /**
+     * Gets the conditions of a rule.
+     * @param productPriceRuleId the rule id
+     * @return the conditions, or <code>null</code> if the rule isn't in the set
+     */
+    public List<GenericValue> getConditions(String productPriceRuleId) {
+        CompiledRule rule = rules.byId.get(productPriceRuleId);
+        return rule == null ? null : rule.conds;
+    }
+
+    /**
+     * Gets the actions of a rule.
+     * @param productPriceRuleId the rule id
+     * @return the actions, or <code>null</code> if the rule isn't in the set
+     */
+    public List<GenericValue> getActions(String productPriceRuleId) {
+        CompiledRule rule = rules.byId.get(productPriceRuleId);
+        return rule == null ? null : rule.actions;
+    }
+
+    // reloads the changed rules, keeping the position of the updated ones
+    private Rules getRules() throws GenericEntityException {
+        if (changedRuleIds.isEmpty()) {
+            return rules;
+        }
+        synchronized (this) {
+            if (changedRuleIds.isEmpty()) {
+                return rules;
+            }
+            Set<String> reloadIds = new HashSet<>(changedRuleIds);
+            changedRuleIds.removeAll(reloadIds);
+            Map<String, CompiledRule> ruleMap = new LinkedHashMap<>(rules.byId);
+            int nextPosition = rules.nextPosition;
+            try {
+                for (String productPriceRuleId : reloadIds) {
+                    GenericValue rule = EntityQuery.use(delegator).from("ProductPriceRule").where("productPriceRuleId", productPriceRuleId)
+                            .queryOne();
+                    CompiledRule previous = ruleMap.remove(productPriceRuleId);
+                    if (rule != null) {
+                        List<GenericValue> conds = EntityQuery.use(delegator).from("ProductPriceCond")
+                                .where("productPriceRuleId", productPriceRuleId).orderBy("productPriceCondSeqId").queryList();
+                        List<GenericValue> actions = EntityQuery.use(delegator).from("ProductPriceAction")
+                                .where("productPriceRuleId", productPriceRuleId).orderBy("productPriceActionSeqId").queryList();
+                        ruleMap.put(productPriceRuleId, new CompiledRule(rule, conds, actions,
+                                previous != null ? previous.position : nextPosition++));
+                    }
+                }
+            } catch (GenericEntityException e) {
+                changedRuleIds.addAll(reloadIds);
+                throw e;
+            }
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Reloaded the price rules " + reloadIds, MODULE);
+            }
+            rules = new Rules(ruleMap, nextPosition);
+            return rules;
+        }
+    }
+
+    // the ids related to a product by the active records of a cached entity
+    private Set<String> getRelatedIds(String entityName, String fieldName, String productId, Timestamp nowTimestamp)
+            throws GenericEntityException {
+        Set<String> ids = new HashSet<>();
+        for (GenericValue value : EntityQuery.use(delegator).from(entityName).where("productId", productId)
+                .cache(true).filterByDate(nowTimestamp).queryList()) {
+            ids.add(value.getString(fieldName));
+        }
+        return ids;
+    }
+
+    private static Map<String, List<GenericValue>> groupByRule(List<GenericValue> values) {
+        Map<String, List<GenericValue>> byRule = new HashMap<>();
+        for (GenericValue value : values) {
+            byRule.computeIfAbsent(value.getString("productPriceRuleId"), k -> new ArrayList<>()).add(value);
+        }
+        return byRule;
+    }
+
+    private static final class CompiledRule {
+        private final GenericValue rule;
+        private final List<GenericValue> conds;
+        private final List<GenericValue> actions;
+        private final int position;
+
+        CompiledRule(GenericValue rule, List<GenericValue> conds, List<GenericValue> actions, int position) {
+            this.rule = rule;
+            this.conds = conds != null ? Collections.unmodifiableList(conds) : Collections.emptyList();
+            this.actions = actions != null ? Collections.unmodifiableList(actions) : Collections.emptyList();
+            this.position = position;
+        }
+
+        String getProductPriceRuleId() {
+            return rule.getString("productPriceRuleId");
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        // the equality condition the rule is indexed by, null if it must always be evaluated
+        GenericValue getIndexCond() {
+            GenericValue indexCond = null;
+            int indexRank = INDEX_INPUTS.size();
+            for (GenericValue cond : conds) {
+                int rank = INDEX_INPUTS.indexOf(cond.getString("inputParamEnumId"));
+                if (rank >= 0 && rank < indexRank && "PRC_EQ".equals(cond.getString("operatorEnumId")) && cond.get("condValue") != null) {
+                    indexCond = cond;
+                    indexRank = rank;
+                }
+            }
+            return indexCond;
+        }
+    }
+
+    // an immutable snapshot of the rules and of their indexes
+    private static final class Rules {
+        private final Map<String, CompiledRule> byId;
+        private final int nextPosition;
+        // input -> condition value -> rules, by the equality condition indexing them
+        private final Map<String, Map<String, List<CompiledRule>>> index = new HashMap<>();
+        private final List<CompiledRule> unindexed = new ArrayList<>();
+        // input -> condition value -> rules, by any of their conditions, as selected for a large rule set
+        private final Map<String, Map<String, List<CompiledRule>>> largeSetIndex = new HashMap<>();
+        private final List<CompiledRule> largeSetAlways = new ArrayList<>();
+
+        Rules(Map<String, CompiledRule> byId, int nextPosition) {
+            this.byId = byId;
+            this.nextPosition = nextPosition;
+            for (CompiledRule rule : byId.values()) {
+                GenericValue indexCond = rule.getIndexCond();
+                if (indexCond != null) {
+                    index.computeIfAbsent(indexCond.getString("inputParamEnumId"), k -> new HashMap<>())
+                            .computeIfAbsent(indexCond.getString("condValue"), k -> new ArrayList<>()).add(rule);
+                } else {
+                    unindexed.add(rule);
+                }
+                boolean always = false;
+                for (GenericValue cond : rule.conds) {
+                    String inputParamEnumId = cond.getString("inputParamEnumId");
+                    if (LARGE_SET_INPUTS.contains(inputParamEnumId)) {
+                        always = true;
+                    } else if (cond.get("condValue") != null) {
+                        largeSetIndex.computeIfAbsent(inputParamEnumId, k -> new HashMap<>())
+                                .computeIfAbsent(cond.getString("condValue"), k -> new ArrayList<>()).add(rule);
+                    }
+                }
+                if (always) {
+                    largeSetAlways.add(rule);
+                }
+            }
+        }
+
+        boolean isIndexed(String inputParamEnumId) {
+            return index.containsKey(inputParamEnumId);
+        }
+
+        void addIndexedRules(Set<CompiledRule> candidates, String inputParamEnumId, String value) {
+            addRules(index, candidates, inputParamEnumId, value);
+        }
+
+        void addLargeSetRules(Set<CompiledRule> candidates, String inputParamEnumId, String value) {
+            addRules(largeSetIndex, candidates, inputParamEnumId, value);
+        }
+
+        private static void addRules(Map<String, Map<String, List<CompiledRule>>> rulesIndex, Set<CompiledRule> candidates,
+                String inputParamEnumId, String value) {
+            if (value == null) {
+                return;
+            }
+            Map<String, List<CompiledRule>> byValue = rulesIndex.get(inputParamEnumId);
+            if (byValue != null) {
+                List<CompiledRule> indexed = byValue.get(value);
+                if (indexed != null) {
+                    candidates.addAll(indexed);
+                }
+            }
+        }
+    }
+}
@@ -23,12 +23,18 @@ import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -41,6 +47,8 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
@@ -63,6 +71,8 @@ public class PriceServices {
     private static final int TAX_SCALE = UtilNumber.getBigDecimalScale("salestax.calc.decimals");
     private static final int TAX_FINAL_SCALE = UtilNumber.getBigDecimalScale("salestax.final.decimals");
     private static final RoundingMode TAX_ROUNDING = UtilNumber.getRoundingMode("salestax.rounding");
+    private static final boolean COMPILED_RULES = UtilProperties.getPropertyAsBoolean("catalog", "price.rules.compiled", true);
+    private static final int BULK_PARALLEL_THRESHOLD = UtilProperties.getPropertyAsInteger("catalog", "price.bulk.parallel.threshold", 20);
 
     /**
      * <p>Calculates the price of a product from pricing rules given the following input, and of course access to the database:</p>
@@ -82,6 +92,12 @@ public class PriceServices {
      * </ul>
      */
     public static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return calculateProductPrice(dctx, context, null);
+    }
+
+    // the prices and the virtual product ids of priceData, when not null, are used instead of querying them for the product
+    private static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context,
+            ProductPriceData priceData) {
         Delegator delegator = dctx.getDelegator();
         LocalDispatcher dispatcher = dctx.getDispatcher();
         Map<String, Object> result = new HashMap<>();
@@ -115,30 +131,12 @@ public class PriceServices {
                     "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()), locale));
         }
         if (UtilValidate.isEmpty(productStoreGroupId)) {
-            if (productStore != null) {
-                try {
-                    if (UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
-                        productStoreGroupId = productStore.getString("primaryStoreGroupId");
-                    } else {
-                        // no ProductStore.primaryStoreGroupId, try ProductStoreGroupMember
-                        List<GenericValue> productStoreGroupMemberList = EntityQuery.use(delegator).from("ProductStoreGroupMember")
-                                .where("productStoreId", productStoreId).orderBy("sequenceNum", "-fromDate").cache(true).queryList();
-                        productStoreGroupMemberList = EntityUtil.filterByDate(productStoreGroupMemberList, true);
-                        if (!productStoreGroupMemberList.isEmpty()) {
-                            GenericValue productStoreGroupMember = EntityUtil.getFirst(productStoreGroupMemberList);
-                            productStoreGroupId = productStoreGroupMember.getString("productStoreGroupId");
-                        }
-                    }
-                } catch (GenericEntityException e) {
-                    Debug.logError(e, "Error getting product store info from the database while calculating price" + e.toString(), MODULE);
-                    return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
-                            "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()), locale));
-                }
-            }
-
-            // still empty, default to _NA_
-            if (UtilValidate.isEmpty(productStoreGroupId)) {
-                productStoreGroupId = "_NA_";
+            try {
+                productStoreGroupId = getProductStoreGroupId(delegator, productStore);
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error getting product store info from the database while calculating price" + e.toString(), MODULE);
+                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
+                        "ProductPriceCannotRetrieveProductStore", UtilMisc.toMap("errorString", e.toString()), locale));
             }
         }
 
@@ -146,11 +144,10 @@ public class PriceServices {
         String currencyDefaultUomId = (String) context.get("currencyUomId");
         String currencyUomIdTo = (String) context.get("currencyUomIdTo");
         if (UtilValidate.isEmpty(currencyDefaultUomId)) {
-            if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("defaultCurrencyUomId"))) {
-                currencyDefaultUomId = productStore.getString("defaultCurrencyUomId");
-            } else {
-                currencyDefaultUomId = EntityUtilProperties.getPropertyValue("general", "currency.uom.id.default", "USD", delegator);
-            }
+            currencyDefaultUomId = getCurrencyUomId(delegator, productStore);
+        }
+        if (priceData != null && !priceData.matches(currencyDefaultUomId, productStoreGroupId)) {
+            priceData = null;
         }
 
         // productPricePurposeId is null assume "PURCHASE", which is equivalent to what prices were before the purpose concept
@@ -165,7 +162,9 @@ public class PriceServices {
 
         // if this product is variant, find the virtual product and apply checks to it as well
         String virtualProductId = null;
-        if ("Y".equals(product.getString("isVariant"))) {
+        if (priceData != null) {
+            virtualProductId = priceData.virtualProductIds.get(productId);
+        } else if ("Y".equals(product.getString("isVariant"))) {
             try {
                 virtualProductId = ProductWorker.getVariantVirtualId(product);
             } catch (GenericEntityException e) {
@@ -177,7 +176,9 @@ public class PriceServices {
 
         // get prices for virtual product if one is found; get all ProductPrice entities for this productId and currencyUomId
         List<GenericValue> virtualProductPrices = null;
-        if (virtualProductId != null) {
+        if (virtualProductId != null && priceData != null) {
+            virtualProductPrices = EntityUtil.filterByDate(priceData.getProductPrices(virtualProductId), true);
+        } else if (virtualProductId != null) {
             try {
                 virtualProductPrices = EntityQuery.use(delegator).from("ProductPrice").where("productId", virtualProductId, "currencyUomId",
                         currencyDefaultUomId, "productStoreGroupId", productStoreGroupId).orderBy("-fromDate").cache(true).queryList();
@@ -226,10 +227,14 @@ public class PriceServices {
 
         // for prices, get all ProductPrice entities for this productId and currencyUomId
         List<GenericValue> productPrices = null;
-        try {
-            productPrices = EntityQuery.use(delegator).from("ProductPrice").where(productPriceEc).orderBy("-fromDate").cache(true).queryList();
-        } catch (GenericEntityException e) {
-            Debug.logError(e, "An error occurred while getting the product prices", MODULE);
+        if (priceData != null) {
+            productPrices = EntityUtil.filterByCondition(priceData.getProductPrices(productId), productPriceEc);
+        } else {
+            try {
+                productPrices = EntityQuery.use(delegator).from("ProductPrice").where(productPriceEc).orderBy("-fromDate").cache(true).queryList();
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "An error occurred while getting the product prices", MODULE);
+            }
         }
         productPrices = EntityUtil.filterByDate(productPrices, true);
 
@@ -241,7 +246,12 @@ public class PriceServices {
         // If there is an agreement between the company and the client, and there is
         // a price for the product in it, it will override the default price of the
         // ProductPrice entity.
-        if (UtilValidate.isNotEmpty(agreementId)) {
+        if (UtilValidate.isNotEmpty(agreementId) && priceData != null && priceData.agreementPrices != null) {
+            GenericValue agreementPriceValue = priceData.agreementPrices.get(productId);
+            if (agreementPriceValue != null && agreementPriceValue.get("price") != null) {
+                defaultPriceValue = agreementPriceValue;
+            }
+        } else if (UtilValidate.isNotEmpty(agreementId)) {
             try {
                 GenericValue agreementPriceValue = EntityQuery.use(delegator).from("AgreementItemAndProductAppl").where("agreementId", agreementId,
                         "productId", productId, "currencyUomId", currencyDefaultUomId).queryFirst();
@@ -437,8 +447,15 @@ public class PriceServices {
             if (errorResult != null) return errorResult;
         } else {
             try {
-                List<GenericValue> allProductPriceRules = makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId,
-                        prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId);
+                PriceRuleSet priceRuleSet = COMPILED_RULES ? PriceRuleSet.getInstance(delegator) : null;
+                List<GenericValue> allProductPriceRules;
+                if (priceRuleSet != null) {
+                    allProductPriceRules = priceRuleSet.getProductPriceRules(optimizeForLargeRuleSet, productId, virtualProductId,
+                            prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId, nowTimestamp);
+                } else {
+                    allProductPriceRules = makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId,
+                            prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId);
+                }
                 allProductPriceRules = EntityUtil.filterByDate(allProductPriceRules, true);
 
                 List<GenericValue> quantityProductPriceRules = null;
@@ -448,8 +465,8 @@ public class PriceServices {
                     quantityProductPriceRules = new LinkedList<>();
                     nonQuantityProductPriceRules = new LinkedList<>();
                     for (GenericValue productPriceRule: allProductPriceRules) {
-                        List<GenericValue> productPriceCondList = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId",
-                                productPriceRule.get("productPriceRuleId")).cache(true).queryList();
+                        List<GenericValue> productPriceCondList = getProductPriceConds(priceRuleSet, productPriceRule.getString("productPriceRuleId"),
+                                delegator);
 
                         boolean foundQuantityInputParam = false;
                         // only consider a rule if all conditions except the quantity condition are true
@@ -486,7 +503,7 @@ public class PriceServices {
                         Map<String, Object> quantCalcResults = calcPriceResultFromRules(ruleListToUse, listPrice, defaultPrice, promoPrice,
                                 wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                                 averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                                webSiteId, partyId, null, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                                webSiteId, partyId, null, currencyDefaultUomId, delegator, nowTimestamp, locale, priceRuleSet);
                         Map<String, Object> quantErrorResult = addGeneralResults(quantCalcResults, competitivePriceValue, specialPromoPriceValue,
                                 productStore,
                                 checkIncludeVat, currencyDefaultUomId, productId, quantity, partyId, dispatcher, locale);
@@ -503,7 +520,7 @@ public class PriceServices {
                     Map<String, Object> calcResults = calcPriceResultFromRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
                             wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                             averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                            webSiteId, partyId, BigDecimal.ONE, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                            webSiteId, partyId, BigDecimal.ONE, currencyDefaultUomId, delegator, nowTimestamp, locale, priceRuleSet);
                     result.putAll(calcResults);
                     // The orderItemPriceInfos out parameter requires a special treatment:
                     // the list of OrderItemPriceInfos generated by the price rule is appended to
@@ -521,7 +538,7 @@ public class PriceServices {
                     Map<String, Object> calcResults = calcPriceResultFromRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
                             wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                             averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                            webSiteId, partyId, quantity, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                            webSiteId, partyId, quantity, currencyDefaultUomId, delegator, nowTimestamp, locale, priceRuleSet);
                     result.putAll(calcResults);
                     // The orderItemPriceInfos out parameter requires a special treatment:
                     // the list of OrderItemPriceInfos generated by the price rule is appended to
@@ -593,6 +610,138 @@ public class PriceServices {
         return result;
     }
 
+    /**
+     * Calculates the prices of a list of products sharing the same store, party, currency, agreement
+     * and quantity. The store group and the currency are resolved once, the ProductPrice records, the
+     * virtual products and the agreement prices of all the products are read by a few queries, then
+     * each product is priced as by calculateProductPrice, in parallel when there are at least
+     * <code>price.bulk.parallel.threshold</code> products and no transaction is in place. Each product id
+     * not found gets an error result instead of a price.
+     */
+    public static Map<String, Object> calculateProductPrices(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Locale locale = (Locale) context.get("locale");
+        List<GenericValue> products = new LinkedList<>();
+        List<GenericValue> productList = UtilGenerics.cast(context.get("products"));
+        if (productList != null) {
+            products.addAll(productList);
+        }
+        List<String> productIds = UtilGenerics.cast(context.get("productIds"));
+
+        Map<String, Object> sharedContext = new HashMap<>(context);
+        sharedContext.remove("products");
+        sharedContext.remove("productIds");
+        ProductPriceData priceData;
+        try {
+            if (UtilValidate.isNotEmpty(productIds)) {
+                products.addAll(EntityQuery.use(delegator).from("Product").where(EntityCondition.makeCondition("productId",
+                        EntityOperator.IN, productIds)).queryList());
+            }
+            GenericValue productStore = EntityQuery.use(delegator).from("ProductStore").where("productStoreId",
+                    context.get("productStoreId")).cache().queryOne();
+            String productStoreGroupId = (String) context.get("productStoreGroupId");
+            if (UtilValidate.isEmpty(productStoreGroupId)) {
+                productStoreGroupId = getProductStoreGroupId(delegator, productStore);
+                sharedContext.put("productStoreGroupId", productStoreGroupId);
+            }
+            String currencyUomId = (String) context.get("currencyUomId");
+            if (UtilValidate.isEmpty(currencyUomId)) {
+                currencyUomId = getCurrencyUomId(delegator, productStore);
+                sharedContext.put("currencyUomId", currencyUomId);
+            }
+            priceData = new ProductPriceData(delegator, products, currencyUomId, productStoreGroupId, (String) context.get("agreementId"));
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error getting product prices from the database while calculating prices", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
+                    "ProductPriceCannotRetrieveProductPrices", UtilMisc.toMap("errorString", e.toString()), locale));
+        }
+
+        Map<String, Map<String, Object>> productPrices = new LinkedHashMap<>();
+        List<String> unknownProductIds = new LinkedList<>();
+        if (UtilValidate.isNotEmpty(productIds)) {
+            Set<String> foundProductIds = new HashSet<>();
+            for (GenericValue product : products) {
+                foundProductIds.add(product.getString("productId"));
+            }
+            for (String productId : productIds) {
+                if (!foundProductIds.contains(productId) && !unknownProductIds.contains(productId)) {
+                    unknownProductIds.add(productId);
+                }
+            }
+        }
+        boolean parallel = products.size() >= BULK_PARALLEL_THRESHOLD;
+        try {
+            // the other threads can't see the data of the current transaction
+            parallel = parallel && !TransactionUtil.isTransactionInPlace();
+        } catch (GenericTransactionException e) {
+            parallel = false;
+        }
+        if (parallel) {
+            List<Future<Map<String, Object>>> futures = new LinkedList<>();
+            for (GenericValue product : products) {
+                Map<String, Object> productContext = new HashMap<>(sharedContext);
+                productContext.put("product", product);
+                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(() -> calculateProductPrice(dctx, productContext, priceData)));
+            }
+            int i = 0;
+            for (Future<Map<String, Object>> future : futures) {
+                String productId = products.get(i++).getString("productId");
+                try {
+                    productPrices.put(productId, future.get());
+                } catch (ExecutionException | InterruptedException e) {
+                    Debug.logError(e, "Error calculating the price of product " + productId, MODULE);
+                    productPrices.put(productId, ServiceUtil.returnError(e.toString()));
+                }
+            }
+        } else {
+            for (GenericValue product : products) {
+                Map<String, Object> productContext = new HashMap<>(sharedContext);
+                productContext.put("product", product);
+                productPrices.put(product.getString("productId"), calculateProductPrice(dctx, productContext, priceData));
+            }
+        }
+        for (String productId : unknownProductIds) {
+            Debug.logWarning("Product " + productId + " not found while calculating prices", MODULE);
+            productPrices.put(productId, ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
+                    "ProductPriceProductNotFound", UtilMisc.toMap("productId", productId), locale)));
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("productPrices", productPrices);
+        return result;
+    }
+
+    private static String getProductStoreGroupId(Delegator delegator, GenericValue productStore) throws GenericEntityException {
+        String productStoreGroupId = null;
+        if (productStore != null) {
+            if (UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
+                productStoreGroupId = productStore.getString("primaryStoreGroupId");
+            } else {
+                // no ProductStore.primaryStoreGroupId, try ProductStoreGroupMember
+                List<GenericValue> productStoreGroupMemberList = EntityQuery.use(delegator).from("ProductStoreGroupMember")
+                        .where("productStoreId", productStore.get("productStoreId")).orderBy("sequenceNum", "-fromDate").cache(true).queryList();
+                productStoreGroupMemberList = EntityUtil.filterByDate(productStoreGroupMemberList, true);
+                if (!productStoreGroupMemberList.isEmpty()) {
+                    GenericValue productStoreGroupMember = EntityUtil.getFirst(productStoreGroupMemberList);
+                    productStoreGroupId = productStoreGroupMember.getString("productStoreGroupId");
+                }
+            }
+        }
+
+        // still empty, default to _NA_
+        if (UtilValidate.isEmpty(productStoreGroupId)) {
+            productStoreGroupId = "_NA_";
+        }
+        return productStoreGroupId;
+    }
+
+    private static String getCurrencyUomId(Delegator delegator, GenericValue productStore) {
+        if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("defaultCurrencyUomId"))) {
+            return productStore.getString("defaultCurrencyUomId");
+        }
+        return EntityUtilProperties.getPropertyValue("general", "currency.uom.id.default", "USD", delegator);
+    }
+
     private static GenericValue getPriceValueForType(String productPriceTypeId, List<GenericValue> productPriceList,
                                                      List<GenericValue> secondaryPriceList) {
         List<GenericValue> filteredPrices = EntityUtil.filterByAnd(productPriceList, UtilMisc.toMap("productPriceTypeId", productPriceTypeId));
@@ -844,6 +993,24 @@ public class PriceServices {
                                                                String webSiteId, String partyId, BigDecimal quantity, String currencyUomId,
                                                                Delegator delegator, Timestamp nowTimestamp,
                                                                Locale locale) throws GenericEntityException {
+        return calcPriceResultFromRules(productPriceRules, listPrice, defaultPrice, promoPrice, wholesalePrice, maximumPriceValue,
+                minimumPriceValue, validPriceFound, averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
+                webSiteId, partyId, quantity, currencyUomId, delegator, nowTimestamp, locale, null);
+    }
+
+    /**
+     * Calculates the price from the rules, reading their conditions and actions from a rule set.
+     * @param priceRuleSet the rule set holding the rules, or <code>null</code> to read them from the entity cache
+     */
+    public static Map<String, Object> calcPriceResultFromRules(List<GenericValue> productPriceRules, BigDecimal listPrice, BigDecimal defaultPrice,
+                                                               BigDecimal promoPrice,
+                                                               BigDecimal wholesalePrice, GenericValue maximumPriceValue,
+                                                               GenericValue minimumPriceValue, boolean validPriceFound,
+                                                               GenericValue averageCostValue, String productId, String virtualProductId,
+                                                               String prodCatalogId, String productStoreGroupId,
+                                                               String webSiteId, String partyId, BigDecimal quantity, String currencyUomId,
+                                                               Delegator delegator, Timestamp nowTimestamp,
+                                                               Locale locale, PriceRuleSet priceRuleSet) throws GenericEntityException {
 
         Map<String, Object> calcResults = new HashMap<>();
 
@@ -882,8 +1049,7 @@ public class PriceServices {
             // check all conditions
             boolean allTrue = true;
             StringBuilder condsDescription = new StringBuilder();
-            List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId",
-                    productPriceRuleId).cache(true).queryList();
+            List<GenericValue> productPriceConds = getProductPriceConds(priceRuleSet, productPriceRuleId, delegator);
             for (GenericValue productPriceCond: productPriceConds) {
 
                 totalConds++;
@@ -926,8 +1092,11 @@ public class PriceServices {
                     isSale = true;
                 }
 
-                List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId",
-                        productPriceRuleId).cache(true).queryList();
+                List<GenericValue> productPriceActions = priceRuleSet != null ? priceRuleSet.getActions(productPriceRuleId) : null;
+                if (productPriceActions == null) {
+                    productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId",
+                            productPriceRuleId).cache(true).queryList();
+                }
                 for (GenericValue productPriceAction: productPriceActions) {
 
                     totalActions++;
@@ -1109,6 +1278,16 @@ public class PriceServices {
         return calcResults;
     }
 
+    private static List<GenericValue> getProductPriceConds(PriceRuleSet priceRuleSet, String productPriceRuleId, Delegator delegator)
+            throws GenericEntityException {
+        List<GenericValue> productPriceConds = priceRuleSet != null ? priceRuleSet.getConditions(productPriceRuleId) : null;
+        if (productPriceConds == null) {
+            productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId",
+                    productPriceRuleId).cache(true).queryList();
+        }
+        return productPriceConds;
+    }
+
     public static boolean checkPriceCondition(GenericValue productPriceCond, String productId, String virtualProductId, String prodCatalogId,
             String productStoreGroupId, String webSiteId, String partyId, BigDecimal quantity, BigDecimal listPrice,
             String currencyUomId, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
@@ -1481,4 +1660,83 @@ public class PriceServices {
         result.put("orderItemPriceInfos", orderItemPriceInfos);
         return result;
     }
+
+    /**
+     * Reloads a changed price rule in the compiled rule set on its next use, called by the ECAs of
+     * the ProductPriceRule, ProductPriceCond and ProductPriceAction entities.
+     */
+    public static Map<String, Object> productPriceRuleChanged(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PriceRuleSet.ruleChanged(dctx.getDelegator(), (String) context.get("productPriceRuleId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * The ProductPrice records, virtual products and agreement prices of a list of products, read
+     * together for calculateProductPrices.
+     */
+    private static final class ProductPriceData {
+        private final String currencyUomId;
+        private final String productStoreGroupId;
+        private final Map<String, String> virtualProductIds = new HashMap<>();
+        // the records of the currency and store group of each product and virtual product, the latest first
+        private final Map<String, List<GenericValue>> productPrices = new HashMap<>();
+        private final Map<String, GenericValue> agreementPrices;
+
+        ProductPriceData(Delegator delegator, List<GenericValue> products, String currencyUomId, String productStoreGroupId,
+                String agreementId) throws GenericEntityException {
+            this.currencyUomId = currencyUomId;
+            this.productStoreGroupId = productStoreGroupId;
+            Set<String> productIds = new HashSet<>();
+            Set<String> variantIds = new HashSet<>();
+            for (GenericValue product : products) {
+                productIds.add(product.getString("productId"));
+                if ("Y".equals(product.getString("isVariant"))) {
+                    variantIds.add(product.getString("productId"));
+                }
+            }
+            if (!variantIds.isEmpty()) {
+                List<GenericValue> productAssocs = EntityQuery.use(delegator).from("ProductAssoc")
+                        .where(EntityCondition.makeCondition("productIdTo", EntityOperator.IN, variantIds),
+                                EntityCondition.makeCondition("productAssocTypeId", "PRODUCT_VARIANT"))
+                        .filterByDate().queryList();
+                for (GenericValue productAssoc : productAssocs) {
+                    virtualProductIds.putIfAbsent(productAssoc.getString("productIdTo"), productAssoc.getString("productId"));
+                }
+            }
+            Set<String> priceProductIds = new HashSet<>(productIds);
+            priceProductIds.addAll(virtualProductIds.values());
+            if (!priceProductIds.isEmpty()) {
+                List<GenericValue> prices = EntityQuery.use(delegator).from("ProductPrice")
+                        .where(EntityCondition.makeCondition("productId", EntityOperator.IN, priceProductIds),
+                                EntityCondition.makeCondition("currencyUomId", currencyUomId),
+                                EntityCondition.makeCondition("productStoreGroupId", productStoreGroupId))
+                        .orderBy("-fromDate").queryList();
+                for (GenericValue price : prices) {
+                    productPrices.computeIfAbsent(price.getString("productId"), k -> new LinkedList<>()).add(price);
+                }
+            }
+            if (UtilValidate.isNotEmpty(agreementId) && !productIds.isEmpty()) {
+                agreementPrices = new HashMap<>();
+                List<GenericValue> agreementItems = EntityQuery.use(delegator).from("AgreementItemAndProductAppl")
+                        .where(EntityCondition.makeCondition("agreementId", agreementId),
+                                EntityCondition.makeCondition("productId", EntityOperator.IN, productIds),
+                                EntityCondition.makeCondition("currencyUomId", currencyUomId))
+                        .queryList();
+                for (GenericValue agreementItem : agreementItems) {
+                    agreementPrices.putIfAbsent(agreementItem.getString("productId"), agreementItem);
+                }
+            } else {
+                agreementPrices = null;
+            }
+        }
+
+        boolean matches(String currencyUomId, String productStoreGroupId) {
+            return this.currencyUomId.equals(currencyUomId) && this.productStoreGroupId.equals(productStoreGroupId);
+        }
+
+        List<GenericValue> getProductPrices(String productId) {
+            List<GenericValue> prices = productPrices.get(productId);
+            return prices != null ? prices : new LinkedList<>();
+        }
+    }
 }
@@ -23,18 +23,17 @@ import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Stream;
 
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -44,10 +43,17 @@ import org.apache.ofbiz.base.util.UtilGenerics;
  *
  * Provide a combined view for a collection of maps which are organized in a deque.
  * All write operations affect only the head of the deque.
+ * <p>
+ * The maps of the deque are shared with other contexts (see {@link MapStack#standAloneStack()})
+ * and can be modified directly, so lookups always walk the deque rather than relying on a
+ * flattened copy; each map is probed only once per lookup.
  */
 public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
 
-    private Deque<Map<K, V>> contexts = new LinkedList<>();
+    // marker returned by lookup when a map has no mapping for a key
+    private static final Object MISSING = new Object();
+
+    private Deque<Map<K, V>> contexts = new ArrayDeque<>();
 
     /**
      * Gets contexts.
@@ -119,7 +125,12 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public boolean containsKey(Object key) {
-        return contexts.stream().anyMatch(ctx -> ctx.containsKey(key));
+        for (Map<K, V> ctx: contexts) {
+            if (ctx.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /* (non-Javadoc)
@@ -130,23 +141,30 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
         return entryStream().anyMatch(e -> Objects.equals(value, e.getValue()));
     }
 
-    private V withContextContainingKey(Object key, Function<Map<K, V>, V> f) {
+    /* (non-Javadoc)
+     * @see java.util.Map#get(java.lang.Object)
+     */
+    @Override
+    public V get(Object key) {
+        V missing = UtilGenerics.cast(MISSING);
         for (Map<K, V> ctx: contexts) {
-            /* Use `containsKey` rather than checking for null.
-               This allows a null value at the head of the deque to override the followings. */
-            if (ctx.containsKey(key)) {
-                return f.apply(ctx);
+            // a null value at the head of the deque overrides the followings
+            V value = lookup(ctx, key, missing);
+            if (value != missing) {
+                return value;
             }
         }
         return null;
     }
 
-    /* (non-Javadoc)
-     * @see java.util.Map#get(java.lang.Object)
-     */
-    @Override
-    public V get(Object key) {
-        return withContextContainingKey(key, ctx -> ctx.get(key));
+    /* The value of a key in a map of the deque, or `missing` when the map has no mapping for the key.
+       The hash maps tell apart a missing key from a null value in a single probe; the other maps,
+       such as the entity values which reject the keys that aren't fields, are asked if they contain the key first. */
+    private static <K, V> V lookup(Map<K, V> ctx, Object key, V missing) {
+        if (ctx instanceof HashMap<?, ?>) {
+            return ctx.getOrDefault(key, missing);
+        }
+        return ctx.containsKey(key) ? ctx.get(key) : missing;
     }
 
     /* (non-Javadoc)
@@ -154,13 +172,21 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public V get(String name, Locale locale) {
-        return withContextContainingKey(name, ctx -> {
+        V missing = UtilGenerics.cast(MISSING);
+        for (Map<K, V> ctx: contexts) {
             if (ctx instanceof LocalizedMap<?>) {
-                LocalizedMap<V> lmap = UtilGenerics.cast(ctx);
-                return lmap.get(name, locale);
+                if (ctx.containsKey(name)) {
+                    LocalizedMap<V> lmap = UtilGenerics.cast(ctx);
+                    return lmap.get(name, locale);
+                }
+            } else {
+                V value = lookup(ctx, name, missing);
+                if (value != missing) {
+                    return value;
+                }
             }
-            return ctx.get(name);
-        });
+        }
+        return null;
     }
 
     /* (non-Javadoc)
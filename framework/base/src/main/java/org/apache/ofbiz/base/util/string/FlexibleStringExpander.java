@@ -18,12 +18,18 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util.string;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import javax.el.PropertyNotFoundException;
@@ -58,6 +64,8 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
     public static final String CLOSE_BRACKET = "}";
     private static final UtilCache<Key, FlexibleStringExpander> EXPR_CACHE = UtilCache.createUtilCache("flexibleStringExpander.ExpressionCache");
     private static final FlexibleStringExpander NULL_EXPR = new ConstSimpleElem(new char[0]);
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge",
+            "true", "false", "null", "empty", "div", "mod", "instanceof"));
 
     /**
      * Returns <code>true</code> if <code>fse</code> contains a <code>String</code> constant.
@@ -169,6 +177,25 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
         return fse.expandString(context, timeZone, locale);
     }
 
+    /** Evaluate an expression and append the result to <code>out</code>.
+     * Null expressions append nothing.
+     * A null <code>context</code> argument will append the original expression.
+     * @param out The <code>Appendable</code> receiving the result
+     * @param expression The original expression
+     * @param context The evaluation context
+     * @throws IOException if <code>out</code> cannot be written
+     */
+    public static void expandString(Appendable out, String expression, Map<String, ? extends Object> context) throws IOException {
+        if (expression == null) {
+            return;
+        }
+        if (context == null || !expression.contains(OPEN_BRACKET)) {
+            out.append(expression);
+            return;
+        }
+        FlexibleStringExpander.getInstance(expression).expandString(out, context, null, null);
+    }
+
     /** Returns a <code>FlexibleStringExpander</code> object. <p>A null or
      * empty argument will return a <code>FlexibleStringExpander</code>
      * object that represents an empty expression. That object is a shared
@@ -472,6 +499,55 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
         return buffer.toString();
     }
 
+    /** Evaluate this object's expression and append the result to <code>out</code>.
+     * Constant parts are copied from the original expression and evaluated parts are
+     * written directly, without building an intermediate <code>String</code>.
+     * Null or empty expressions append nothing.
+     * A <code>null context</code> argument will append the original expression.
+     * @param out The <code>Appendable</code> receiving the result
+     * @param context The evaluation context
+     * @param timeZone The time zone to be used for localization
+     * @param locale The locale to be used for localization
+     * @throws IOException if <code>out</code> cannot be written
+     */
+    public void expandString(Appendable out, Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) throws IOException {
+        if (context == null) {
+            out.append(this.toString());
+            return;
+        }
+        appendTo(out, context, getTimeZone(timeZone, context), getLocale(locale, context));
+    }
+
+    /** Appends the evaluation result of this expression, time zone and locale being already resolved. */
+    protected void appendTo(Appendable out, Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) throws IOException {
+        Object obj = get(context, timeZone, locale);
+        if (obj == null) {
+            return;
+        }
+        if (obj instanceof String) {
+            out.append((String) obj);
+            return;
+        }
+        String str;
+        try {
+            str = String.valueOf(ObjectType.simpleTypeOrObjectConvert(obj, "String", null, timeZone, locale, true));
+        } catch (GeneralException | RuntimeException e) {
+            Debug.log(e, MODULE);
+            str = String.valueOf(obj);
+        }
+        out.append(str);
+    }
+
+    private static void appendChars(Appendable out, char[] chars, int offset, int length) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, offset, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, offset, length);
+        } else {
+            out.append(CharBuffer.wrap(chars, offset, length));
+        }
+    }
+
     /** Evaluate this object's expression and return the result as an <code>Object</code>.
      * Null or empty expressions return an empty <code>String</code>.
      * A <code>null context</code> argument will return the original expression.
@@ -590,6 +666,11 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
         protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             return isEmpty() ? null : getOriginal();
         }
+
+        @Override
+        protected void appendTo(Appendable out, Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) throws IOException {
+            appendChars(out, this.getChars(), 0, this.getChars().length);
+        }
     }
 
     /** An object that represents a <code>String</code> constant portion of an expression. */
@@ -607,6 +688,11 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
         public String expandString(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             return new String(this.getChars(), this.getOffset(), this.getLength());
         }
+
+        @Override
+        protected void appendTo(Appendable out, Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) throws IOException {
+            appendChars(out, this.getChars(), this.getOffset(), this.getLength());
+        }
     }
 
     /** An object that represents a currency portion of an expression. */
@@ -660,6 +746,13 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
             }
             return buffer.toString();
         }
+
+        @Override
+        protected void appendTo(Appendable out, Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) throws IOException {
+            for (FlexibleStringExpander child : this.childElems) {
+                child.appendTo(out, context, timeZone, locale);
+            }
+        }
     }
 
     /** An object that represents a <code>${[groovy|bsh]:}</code> expression. */
@@ -735,17 +828,49 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
     /** An object that represents a simple, non-nested expression. */
     protected static class VarElem extends ArrayOffsetString {
         private final char[] bracketedOriginal;
+        // identifiers of a plain a.b.c expression, resolved without UEL when only maps are traversed; null otherwise
+        private final String[] mapPath;
 
         protected VarElem(char[] chars, int offset, int length, int parseStart, int parseLength) {
             super(chars, offset, length);
-            this.bracketedOriginal = OPEN_BRACKET.concat(UelUtil.prepareExpression(new String(chars, parseStart, parseLength)))
-                    .concat(CLOSE_BRACKET).toCharArray();
+            String expression = new String(chars, parseStart, parseLength);
+            this.bracketedOriginal = OPEN_BRACKET.concat(UelUtil.prepareExpression(expression)).concat(CLOSE_BRACKET).toCharArray();
+            this.mapPath = parseMapPath(expression);
+        }
+
+        /**
+         * Splits an expression made only of identifiers separated by dots.
+         * @param expression the expression without its brackets
+         * @return the identifiers, or <code>null</code> when the expression uses any other UEL construct
+         */
+        private static String[] parseMapPath(String expression) {
+            if (expression.isEmpty() || expression.charAt(expression.length() - 1) == '.') {
+                return null;
+            }
+            String[] path = expression.split("\\.");
+            for (String identifier : path) {
+                if (identifier.isEmpty() || !Character.isJavaIdentifierStart(identifier.charAt(0)) || RESERVED_WORDS.contains(identifier)) {
+                    return null;
+                }
+                for (int i = 1; i < identifier.length(); i++) {
+                    if (!Character.isJavaIdentifierPart(identifier.charAt(i))) {
+                        return null;
+                    }
+                }
+            }
+            return path;
         }
 
         @Override
         protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             Object obj = null;
             try {
+                if (this.mapPath != null) {
+                    Object resolved = UelUtil.resolveMapPath(context, this.mapPath);
+                    if (resolved != UelUtil.UNRESOLVED_PATH) {
+                        return resolved;
+                    }
+                }
                 obj = UelUtil.evaluate(context, new String(this.bracketedOriginal));
             } catch (PropertyNotFoundException e) {
                 if (Debug.verboseOn()) {
@@ -493,6 +493,43 @@ public final class UelUtil {
         return result;
     }
 
+    /** Marker returned by {@link #resolveMapPath(Map, String[])} when the path cannot be resolved through maps only. */
+    static final Object UNRESOLVED_PATH = new Object();
+
+    /** Resolves a chain of identifiers (<code>a.b.c</code>) without parsing the expression nor creating
+     * an <code>ELContext</code>. The result is the same as the one of {@link #evaluate(Map, String)} as long as
+     * each intermediate value is a <code>Map</code>, otherwise {@link #UNRESOLVED_PATH} is returned
+     * and the expression must be evaluated by UEL.
+     * @param context Evaluation context (variables)
+     * @param path the identifiers of the chain
+     * @return Result object or {@link #UNRESOLVED_PATH}
+     */
+    static Object resolveMapPath(Map<String, ? extends Object> context, String[] path) {
+        Object base = resolveVariable(path[0], context, null);
+        for (int i = 1; i < path.length; i++) {
+            if (base == null) {
+                return null;
+            }
+            if (base instanceof LocalizedMap<?>) {
+                base = resolveVariable(path[i], UtilGenerics.cast(base), getLocalizedMapLocale(context));
+            } else if (base instanceof Map<?, ?>) {
+                base = resolveVariable(path[i], UtilGenerics.cast(base), null);
+            } else {
+                return UNRESOLVED_PATH;
+            }
+        }
+        return base;
+    }
+
+    /** Returns the locale used to read <code>LocalizedMap</code> elements, the same way <code>ExtendedMapResolver</code> does. */
+    private static Locale getLocalizedMapLocale(Map<String, ? extends Object> context) {
+        Object locale = resolveVariable(LOCALIZED_MAP_LOCALE_KEY, context, null);
+        if (locale == null) {
+            locale = resolveVariable("locale", context, null);
+        }
+        return locale instanceof Locale ? (Locale) locale : Locale.getDefault();
+    }
+
     private static Object resolveVariable(String variable, Map<String, ? extends Object> variables, Locale locale) {
         Object obj = null;
         String createObjectType = null;
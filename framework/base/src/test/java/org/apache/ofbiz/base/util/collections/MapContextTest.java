@@ -19,15 +19,22 @@
 package org.apache.ofbiz.base.util.collections;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
 import org.junit.Test;
 
 public class MapContextTest {
@@ -93,4 +100,47 @@ public class MapContextTest {
         assertThat("insertion order of LinkedHashMap is preserved by the 'values' method",
                 mc.values(), contains("1", "1", "3", "8", "1", "14"));
     }
+
+    // Checks that a key mapped to null in an upper layer hides the lower layers.
+    @Test
+    public void nullValueOverridesLowerLayers() {
+        Map<String, String> bottom = new HashMap<>();
+        bottom.put("a", "bottom");
+        bottom.put("b", "bottom");
+        Map<String, String> top = new HashMap<>();
+        top.put("a", null);
+        MapContext<String, String> mc = new MapContext<>();
+        mc.push(bottom);
+        mc.push(top);
+
+        assertThat("null value at the head is returned", mc.get("a"), nullValue());
+        assertThat("null value at the head is returned by localized get", mc.get("a", Locale.ROOT), nullValue());
+        assertThat("lower layer value is returned", mc.get("b"), is("bottom"));
+        assertThat("missing key", mc.get("c"), nullValue());
+        assertThat("null value is contained", mc.containsKey("a"), is(true));
+        mc.pop();
+        assertThat("lower layer value is returned once the head is popped", mc.get("a"), is("bottom"));
+    }
+
+    @Test
+    public void entityValueLayerDoesNotHideLowerLayers() {
+        ModelEntity modelEntity = new ModelEntity();
+        modelEntity.addField(ModelField.create(modelEntity, "testId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "description", "description", false));
+        GenericValue row = GenericValue.create(modelEntity);
+        row.dangerousSetNoCheckButFast(modelEntity.getField("testId"), "T1");
+        Map<String, Object> bottom = new HashMap<>();
+        bottom.put("parameters", "bottom");
+        bottom.put("description", "bottom");
+        MapContext<String, Object> mc = new MapContext<>();
+        mc.push(bottom);
+        mc.push(row);
+
+        // the entity values reject the keys which aren't fields in get
+        assertThat("key of a lower layer", mc.get("parameters"), is("bottom"));
+        assertThat("key of a lower layer by localized get", mc.get("parameters", Locale.ROOT), is("bottom"));
+        assertThat("field of the entity value", mc.get("testId"), is("T1"));
+        assertThat("field not set in the entity value", mc.get("description"), is("bottom"));
+        assertThat("missing key", mc.get("missing"), nullValue());
+    }
 }
@@ -21,6 +21,8 @@ package org.apache.ofbiz.base.util.string;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,6 +33,7 @@ import java.util.TimeZone;
 
 import org.apache.ofbiz.base.conversion.AbstractConverter;
 import org.apache.ofbiz.base.conversion.ConversionException;
+import org.apache.ofbiz.base.util.collections.MapStack;
 import org.junit.Test;
 
 public class FlexibleStringExpanderTests {
@@ -326,4 +329,40 @@ public class FlexibleStringExpanderTests {
         fseTest("groovy: return BigDecimal", "${groovy: return amount;}", testMap, null, LOCALE_TO_TEST,
                 "1,234,567.89", new BigDecimal("1234567.89"), false);
     }
+
+    @Test
+    public void testExpandToAppendable() throws IOException {
+        Map<String, Object> nestedMap = new HashMap<>();
+        nestedMap.put("var", "Nested");
+        MapStack<String> context = MapStack.create();
+        context.put("var", "World");
+        context.put("amount", new BigDecimal("1234567.89"));
+        context.put("nestedMap", nestedMap);
+        context.put("throwNPE", new ThrowNPE());
+        context.push();
+        context.put("var", "Pushed");
+        String[] inputs = {"plain", "Hello ${var}!", "${nestedMap.var}", "${nestedMap.missing}!", "${nestedMap.var.length}", "${amount}",
+            "${'Hello'} ${var}", "${nullVar$string}!", "${noVar.noProp}", "${throwNPE.value}!", "${amount?currency(USD)}", "\\${var}"};
+        for (String input : inputs) {
+            FlexibleStringExpander fse = FlexibleStringExpander.getInstance(input);
+            String expected = fse.expandString(context, TIME_ZONE_TO_TEST, LOCALE_TO_TEST);
+            StringBuilder builder = new StringBuilder("prefix:");
+            fse.expandString(builder, context, TIME_ZONE_TO_TEST, LOCALE_TO_TEST);
+            assertEquals("StringBuilder:" + input, "prefix:" + expected, builder.toString());
+            StringWriter writer = new StringWriter();
+            fse.expandString(writer, context, TIME_ZONE_TO_TEST, LOCALE_TO_TEST);
+            assertEquals("Writer:" + input, expected, writer.toString());
+            writer = new StringWriter();
+            FlexibleStringExpander.expandString(writer, input, context);
+            assertEquals("static:" + input, FlexibleStringExpander.expandString(input, context), writer.toString());
+        }
+        assertEquals("map path through MapStack", "Hello Pushed!", FlexibleStringExpander.expandString("Hello ${var}!", context));
+        assertEquals("map path through nested Map", "Nested", FlexibleStringExpander.expandString("${nestedMap.var}", context));
+        assertEquals("map path with type suffix", "!", FlexibleStringExpander.expandString("${nullVar$string}!", context));
+        StringBuilder builder = new StringBuilder();
+        FlexibleStringExpander.getInstance("${var}").expandString(builder, null, null, null);
+        assertEquals("null context", "${var}", builder.toString());
+        FlexibleStringExpander.expandString(builder, null, context);
+        assertEquals("null expression", "${var}", builder.toString());
+    }
 }
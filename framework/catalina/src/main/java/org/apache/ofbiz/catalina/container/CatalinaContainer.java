@@ -20,6 +20,7 @@ package org.apache.ofbiz.catalina.container;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -40,6 +41,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.Host;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Valve;
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.authenticator.SingleSignOn;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.core.StandardContext;
@@ -72,7 +74,9 @@ import org.apache.ofbiz.base.start.StartupCommand;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.webapp.StaticResourceCache;
 import org.apache.ofbiz.webapp.WebAppUtil;
+import org.apache.ofbiz.webapp.control.StaticResourceCacheFilter;
 import org.apache.tomcat.JarScanner;
 import org.apache.tomcat.util.IntrospectionUtils;
 import org.apache.tomcat.util.descriptor.web.FilterDef;
@@ -635,6 +639,24 @@ public class CatalinaContainer implements Container {
             context.addFilterMap(requestDumperFilterMap);
         }
 
+        // precompressed and content versioned static resources
+        if ("true".equals(initParameters.get("precompressStaticResources"))) {
+            StaticResourceCache.registerWebapp(context.getPath(), Paths.get(location));
+            Wrapper defaultServlet = (Wrapper) context.findChild("default");
+            if (defaultServlet != null) {
+                defaultServlet.addInitParameter("precompressed", "true");
+            }
+            FilterDef staticResourceFilterDef = new FilterDef();
+            staticResourceFilterDef.setFilterClass(StaticResourceCacheFilter.class.getName());
+            staticResourceFilterDef.setFilterName("StaticResourceCache");
+            context.addFilterDef(staticResourceFilterDef);
+
+            FilterMap staticResourceFilterMap = new FilterMap();
+            staticResourceFilterMap.setFilterName("StaticResourceCache");
+            staticResourceFilterMap.addURLPattern("/*");
+            context.addFilterMap(staticResourceFilterMap);
+        }
+
         // set the init parameters
         initParameters.entrySet().forEach(entry -> context.addParameter(entry.getKey(), entry.getValue()));
 
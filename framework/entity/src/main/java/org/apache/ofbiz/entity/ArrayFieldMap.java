@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.model.ModelEntity;
+
+/**
+ * Map holding the field values of a {@link GenericEntity} in an array indexed by the
+ * position of each field in its {@link ModelEntity} (see {@link ModelEntity#getFieldIndex(String)}),
+ * instead of one hash map entry per field.
+ * <p>
+ * Like a <code>HashMap</code> it makes the difference between a field set to <code>null</code>
+ * and a field not set. Once flagged as synchronized with the data source, the first change of
+ * a field records its original value and flags the field in a bit set, so the original database
+ * values are available without copying all the fields after each read.
+ * <p>
+ * Writes are not synchronized, as for the <code>HashMap</code> this map replaces.
+ * It is serialized as a <code>HashMap</code>.
+ */
+@SuppressWarnings("serial")
+final class ArrayFieldMap extends AbstractMap<String, Object> implements Serializable {
+
+    // stored in place of null, a null slot means the field is not set
+    private static final Object NULL_VALUE = new Object();
+
+    private final transient ModelEntity modelEntity;
+    private transient Object[] values;
+    private transient int size;
+    // fields not part of the model entity, seldom used
+    private transient Map<String, Object> otherValues;
+    private transient boolean immutable;
+    private transient boolean synchronizedWithDatasource;
+    // fields changed since the last synchronization with the data source, and their original values
+    private transient long[] changedBits;
+    private transient Object[] originalValues;
+
+    ArrayFieldMap(ModelEntity modelEntity) {
+        this.modelEntity = modelEntity;
+        this.values = new Object[modelEntity.getFieldIndexSize()];
+    }
+
+    ArrayFieldMap(ArrayFieldMap source) {
+        this.modelEntity = source.modelEntity;
+        this.values = source.values.clone();
+        this.size = source.size;
+        if (source.otherValues != null) {
+            this.otherValues = new HashMap<>(source.otherValues);
+        }
+    }
+
+    private int indexOf(Object key) {
+        return key instanceof String ? modelEntity.getFieldIndex((String) key) : -1;
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL_VALUE ? null : value;
+    }
+
+    private void assertIsMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("This field map is immutable");
+        }
+    }
+
+    private void recordOriginalValue(int index) {
+        if (!synchronizedWithDatasource) {
+            return;
+        }
+        int word = index >>> 6;
+        if (changedBits == null) {
+            changedBits = new long[(values.length + 63) >>> 6];
+            originalValues = new Object[values.length];
+        } else if (word >= changedBits.length) {
+            changedBits = Arrays.copyOf(changedBits, word + 1);
+        }
+        if ((changedBits[word] & (1L << index)) == 0) {
+            changedBits[word] |= 1L << index;
+            if (index >= originalValues.length) {
+                originalValues = Arrays.copyOf(originalValues, values.length);
+            }
+            originalValues[index] = index < values.length ? values[index] : null;
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return otherValues == null ? null : otherValues.get(key);
+        }
+        return index < values.length ? unmask(values[index]) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return otherValues != null && otherValues.containsKey(key);
+        }
+        return index < values.length && values[index] != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        assertIsMutable();
+        int index = indexOf(key);
+        if (index < 0) {
+            if (otherValues == null) {
+                otherValues = new HashMap<>();
+            }
+            return otherValues.put(key, value);
+        }
+        if (index >= values.length) {
+            // the field was added to the model entity after this map was created
+            values = Arrays.copyOf(values, modelEntity.getFieldIndexSize());
+        }
+        recordOriginalValue(index);
+        Object old = values[index];
+        values[index] = mask(value);
+        if (old == null) {
+            size++;
+        }
+        return unmask(old);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        assertIsMutable();
+        int index = indexOf(key);
+        if (index < 0) {
+            return otherValues == null ? null : otherValues.remove(key);
+        }
+        if (index >= values.length || values[index] == null) {
+            return null;
+        }
+        recordOriginalValue(index);
+        Object old = values[index];
+        values[index] = null;
+        size--;
+        return unmask(old);
+    }
+
+    @Override
+    public void clear() {
+        assertIsMutable();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                recordOriginalValue(i);
+                values[i] = null;
+            }
+        }
+        size = 0;
+        otherValues = null;
+    }
+
+    @Override
+    public int size() {
+        return otherValues == null ? size : size + otherValues.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ArrayFieldMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Flags the current values as the ones of the data source, changes are recorded from now on.
+     */
+    void synchronizedWithDatasource() {
+        this.synchronizedWithDatasource = true;
+        this.changedBits = null;
+        this.originalValues = null;
+    }
+
+    /**
+     * Returns <code>true</code> if the values were synchronized with the data source.
+     */
+    boolean isSynchronizedWithDatasource() {
+        return synchronizedWithDatasource;
+    }
+
+    /**
+     * Gets the value a field had when the values were last synchronized with the data source.
+     * @param name the field name
+     * @return the original value
+     */
+    Object getOriginalValue(String name) {
+        int index = indexOf(name);
+        int word = index >>> 6;
+        if (index >= 0 && changedBits != null && word < changedBits.length && (changedBits[word] & (1L << index)) != 0) {
+            return unmask(originalValues[index]);
+        }
+        return get(name);
+    }
+
+    /**
+     * Makes this map read only, any later change throws an <code>UnsupportedOperationException</code>.
+     */
+    void setImmutable() {
+        this.immutable = true;
+    }
+
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int nextIndex = -1;
+        private int lastIndex = -1;
+        private Iterator<Map.Entry<String, Object>> otherIterator;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                nextIndex++;
+            } while (nextIndex < values.length && values[nextIndex] == null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextIndex < values.length) {
+                return true;
+            }
+            if (otherIterator == null && otherValues != null) {
+                otherIterator = otherValues.entrySet().iterator();
+            }
+            return otherIterator != null && otherIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (nextIndex < values.length) {
+                lastIndex = nextIndex;
+                advance();
+                return new AbstractMap.SimpleImmutableEntry<>(modelEntity.getFieldIndexName(lastIndex), unmask(values[lastIndex]));
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastIndex = -1;
+            return otherIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            assertIsMutable();
+            if (lastIndex >= 0) {
+                ArrayFieldMap.this.remove(modelEntity.getFieldIndexName(lastIndex));
+                lastIndex = -1;
+            } else if (otherIterator != null) {
+                otherIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
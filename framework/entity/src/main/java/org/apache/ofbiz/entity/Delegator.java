@@ -156,6 +156,18 @@ public interface Delegator {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /**
+     * Creates Entities in the form of GenericValues and writes them to the
+     * datasource, the consecutive values of the same entity being written with
+     * a single JDBC batch. The entity ECA rules are run for each value as by
+     * {@link #create(GenericValue)}.
+     * @param values
+     *            List of GenericValue instances to create, none of them
+     *            existing in the datasource
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
     /**
      * Creates a Entity in the form of a GenericValue and write it to the
      * database
@@ -656,6 +668,21 @@ public interface Delegator {
      */
     GenericValue getRelatedOne(String relationName, GenericValue value, boolean useCache) throws GenericEntityException;
 
+    /**
+     * Loads the values of a relation for all the values of a list at once, with a query per chunk
+     * of related keys instead of a query per value. The related values are attached to each value
+     * of the list, the next calls of getRelated or getRelatedOne for this relation on these values
+     * return them without querying the database, as long as the key fields of the value are not
+     * changed. The related values are shared by the values referencing the same rows.
+     * @param values
+     *            GenericValue instances of the same entity
+     * @param relationName
+     *            String containing the relation name which is the combination
+     *            of relation.title and relation.rel-entity-name as specified in
+     *            the entity XML definition file
+     */
+    void prefetchRelated(List<GenericValue> values, String relationName) throws GenericEntityException;
+
     void initEntityEcaHandler();
 
     void initDistributedCacheClear();
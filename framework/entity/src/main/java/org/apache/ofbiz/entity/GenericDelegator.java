@@ -22,10 +22,12 @@ package org.apache.ofbiz.entity;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +56,7 @@ import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.cache.Cache;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
@@ -61,6 +64,8 @@ import org.apache.ofbiz.entity.datasource.GenericHelper;
 import org.apache.ofbiz.entity.datasource.GenericHelperFactory;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
 import org.apache.ofbiz.entity.eca.EntityEcaHandler;
+import org.apache.ofbiz.entity.jdbc.DatabaseCheckFingerprint;
+import org.apache.ofbiz.entity.jdbc.QueryStatistics;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelEntityChecker;
@@ -81,6 +86,7 @@ import org.apache.ofbiz.entity.util.EntityFindOptions;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityStoreOptions;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.SequenceUtil;
 import org.apache.ofbiz.entityext.eca.EntityEcaUtil;
 import org.w3c.dom.Document;
@@ -104,6 +110,8 @@ public class GenericDelegator implements Delegator {
     private static final boolean ALWAYS_USE_TRANS = true;
     // TODO should this is be handled by tenant?
     private static final boolean SAVE_ENTITY_SYNC_REMOVE_INFO = UtilProperties.getPropertyAsBoolean("general", "saveEntitySyncRemoveInfo", false);
+    // maximum number of keys per query loading the values of a relation for a list of values
+    private static final int PREFETCH_CHUNK_SIZE = 500;
 
     private String delegatorBaseName = null;
     private String delegatorFullName = null;
@@ -286,7 +294,23 @@ public class GenericDelegator implements Delegator {
                         Debug.logInfo("Doing database check as requested in entityengine.xml with addMissing="
                                 + datasource.getAddMissingOnStart(), MODULE);
                     }
-                    helper.checkDataSource(this.getModelEntityMapByGroup(groupName), null, datasource.getAddMissingOnStart());
+                    Map<String, ModelEntity> modelEntities = this.getModelEntityMapByGroup(groupName);
+                    if (datasource.getSkipCheckIfUnchanged()) {
+                        String checkName = helperInfo.getHelperFullName() + "." + groupName;
+                        String fingerprint = DatabaseCheckFingerprint.compute(datasource, modelEntities);
+                        if (DatabaseCheckFingerprint.matchesLastCheck(checkName, fingerprint)) {
+                            if (Debug.infoOn()) {
+                                Debug.logInfo("Skipping database check of entity group \"" + groupName + "\", nothing changed since the last check",
+                                        MODULE);
+                            }
+                        } else {
+                            List<String> messages = new LinkedList<>();
+                            helper.checkDataSource(modelEntities, messages, datasource.getAddMissingOnStart());
+                            DatabaseCheckFingerprint.storeCheck(checkName, fingerprint, messages);
+                        }
+                    } else {
+                        helper.checkDataSource(modelEntities, null, datasource.getAddMissingOnStart());
+                    }
                 }
             } catch (GenericEntityException e) {
                 Debug.logWarning(e, e.getMessage(), MODULE);
@@ -843,6 +867,7 @@ public class GenericDelegator implements Delegator {
 
             if (value != null) {
                 value.setDelegator(this);
+                cache.countCreated(value);
                 if (value.lockEnabled()) {
                     refresh(value);
                 } else {
@@ -901,6 +926,7 @@ public class GenericDelegator implements Delegator {
             }
             if (value != null) {
                 value.setDelegator(this);
+                cache.countCreated(value);
                 if (value.lockEnabled()) {
                     refresh(value);
                 } else {
@@ -922,6 +948,74 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#createAll(java.util.List)
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        int numberCreated = 0;
+        boolean beganTransaction = false;
+        try {
+            if (ALWAYS_USE_TRANS) {
+                beganTransaction = TransactionUtil.begin();
+            }
+            // consecutive values of the same entity are written together, keeping the order of the values
+            int start = 0;
+            while (start < values.size()) {
+                String entityName = values.get(start).getEntityName();
+                int end = start + 1;
+                while (end < values.size() && entityName.equals(values.get(end).getEntityName())) {
+                    end++;
+                }
+                numberCreated += createAllOfEntity(values.subList(start, end));
+                start = end;
+            }
+            TransactionUtil.commit(beganTransaction);
+            return numberCreated;
+        } catch (IllegalStateException | GenericEntityException e) {
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(errMsg, MODULE);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
+    private int createAllOfEntity(List<GenericValue> values) throws GenericEntityException {
+        String entityName = values.get(0).getEntityName();
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(entityName);
+        GenericHelper helper = getEntityHelper(entityName);
+        for (GenericValue value : values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+            value.setDelegator(this);
+            // if audit log on for any fields, save new value with no old value because it's a create
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, false, false);
+            }
+        }
+
+        int numberCreated = helper.createAll(values);
+
+        for (GenericValue value : values) {
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            cache.countCreated(value);
+            if (value.lockEnabled()) {
+                refresh(value);
+            } else {
+                // doCacheClear
+                ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
+                this.clearCacheLine(value);
+            }
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
+        }
+        return numberCreated;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#createOrStore(org.apache.ofbiz.entity.GenericValue)
      */
@@ -1011,6 +1105,9 @@ public class GenericDelegator implements Delegator {
                 removedEntity = this.findOne(primaryKey.getEntityName(), primaryKey, false);
             }
             int num = helper.removeByPrimaryKey(primaryKey);
+            if (num > 0) {
+                cache.countRemoved(primaryKey);
+            }
 
             // doCacheClear
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_REMOVE, primaryKey, false);
@@ -1070,6 +1167,9 @@ public class GenericDelegator implements Delegator {
             int num = helper.removeByPrimaryKey(value.getPrimaryKey());
             // Need to call removedFromDatasource() here because the helper calls removedFromDatasource() on the PK instead of the GenericEntity.
             value.removedFromDatasource();
+            if (num > 0) {
+                cache.countRemoved(value);
+            }
 
             // doCacheClear
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_REMOVE, value, false);
@@ -1280,6 +1380,7 @@ public class GenericDelegator implements Delegator {
             }
 
             int retVal = helper.store(value);
+            cache.countStored(value);
 
             // doCacheClear
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
@@ -1746,10 +1847,23 @@ public class GenericDelegator implements Delegator {
                 }
             }
 
+            boolean approximate = findOptions != null && findOptions.isApproximateCount() && havingEntityCondition == null
+                    && selectFields.isEmpty() && !findOptions.getDistinct();
+            if (approximate) {
+                Long cachedCount = cache.getCount(entityName, whereEntityCondition);
+                if (cachedCount != null) {
+                    TransactionUtil.commit(beganTransaction);
+                    return cachedCount;
+                }
+            }
+
             ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
             GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
             long count = helper.findCountByCondition(this, modelEntity, whereEntityCondition,
                                             havingEntityCondition, selectFields, findOptions);
+            if (approximate) {
+                cache.putCount(entityName, whereEntityCondition, count);
+            }
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_FIND, dummyValue, false);
             TransactionUtil.commit(beganTransaction);
@@ -1812,6 +1926,16 @@ public class GenericDelegator implements Delegator {
             throw new GenericModelException("Could not find relation for relationName: " + relationName + " for value " + value);
         }
 
+        List<GenericValue> prefetched = value.getPrefetchedRelated(relationName, getRelationKeyValues(relation, value));
+        if (prefetched != null) {
+            // the prefetched list is shared by the calls and unmodifiable, the caller gets its own list as from a find
+            List<GenericValue> related = new ArrayList<>(EntityUtil.filterByAnd(prefetched, byAndFields));
+            return UtilValidate.isEmpty(orderBy) ? related : EntityUtil.orderBy(related, orderBy);
+        }
+        if (!useCache) {
+            QueryStatistics.countRelatedRead(value.getEntityName(), relationName);
+        }
+
         // put the byAndFields (if not null) into the hash map first,
         // they will be overridden by value's fields if over-specified this is important for security and cleanliness
         Map<String, Object> fields = new HashMap<>();
@@ -1867,6 +1991,14 @@ public class GenericDelegator implements Delegator {
                     + value.getEntityName());
         }
 
+        List<GenericValue> prefetched = value.getPrefetchedRelated(relationName, getRelationKeyValues(relation, value));
+        if (prefetched != null) {
+            return EntityUtil.getFirst(prefetched);
+        }
+        if (!useCache) {
+            QueryStatistics.countRelatedRead(value.getEntityName(), relationName);
+        }
+
         Map<String, Object> fields = new HashMap<>();
         for (ModelKeyMap keyMap : relation.getKeyMaps()) {
             fields.put(keyMap.getRelFieldName(), value.get(keyMap.getFieldName()));
@@ -1875,6 +2007,85 @@ public class GenericDelegator implements Delegator {
         return this.findOne(relation.getRelEntityName(), fields, useCache);
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#prefetchRelated(java.util.List, java.lang.String)
+     */
+    @Override
+    public void prefetchRelated(List<GenericValue> values, String relationName) throws GenericEntityException {
+        if (UtilValidate.isEmpty(values)) {
+            return;
+        }
+        ModelEntity modelEntity = values.get(0).getModelEntity();
+        ModelRelation relation = modelEntity.getRelation(relationName);
+        if (relation == null) {
+            throw new GenericModelException("Could not find relation for relationName: " + relationName + " for entity "
+                    + modelEntity.getEntityName());
+        }
+        List<ModelKeyMap> keyMaps = relation.getKeyMaps();
+
+        // distinct keys referenced by the values, the values having a null key field keep reading the relation on demand
+        List<GenericValue> keyedValues = new ArrayList<>(values.size());
+        List<List<Object>> valueKeys = new ArrayList<>(values.size());
+        Set<List<Object>> keys = new LinkedHashSet<>();
+        for (GenericValue value : values) {
+            if (!modelEntity.getEntityName().equals(value.getEntityName())) {
+                throw new GenericModelException("Can not prefetch the relation " + relationName + " of values of different entities: "
+                        + modelEntity.getEntityName() + " and " + value.getEntityName());
+            }
+            List<Object> keyValues = getRelationKeyValues(relation, value);
+            if (!keyValues.contains(null)) {
+                keyedValues.add(value);
+                valueKeys.add(keyValues);
+                keys.add(keyValues);
+            }
+        }
+
+        Map<List<Object>, List<GenericValue>> relatedByKey = new HashMap<>();
+        List<List<Object>> keyList = new ArrayList<>(keys);
+        for (int start = 0; start < keyList.size(); start += PREFETCH_CHUNK_SIZE) {
+            List<List<Object>> chunk = keyList.subList(start, Math.min(keyList.size(), start + PREFETCH_CHUNK_SIZE));
+            EntityCondition condition;
+            if (keyMaps.size() == 1) {
+                List<Object> chunkValues = new ArrayList<>(chunk.size());
+                for (List<Object> key : chunk) {
+                    chunkValues.add(key.get(0));
+                }
+                condition = EntityCondition.makeCondition(keyMaps.get(0).getRelFieldName(), EntityOperator.IN, chunkValues);
+            } else {
+                List<EntityCondition> keyConditions = new ArrayList<>(chunk.size());
+                for (List<Object> key : chunk) {
+                    Map<String, Object> fields = new HashMap<>();
+                    for (int i = 0; i < keyMaps.size(); i++) {
+                        fields.put(keyMaps.get(i).getRelFieldName(), key.get(i));
+                    }
+                    keyConditions.add(EntityCondition.makeCondition(fields));
+                }
+                condition = EntityCondition.makeCondition(keyConditions, EntityOperator.OR);
+            }
+            for (GenericValue related : this.findList(relation.getRelEntityName(), condition, null, null, null, false)) {
+                List<Object> key = new ArrayList<>(keyMaps.size());
+                for (ModelKeyMap keyMap : keyMaps) {
+                    key.add(related.get(keyMap.getRelFieldName()));
+                }
+                relatedByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(related);
+            }
+        }
+
+        for (int i = 0; i < keyedValues.size(); i++) {
+            List<GenericValue> related = relatedByKey.get(valueKeys.get(i));
+            keyedValues.get(i).setPrefetchedRelated(relationName, valueKeys.get(i),
+                    related == null ? Collections.emptyList() : Collections.unmodifiableList(related));
+        }
+    }
+
+    private static List<Object> getRelationKeyValues(ModelRelation relation, GenericValue value) {
+        List<Object> keyValues = new ArrayList<>(relation.getKeyMaps().size());
+        for (ModelKeyMap keyMap : relation.getKeyMaps()) {
+            keyValues.add(value.get(keyMap.getFieldName()));
+        }
+        return keyValues;
+    }
+
 
     // ======================================
     // ======= Cache Related Methods ========
@@ -79,6 +79,8 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     private static final String MODULE = GenericEntity.class.getName();
     public static final GenericEntity NULL_ENTITY = new NullGenericEntity();
     public static final NullField NULL_FIELD = new NullField();
+    /** Stores the field values in arrays indexed by field position (array), or in hash maps (map) */
+    private static final boolean ARRAY_FIELD_STORAGE = !"map".equals(UtilProperties.getPropertyValue("entity", "entity.value.storage", "array"));
 
     // Do not restore observers during deserialization. Instead, client code must add observers.
     private transient Observable observable = new Observable();
@@ -91,18 +93,20 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      * GenericValue objects instantiated through it. You may set this manually for objects you instantiate manually, but it is optional. */
     private transient Delegator internalDelegator = null;
 
-    /** A Map containing the original field values from the database.
+    /** A Map containing the original field values from the database, when the
+     *  fields are not an ArrayFieldMap which keeps track of them itself.
      */
     private Map<String, Object> originalDbValues = null;
 
-    /** Contains the fields for this entity. Note that this should always be a
-     *  HashMap to allow for two things: non-synchronized reads (synchronized
-     *  writes are done through synchronized setters) and being able to store
-     *  null values. Null values are important because with them we can distinguish
+    /** Contains the fields for this entity. Note that this should always be an
+     *  ArrayFieldMap or a HashMap to allow for two things: non-synchronized reads
+     *  (synchronized writes are done through synchronized setters) and being able
+     *  to store null values. Null values are important because with them we can distinguish
      *  between desiring to set a value to null and desiring to not modify the
      *  current value on an update.
+     *  Created by the init methods, once the ModelEntity is known.
      */
-    private Map<String, Object> fields = new HashMap<>();
+    private Map<String, Object> fields = null;
 
     /** Contains the entityName of this entity, necessary for efficiency when creating EJBs */
     private String entityName = null;
@@ -175,6 +179,17 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         return this.observable;
     }
 
+    private static Map<String, Object> newFieldMap(ModelEntity modelEntity) {
+        return ARRAY_FIELD_STORAGE ? new ArrayFieldMap(modelEntity) : new HashMap<>();
+    }
+
+    private static Map<String, Object> copyFieldMap(Map<String, Object> fields) {
+        if (fields instanceof ArrayFieldMap) {
+            return new ArrayFieldMap((ArrayFieldMap) fields);
+        }
+        return fields == null ? new HashMap<>() : new HashMap<>(fields);
+    }
+
     /** Creates new GenericEntity */
     protected void init(ModelEntity modelEntity) {
         assertIsMutable();
@@ -183,6 +198,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = newFieldMap(modelEntity);
         this.observable = new Observable();
 
         // check some things
@@ -199,6 +215,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = newFieldMap(modelEntity);
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
         this.observable = new Observable();
@@ -221,6 +238,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = newFieldMap(modelEntity);
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
         this.observable = new Observable();
@@ -243,9 +261,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         // NOTE: could call getModelEntity to insure we have a value, just in case the value passed in has been serialized
         // but might as well leave it null to keep the object light if it isn't there
         this.modelEntity = value.modelEntity;
-        if (value.fields != null) {
-            this.fields.putAll(value.fields);
-        }
+        this.fields = copyFieldMap(value.fields);
         this.delegatorName = value.delegatorName;
         this.internalDelegator = value.internalDelegator;
         this.observable = new Observable(value.observable);
@@ -286,7 +302,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
             throw new GenericEntityException("Could not refresh value, new value did not have the same primary key; this PK="
                     + thisPK + ", new value PK=" + newPK);
         }
-        this.fields = new HashMap<>(newValue.fields);
+        this.fields = copyFieldMap(newValue.fields);
         this.setDelegator(newValue.getDelegator());
         this.generateHashCode = newValue.generateHashCode;
         this.cachedHashCode = newValue.cachedHashCode;
@@ -308,7 +324,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      */
     public void synchronizedWithDatasource() {
         assertIsMutable();
-        this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        if (this.fields instanceof ArrayFieldMap) {
+            ((ArrayFieldMap) this.fields).synchronizedWithDatasource();
+        } else {
+            this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        }
         this.clearChanged();
     }
 
@@ -338,7 +358,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     public void setImmutable() {
         if (this.mutable) {
             this.mutable = false;
-            this.fields = Collections.unmodifiableMap(this.fields);
+            if (this.fields instanceof ArrayFieldMap) {
+                ((ArrayFieldMap) this.fields).setImmutable();
+            } else {
+                this.fields = this.fields == null ? Collections.emptyMap() : Collections.unmodifiableMap(this.fields);
+            }
         }
     }
 
@@ -1772,6 +1796,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      * @return the boolean
      */
     public boolean originalDbValuesAvailable() {
+        if (this.fields instanceof ArrayFieldMap) {
+            return ((ArrayFieldMap) this.fields).isSynchronizedWithDatasource();
+        }
         return this.originalDbValues != null;
     }
 
@@ -1784,6 +1811,10 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         if (getModelEntity().getField(name) == null) {
             throw new IllegalArgumentException("[GenericEntity.get] \"" + name + "\" is not a field of " + getEntityName());
         }
+        if (this.fields instanceof ArrayFieldMap) {
+            ArrayFieldMap fieldMap = (ArrayFieldMap) this.fields;
+            return fieldMap.isSynchronizedWithDatasource() ? fieldMap.getOriginalValue(name) : null;
+        }
         if (originalDbValues == null) {
             return null;
         }
@@ -19,6 +19,7 @@
 
 package org.apache.ofbiz.entity;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -37,6 +38,9 @@ public class GenericValue extends GenericEntity {
 
     public static final GenericValue NULL_VALUE = new NullGenericValue();
 
+    /** Related values loaded by Delegator.prefetchRelated, by relation name */
+    private transient Map<String, PrefetchedRelation> prefetchedRelations;
+
     /** Creates new GenericValue */
     public static GenericValue create(ModelEntity modelEntity) {
         GenericValue newValue = new GenericValue();
@@ -233,6 +237,33 @@ public class GenericValue extends GenericEntity {
     public GenericPK getRelatedDummyPK(String relationName, Map<String, ? extends Object> byAndFields) throws GenericEntityException {
         return this.getDelegator().getRelatedDummyPK(relationName, byAndFields, this);
     }
+    /**
+     * Attaches the related values loaded for a relation.
+     * @param relationName the relation name
+     * @param keyValues the values of the key fields of this value the related values were loaded for
+     * @param related the related values
+     */
+    synchronized void setPrefetchedRelated(String relationName, List<Object> keyValues, List<GenericValue> related) {
+        if (prefetchedRelations == null) {
+            prefetchedRelations = new HashMap<>();
+        }
+        prefetchedRelations.put(relationName, new PrefetchedRelation(keyValues, related));
+    }
+
+    /**
+     * Gets the related values loaded for a relation.
+     * @param relationName the relation name
+     * @param keyValues the current values of the key fields of this value
+     * @return the related values, or <code>null</code> if they were not loaded or were loaded for other key values
+     */
+    synchronized List<GenericValue> getPrefetchedRelated(String relationName, List<Object> keyValues) {
+        PrefetchedRelation prefetched = prefetchedRelations == null ? null : prefetchedRelations.get(relationName);
+        if (prefetched == null || !prefetched.keyValues.equals(keyValues)) {
+            return null;
+        }
+        return prefetched.related;
+    }
+
     /** hash code */
     @Override
     public int hashCode() {
@@ -254,7 +285,22 @@ public class GenericValue extends GenericEntity {
         return GenericValue.create(this);
     }
 
+    private static final class PrefetchedRelation {
+        private final List<Object> keyValues;
+        private final List<GenericValue> related;
+
+        PrefetchedRelation(List<Object> keyValues, List<GenericValue> related) {
+            this.keyValues = keyValues;
+            this.related = related;
+        }
+    }
+
     protected static class NullGenericValue extends GenericValue implements NULL {
+        // never initialized with an entity, the value has no fields and can't be changed
+        protected NullGenericValue() {
+            this.setImmutable();
+        }
+
         /** get entity name */
         @Override
         public String getEntityName() {
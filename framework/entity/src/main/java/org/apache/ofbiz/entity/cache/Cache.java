@@ -34,6 +34,7 @@ public class Cache {
     private EntityCache entityCache;
     private EntityListCache entityListCache;
     private EntityObjectCache entityObjectCache;
+    private EntityCountCache entityCountCache;
 
     private String delegatorName;
 
@@ -42,6 +43,7 @@ public class Cache {
         entityCache = new EntityCache(delegatorName);
         entityObjectCache = new EntityObjectCache(delegatorName);
         entityListCache = new EntityListCache(delegatorName);
+        entityCountCache = new EntityCountCache(delegatorName);
     }
 
     /**
@@ -51,6 +53,7 @@ public class Cache {
         entityCache.clear();
         entityListCache.clear();
         entityObjectCache.clear();
+        entityCountCache.clear();
     }
 
     /**
@@ -60,6 +63,7 @@ public class Cache {
     public void remove(String entityName) {
         entityCache.remove(entityName);
         entityListCache.remove(entityName);
+        entityCountCache.remove(entityName);
     }
 
     /**
@@ -217,4 +221,48 @@ public class Cache {
         // entityObjectCache.storeHook(pk, null);
         return oldEntity;
     }
+
+    /**
+     * Gets the approximate count of the rows of an entity.
+     * @param entityName the entity name
+     * @param condition  the where condition, or <code>null</code> for all the rows
+     * @return the count, or <code>null</code> when not cached
+     */
+    public Long getCount(String entityName, EntityCondition condition) {
+        return entityCountCache.get(entityName, condition);
+    }
+
+    /**
+     * Puts the approximate count of the rows of an entity.
+     * @param entityName the entity name
+     * @param condition  the where condition, or <code>null</code> for all the rows
+     * @param count      the count
+     */
+    public void putCount(String entityName, EntityCondition condition, long count) {
+        entityCountCache.put(entityName, condition, count);
+    }
+
+    /**
+     * Adjusts the approximate counts after a value has been created.
+     * @param entity the created value
+     */
+    public void countCreated(GenericEntity entity) {
+        entityCountCache.created(entity);
+    }
+
+    /**
+     * Adjusts the approximate counts after a value has been removed.
+     * @param entity the removed value or primary key
+     */
+    public void countRemoved(GenericEntity entity) {
+        entityCountCache.removed(entity);
+    }
+
+    /**
+     * Adjusts the approximate counts after a value has been updated.
+     * @param entity the updated value
+     */
+    public void countStored(GenericEntity entity) {
+        entityCountCache.stored(entity);
+    }
 }
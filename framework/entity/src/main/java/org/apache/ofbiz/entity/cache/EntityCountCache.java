@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.model.ModelEntity;
+
+/**
+ * Cache of the approximate counts of the rows of an entity matching a condition.
+ * <p>
+ * Unlike the other entity caches, the lines are not cleared by each write: the creations and
+ * removals made through the delegator increment or decrement the counts they match, other
+ * changes only drop the lines they may affect. The counts are kept
+ * <code>entity.count.cache.expire</code> seconds, which also bounds the drift caused by
+ * rolled back transactions and by the writes of other servers.
+ */
+public class EntityCountCache extends AbstractCache<EntityCondition, AtomicLong> {
+
+    private static final String MODULE = EntityCountCache.class.getName();
+    private static final long EXPIRE_MILLIS = UtilProperties.getPropertyAsLong("entity", "entity.count.cache.expire", 60) * 1000;
+    private static final int MAX_SIZE = UtilProperties.getPropertyAsInteger("entity", "entity.count.cache.max.conditions", 100);
+
+    public EntityCountCache(String delegatorName) {
+        super(delegatorName, "entity-count");
+    }
+
+    /**
+     * Gets the cached count.
+     * @param entityName the entity name
+     * @param condition the where condition, or <code>null</code> for all the rows
+     * @return the count, or <code>null</code> when not cached
+     */
+    public Long get(String entityName, EntityCondition condition) {
+        UtilCache<EntityCondition, AtomicLong> cache = getCache(entityName);
+        if (cache == null) {
+            return null;
+        }
+        AtomicLong count = cache.get(condition);
+        return count == null ? null : Math.max(0, count.get());
+    }
+
+    /**
+     * Puts a count.
+     * @param entityName the entity name
+     * @param condition the where condition, or <code>null</code> for all the rows
+     * @param count the count
+     */
+    public void put(String entityName, EntityCondition condition, long count) {
+        getOrCreateCache(entityName).put(AbstractEntityConditionCache.getFrozenConditionKey(condition), new AtomicLong(count));
+    }
+
+    /**
+     * Counts a value created.
+     * @param entity the created value
+     */
+    public void created(GenericEntity entity) {
+        adjust(entity.getEntityName(), entity, 1);
+        clearViews(entity.getModelEntity());
+    }
+
+    /**
+     * Counts a value removed. When only the primary key is known, the counts with a condition
+     * are dropped.
+     * @param entity the removed value or primary key
+     */
+    public void removed(GenericEntity entity) {
+        adjust(entity.getEntityName(), entity instanceof GenericPK ? null : entity, -1);
+        clearViews(entity.getModelEntity());
+    }
+
+    /**
+     * Drops the counts with a condition after a value has been updated, its previous state
+     * being unknown.
+     * @param entity the updated value
+     */
+    public void stored(GenericEntity entity) {
+        adjust(entity.getEntityName(), null, 0);
+        clearViews(entity.getModelEntity());
+    }
+
+    // adds delta to the count of all the rows and to the counts whose condition matches the entity,
+    // and drops the other counts with a condition which may be affected
+    private void adjust(String entityName, GenericEntity entity, long delta) {
+        UtilCache<EntityCondition, AtomicLong> cache = getCache(entityName);
+        if (cache == null) {
+            return;
+        }
+        for (EntityCondition condition : cache.getCacheLineKeys()) {
+            AtomicLong count = cache.get(condition);
+            if (count == null) {
+                continue;
+            }
+            if (condition == null && delta != 0) {
+                count.addAndGet(delta);
+            } else if (condition != null && entity != null && delta != 0) {
+                try {
+                    if (condition.entityMatches(entity)) {
+                        count.addAndGet(delta);
+                    }
+                } catch (RuntimeException e) {
+                    // a condition which can't be evaluated in memory is just forgotten
+                    if (Debug.verboseOn()) {
+                        Debug.logVerbose("Dropping the count of " + entityName + " with condition " + condition + ": " + e, MODULE);
+                    }
+                    cache.remove(condition);
+                }
+            } else if (condition != null) {
+                cache.remove(condition);
+            }
+        }
+    }
+
+    // the counts of the view entities built on the entity can't be adjusted
+    private void clearViews(ModelEntity model) {
+        Iterator<String> it = model.getViewConvertorsIterator();
+        while (it.hasNext()) {
+            remove(it.next());
+        }
+    }
+
+    @Override
+    protected UtilCache<EntityCondition, AtomicLong> getOrCreateCache(String entityName) {
+        return UtilCache.getOrCreateUtilCache(getCacheName(entityName), MAX_SIZE, MAX_SIZE, EXPIRE_MILLIS, false,
+                getCacheNames(entityName));
+    }
+}
@@ -285,6 +285,45 @@ public abstract class EntityOperator<L, R> implements Serializable {
         return codeString;
     }
 
+    /**
+     * Resolves a deserialized operator to its singleton, operators are compared by reference.
+     * @return the registered operator having the same id
+     */
+    protected Object readResolve() {
+        switch (idInt) {
+        case ID_EQUALS:
+            return EQUALS;
+        case ID_NOT_EQUAL:
+            return NOT_EQUAL;
+        case ID_LESS_THAN:
+            return LESS_THAN;
+        case ID_GREATER_THAN:
+            return GREATER_THAN;
+        case ID_LESS_THAN_EQUAL_TO:
+            return LESS_THAN_EQUAL_TO;
+        case ID_GREATER_THAN_EQUAL_TO:
+            return GREATER_THAN_EQUAL_TO;
+        case ID_IN:
+            return IN;
+        case ID_BETWEEN:
+            return BETWEEN;
+        case ID_NOT:
+            return NOT;
+        case ID_AND:
+            return AND;
+        case ID_OR:
+            return OR;
+        case ID_LIKE:
+            return LIKE;
+        case ID_NOT_IN:
+            return NOT_IN;
+        case ID_NOT_LIKE:
+            return NOT_LIKE;
+        default:
+            return this;
+        }
+    }
+
     @Override
     public int hashCode() {
         return this.codeString.hashCode();
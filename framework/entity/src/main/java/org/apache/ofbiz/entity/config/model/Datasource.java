@@ -42,6 +42,7 @@ public final class Datasource {
     private final String schemaName; // type = xs:string
     private final boolean checkOnStart;
     private final boolean addMissingOnStart;
+    private final boolean skipCheckIfUnchanged;
     private final boolean usePkConstraintNames;
     private final boolean checkPksOnStart;
     private final int constraintNameClipLength; // type = xs:nonNegativeInteger
@@ -70,6 +71,7 @@ public final class Datasource {
     private final int maxWorkerPoolSize; // type = xs:integer
     private final List<SqlLoadPath> sqlLoadPathList; // <sql-load-path>
     private final List<ReadData> readDataList; // <read-data>
+    private final ReadReplicas readReplicas; // <read-replicas>
     private final InlineJdbc inlineJdbc; // <inline-jdbc>
     private final JndiJdbc jndiJdbc; // <jndi-jdbc>
     private final TyrexDataSource tyrexDataSource; // <tyrex-dataSource>
@@ -95,6 +97,7 @@ public final class Datasource {
         this.schemaName = element.getAttribute("schema-name").intern();
         this.checkOnStart = !"false".equals(element.getAttribute("check-on-start"));
         this.addMissingOnStart = "true".equals(element.getAttribute("add-missing-on-start"));
+        this.skipCheckIfUnchanged = "true".equals(element.getAttribute("skip-check-if-unchanged"));
         this.usePkConstraintNames = !"false".equals(element.getAttribute("use-pk-constraint-names"));
         this.checkPksOnStart = !"false".equals(element.getAttribute("check-pks-on-start"));
         String constraintNameClipLength = element.getAttribute("constraint-name-clip-length");
@@ -190,6 +193,12 @@ public final class Datasource {
             }
             this.readDataList = Collections.unmodifiableList(readDataList);
         }
+        Element readReplicasElement = UtilXml.firstChildElement(element, "read-replicas");
+        if (readReplicasElement == null) {
+            this.readReplicas = null;
+        } else {
+            this.readReplicas = new ReadReplicas(readReplicasElement);
+        }
         int jdbcElementCount = 0;
         Element inlineJdbcElement = UtilXml.firstChildElement(element, "inline-jdbc");
         if (inlineJdbcElement == null) {
@@ -253,6 +262,11 @@ public final class Datasource {
         return this.addMissingOnStart;
     }
 
+    /** Returns the value of the <code>skip-check-if-unchanged</code> attribute. */
+    public boolean getSkipCheckIfUnchanged() {
+        return this.skipCheckIfUnchanged;
+    }
+
     /** Returns the value of the <code>use-pk-constraint-names</code> attribute. */
     public boolean getUsePkConstraintNames() {
         return this.usePkConstraintNames;
@@ -393,6 +407,11 @@ public final class Datasource {
         return this.readDataList;
     }
 
+    /** Returns the <code>&lt;read-replicas&gt;</code> child element, or <code>null</code> if no such element exists. */
+    public ReadReplicas getReadReplicas() {
+        return this.readReplicas;
+    }
+
     /** Returns the <code>&lt;inline-jdbc&gt;</code> child element. */
     public InlineJdbc getInlineJdbc() {
         return this.inlineJdbc;
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.config.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.GenericEntityConfException;
+import org.w3c.dom.Element;
+
+/**
+ * An object that models the <code>&lt;read-replicas&gt;</code> element.
+ *
+ * @see <code>entity-config.xsd</code>
+ */
+@ThreadSafe
+public final class ReadReplicas {
+
+    public static final String BALANCING_ROUND_ROBIN = "round-robin";
+    public static final String BALANCING_LEAST_CONNECTIONS = "least-connections";
+
+    private final String balancing; // type = xs:string
+    private final int maxLagSeconds; // type = xs:nonNegativeInteger
+    private final String lagQuery; // type = xs:string
+    private final int lagCheckInterval; // type = xs:nonNegativeInteger
+    private final int stickySeconds; // type = xs:nonNegativeInteger
+    private final List<ReadReplica> readReplicaList; // <read-replica>
+
+    ReadReplicas(Element element) throws GenericEntityConfException {
+        String lineNumberText = EntityConfig.createConfigFileLineNumberText(element);
+        String balancing = element.getAttribute("balancing").intern();
+        if (balancing.isEmpty()) {
+            balancing = BALANCING_ROUND_ROBIN;
+        } else if (!BALANCING_ROUND_ROBIN.equals(balancing) && !BALANCING_LEAST_CONNECTIONS.equals(balancing)) {
+            throw new GenericEntityConfException("<read-replicas> element balancing attribute is invalid" + lineNumberText);
+        }
+        this.balancing = balancing;
+        this.maxLagSeconds = parseSeconds(element, "max-lag-seconds", 0, lineNumberText);
+        this.lagQuery = element.getAttribute("lag-query").intern();
+        if (this.maxLagSeconds > 0 && this.lagQuery.isEmpty()) {
+            throw new GenericEntityConfException("<read-replicas> element lag-query attribute is required with max-lag-seconds"
+                    + lineNumberText);
+        }
+        this.lagCheckInterval = parseSeconds(element, "lag-check-interval", 5, lineNumberText);
+        this.stickySeconds = parseSeconds(element, "sticky-seconds", 5, lineNumberText);
+        List<? extends Element> readReplicaElementList = UtilXml.childElementList(element, "read-replica");
+        if (readReplicaElementList.isEmpty()) {
+            throw new GenericEntityConfException("<read-replicas> element child elements <read-replica> are missing" + lineNumberText);
+        }
+        List<ReadReplica> readReplicaList = new ArrayList<>(readReplicaElementList.size());
+        for (Element readReplicaElement : readReplicaElementList) {
+            readReplicaList.add(new ReadReplica(readReplicaElement));
+        }
+        this.readReplicaList = Collections.unmodifiableList(readReplicaList);
+    }
+
+    private static int parseSeconds(Element element, String attributeName, int defaultValue, String lineNumberText)
+            throws GenericEntityConfException {
+        String value = element.getAttribute(attributeName);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int seconds = Integer.parseInt(value);
+            if (seconds >= 0) {
+                return seconds;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new GenericEntityConfException("<read-replicas> element " + attributeName + " attribute is invalid" + lineNumberText);
+    }
+
+    /** Returns the value of the <code>balancing</code> attribute. */
+    public String getBalancing() {
+        return this.balancing;
+    }
+
+    /** Returns the value of the <code>max-lag-seconds</code> attribute, <code>0</code> when the lag is not checked. */
+    public int getMaxLagSeconds() {
+        return this.maxLagSeconds;
+    }
+
+    /** Returns the value of the <code>lag-query</code> attribute. */
+    public String getLagQuery() {
+        return this.lagQuery;
+    }
+
+    /** Returns the value of the <code>lag-check-interval</code> attribute. */
+    public int getLagCheckInterval() {
+        return this.lagCheckInterval;
+    }
+
+    /** Returns the value of the <code>sticky-seconds</code> attribute. */
+    public int getStickySeconds() {
+        return this.stickySeconds;
+    }
+
+    /** Returns the <code>&lt;read-replica&gt;</code> child elements. */
+    public List<ReadReplica> getReadReplicaList() {
+        return this.readReplicaList;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.connection;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectState;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.metrics.Metrics;
+import org.apache.ofbiz.base.metrics.MetricsFactory;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.jdbc.QueryStatistics;
+
+/**
+ * Statistics of the use of a connection pool: the time waited to borrow a connection, as a
+ * histogram and as a {@link Metrics} shown with the other metrics of the server, the borrows
+ * having timed out, and the connections held longer than <code>entity.pool.long.held.threshold</code>
+ * milliseconds, with the thread and the service or request holding them.
+ * <p>
+ * When <code>entity.pool.adaptive.enable</code> is set, the maximum size of the pool is also
+ * adjusted every <code>entity.pool.adaptive.interval</code> seconds: it grows when borrowers had
+ * to wait more than <code>entity.pool.adaptive.wait.threshold</code> milliseconds, up to
+ * <code>entity.pool.adaptive.max.factor</code> times the configured <code>pool-maxsize</code>,
+ * and shrinks back towards it when the connections in use stay well below the maximum.
+ */
+public final class ConnectionPoolMonitor {
+
+    private static final String MODULE = ConnectionPoolMonitor.class.getName();
+    private static final ScheduledExecutorService ADJUSTER = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE),
+            "connection-pool-adjust", 1, 60, false);
+    // each bucket of the borrow wait histogram holds the waits shorter than 2^i milliseconds
+    private static final int BUCKETS = 16;
+
+    private static final long LONG_HELD_MILLIS = UtilProperties.getPropertyAsLong("entity", "entity.pool.long.held.threshold", 60000);
+    private static final boolean TRACE_BORROWS = UtilProperties.getPropertyAsBoolean("entity", "entity.pool.trace.borrow", false);
+    private static final boolean ADAPTIVE = UtilProperties.getPropertyAsBoolean("entity", "entity.pool.adaptive.enable", false);
+    private static final long ADAPTIVE_INTERVAL = UtilProperties.getPropertyAsLong("entity", "entity.pool.adaptive.interval", 10);
+    private static final long ADAPTIVE_WAIT_MILLIS = UtilProperties.getPropertyAsLong("entity", "entity.pool.adaptive.wait.threshold", 50);
+    private static final double ADAPTIVE_MAX_FACTOR = UtilProperties.getPropertyNumber("entity", "entity.pool.adaptive.max.factor", 2.0);
+
+    private final String helperName;
+    private final GenericObjectPool<?> pool;
+    private final int configuredMaxTotal;
+    private final Metrics borrowMetrics;
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLongArray waitHistogram = new AtomicLongArray(BUCKETS);
+    // borrows slower than the adaptive wait threshold, and most connections in use, since the last adjustment
+    private final AtomicLong slowBorrows = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final Map<PooledObject<?>, Lease> leases = new IdentityHashMap<>();
+    private final ScheduledFuture<?> adjustment;
+
+    ConnectionPoolMonitor(String helperName, GenericObjectPool<?> pool) {
+        this.helperName = helperName;
+        this.pool = pool;
+        this.configuredMaxTotal = pool.getMaxTotal();
+        this.borrowMetrics = MetricsFactory.getInstance("Connection pool " + helperName + " borrow wait",
+                UtilProperties.getPropertyAsInteger("serverstats", "metrics.estimation.size", 100),
+                UtilProperties.getPropertyAsLong("serverstats", "metrics.estimation.time", 1000),
+                UtilProperties.getPropertyNumber("serverstats", "metrics.smoothing.factor", 0.7), ADAPTIVE_WAIT_MILLIS);
+        if (ADAPTIVE && configuredMaxTotal > 0) {
+            adjustment = ADJUSTER.scheduleWithFixedDelay(this::adjustMaxTotal, ADAPTIVE_INTERVAL, ADAPTIVE_INTERVAL, TimeUnit.SECONDS);
+        } else {
+            adjustment = null;
+        }
+    }
+
+    /**
+     * Records a borrow of a connection.
+     * @param waitMillis the time waited for the connection, in milliseconds
+     */
+    void recordBorrow(long waitMillis) {
+        borrows.increment();
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        waitHistogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(waitMillis)));
+        borrowMetrics.recordServiceRate(1, waitMillis);
+        if (waitMillis >= ADAPTIVE_WAIT_MILLIS) {
+            slowBorrows.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a borrow having timed out because no connection was available.
+     */
+    void recordTimeout() {
+        timeouts.increment();
+        slowBorrows.incrementAndGet();
+    }
+
+    /**
+     * Records that a connection is handed to the current thread.
+     * @param pooledObject the connection of the pool
+     */
+    void leased(PooledObject<?> pooledObject) {
+        Lease lease = new Lease(Thread.currentThread().getName(), QueryStatistics.getCaller(),
+                TRACE_BORROWS ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null);
+        synchronized (leases) {
+            leases.put(pooledObject, lease);
+        }
+        peakActive.accumulateAndGet(pool.getNumActive(), Math::max);
+    }
+
+    /**
+     * Records that a connection is back in the pool, or destroyed.
+     * @param pooledObject the connection of the pool
+     */
+    void released(PooledObject<?> pooledObject) {
+        synchronized (leases) {
+            leases.remove(pooledObject);
+        }
+    }
+
+    /**
+     * Gets the connections held longer than <code>entity.pool.long.held.threshold</code>.
+     * @return for each connection a map with the <code>heldMillis</code>, the <code>thread</code>
+     *         and the <code>caller</code> holding it, and the <code>trace</code> of its borrow when
+     *         <code>entity.pool.trace.borrow</code> is set
+     */
+    public List<Map<String, Object>> getLongHeldConnections() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> result = new ArrayList<>();
+        synchronized (leases) {
+            // a connection invalidated while borrowed is neither passivated nor reported here
+            leases.keySet().removeIf(pooledObject -> pooledObject.getState() != PooledObjectState.ALLOCATED);
+            for (Map.Entry<PooledObject<?>, Lease> entry : leases.entrySet()) {
+                long heldMillis = now - entry.getKey().getLastBorrowTime();
+                if (heldMillis >= LONG_HELD_MILLIS) {
+                    Map<String, Object> connection = new HashMap<>();
+                    connection.put("heldMillis", heldMillis);
+                    connection.put("thread", entry.getValue().thread);
+                    connection.put("caller", entry.getValue().caller);
+                    if (entry.getValue().trace != null) {
+                        StringWriter trace = new StringWriter();
+                        entry.getValue().trace.printStackTrace(new PrintWriter(trace));
+                        connection.put("trace", trace.toString());
+                    }
+                    result.add(connection);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the statistics of the pool to a map.
+     * @param info the map the statistics are added to
+     */
+    void addInfo(Map<String, Object> info) {
+        long borrowCount = borrows.sum();
+        info.put("poolBorrows", borrowCount);
+        info.put("poolBorrowTimeouts", timeouts.sum());
+        info.put("poolMeanBorrowWait", borrowCount == 0 ? 0 : totalWaitMillis.get() / borrowCount);
+        info.put("poolMaxBorrowWait", maxWaitMillis.get());
+        info.put("poolNumWaiters", pool.getNumWaiters());
+        info.put("poolConfiguredMaxActive", configuredMaxTotal);
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = waitHistogram.get(i);
+            if (count > 0) {
+                histogram.append(histogram.length() > 0 ? ", " : "").append(i == BUCKETS - 1 ? ">=" : "<")
+                        .append(1L << (i == BUCKETS - 1 ? i - 1 : i)).append("ms: ").append(count);
+            }
+        }
+        info.put("poolBorrowWaitHistogram", histogram.toString());
+        info.put("poolLongHeldConnections", getLongHeldConnections());
+    }
+
+    // grows the pool while borrowers wait, shrinks it back while it is mostly unused
+    private void adjustMaxTotal() {
+        try {
+            long slow = slowBorrows.getAndSet(0);
+            int peak = peakActive.getAndSet(pool.getNumActive());
+            int maxTotal = pool.getMaxTotal();
+            int upperBound = (int) Math.max(configuredMaxTotal, Math.round(configuredMaxTotal * ADAPTIVE_MAX_FACTOR));
+            int step = Math.max(1, configuredMaxTotal / 10);
+            int newMaxTotal = maxTotal;
+            if ((slow > 0 || pool.getNumWaiters() > 0) && maxTotal < upperBound) {
+                newMaxTotal = Math.min(upperBound, maxTotal + step);
+            } else if (slow == 0 && maxTotal > configuredMaxTotal && peak <= maxTotal - 2 * step) {
+                newMaxTotal = Math.max(configuredMaxTotal, maxTotal - step);
+            }
+            if (newMaxTotal != maxTotal) {
+                pool.setMaxTotal(newMaxTotal);
+                Debug.logInfo("Maximum size of the connection pool " + helperName + " changed from " + maxTotal + " to " + newMaxTotal
+                        + " (slow borrows: " + slow + ", most connections in use: " + peak + ")", MODULE);
+            }
+        } catch (RuntimeException e) {
+            Debug.logError(e, "Unable to adjust the size of the connection pool " + helperName, MODULE);
+        }
+    }
+
+    /**
+     * Stops adjusting the size of the pool.
+     */
+    void close() {
+        if (adjustment != null) {
+            adjustment.cancel(false);
+        }
+    }
+
+    private static final class Lease {
+        private final String thread;
+        private final String caller;
+        private final Throwable trace;
+
+        Lease(String thread, String caller, Throwable trace) {
+            this.thread = thread;
+            this.caller = caller;
+            this.trace = trace;
+        }
+    }
+}
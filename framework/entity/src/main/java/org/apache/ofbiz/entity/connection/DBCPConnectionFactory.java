@@ -30,10 +30,10 @@ import javax.transaction.TransactionManager;
 
 import org.apache.commons.dbcp2.DriverConnectionFactory;
 import org.apache.commons.dbcp2.PoolableConnection;
-import org.apache.commons.dbcp2.PoolableConnectionFactory;
 import org.apache.commons.dbcp2.managed.LocalXAConnectionFactory;
 import org.apache.commons.dbcp2.managed.PoolableManagedConnectionFactory;
 import org.apache.commons.dbcp2.managed.XAConnectionFactory;
+import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.ofbiz.base.util.Debug;
@@ -110,7 +110,7 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         XAConnectionFactory xacf = new LocalXAConnectionFactory(txMgr, cf);
 
         // create the pool object factory
-        PoolableConnectionFactory factory = new PoolableManagedConnectionFactory(xacf, null);
+        MonitoredConnectionFactory factory = new MonitoredConnectionFactory(xacf);
         factory.setValidationQuery(jdbcElement.getPoolJdbcTestStmt());
         factory.setDefaultReadOnly(false);
         factory.setRollbackOnReturn(false);
@@ -152,12 +152,16 @@ public class DBCPConnectionFactory implements ConnectionFactory {
 
         GenericObjectPool<PoolableConnection> pool = new GenericObjectPool<>(factory, poolConfig);
         factory.setPool(pool);
+        ConnectionPoolMonitor monitor = new ConnectionPoolMonitor(cacheKey, pool);
+        factory.monitor = monitor;
 
-        mds = new DebugManagedDataSource<>(pool, xacf.getTransactionRegistry());
+        mds = new DebugManagedDataSource<>(pool, xacf.getTransactionRegistry(), monitor);
         mds.setAccessToUnderlyingConnectionAllowed(true);
 
         // cache the pool
-        DS_CACHE.putIfAbsent(cacheKey, mds);
+        if (DS_CACHE.putIfAbsent(cacheKey, mds) != null) {
+            monitor.close();
+        }
         mds = DS_CACHE.get(cacheKey);
 
         return TransactionUtil.getCursorConnection(helperInfo, mds.getConnection());
@@ -166,6 +170,11 @@ public class DBCPConnectionFactory implements ConnectionFactory {
     @Override
     public void closeAll() {
         // no methods on the pool to shutdown; so just clearing for GC
+        for (DebugManagedDataSource<? extends Connection> mds : DS_CACHE.values()) {
+            if (mds.getMonitor() != null) {
+                mds.getMonitor().close();
+            }
+        }
         DS_CACHE.clear();
     }
 
@@ -178,4 +187,39 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         return dataSourceInfo;
     }
 
+    /**
+     * Pool object factory telling the monitor of the pool when its connections are borrowed and
+     * given back, from the threads borrowing and giving them back.
+     */
+    private static final class MonitoredConnectionFactory extends PoolableManagedConnectionFactory {
+        private ConnectionPoolMonitor monitor;
+
+        MonitoredConnectionFactory(XAConnectionFactory connFactory) {
+            super(connFactory, null);
+        }
+
+        @Override
+        public void activateObject(PooledObject<PoolableConnection> p) throws SQLException {
+            super.activateObject(p);
+            if (monitor != null) {
+                monitor.leased(p);
+            }
+        }
+
+        @Override
+        public void passivateObject(PooledObject<PoolableConnection> p) throws SQLException {
+            if (monitor != null) {
+                monitor.released(p);
+            }
+            super.passivateObject(p);
+        }
+
+        @Override
+        public void destroyObject(PooledObject<PoolableConnection> p) throws SQLException {
+            if (monitor != null) {
+                monitor.released(p);
+            }
+            super.destroyObject(p);
+        }
+    }
 }
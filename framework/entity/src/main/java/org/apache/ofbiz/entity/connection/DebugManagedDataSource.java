@@ -23,6 +23,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.dbcp2.managed.ManagedDataSource;
 import org.apache.commons.dbcp2.managed.TransactionRegistry;
@@ -34,8 +35,23 @@ public class DebugManagedDataSource<C extends Connection> extends ManagedDataSou
 
     private static final String MODULE = DebugManagedDataSource.class.getName();
 
+    private final ConnectionPoolMonitor monitor;
+
     public DebugManagedDataSource(ObjectPool<C> pool, TransactionRegistry transactionRegistry) {
+        this(pool, transactionRegistry, null);
+    }
+
+    public DebugManagedDataSource(ObjectPool<C> pool, TransactionRegistry transactionRegistry, ConnectionPoolMonitor monitor) {
         super(pool, transactionRegistry);
+        this.monitor = monitor;
+    }
+
+    /**
+     * Gets the monitor of the pool.
+     * @return the monitor, or <code>null</code> if the pool is not monitored
+     */
+    public ConnectionPoolMonitor getMonitor() {
+        return monitor;
     }
 
     @Override
@@ -54,7 +70,20 @@ public class DebugManagedDataSource<C extends Connection> extends ManagedDataSou
                 }
             }
         }
-        return super.getConnection();
+        if (monitor == null) {
+            return super.getConnection();
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            Connection connection = super.getConnection();
+            monitor.recordBorrow(System.currentTimeMillis() - startTime);
+            return connection;
+        } catch (SQLException e) {
+            if (e.getCause() instanceof NoSuchElementException) {
+                monitor.recordTimeout();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -75,6 +104,9 @@ public class DebugManagedDataSource<C extends Connection> extends ManagedDataSou
             dataSourceInfo.put("poolMinEvictableIdleTimeMillis", objectPool.getMinEvictableIdleTimeMillis());
             dataSourceInfo.put("poolMinIdle", objectPool.getMinIdle());
         }
+        if (monitor != null) {
+            monitor.addInfo(dataSourceInfo);
+        }
         return dataSourceInfo;
     }
 
@@ -20,6 +20,7 @@ package org.apache.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,12 +29,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.EntityLockedException;
@@ -71,6 +74,7 @@ public class GenericDAO {
     private static final String MODULE = GenericDAO.class.getName();
 
     private static final ConcurrentHashMap<String, GenericDAO> GENERIC_DAOS = new ConcurrentHashMap<>();
+    private static final long ESTIMATE_MIN_ROWS = UtilProperties.getPropertyAsLong("entity", "entity.count.estimate.min.rows", 100000);
     private final GenericHelperInfo helperInfo;
     private final ModelFieldTypeReader modelFieldTypeReader;
     private final Datasource datasource;
@@ -128,6 +132,78 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setInsertStamps(entity, modelEntity, fieldsToSave);
+
+        try {
+            sqlP.prepareStatement(makeInsertSql(modelEntity, fieldsToSave));
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        }
+    }
+
+    /**
+     * Inserts entities of the same entity with a single JDBC batch.
+     * @param entities the entities to insert, all of the same entity
+     * @return the number of rows inserted
+     * @throws GenericEntityException the generic entity exception
+     */
+    public int insertAll(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (entities.isEmpty()) {
+            return 0;
+        }
+        ModelEntity modelEntity = entities.get(0).getModelEntity();
+        if (modelEntity instanceof ModelViewEntity) {
+            int retVal = 0;
+            for (GenericEntity entity : entities) {
+                retVal += insert(entity);
+            }
+            return retVal;
+        }
+        List<ModelField> fieldsToSave = modelEntity.getFieldsUnmodifiable();
+
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                sqlP.prepareStatement(makeInsertSql(modelEntity, fieldsToSave));
+                for (GenericEntity entity : entities) {
+                    if (entity.getModelEntity() != modelEntity) {
+                        throw new GenericModelException("Cannot insert a " + entity.getEntityName() + " in a batch of "
+                                + modelEntity.getEntityName());
+                    }
+                    setInsertStamps(entity, modelEntity, fieldsToSave);
+                    SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                    sqlP.addBatch();
+                }
+                int retVal = 0;
+                for (int count : sqlP.executeBatch()) {
+                    // the driver may not know the count of each statement
+                    retVal += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                for (GenericEntity entity : entities) {
+                    entity.synchronizedWithDatasource();
+                }
+                return retVal;
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw new GenericEntityException("Error while inserting a batch of " + entities.size() + " " + modelEntity.getEntityName(), e);
+            }
+        }
+    }
+
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+
+        modelEntity.colNameString(fieldsToSave, sqlB, "");
+        sqlB.append(") VALUES (");
+        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
+        return sqlB.append(")").toString();
+    }
+
+    private static void setInsertStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -164,24 +240,6 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
-
-        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
-
-        modelEntity.colNameString(fieldsToSave, sqlB, "");
-        sqlB.append(") VALUES (");
-        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
-        String sql = sqlB.append(")").toString();
-
-        try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
-
-            entity.synchronizedWithDatasource();
-            return retVal;
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
-        }
     }
 
     /**
@@ -1132,6 +1190,38 @@ public class GenericDAO {
         return selectCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, null, findOptions);
     }
 
+    /**
+     * Gets the number of rows of a table estimated by the planner of the database, from its
+     * statistics, without counting them.
+     * @param delegator the delegator
+     * @param modelEntity the model entity, which must not be a view entity
+     * @return the estimated number of rows, or -1 when the database doesn't expose it
+     */
+    public long selectEstimatedCount(Delegator delegator, ModelEntity modelEntity) {
+        String fieldTypeName = datasource.getFieldTypeName().toLowerCase(Locale.ROOT);
+        String tableName = modelEntity.getTableName(datasource);
+        String sql;
+        if (fieldTypeName.contains("postgres")) {
+            // reltuples is -1 for a table which has never been analyzed
+            sql = "SELECT reltuples FROM pg_class WHERE oid = to_regclass(?)";
+        } else if (fieldTypeName.contains("mysql") || fieldTypeName.contains("maria")) {
+            sql = "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND UPPER(TABLE_NAME) = UPPER(?)";
+            tableName = tableName.substring(tableName.lastIndexOf('.') + 1);
+        } else {
+            return -1;
+        }
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            sqlP.prepareStatement(sql);
+            sqlP.setValue(tableName);
+            sqlP.executeQuery();
+            ResultSet resultSet = sqlP.getResultSet();
+            return resultSet.next() && resultSet.getObject(1) != null ? resultSet.getLong(1) : -1;
+        } catch (SQLException | GenericEntityException e) {
+            Debug.logWarning(e, "Unable to get the estimated number of rows of " + tableName + ", counting them", MODULE);
+            return -1;
+        }
+    }
+
     /**
      * Select count by condition long.
      * @param delegator the delegator
@@ -1163,6 +1253,14 @@ public class GenericDAO {
             }
         }
 
+        if (findOptions.isApproximateCount() && whereEntityCondition == null && havingEntityCondition == null
+                && !(modelEntity instanceof ModelViewEntity) && !findOptions.getDistinct()) {
+            long estimate = selectEstimatedCount(delegator, modelEntity);
+            if (estimate >= ESTIMATE_MIN_ROWS) {
+                return estimate;
+            }
+        }
+
         boolean isGroupBy = false;
         ModelViewEntity modelViewEntity = null;
         if (modelEntity instanceof ModelViewEntity) {
@@ -53,6 +53,12 @@ public interface GenericHelper {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /** Creates Entities of the same entity and writes them to the database in a single batch
+     *@param values The values to create, all of the same entity
+     *@return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -72,6 +72,18 @@ public class GenericHelperDAO implements GenericHelper {
         return value;
     }
 
+    /** Creates Entities of the same entity and writes them to the database in a single batch
+     *@param values The values to create, all of the same entity
+     *@return int representing number of rows effected by this operation
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.insertAll(values);
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
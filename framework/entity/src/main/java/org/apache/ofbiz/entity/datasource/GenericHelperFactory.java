@@ -85,6 +85,9 @@ public class GenericHelperFactory {
                             throw new IllegalStateException("Error loading GenericHelper class \"" + helperClassName + "\": " + e.getMessage());
                         }
 
+                        if (helper != null && datasourceInfo.getReadReplicas() != null && UtilValidate.isEmpty(helperInfo.getTenantId())) {
+                            helper = new ReplicaRoutingHelper(helper, helperInfo, datasourceInfo.getReadReplicas());
+                        }
                         if (helper != null) {
                             HELPER_CACHE.put(helperInfo.getHelperFullName(), helper);
                         }
@@ -64,6 +64,14 @@ public class ReadOnlyHelperDAO implements GenericHelper {
         return null;
     }
 
+    /** Read only, no creation realize on the database
+     *@return 0
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        return 0;
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
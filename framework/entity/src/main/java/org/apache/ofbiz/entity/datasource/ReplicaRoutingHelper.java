@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.config.model.ReadReplica;
+import org.apache.ofbiz.entity.config.model.ReadReplicas;
+import org.apache.ofbiz.entity.connection.DBCPConnectionFactory;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+
+/**
+ * Entity helper sending the finds to the read replicas of a datasource.
+ * <p>
+ * Writes always go to the primary datasource. A find is sent to a replica when it is
+ * flagged as read only (see {@link EntityFindOptions#setReadOnly(boolean)}), or when it is
+ * done outside of a transaction by a thread which did not write during the
+ * <code>sticky-seconds</code> before, so the data it committed are always read back. The
+ * finds of a transaction otherwise read from the primary, on the connection of the
+ * transaction, so that they see its writes and keep its isolation.
+ * Replicas lagging more than <code>max-lag-seconds</code>, or failing, are left aside
+ * until they catch up.
+ */
+public class ReplicaRoutingHelper implements GenericHelper {
+
+    private static final String MODULE = ReplicaRoutingHelper.class.getName();
+    private static final ScheduledExecutorService LAG_CHECKER = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE),
+            "replica-lag-check", 1, 60, false);
+    // time of the last write done by the current thread, for read-your-writes stickiness
+    private static final ThreadLocal<Long> LAST_WRITE_TIME = new ThreadLocal<>();
+
+    private final GenericHelper primary;
+    private final ReadReplicas config;
+    private final List<Replica> replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingHelper(GenericHelper primary, GenericHelperInfo helperInfo, ReadReplicas config) {
+        this.primary = primary;
+        this.config = config;
+        List<Replica> replicas = new ArrayList<>(config.getReadReplicaList().size());
+        for (ReadReplica readReplica : config.getReadReplicaList()) {
+            replicas.add(new Replica(new GenericHelperInfo(helperInfo.getEntityGroupName(), readReplica.getDatasourceName())));
+        }
+        this.replicas = Collections.unmodifiableList(replicas);
+        if (config.getMaxLagSeconds() > 0 && config.getLagCheckInterval() > 0) {
+            LAG_CHECKER.scheduleWithFixedDelay(this::checkLag, 0, config.getLagCheckInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Gets the time of the last write done by the current thread, so it can be carried to the
+     * next request of the same user.
+     * @return the time in milliseconds, <code>0</code> when the thread did not write
+     */
+    public static long getLastWriteTime() {
+        Long lastWriteTime = LAST_WRITE_TIME.get();
+        return lastWriteTime == null ? 0 : lastWriteTime;
+    }
+
+    /**
+     * Sets the time of the last write for the current thread, typically the one saved in the
+     * session of the user at the end of the previous request.
+     * @param lastWriteTime the time in milliseconds, <code>0</code> to clear it
+     */
+    public static void setLastWriteTime(long lastWriteTime) {
+        if (lastWriteTime > 0) {
+            LAST_WRITE_TIME.set(lastWriteTime);
+        } else {
+            LAST_WRITE_TIME.remove();
+        }
+    }
+
+    private static void markWrite() {
+        LAST_WRITE_TIME.set(System.currentTimeMillis());
+    }
+
+    private static boolean isTransactionInPlace() {
+        try {
+            return TransactionUtil.isTransactionInPlace();
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to get the status of the current transaction, reading from the primary datasource", MODULE);
+            return true;
+        }
+    }
+
+    /**
+     * Checks if a find can be served by a read replica.
+     * @param readOnly <code>true</code> if the find is flagged as read only by its caller
+     * @param inTransaction <code>true</code> if the find is done in a transaction
+     * @param lastWriteTime the time of the last write of the thread in milliseconds, <code>0</code> when it did not write
+     * @param now the current time in milliseconds
+     * @param stickySeconds the seconds during which a thread reads from the primary after a write
+     * @return <code>true</code> if the find can read from a replica
+     */
+    static boolean canReadReplica(boolean readOnly, boolean inTransaction, long lastWriteTime, long now, int stickySeconds) {
+        if (readOnly) {
+            return true;
+        }
+        // a replica is another connection, outside of the transaction, which doesn't see its writes
+        if (inTransaction) {
+            return false;
+        }
+        return lastWriteTime <= 0 || now - lastWriteTime >= stickySeconds * 1000L;
+    }
+
+    /**
+     * Selects the replica serving a find.
+     * @param findOptions the options of the find, may be <code>null</code>
+     * @return the replica, or <code>null</code> if the find must be done on the primary datasource
+     */
+    private Replica selectReplica(EntityFindOptions findOptions) {
+        boolean readOnly = findOptions != null && findOptions.isReadOnly();
+        long now = System.currentTimeMillis();
+        if (!canReadReplica(readOnly, !readOnly && isTransactionInPlace(), getLastWriteTime(), now, config.getStickySeconds())) {
+            return null;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        Replica selected = null;
+        int selectedActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.isAvailable(now)) {
+                continue;
+            }
+            if (!ReadReplicas.BALANCING_LEAST_CONNECTIONS.equals(config.getBalancing())) {
+                return replica;
+            }
+            int active = replica.getActiveConnections();
+            if (active < selectedActive) {
+                selected = replica;
+                selectedActive = active;
+            }
+        }
+        return selected;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            try (SQLProcessor sqlP = new SQLProcessor(null, replica.helperInfo)) {
+                ResultSet rs = sqlP.executeQuery(config.getLagQuery());
+                long lagSeconds = rs.next() ? rs.getLong(1) : 0;
+                boolean lagging = lagSeconds > config.getMaxLagSeconds();
+                if (lagging != replica.lagging) {
+                    Debug.logWarning("Read replica [" + replica.helperInfo.getHelperBaseName() + "] is " + lagSeconds
+                            + " seconds behind, " + (lagging ? "no longer used" : "used again"), MODULE);
+                }
+                replica.lagging = lagging;
+            } catch (GenericEntityException | SQLException e) {
+                Debug.logWarning(e, "Unable to check the lag of read replica [" + replica.helperInfo.getHelperBaseName() + "]", MODULE);
+                replica.lagging = true;
+            }
+        }
+    }
+
+    private void markFailed(Replica replica, GenericEntityException e) {
+        Debug.logWarning(e, "Read replica [" + replica.helperInfo.getHelperBaseName() + "] failed, reading from the primary datasource",
+                MODULE);
+        replica.failedUntil = System.currentTimeMillis() + Math.max(config.getLagCheckInterval(), 1) * 1000L;
+    }
+
+    @Override
+    public String getHelperName() {
+        return primary.getHelperName();
+    }
+
+    @Override
+    public GenericValue create(GenericValue value) throws GenericEntityException {
+        markWrite();
+        return primary.create(value);
+    }
+
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        markWrite();
+        return primary.createAll(values);
+    }
+
+    @Override
+    public GenericValue findByPrimaryKey(GenericPK primaryKey) throws GenericEntityException {
+        Replica replica = selectReplica(null);
+        if (replica != null) {
+            try {
+                return replica.helper.findByPrimaryKey(primaryKey);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findByPrimaryKey(primaryKey);
+    }
+
+    @Override
+    public GenericValue findByPrimaryKeyPartial(GenericPK primaryKey, Set<String> keys) throws GenericEntityException {
+        Replica replica = selectReplica(null);
+        if (replica != null) {
+            try {
+                return replica.helper.findByPrimaryKeyPartial(primaryKey, keys);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findByPrimaryKeyPartial(primaryKey, keys);
+    }
+
+    @Override
+    public List<GenericValue> findAllByPrimaryKeys(List<GenericPK> primaryKeys) throws GenericEntityException {
+        Replica replica = selectReplica(null);
+        if (replica != null) {
+            try {
+                return replica.helper.findAllByPrimaryKeys(primaryKeys);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findAllByPrimaryKeys(primaryKeys);
+    }
+
+    @Override
+    public int removeByPrimaryKey(GenericPK primaryKey) throws GenericEntityException {
+        markWrite();
+        return primary.removeByPrimaryKey(primaryKey);
+    }
+
+    @Override
+    public List<GenericValue> findByMultiRelation(GenericValue value, ModelRelation modelRelationOne, ModelEntity modelEntityOne,
+            ModelRelation modelRelationTwo, ModelEntity modelEntityTwo, List<String> orderBy) throws GenericEntityException {
+        Replica replica = selectReplica(null);
+        if (replica != null) {
+            try {
+                return replica.helper.findByMultiRelation(value, modelRelationOne, modelEntityOne, modelRelationTwo, modelEntityTwo, orderBy);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findByMultiRelation(value, modelRelationOne, modelEntityOne, modelRelationTwo, modelEntityTwo, orderBy);
+    }
+
+    @Override
+    public EntityListIterator findListIteratorByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition,
+            EntityCondition havingEntityCondition, Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions)
+            throws GenericEntityException {
+        Replica replica = selectReplica(findOptions);
+        if (replica != null) {
+            try {
+                return replica.helper.findListIteratorByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition,
+                        fieldsToSelect, orderBy, findOptions);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findListIteratorByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect,
+                orderBy, findOptions);
+    }
+
+    @Override
+    public long findCountByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition,
+            EntityCondition havingEntityCondition, EntityFindOptions findOptions) throws GenericEntityException {
+        Replica replica = selectReplica(findOptions);
+        if (replica != null) {
+            try {
+                return replica.helper.findCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+    }
+
+    @Override
+    public long findCountByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition,
+            EntityCondition havingEntityCondition, List<ModelField> selectFields, EntityFindOptions findOptions)
+            throws GenericEntityException {
+        Replica replica = selectReplica(findOptions);
+        if (replica != null) {
+            try {
+                return replica.helper.findCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, selectFields,
+                        findOptions);
+            } catch (GenericEntityException e) {
+                markFailed(replica, e);
+            }
+        }
+        return primary.findCountByCondition(delegator, modelEntity, whereEntityCondition, havingEntityCondition, selectFields, findOptions);
+    }
+
+    @Override
+    public int removeByCondition(Delegator delegator, ModelEntity modelEntity, EntityCondition condition) throws GenericEntityException {
+        markWrite();
+        return primary.removeByCondition(delegator, modelEntity, condition);
+    }
+
+    @Override
+    public int storeByCondition(Delegator delegator, ModelEntity modelEntity, Map<String, ? extends Object> fieldsToSet, EntityCondition condition)
+            throws GenericEntityException {
+        markWrite();
+        return primary.storeByCondition(delegator, modelEntity, fieldsToSet, condition);
+    }
+
+    @Override
+    public int store(GenericValue value) throws GenericEntityException {
+        markWrite();
+        return primary.store(value);
+    }
+
+    @Override
+    public void checkDataSource(Map<String, ModelEntity> modelEntities, List<String> messages, boolean addMissing) throws GenericEntityException {
+        primary.checkDataSource(modelEntities, messages, addMissing);
+    }
+
+    private static final class Replica {
+        private final GenericHelperInfo helperInfo;
+        private final GenericHelper helper;
+        private volatile boolean lagging = false;
+        private volatile long failedUntil = 0;
+
+        private Replica(GenericHelperInfo helperInfo) {
+            this.helperInfo = helperInfo;
+            this.helper = new ReadOnlyHelperDAO(helperInfo);
+        }
+
+        private boolean isAvailable(long now) {
+            return !lagging && failedUntil <= now;
+        }
+
+        private int getActiveConnections() {
+            Object active = DBCPConnectionFactory.getDataSourceInfo(helperInfo.getHelperFullName()).get("poolNumActive");
+            return active instanceof Integer ? (Integer) active : 0;
+        }
+    }
+}
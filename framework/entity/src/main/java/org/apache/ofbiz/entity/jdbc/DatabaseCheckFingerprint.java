@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.jdbc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelFieldType;
+import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
+import org.apache.ofbiz.entity.model.ModelIndex;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+
+/**
+ * Fingerprint of what the database check done on start compares: the tables, columns, keys and
+ * indexes of the entities of a datasource, their field types and the check options.
+ * <p>
+ * It is stored after a check which reported nothing to fix, so that a datasource having its
+ * <code>skip-check-if-unchanged</code> attribute set skips the next checks as long as the
+ * fingerprint stays the same. The fingerprints are kept in <code>runtime/data</code>, next to
+ * the embedded databases, so cleaning them also forces a new check.
+ */
+public final class DatabaseCheckFingerprint {
+
+    private static final String MODULE = DatabaseCheckFingerprint.class.getName();
+    private static final Path FINGERPRINT_DIR = Paths.get("runtime", "data", "entity-check");
+
+    private DatabaseCheckFingerprint() { }
+
+    /**
+     * Computes the fingerprint of the database check of entities.
+     * @param datasource the datasource the entities are checked against
+     * @param modelEntities the entities of the groups using this datasource, by entity name
+     * @return the fingerprint, a hex encoded SHA-256 digest
+     */
+    public static String compute(Datasource datasource, Map<String, ModelEntity> modelEntities) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(datasource.getName()).append('|').append(datasource.getFieldTypeName())
+                .append('|').append(datasource.getUseSchemas()).append('|').append(datasource.getSchemaName())
+                .append('|').append(datasource.getAddMissingOnStart()).append('|').append(datasource.getCheckPksOnStart())
+                .append('|').append(datasource.getUsePkConstraintNames()).append('|').append(datasource.getConstraintNameClipLength())
+                .append('|').append(datasource.getUseForeignKeys()).append('|').append(datasource.getCheckFksOnStart())
+                .append('|').append(datasource.getUseForeignKeyIndices()).append('|').append(datasource.getCheckFkIndicesOnStart())
+                .append('|').append(datasource.getFkStyle()).append('|').append(datasource.getUseFkInitiallyDeferred())
+                .append('|').append(datasource.getUseIndices()).append('|').append(datasource.getUseIndicesUnique())
+                .append('|').append(datasource.getCheckIndicesOnStart()).append('|').append(datasource.getTableType())
+                .append('|').append(datasource.getCharacterSet()).append('|').append(datasource.getCollate());
+        if (datasource.getInlineJdbc() != null) {
+            sb.append('|').append(datasource.getInlineJdbc().getJdbcUri()).append('|').append(datasource.getInlineJdbc().getJdbcUsername());
+        } else if (datasource.getJndiJdbc() != null) {
+            sb.append('|').append(datasource.getJndiJdbc().getJndiServerName()).append('|').append(datasource.getJndiJdbc().getJndiName());
+        }
+        sb.append('\n');
+
+        ModelFieldTypeReader fieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(datasource.getName());
+        for (ModelEntity entity : new TreeMap<>(modelEntities).values()) {
+            sb.append(entity.getEntityName());
+            if (entity instanceof ModelViewEntity) {
+                // view entities are not checked
+                sb.append(" view\n");
+                continue;
+            }
+            sb.append(' ').append(entity.getPlainTableName()).append(' ').append(entity.getNeverCheck()).append('\n');
+            for (ModelField field : entity.getFieldsUnmodifiable()) {
+                ModelFieldType fieldType = fieldTypeReader == null ? null : fieldTypeReader.getModelFieldType(field.getType());
+                sb.append(" f ").append(field.getName()).append(' ').append(field.getColName()).append(' ').append(field.getType())
+                        .append(' ').append(fieldType == null ? null : fieldType.getSqlType()).append(' ').append(field.getIsPk())
+                        .append(' ').append(field.getIsNotNull()).append('\n');
+            }
+            Iterator<ModelRelation> relations = entity.getRelationsIterator();
+            while (relations.hasNext()) {
+                ModelRelation relation = relations.next();
+                sb.append(" r ").append(relation.getType()).append(' ').append(relation.getTitle()).append(' ')
+                        .append(relation.getRelEntityName()).append(' ').append(relation.getFkName()).append(' ')
+                        .append(relation.keyMapString(",", "")).append('\n');
+            }
+            Iterator<ModelIndex> indexes = entity.getIndexesIterator();
+            while (indexes.hasNext()) {
+                ModelIndex index = indexes.next();
+                sb.append(" i ").append(index.getName()).append(' ').append(index.getUnique());
+                for (ModelIndex.Field indexField : index.getFields()) {
+                    sb.append(' ').append(indexField.getFieldName()).append(':').append(indexField.getFunction());
+                }
+                sb.append('\n');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return StringUtil.toHexString(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks if a fingerprint is the one of the last check of the same entities which reported nothing to fix.
+     * @param checkName the name of the check, made of the helper full name and the entity group name
+     * @param fingerprint the fingerprint of the check to do
+     * @return <code>true</code> if the check can be skipped
+     */
+    public static boolean matchesLastCheck(String checkName, String fingerprint) {
+        Path file = getFingerprintFile(checkName);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            return fingerprint.equals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            Debug.logWarning(e, "Unable to read the database check fingerprint " + file, MODULE);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the fingerprint of a check if this check reported nothing to fix, removes the
+     * stored fingerprint otherwise.
+     * @param checkName the name of the check, made of the helper full name and the entity group name
+     * @param fingerprint the fingerprint of the check done
+     * @param messages the messages reported by the check
+     */
+    public static void storeCheck(String checkName, String fingerprint, List<String> messages) {
+        Path file = getFingerprintFile(checkName);
+        try {
+            if (!isCleanCheck(messages)) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.createDirectories(FINGERPRINT_DIR);
+            // write in a temporary file first so that a concurrent start never reads a partial file
+            Path tmp = Files.createTempFile(FINGERPRINT_DIR, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, fingerprint.getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            Debug.logWarning(e, "Unable to store the database check fingerprint " + file, MODULE);
+        }
+    }
+
+    /**
+     * Checks if the messages of a database check only report its progress, any other message
+     * is about something missing, different or created in the database.
+     * @param messages the messages reported by the check
+     * @return <code>true</code> if the check reported nothing to fix
+     */
+    static boolean isCleanCheck(List<String> messages) {
+        for (String message : messages) {
+            if (!message.contains("Checking #") && !message.startsWith("NOT Checking ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Path getFingerprintFile(String checkName) {
+        return FINGERPRINT_DIR.resolve(checkName.replaceAll("[^A-Za-z0-9._-]", "_") + ".sha256");
+    }
+}
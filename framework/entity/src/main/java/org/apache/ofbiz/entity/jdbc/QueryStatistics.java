@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Statistics of the SQL statements run by the entity engine, grouped by statement shape: the SQL
+ * with its literals replaced by <code>?</code> and its lists of bound values collapsed, so that the
+ * same query run with different values, or with a different number of values in an
+ * <code>IN</code> condition, is counted once.
+ * <p>
+ * For each shape it counts the executions, the total, maximum and 99th percentile time, the rows
+ * read or changed, and the callers running it: the services and requests on top of the caller
+ * stack of the thread, see {@link #pushCaller(String)}. A shape run many times by the same caller
+ * for a few rows each time is the sign of an N+1 query pattern.
+ * <p>
+ * The statistics are collected when the <code>entity.query.stats.enable</code> property of
+ * <code>entity.properties</code> is set, or after {@link #setEnabled(boolean)}. At most
+ * <code>entity.query.stats.max.shapes</code> shapes are kept, the ones having the least total
+ * time are dropped first. The statements slower than <code>entity.query.slow.threshold</code>
+ * milliseconds are logged in any case, see {@link SQLProcessor}.
+ */
+public final class QueryStatistics {
+
+    private static final String MODULE = QueryStatistics.class.getName();
+    private static final ConcurrentHashMap<String, Statement> STATEMENTS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Deque<String>> CALLER_STACK = ThreadLocal.withInitial(ArrayDeque::new);
+    // relations read one value at a time since the first caller was pushed, by entity and relation name
+    private static final ThreadLocal<Map<String, int[]>> RELATED_READS = ThreadLocal.withInitial(HashMap::new);
+    // distinct callers kept per statement shape, the other ones are counted together
+    private static final int MAX_CALLERS = 20;
+    private static final String OTHER_CALLERS = "(other)";
+    private static final String NO_CALLER = "(none)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern VALUE_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static volatile boolean enabled = UtilProperties.propertyValueEqualsIgnoreCase("entity", "entity.query.stats.enable", "true");
+    private static final int MAX_SHAPES = (int) UtilProperties.getPropertyNumber("entity", "entity.query.stats.max.shapes", 500);
+    private static final long SLOW_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            (long) UtilProperties.getPropertyNumber("entity", "entity.query.slow.threshold", 1000));
+    private static final String EXPLAIN_PREFIX = UtilProperties.getPropertyValue("entity", "entity.query.slow.explain.prefix", "");
+    private static final int RELATED_READS_THRESHOLD = (int) UtilProperties.getPropertyNumber("entity", "entity.relation.repeat.warn.threshold", 0);
+
+    private QueryStatistics() { }
+
+    /**
+     * Returns <code>true</code> if the statistics are collected.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops collecting the statistics, the statistics collected are kept.
+     * @param enabled <code>true</code> to collect the statistics
+     */
+    public static void setEnabled(boolean enabled) {
+        QueryStatistics.enabled = enabled;
+    }
+
+    /**
+     * Clears the statistics collected.
+     */
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    /**
+     * Pushes a caller on the caller stack of the current thread, the statements run until it is
+     * popped are counted for it. It must be popped in a <code>finally</code> block.
+     * @param caller the caller, like <code>service:createOrder</code> or <code>request:checkout</code>
+     */
+    public static void pushCaller(String caller) {
+        CALLER_STACK.get().push(caller);
+    }
+
+    /**
+     * Pops the caller on top of the caller stack of the current thread.
+     */
+    public static void popCaller() {
+        Deque<String> stack = CALLER_STACK.get();
+        if (!stack.isEmpty()) {
+            stack.pop();
+        }
+        if (stack.isEmpty() && RELATED_READS_THRESHOLD > 0) {
+            RELATED_READS.get().clear();
+        }
+    }
+
+    /**
+     * Returns the caller on top of the caller stack of the current thread, or <code>null</code>.
+     */
+    public static String getCaller() {
+        return CALLER_STACK.get().peek();
+    }
+
+    /**
+     * Counts a read of a relation for a single value, done by <code>getRelated</code> or
+     * <code>getRelatedOne</code> without the values of the relation having been prefetched. When
+     * the same relation of the same entity is read this way <code>entity.relation.repeat.warn.threshold</code>
+     * times by a request or a service, a warning suggests prefetching it: running the same query
+     * for each value of a list is an N+1 query pattern.
+     * @param entityName the entity of the value
+     * @param relationName the relation read
+     */
+    public static void countRelatedRead(String entityName, String relationName) {
+        if (RELATED_READS_THRESHOLD <= 0 || CALLER_STACK.get().isEmpty()) {
+            return;
+        }
+        String key = entityName + "." + relationName;
+        int[] count = RELATED_READS.get().computeIfAbsent(key, k -> new int[1]);
+        if (++count[0] == RELATED_READS_THRESHOLD) {
+            Debug.logWarning("Relation [" + relationName + "] of entity [" + entityName + "] read " + count[0]
+                    + " times one value at a time by " + getCaller() + ", consider loading it for all the values at once"
+                    + " with EntityQuery.prefetch or Delegator.prefetchRelated", MODULE);
+        }
+    }
+
+    /**
+     * Checks if a statement is slow enough to be logged.
+     * @param nanos the execution time in nanoseconds
+     * @return <code>true</code> if the statement is slower than the threshold
+     */
+    static boolean isSlow(long nanos) {
+        return SLOW_THRESHOLD_NANOS > 0 && nanos >= SLOW_THRESHOLD_NANOS;
+    }
+
+    /**
+     * Returns the prefix turning a <code>SELECT</code> into the statement returning its execution
+     * plan, like <code>EXPLAIN </code>, or an empty string if the plans of the slow statements are
+     * not logged.
+     */
+    static String getExplainPrefix() {
+        return EXPLAIN_PREFIX;
+    }
+
+    /**
+     * Logs a slow statement.
+     * @param sql the SQL of the statement
+     * @param nanos the execution time in nanoseconds
+     * @param plan the execution plan of the statement, or <code>null</code>
+     */
+    static void logSlowStatement(String sql, long nanos, String plan) {
+        StringBuilder sb = new StringBuilder("Slow SQL statement [").append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms]");
+        String caller = getCaller();
+        if (caller != null) {
+            sb.append(" run by ").append(caller);
+        }
+        sb.append(": ").append(sql);
+        if (plan != null) {
+            sb.append(System.lineSeparator()).append(plan);
+        }
+        Debug.logWarning(sb.toString(), MODULE);
+    }
+
+    /**
+     * Records an execution of a statement, if the statistics are collected.
+     * @param sql the SQL of the statement
+     * @param nanos the execution time in nanoseconds
+     * @param rows the rows read or changed
+     */
+    static void record(String sql, long nanos, long rows) {
+        if (!enabled || sql == null) {
+            return;
+        }
+        String shape = normalize(sql);
+        Statement statement = STATEMENTS.get(shape);
+        if (statement == null) {
+            if (STATEMENTS.size() >= MAX_SHAPES) {
+                evict();
+            }
+            statement = STATEMENTS.computeIfAbsent(shape, Statement::new);
+        }
+        statement.record(nanos, rows, getCaller());
+    }
+
+    // drops a tenth of the shapes, the ones having the least total time
+    private static synchronized void evict() {
+        if (STATEMENTS.size() < MAX_SHAPES) {
+            return;
+        }
+        List<Statement> statements = new ArrayList<>(STATEMENTS.values());
+        statements.sort(Comparator.comparingLong(Statement::getTotalNanos));
+        for (int i = 0; i < Math.max(1, statements.size() / 10); i++) {
+            STATEMENTS.remove(statements.get(i).shape);
+        }
+    }
+
+    /**
+     * Normalizes the SQL of a statement to its shape.
+     * @param sql the SQL of the statement
+     * @return the shape of the statement
+     */
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+        return VALUE_LIST.matcher(shape).replaceAll("(?...)");
+    }
+
+    /**
+     * Gets the statistics of the statements having the most total time.
+     * @param maxStatements the maximum number of statements returned
+     * @return for each statement a map with its <code>sql</code> shape, execution <code>count</code>,
+     *         <code>totalMillis</code>, <code>averageMillis</code>, <code>maxMillis</code>,
+     *         <code>p99Millis</code>, <code>rows</code>, <code>rowsPerExecution</code>, the
+     *         <code>topCaller</code> and its <code>topCallerCount</code>, and the <code>callers</code>
+     *         map of execution count by caller
+     */
+    public static List<Map<String, Object>> getTopStatements(int maxStatements) {
+        List<Statement> statements = new ArrayList<>(STATEMENTS.values());
+        statements.sort(Comparator.comparingLong(Statement::getTotalNanos).reversed());
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(maxStatements, statements.size()));
+        for (Statement statement : statements.subList(0, Math.min(maxStatements, statements.size()))) {
+            result.add(statement.toMap());
+        }
+        return result;
+    }
+
+    private static final class Statement {
+        // upper bound of each bucket of the histogram of the execution times, in microseconds: 2^i
+        private static final int BUCKETS = 40;
+
+        private final String shape;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final ConcurrentHashMap<String, LongAdder> callers = new ConcurrentHashMap<>();
+
+        Statement(String shape) {
+            this.shape = shape;
+        }
+
+        void record(long nanos, long rowCount, String caller) {
+            count.increment();
+            totalNanos.add(nanos);
+            rows.add(Math.max(0, rowCount));
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1)));
+            String key = caller == null ? NO_CALLER : caller;
+            LongAdder callerCount = callers.get(key);
+            if (callerCount == null) {
+                callerCount = callers.size() < MAX_CALLERS ? callers.computeIfAbsent(key, k -> new LongAdder())
+                        : callers.computeIfAbsent(OTHER_CALLERS, k -> new LongAdder());
+            }
+            callerCount.increment();
+        }
+
+        long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        // upper bound of the bucket holding the 99th percentile
+        long getP99Micros() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            long rank = (long) Math.ceil(total * 0.99);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        Map<String, Object> toMap() {
+            long executions = count.sum();
+            long total = totalNanos.sum();
+            long rowCount = rows.sum();
+            Map<String, Long> callerCounts = new HashMap<>();
+            String topCaller = null;
+            long topCallerCount = 0;
+            for (Map.Entry<String, LongAdder> entry : callers.entrySet()) {
+                long callerCount = entry.getValue().sum();
+                callerCounts.put(entry.getKey(), callerCount);
+                if (callerCount > topCallerCount) {
+                    topCaller = entry.getKey();
+                    topCallerCount = callerCount;
+                }
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("sql", shape);
+            map.put("count", executions);
+            map.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(total));
+            map.put("averageMillis", executions == 0 ? 0.0 : total / 1000000.0 / executions);
+            map.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            map.put("p99Millis", getP99Micros() / 1000.0);
+            map.put("rows", rowCount);
+            map.put("rowsPerExecution", executions == 0 ? 0.0 : (double) rowCount / executions);
+            map.put("topCaller", topCaller);
+            map.put("topCallerCount", topCallerCount);
+            map.put("callers", callerCounts);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.jdbc;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelFieldType;
+import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
+
+/**
+ * Reads the columns of a row of a {@link ResultSet} into a {@link GenericEntity}, the column
+ * <code>i + 1</code> holding the field <code>i</code> of the selection.
+ * <p>
+ * The {@link JdbcValueHandler} of each field is resolved once when the mapper is built instead of
+ * for each column of each row as {@link SqlJdbcUtil#getValue} does. The encrypted fields and the
+ * types without handler are still read by {@link SqlJdbcUtil#getValue}. The mappers are cached by
+ * {@link org.apache.ofbiz.entity.model.ModelEntity#getRowMapper(List, ModelFieldTypeReader)}.
+ */
+public final class RowMapper {
+
+    private static final String MODULE = RowMapper.class.getName();
+
+    private final ModelField[] fields;
+    // null for the fields read by SqlJdbcUtil.getValue
+    private final JdbcValueHandler<?>[] handlers;
+    private final ModelFieldTypeReader modelFieldTypeReader;
+
+    public RowMapper(List<ModelField> selectFields, ModelFieldTypeReader modelFieldTypeReader) {
+        this.fields = selectFields.toArray(new ModelField[0]);
+        this.handlers = new JdbcValueHandler<?>[fields.length];
+        this.modelFieldTypeReader = modelFieldTypeReader;
+        for (int i = 0; i < fields.length; i++) {
+            ModelField curField = fields[i];
+            ModelFieldType mft = modelFieldTypeReader.getModelFieldType(curField.getType());
+            // an unknown type is reported by SqlJdbcUtil.getValue when a row is read
+            if (mft != null && !curField.getEncryptMethod().isEncrypted()) {
+                handlers[i] = mft.getJdbcValueHandler();
+            }
+        }
+    }
+
+    /**
+     * Reads the current row of a result set.
+     * @param rs the result set, positioned on the row
+     * @param entity the entity the fields are set in
+     * @throws GenericEntityException if a column can't be read
+     */
+    public void map(ResultSet rs, GenericEntity entity) throws GenericEntityException {
+        for (int i = 0; i < fields.length; i++) {
+            JdbcValueHandler<?> handler = handlers[i];
+            if (handler != null) {
+                try {
+                    entity.dangerousSetNoCheckButFast(fields[i], handler.getValue(rs, i + 1));
+                    continue;
+                } catch (Exception e) {
+                    Debug.logError(e, MODULE);
+                }
+            }
+            SqlJdbcUtil.getValue(rs, i + 1, fields[i], entity, modelFieldTypeReader);
+        }
+    }
+
+    /**
+     * Gets the number of columns read.
+     * @return the number of fields of the selection
+     */
+    public int getColumnCount() {
+        return fields.length;
+    }
+}
@@ -30,6 +30,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
@@ -88,6 +89,15 @@ public class SQLProcessor implements AutoCloseable {
     // / true in case the connection shall be closed.
     private boolean bDeleteConnection = false;
 
+    // / execution time of the query of the result set not yet recorded in the query statistics, -1 if none
+    private long queryNanos = -1;
+
+    // / rows read from the result set not yet recorded in the query statistics
+    private long queryRows;
+
+    // / values bound through a JdbcValueHandler, kept to get the plan of a slow query
+    private List<Object[]> boundValues = null;
+
     /**
      * Construct an object based on the helper/datasource
      * @param helperInfo  The datasource helper (see entityengine.xml &lt;datasource name=".."&gt;)
@@ -216,6 +226,7 @@ public class SQLProcessor implements AutoCloseable {
      */
     @Override
     public void close() throws GenericDataSourceException {
+        recordQuery();
         if (manualTx) {
             if (Debug.verboseOn()) {
                 Debug.logVerbose("SQLProcessor:close() calling commit : manualTx=" + manualTx, MODULE);
@@ -368,6 +379,7 @@ public class SQLProcessor implements AutoCloseable {
             Debug.logVerbose("[SQLProcessor.prepareStatement] sql=" + sql, MODULE);
         }
 
+        recordQuery();
         this.sql = sql;
 
         if (connection == null) {
@@ -376,6 +388,7 @@ public class SQLProcessor implements AutoCloseable {
 
         try {
             ind = 1;
+            boundValues = QueryStatistics.getExplainPrefix().isEmpty() ? null : new ArrayList<>();
             if (specifyTypeAndConcur) {
                 ps = connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
                 if (Debug.verboseOn()) {
@@ -407,7 +420,10 @@ public class SQLProcessor implements AutoCloseable {
     public ResultSet executeQuery() throws GenericDataSourceException {
         try {
             // if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.executeQuery] ps=" + ps.toString(), MODULE);
+            long startNanos = System.nanoTime();
             resultSet = ps.executeQuery();
+            queryNanos = System.nanoTime() - startNanos;
+            queryRows = 0;
         } catch (SQLException sqle) {
             this.checkLockWaitInfo(sqle);
             throw new GenericDataSourceException("SQL Exception while executing the following:" + this.sql, sqle);
@@ -437,7 +453,10 @@ public class SQLProcessor implements AutoCloseable {
         try {
             // if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.executeUpdate] ps=" + ps.toString(), MODULE);
             //TransactionUtil.printAllThreadsTransactionBeginStacks();
-            return ps.executeUpdate();
+            long startNanos = System.nanoTime();
+            int rows = ps.executeUpdate();
+            recordStatement(this.sql, System.nanoTime() - startNanos, rows);
+            return rows;
         } catch (SQLException sqle) {
             this.checkLockWaitInfo(sqle);
             // don't display this here, may not be critical, allow handling further up...
@@ -446,6 +465,42 @@ public class SQLProcessor implements AutoCloseable {
         }
     }
 
+    /**
+     * Adds the values bound to the currently active prepared statement to its batch,
+     * the next values are bound from the first binding variable again.
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            ps.addBatch();
+            ind = 1;
+            boundValues = null;
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding a batch to the following:" + this.sql, sqle);
+        }
+    }
+
+    /**
+     * Execute the batch of the currently active prepared statement
+     * @return  The number of rows updated by each statement of the batch
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            long startNanos = System.nanoTime();
+            int[] rows = ps.executeBatch();
+            long total = 0;
+            for (int row : rows) {
+                total += Math.max(0, row);
+            }
+            recordStatement(this.sql, System.nanoTime() - startNanos, total);
+            return rows;
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            throw new GenericDataSourceException("SQL Exception while executing the batch of the following:" + this.sql, sqle);
+        }
+    }
+
     /**
      * Execute update based on the SQL statement given
      * @param sql  SQL statement to be executed
@@ -454,7 +509,10 @@ public class SQLProcessor implements AutoCloseable {
     public int executeUpdate(String sql) throws GenericDataSourceException {
 
         try (Statement stmt = connection.createStatement()) {
-            return stmt.executeUpdate(sql);
+            long startNanos = System.nanoTime();
+            int rows = stmt.executeUpdate(sql);
+            recordStatement(sql, System.nanoTime() - startNanos, rows);
+            return rows;
         } catch (SQLException sqle) {
             // passing on this exception as nested, no need to log it here:
             // Debug.logError(sqle, "SQLProcessor.executeUpdate(sql) : ERROR : ", MODULE);
@@ -469,12 +527,99 @@ public class SQLProcessor implements AutoCloseable {
      */
     public boolean next() throws GenericDataSourceException {
         try {
-            return resultSet.next();
+            boolean hasNext = resultSet.next();
+            if (hasNext) {
+                queryRows++;
+            }
+            return hasNext;
         } catch (SQLException sqle) {
             throw new GenericDataSourceException("SQL Exception while executing the following:" + this.sql, sqle);
         }
     }
 
+    /**
+     * Counts a row read from the currently active ResultSet in the query statistics, for the
+     * callers reading the ResultSet directly instead of calling {@link #next()}.
+     */
+    public void countRow() {
+        queryRows++;
+    }
+
+    /**
+     * Records the query of the currently active ResultSet in the query statistics, once all the
+     * rows read have been counted, and logs it if it is slow.
+     */
+    private void recordQuery() {
+        if (queryNanos < 0) {
+            return;
+        }
+        long nanos = queryNanos;
+        queryNanos = -1;
+        QueryStatistics.record(sql, nanos, queryRows);
+        if (QueryStatistics.isSlow(nanos)) {
+            QueryStatistics.logSlowStatement(sql, nanos, explain());
+        }
+    }
+
+    private static void recordStatement(String sql, long nanos, long rows) {
+        QueryStatistics.record(sql, nanos, rows);
+        if (QueryStatistics.isSlow(nanos)) {
+            QueryStatistics.logSlowStatement(sql, nanos, null);
+        }
+    }
+
+    /**
+     * Gets the execution plan of the current query, binding the same values again.
+     * @return the plan, or <code>null</code> if the plans are not logged or can not be got for this query
+     */
+    private String explain() {
+        String prefix = QueryStatistics.getExplainPrefix();
+        // all the values must have been bound through a JdbcValueHandler to be bound again
+        if (prefix.isEmpty() || sql == null || boundValues == null || boundValues.size() != ind - 1
+                || !sql.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return null;
+        }
+        Savepoint savepoint = null;
+        try {
+            // a failing statement can abort the transaction of the query, as on PostgreSQL: in a transaction
+            // the plan is got in a savepoint always rolled back
+            if (!connection.getAutoCommit()) {
+                savepoint = connection.setSavepoint();
+            }
+            try (PreparedStatement explainPs = connection.prepareStatement(prefix + sql)) {
+                int index = 1;
+                for (Object[] boundValue : boundValues) {
+                    @SuppressWarnings("unchecked")
+                    JdbcValueHandler<Object> handler = (JdbcValueHandler<Object>) boundValue[0];
+                    handler.setValue(explainPs, index++, boundValue[1]);
+                }
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet planRs = explainPs.executeQuery()) {
+                    int columnCount = planRs.getMetaData().getColumnCount();
+                    while (planRs.next()) {
+                        for (int i = 1; i <= columnCount; i++) {
+                            plan.append(i > 1 ? "\t" : "").append(planRs.getString(i));
+                        }
+                        plan.append(System.lineSeparator());
+                    }
+                }
+                return plan.toString();
+            }
+        } catch (SQLException sqle) {
+            Debug.logWarning("Unable to get the plan of the slow SQL statement: " + sqle.getMessage(), MODULE);
+            return null;
+        } finally {
+            if (savepoint != null) {
+                try {
+                    connection.rollback(savepoint);
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException sqle) {
+                    Debug.logWarning("Unable to roll back the plan of the slow SQL statement: " + sqle.getMessage(), MODULE);
+                }
+            }
+        }
+    }
+
     /**
      * Getter: get the currently active ResultSet
      * @return ResultSet
@@ -540,6 +685,9 @@ public class SQLProcessor implements AutoCloseable {
     public <T> void setValue(JdbcValueHandler<T> handler, T field) throws SQLException {
         handler.setValue(ps, ind, field);
         ind++;
+        if (boundValues != null) {
+            boundValues.add(new Object[] {handler, field});
+        }
     }
 
     /**
@@ -18,6 +18,8 @@
  */
 package org.apache.ofbiz.entity.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -33,6 +35,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -50,6 +53,7 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
+import org.apache.ofbiz.entity.jdbc.RowMapper;
 import org.apache.ofbiz.entity.model.ModelIndex.Field;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -61,6 +65,7 @@ import org.w3c.dom.Element;
 public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private static final String MODULE = ModelEntity.class.getName();
+    private static final int MAX_ROW_MAPPERS = 64;
 
     /** The name of the time stamp field for locking/synchronization */
     public static final String STAMP_FIELD = "lastUpdatedStamp";
@@ -68,7 +73,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
     public static final String CREATE_STAMP_FIELD = "createdStamp";
     public static final String CREATE_STAMP_TX_FIELD = "createdTxStamp";
 
-    private transient ModelInfo modelInfo;
+    private ModelInfo modelInfo;
 
     /** The ModelReader that created this Entity */
     private final ModelReader modelReader;
@@ -89,8 +94,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
     private Integer sequenceBankSize = null;
 
     /** Synchronization object used to control access to the ModelField collection objects.
-     * A single lock is used for all ModelField collections so collection updates are atomic. */
-    private final Object fieldsLock = new Object();
+     * A single lock is used for all ModelField collections so collection updates are atomic.
+     * Not serialized, a new one is created when the entity is deserialized. */
+    private transient Object fieldsLock = new Object();
 
     /** Model fields in the order they were defined. This list duplicates the values in fieldsMap, but
      *  we must keep the list in its original sequence for SQL DISTINCT operations to work properly. */
@@ -98,6 +104,14 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private final Map<String, ModelField> fieldsMap = new HashMap<>();
 
+    /** Position of each field name in the value arrays of the GenericEntity objects of this entity.
+     *  A position is never reused or shifted, even when the field is removed or redefined. */
+    private final Map<String, Integer> fieldIndexes = new ConcurrentHashMap<>();
+    private volatile String[] fieldIndexNames = new String[0];
+
+    /** Row mappers of the field selections read, by field type reader and fields, see {@link #getRowMapper(List, ModelFieldTypeReader)} */
+    private transient volatile Map<List<Object>, RowMapper> rowMappers;
+
     private final ArrayList<String> pkFieldNames = new ArrayList<>();
 
     /** A List of the Field objects for the Entity, one for each Primary Key */
@@ -141,6 +155,11 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
     private String location = "";
 
     // ===== CONSTRUCTORS =====
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.fieldsLock = new Object();
+    }
+
     /** Default Constructor */
     public ModelEntity() {
         this.modelReader = null;
@@ -305,6 +324,18 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
         this.fieldsList.add(newField);
         this.fieldsMap.put(newField.getName(), newField);
+        assignFieldIndex(newField.getName());
+    }
+
+    // must be called while holding the fieldsLock
+    private void assignFieldIndex(String fieldName) {
+        if (!fieldIndexes.containsKey(fieldName)) {
+            String[] names = Arrays.copyOf(fieldIndexNames, fieldIndexNames.length + 1);
+            names[names.length - 1] = fieldName;
+            // publish the names before the index, so a known index is always valid
+            fieldIndexNames = names;
+            fieldIndexes.put(fieldName, names.length - 1);
+        }
     }
 
     /**
@@ -421,6 +452,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
                 this.fieldsList.add(newField);
                 this.fieldsMap.put(newField.getName(), newField);
+                assignFieldIndex(newField.getName());
                 if (!newField.getIsPk()) {
                     if (existingField != null) {
                         this.nopks.remove(existingField);
@@ -793,6 +825,62 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    /**
+     * Gets the position of a field in the value arrays of the GenericEntity objects of this entity.
+     * The position of a field never changes.
+     * @param fieldName the field name
+     * @return the position, or -1 if the entity never had this field
+     */
+    public int getFieldIndex(String fieldName) {
+        Integer index = fieldIndexes.get(fieldName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the number of field positions, the size of the value arrays of the GenericEntity objects of this entity.
+     * @return the number of field positions
+     */
+    public int getFieldIndexSize() {
+        return fieldIndexNames.length;
+    }
+
+    /**
+     * Gets the name of the field at a position of the value arrays.
+     * @param index the position
+     * @return the field name
+     */
+    public String getFieldIndexName(int index) {
+        return fieldIndexNames[index];
+    }
+
+    /**
+     * Gets the mapper reading a selection of fields of this entity from the rows of a result set,
+     * built once for each selection. Only a limited number of selections is kept, the
+     * mappers of the other ones are built for each query.
+     * @param selectFields the fields selected, in the order of the columns
+     * @param modelFieldTypeReader the field types of the datasource
+     * @return the row mapper
+     */
+    public RowMapper getRowMapper(List<ModelField> selectFields, ModelFieldTypeReader modelFieldTypeReader) {
+        Map<List<Object>, RowMapper> mappers = rowMappers;
+        if (mappers == null) {
+            // the map is not serialized with the model
+            mappers = new ConcurrentHashMap<>();
+            rowMappers = mappers;
+        }
+        List<Object> key = new ArrayList<>(selectFields.size() + 1);
+        key.add(modelFieldTypeReader);
+        key.addAll(selectFields);
+        RowMapper mapper = mappers.get(key);
+        if (mapper == null) {
+            mapper = new RowMapper(selectFields, modelFieldTypeReader);
+            if (mappers.size() < MAX_ROW_MAPPERS) {
+                mappers.put(key, mapper);
+            }
+        }
+        return mapper;
+    }
+
     /**
      * Add field.
      * @param field the field
@@ -802,8 +890,10 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             return;
         }
         synchronized (fieldsLock) {
+            rowMappers = null;
             this.fieldsList.add(field);
             fieldsMap.put(field.getName(), field);
+            assignFieldIndex(field.getName());
             if (field.getIsPk()) {
                 pks.add(field);
                 if (!pkFieldNames.contains(field.getName())) {
@@ -827,6 +917,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         synchronized (fieldsLock) {
             ModelField field = fieldsMap.remove(fieldName);
             if (field != null) {
+                rowMappers = null;
                 this.fieldsList.remove(field);
                 if (field.getIsPk()) {
                     pks.remove(field);
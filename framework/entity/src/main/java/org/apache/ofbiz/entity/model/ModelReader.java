@@ -18,6 +18,8 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.model;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,8 +31,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
@@ -59,6 +66,10 @@ public final class ModelReader implements Serializable {
 
     private static final String MODULE = ModelReader.class.getName();
     private static final UtilCache<String, ModelReader> READERS = UtilCache.createUtilCache("entity.ModelReader", 0, 0);
+    // one lock per model name, so that the delegators sharing a model wait for it instead of reading it again
+    private static final Map<String, Object> READER_LOCKS = new ConcurrentHashMap<>();
+    // number of entity model files parsed in advance of the one being processed
+    private static final int PARSE_AHEAD = Runtime.getRuntime().availableProcessors() * 2;
 
     private volatile Map<String, ModelEntity> entityCache = null;
 
@@ -94,10 +105,15 @@ public final class ModelReader implements Serializable {
         ModelReader reader = READERS.get(tempModelName);
 
         if (reader == null) {
-            reader = new ModelReader(tempModelName);
-            // preload caches...
-            reader.getEntityCache();
-            reader = READERS.putIfAbsentAndGet(tempModelName, reader);
+            synchronized (READER_LOCKS.computeIfAbsent(tempModelName, k -> new Object())) {
+                reader = READERS.get(tempModelName);
+                if (reader == null) {
+                    reader = new ModelReader(tempModelName);
+                    // preload caches...
+                    reader.getEntityCache();
+                    reader = READERS.putIfAbsentAndGet(tempModelName, reader);
+                }
+            }
         }
         return reader;
     }
@@ -195,261 +211,393 @@ public final class ModelReader implements Serializable {
 
     public Map<String, ModelEntity> getEntityCache() throws GenericEntityException {
         if (entityCache == null) { // don't want to block here
-            synchronized (ModelReader.class) {
+            synchronized (this) {
                 // must check if null again as one of the blocked threads can still enter
                 if (entityCache == null) { // now it's safe
-                    numEntities = 0;
-                    numViewEntities = 0;
-                    numFields = 0;
-                    numRelations = 0;
-                    numAutoRelations = 0;
-
-                    entityCache = new HashMap<>();
-                    List<ModelViewEntity> tempViewEntityList = new LinkedList<>();
-                    List<Element> tempExtendEntityElementList = new LinkedList<>();
-
-                    UtilTimer utilTimer = new UtilTimer();
-
-                    for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
-
-                        // utilTimer.timerString("Before getDocument in file " + entityFileName);
-                        Document document = null;
-
-                        try {
-                            document = entityResourceHandler.getDocument();
-                        } catch (GenericConfigException e) {
-                            throw new GenericEntityConfException("Error getting document from resource handler", e);
+                    String fingerprint = null;
+                    if (ModelSnapshot.isEnabled()) {
+                        fingerprint = ModelSnapshot.computeFingerprint(modelName, new ArrayList<>(entityResourceHandlers));
+                        if (fingerprint != null && restoreSnapshot(fingerprint)) {
+                            return entityCache;
                         }
-                        if (document == null) {
-                            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+                    }
+                    if (!loadEntityCache()) {
+                        return null;
+                    }
+                    if (fingerprint != null) {
+                        ModelSnapshot snapshot = createSnapshot();
+                        if (snapshot != null) {
+                            snapshot.write(modelName, fingerprint);
                         }
+                    }
+                }
+            }
+        }
+        return entityCache;
+    }
+
+    /**
+     * Reads and validates the entity model files, then builds the entities.
+     * @return <code>false</code> if a document has no root element
+     */
+    private boolean loadEntityCache() throws GenericEntityException {
+        numEntities = 0;
+        numViewEntities = 0;
+        numFields = 0;
+        numRelations = 0;
+        numAutoRelations = 0;
+
+        entityCache = new HashMap<>();
+        List<ModelViewEntity> tempViewEntityList = new LinkedList<>();
+        List<Element> tempExtendEntityElementList = new LinkedList<>();
+
+        UtilTimer utilTimer = new UtilTimer();
+
+        // the documents are parsed and validated in parallel, a few ahead of the one being
+        // processed, and processed one after the other in the order of the resource handlers
+        List<ResourceHandler> handlers = new ArrayList<>(entityResourceHandlers);
+        List<Future<Document>> documents = new ArrayList<>(handlers.size());
+        for (int h = 0; h < handlers.size() && h < PARSE_AHEAD; h++) {
+            documents.add(parseDocument(handlers.get(h)));
+        }
+        for (int h = 0; h < handlers.size(); h++) {
+            ResourceHandler entityResourceHandler = handlers.get(h);
+            if (h + PARSE_AHEAD < handlers.size()) {
+                documents.add(parseDocument(handlers.get(h + PARSE_AHEAD)));
+            }
+            Document document = getParsedDocument(entityResourceHandler, documents.get(h));
+            documents.set(h, null);
 
-                        // utilTimer.timerString("Before getDocumentElement in " + entityResourceHandler.toString());
-                        Element docElement = document.getDocumentElement();
+            // utilTimer.timerString("Before getDocumentElement in " + entityResourceHandler.toString());
+            Element docElement = document.getDocumentElement();
 
-                        if (docElement == null) {
-                            return null;
-                        }
-                        docElement.normalize();
-                        Node curChild = docElement.getFirstChild();
-
-                        ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
-                        int i = 0;
-
-                        if (curChild != null) {
-                            utilTimer.timerString("Before start of entity loop in " + entityResourceHandler.toString());
-                            do {
-                                boolean isEntity = "entity".equals(curChild.getNodeName());
-                                boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
-                                boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
-
-                                if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    i++;
-                                    ModelEntity modelEntity = buildEntity(entityResourceHandler, (Element) curChild, i, def);
-                                    // put the view entity in a list to get ready for the second pass to populate fields...
-                                    if (isViewEntity) {
-                                        tempViewEntityList.add((ModelViewEntity) modelEntity);
-                                    } else {
-                                        entityCache.put(modelEntity.getEntityName(), modelEntity);
-                                    }
-                                } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    tempExtendEntityElementList.add((Element) curChild);
-                                }
-                                curChild = curChild.getNextSibling();
-                            } while (curChild != null);
+            if (docElement == null) {
+                return false;
+            }
+            docElement.normalize();
+            Node curChild = docElement.getFirstChild();
+
+            ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
+            int i = 0;
+
+            if (curChild != null) {
+                utilTimer.timerString("Before start of entity loop in " + entityResourceHandler.toString());
+                do {
+                    boolean isEntity = "entity".equals(curChild.getNodeName());
+                    boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
+                    boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
+
+                    if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                        i++;
+                        ModelEntity modelEntity = buildEntity(entityResourceHandler, (Element) curChild, i, def);
+                        // put the view entity in a list to get ready for the second pass to populate fields...
+                        if (isViewEntity) {
+                            tempViewEntityList.add((ModelViewEntity) modelEntity);
                         } else {
-                            Debug.logWarning("No child nodes found.", MODULE);
+                            entityCache.put(modelEntity.getEntityName(), modelEntity);
                         }
-                        utilTimer.timerString("Finished " + entityResourceHandler.toString() + " - Total Entities: " + i + " FINISHED");
+                    } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                        tempExtendEntityElementList.add((Element) curChild);
                     }
+                    curChild = curChild.getNextSibling();
+                } while (curChild != null);
+            } else {
+                Debug.logWarning("No child nodes found.", MODULE);
+            }
+            utilTimer.timerString("Finished " + entityResourceHandler.toString() + " - Total Entities: " + i + " FINISHED");
+        }
+
+        // all entity elements in, now go through extend-entity elements and add their stuff
+        for (Element extendEntityElement : tempExtendEntityElementList) {
+            String entityName = UtilXml.checkEmpty(extendEntityElement.getAttribute("entity-name"));
+            ModelEntity modelEntity = entityCache.get(entityName);
+            if (modelEntity == null) {
+                throw new GenericEntityConfException("Entity to extend does not exist: " + entityName);
+            }
+            modelEntity.addExtendEntity(this, extendEntityElement);
+        }
 
-                    // all entity elements in, now go through extend-entity elements and add their stuff
-                    for (Element extendEntityElement : tempExtendEntityElementList) {
-                        String entityName = UtilXml.checkEmpty(extendEntityElement.getAttribute("entity-name"));
-                        ModelEntity modelEntity = entityCache.get(entityName);
-                        if (modelEntity == null) {
-                            throw new GenericEntityConfException("Entity to extend does not exist: " + entityName);
+        // do a pass on all of the view entities now that all of the entities have loaded and populate the fields
+        while (!tempViewEntityList.isEmpty()) {
+            int startSize = tempViewEntityList.size();
+            Iterator<ModelViewEntity> mveIt = tempViewEntityList.iterator();
+            TEMP_VIEW_LOOP: while (mveIt.hasNext()) {
+                ModelViewEntity curViewEntity = mveIt.next();
+                for (ModelViewEntity.ModelMemberEntity mve : curViewEntity.getAllModelMemberEntities()) {
+                    if (!entityCache.containsKey(mve.getEntityName())) {
+                        continue TEMP_VIEW_LOOP;
+                    }
+                }
+                mveIt.remove();
+                curViewEntity.populateFields(this);
+                for (ModelViewEntity.ModelMemberEntity mve : curViewEntity.getAllModelMemberEntities()) {
+                    ModelEntity me = entityCache.get(mve.getEntityName());
+                    me.addViewEntity(curViewEntity);
+                }
+                entityCache.put(curViewEntity.getEntityName(), curViewEntity);
+            }
+            if (tempViewEntityList.size() == startSize) {
+                // Oops, the remaining views reference other entities
+                // that can't be found, or they reference other views
+                // that have some reference problem.
+                break;
+            }
+        }
+        if (!tempViewEntityList.isEmpty()) {
+            StringBuilder sb = new StringBuilder("View entities reference non-existant members:\n");
+            Set<String> allViews = new HashSet<>();
+            for (ModelViewEntity curViewEntity : tempViewEntityList) {
+                allViews.add(curViewEntity.getEntityName());
+            }
+            for (ModelViewEntity curViewEntity : tempViewEntityList) {
+                Set<String> perViewMissingEntities = new HashSet<>();
+                Iterator<ModelViewEntity.ModelMemberEntity> mmeIt = curViewEntity.getAllModelMemberEntities().iterator();
+                while (mmeIt.hasNext()) {
+                    ModelViewEntity.ModelMemberEntity mme = mmeIt.next();
+                    String memberEntityName = mme.getEntityName();
+                    if (!entityCache.containsKey(memberEntityName)) {
+                        // this member is not a real entity
+                        // check to see if it is a view
+                        if (!allViews.contains(memberEntityName)) {
+                            // not a view, it's a real missing entity
+                            perViewMissingEntities.add(memberEntityName);
                         }
-                        modelEntity.addExtendEntity(this, extendEntityElement);
                     }
+                }
+                for (String perViewMissingEntity : perViewMissingEntities) {
+                    sb.append("\t[").append(curViewEntity.getEntityName()).append("] missing member entity [")
+                            .append(perViewMissingEntity).append("]\n");
+                }
 
-                    // do a pass on all of the view entities now that all of the entities have loaded and populate the fields
-                    while (!tempViewEntityList.isEmpty()) {
-                        int startSize = tempViewEntityList.size();
-                        Iterator<ModelViewEntity> mveIt = tempViewEntityList.iterator();
-                        TEMP_VIEW_LOOP: while (mveIt.hasNext()) {
-                            ModelViewEntity curViewEntity = mveIt.next();
-                            for (ModelViewEntity.ModelMemberEntity mve : curViewEntity.getAllModelMemberEntities()) {
-                                if (!entityCache.containsKey(mve.getEntityName())) {
-                                    continue TEMP_VIEW_LOOP;
-                                }
-                            }
-                            mveIt.remove();
-                            curViewEntity.populateFields(this);
-                            for (ModelViewEntity.ModelMemberEntity mve : curViewEntity.getAllModelMemberEntities()) {
-                                ModelEntity me = entityCache.get(mve.getEntityName());
-                                me.addViewEntity(curViewEntity);
-                            }
-                            entityCache.put(curViewEntity.getEntityName(), curViewEntity);
+            }
+            throw new GenericEntityConfException(sb.toString());
+        }
+
+        // auto-create relationships
+        Set<String> orderedMessages = new TreeSet<>();
+        for (String curEntityName : new TreeSet<>(this.getEntityNames())) {
+            ModelEntity curModelEntity = this.getModelEntity(curEntityName);
+            if (curModelEntity instanceof ModelViewEntity) {
+                Debug.logVerbose("for view-entities auto-create relationships for all member-entity"
+                        + "relationships that have all corresponding fields in the view-entity...", MODULE);
+            } else {
+                // for entities auto-create many relationships for all type one relationships
+                // just in case we add a new relation to the same entity, keep in a separate
+                // list and add them at the end
+                List<ModelRelation> newSameEntityRelations = new LinkedList<>();
+
+                Iterator<ModelRelation> relationsIter = curModelEntity.getRelationsIterator();
+                while (relationsIter.hasNext()) {
+                    ModelRelation modelRelation = relationsIter.next();
+                    if (("one".equals(modelRelation.getType())
+                            || "one-nofk".equals(modelRelation.getType()))
+                            && !modelRelation.isAutoRelation()) {
+                        ModelEntity relatedEnt = null;
+                        try {
+                            relatedEnt = this.getModelEntity(modelRelation.getRelEntityName());
+                        } catch (GenericModelException e) {
+                            throw new GenericModelException(
+                                    "Error getting related entity [" + modelRelation.getRelEntityName()
+                                            + "] definition from entity [" + curEntityName + "]", e);
                         }
-                        if (tempViewEntityList.size() == startSize) {
-                            // Oops, the remaining views reference other entities
-                            // that can't be found, or they reference other views
-                            // that have some reference problem.
-                            break;
+                        // create the new relationship even if one exists so we can show what we are
+                        // looking for in the info message
+                        // don't do relationship to the same entity, unless title is "Parent", then do a
+                        // "Child" automatically
+                        String title = modelRelation.getTitle();
+                        if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName()) && "Parent".equals(title)) {
+                            title = "Child";
                         }
-                    }
-                    if (!tempViewEntityList.isEmpty()) {
-                        StringBuilder sb = new StringBuilder("View entities reference non-existant members:\n");
-                        Set<String> allViews = new HashSet<>();
-                        for (ModelViewEntity curViewEntity : tempViewEntityList) {
-                            allViews.add(curViewEntity.getEntityName());
+                        String description = "";
+                        String type = "";
+                        String relEntityName = curModelEntity.getEntityName();
+                        String fkName = "";
+                        ArrayList<ModelKeyMap> keyMaps = new ArrayList<>();
+                        boolean isAutoRelation = true;
+                        Set<String> curEntityKeyFields = new HashSet<>();
+                        for (ModelKeyMap curkm : modelRelation.getKeyMaps()) {
+                            keyMaps.add(new ModelKeyMap(curkm.getRelFieldName(), curkm.getFieldName()));
+                            curEntityKeyFields.add(curkm.getFieldName());
                         }
-                        for (ModelViewEntity curViewEntity : tempViewEntityList) {
-                            Set<String> perViewMissingEntities = new HashSet<>();
-                            Iterator<ModelViewEntity.ModelMemberEntity> mmeIt = curViewEntity.getAllModelMemberEntities().iterator();
-                            while (mmeIt.hasNext()) {
-                                ModelViewEntity.ModelMemberEntity mme = mmeIt.next();
-                                String memberEntityName = mme.getEntityName();
-                                if (!entityCache.containsKey(memberEntityName)) {
-                                    // this member is not a real entity
-                                    // check to see if it is a view
-                                    if (!allViews.contains(memberEntityName)) {
-                                        // not a view, it's a real missing entity
-                                        perViewMissingEntities.add(memberEntityName);
-                                    }
+                        keyMaps.trimToSize();
+                        // decide whether it should be one or many by seeing if the key map represents
+                        // the complete pk of the relEntity
+                        if (curModelEntity.containsAllPkFieldNames(curEntityKeyFields)) {
+                            // always use one-nofk, we don't want auto-fks getting in for these automatic ones
+                            type = "one-nofk";
+                            // to keep it clean, remove any additional keys that aren't part of the PK
+                            List<String> curPkFieldNames = curModelEntity.getPkFieldNames();
+                            Iterator<ModelKeyMap> nrkmIter = keyMaps.iterator();
+                            while (nrkmIter.hasNext()) {
+                                ModelKeyMap nrkm = nrkmIter.next();
+                                String checkField = nrkm.getRelFieldName();
+                                if (!curPkFieldNames.contains(checkField)) {
+                                    nrkmIter.remove();
                                 }
                             }
-                            for (String perViewMissingEntity : perViewMissingEntities) {
-                                sb.append("\t[").append(curViewEntity.getEntityName()).append("] missing member entity [")
-                                        .append(perViewMissingEntity).append("]\n");
-                            }
-
+                        } else {
+                            type = "many";
                         }
-                        throw new GenericEntityConfException(sb.toString());
-                    }
-
-                    // auto-create relationships
-                    Set<String> orderedMessages = new TreeSet<>();
-                    for (String curEntityName : new TreeSet<>(this.getEntityNames())) {
-                        ModelEntity curModelEntity = this.getModelEntity(curEntityName);
-                        if (curModelEntity instanceof ModelViewEntity) {
-                            Debug.logVerbose("for view-entities auto-create relationships for all member-entity"
-                                    + "relationships that have all corresponding fields in the view-entity...", MODULE);
+                        ModelRelation newRel = ModelRelation.create(relatedEnt, description, type, title, relEntityName,
+                                fkName, keyMaps, isAutoRelation);
+
+                        ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
+                        if (existingRelation == null) {
+                            numAutoRelations++;
+                            if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
+                                newSameEntityRelations.add(newRel);
+                            } else {
+                                relatedEnt.addRelation(newRel);
+                            }
                         } else {
-                            // for entities auto-create many relationships for all type one relationships
-                            // just in case we add a new relation to the same entity, keep in a separate
-                            // list and add them at the end
-                            List<ModelRelation> newSameEntityRelations = new LinkedList<>();
-
-                            Iterator<ModelRelation> relationsIter = curModelEntity.getRelationsIterator();
-                            while (relationsIter.hasNext()) {
-                                ModelRelation modelRelation = relationsIter.next();
-                                if (("one".equals(modelRelation.getType())
-                                        || "one-nofk".equals(modelRelation.getType()))
-                                        && !modelRelation.isAutoRelation()) {
-                                    ModelEntity relatedEnt = null;
-                                    try {
-                                        relatedEnt = this.getModelEntity(modelRelation.getRelEntityName());
-                                    } catch (GenericModelException e) {
-                                        throw new GenericModelException(
-                                                "Error getting related entity [" + modelRelation.getRelEntityName()
-                                                        + "] definition from entity [" + curEntityName + "]", e);
-                                    }
-                                    // create the new relationship even if one exists so we can show what we are
-                                    // looking for in the info message
-                                    // don't do relationship to the same entity, unless title is "Parent", then do a
-                                    // "Child" automatically
-                                    String title = modelRelation.getTitle();
-                                    if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName()) && "Parent".equals(title)) {
-                                        title = "Child";
-                                    }
-                                    String description = "";
-                                    String type = "";
-                                    String relEntityName = curModelEntity.getEntityName();
-                                    String fkName = "";
-                                    ArrayList<ModelKeyMap> keyMaps = new ArrayList<>();
-                                    boolean isAutoRelation = true;
-                                    Set<String> curEntityKeyFields = new HashSet<>();
-                                    for (ModelKeyMap curkm : modelRelation.getKeyMaps()) {
-                                        keyMaps.add(new ModelKeyMap(curkm.getRelFieldName(), curkm.getFieldName()));
-                                        curEntityKeyFields.add(curkm.getFieldName());
-                                    }
-                                    keyMaps.trimToSize();
-                                    // decide whether it should be one or many by seeing if the key map represents
-                                    // the complete pk of the relEntity
-                                    if (curModelEntity.containsAllPkFieldNames(curEntityKeyFields)) {
-                                        // always use one-nofk, we don't want auto-fks getting in for these automatic ones
-                                        type = "one-nofk";
-                                        // to keep it clean, remove any additional keys that aren't part of the PK
-                                        List<String> curPkFieldNames = curModelEntity.getPkFieldNames();
-                                        Iterator<ModelKeyMap> nrkmIter = keyMaps.iterator();
-                                        while (nrkmIter.hasNext()) {
-                                            ModelKeyMap nrkm = nrkmIter.next();
-                                            String checkField = nrkm.getRelFieldName();
-                                            if (!curPkFieldNames.contains(checkField)) {
-                                                nrkmIter.remove();
-                                            }
-                                        }
-                                    } else {
-                                        type = "many";
-                                    }
-                                    ModelRelation newRel = ModelRelation.create(relatedEnt, description, type, title, relEntityName,
-                                            fkName, keyMaps, isAutoRelation);
-
-                                    ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
-                                    if (existingRelation == null) {
-                                        numAutoRelations++;
-                                        if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
-                                            newSameEntityRelations.add(newRel);
-                                        } else {
-                                            relatedEnt.addRelation(newRel);
-                                        }
-                                    } else {
-                                        if (newRel.equals(existingRelation)) {
-                                            // don't warn if the target title+entity = current title+entity
-                                            if (Debug.infoOn()
-                                                    && !(title + curModelEntity.getEntityName()).equals(modelRelation.getTitle()
-                                                    + modelRelation.getRelEntityName())) {
-                                                String message = "Entity [" + relatedEnt.getPackageName() + ":" + relatedEnt.getEntityName()
-                                                        + "] already has identical relationship to entity [" + curModelEntity.getEntityName()
-                                                        + "] title [" + title
-                                                        + "]; would auto-create: type [" + newRel.getType() + "] and fields ["
-                                                        + newRel.keyMapString(",", "") + "]";
-                                                orderedMessages.add(message);
-                                            }
-                                        } else {
-                                            String message = "Existing relationship with the same name, but different specs found from what would"
-                                                    + " be auto-created for Entity [" + relatedEnt.getEntityName() + "] and relationship to entity ["
-                                                    + curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type ["
-                                                    + newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
-                                            if (Debug.verboseOn()) {
-                                                Debug.logVerbose(message, MODULE);
-                                            }
-                                        }
-                                    }
+                            if (newRel.equals(existingRelation)) {
+                                // don't warn if the target title+entity = current title+entity
+                                if (Debug.infoOn()
+                                        && !(title + curModelEntity.getEntityName()).equals(modelRelation.getTitle()
+                                        + modelRelation.getRelEntityName())) {
+                                    String message = "Entity [" + relatedEnt.getPackageName() + ":" + relatedEnt.getEntityName()
+                                            + "] already has identical relationship to entity [" + curModelEntity.getEntityName()
+                                            + "] title [" + title
+                                            + "]; would auto-create: type [" + newRel.getType() + "] and fields ["
+                                            + newRel.keyMapString(",", "") + "]";
+                                    orderedMessages.add(message);
                                 }
-                            }
-
-                            if (!newSameEntityRelations.isEmpty()) {
-                                for (ModelRelation newRel : newSameEntityRelations) {
-                                    curModelEntity.addRelation(newRel);
+                            } else {
+                                String message = "Existing relationship with the same name, but different specs found from what would"
+                                        + " be auto-created for Entity [" + relatedEnt.getEntityName() + "] and relationship to entity ["
+                                        + curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type ["
+                                        + newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
+                                if (Debug.verboseOn()) {
+                                    Debug.logVerbose(message, MODULE);
                                 }
                             }
                         }
                     }
-                    if (Debug.infoOn()) {
-                        for (String message : orderedMessages) {
-                            Debug.logInfo(message, MODULE);
-                        }
-                        Debug.logInfo("Finished loading entities; #Entities=" + numEntities + " #ViewEntities="
-                                + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations
-                                + " #AutoRelationships=" + numAutoRelations, MODULE);
+                }
+
+                if (!newSameEntityRelations.isEmpty()) {
+                    for (ModelRelation newRel : newSameEntityRelations) {
+                        curModelEntity.addRelation(newRel);
                     }
                 }
             }
         }
-        return entityCache;
+        if (Debug.infoOn()) {
+            for (String message : orderedMessages) {
+                Debug.logInfo(message, MODULE);
+            }
+            Debug.logInfo("Finished loading entities; #Entities=" + numEntities + " #ViewEntities="
+                    + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations
+                    + " #AutoRelationships=" + numAutoRelations, MODULE);
+        }
+        return true;
+    }
+
+    private static Future<Document> parseDocument(ResourceHandler entityResourceHandler) {
+        Callable<Document> parser = entityResourceHandler::getDocument;
+        return ExecutionPool.GLOBAL_FORK_JOIN.submit(parser);
+    }
+
+    private static Document getParsedDocument(ResourceHandler entityResourceHandler, Future<Document> parsedDocument)
+            throws GenericEntityException {
+        Document document = null;
+        try {
+            document = parsedDocument.get();
+        } catch (ExecutionException e) {
+            throw new GenericEntityConfException("Error getting document from resource handler", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityConfException("Interrupted while getting document for " + entityResourceHandler.toString(), e);
+        }
+        if (document == null) {
+            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+        }
+        return document;
+    }
+
+    /**
+     * Restores the entities from the snapshot written by a previous start.
+     * @param fingerprint the fingerprint of the entity model files
+     * @return <code>true</code> if a snapshot matching the fingerprint was restored
+     */
+    private boolean restoreSnapshot(String fingerprint) {
+        ModelSnapshot snapshot = ModelSnapshot.read(this, modelName, fingerprint);
+        if (snapshot == null) {
+            return false;
+        }
+        List<ResourceHandler> handlers = new ArrayList<>(entityResourceHandlers);
+        Map<String, ResourceHandler> handlerMap = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : snapshot.getEntityResourceIndexes().entrySet()) {
+            handlerMap.put(entry.getKey(), handlers.get(entry.getValue()));
+        }
+        Map<ResourceHandler, Collection<String>> handlerEntities = new HashMap<>();
+        for (int h = 0; h < handlers.size(); h++) {
+            List<String> entityNames = snapshot.getResourceEntityNames().get(h);
+            if (entityNames != null) {
+                handlerEntities.computeIfAbsent(handlers.get(h), k -> new LinkedList<>()).addAll(entityNames);
+            }
+        }
+        int[] counts = snapshot.getCounts();
+        numEntities = counts[0];
+        numViewEntities = counts[1];
+        numFields = counts[2];
+        numRelations = counts[3];
+        numAutoRelations = counts[4];
+        entityResourceHandlerMap = handlerMap;
+        resourceHandlerEntities = handlerEntities;
+        entityCache = snapshot.getEntityCache();
+        if (Debug.infoOn()) {
+            Debug.logInfo("Finished loading entities from the snapshot of the entity model [" + modelName + "]; #Entities=" + numEntities
+                    + " #ViewEntities=" + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations
+                    + " #AutoRelationships=" + numAutoRelations, MODULE);
+        }
+        return true;
+    }
+
+    private ModelSnapshot createSnapshot() {
+        List<ResourceHandler> handlers = new ArrayList<>(entityResourceHandlers);
+        Map<String, Integer> entityResourceIndexes = new HashMap<>();
+        for (Map.Entry<String, ResourceHandler> entry : entityResourceHandlerMap.entrySet()) {
+            int index = handlers.indexOf(entry.getValue());
+            if (index < 0) {
+                return null;
+            }
+            entityResourceIndexes.put(entry.getKey(), index);
+        }
+        List<List<String>> resourceEntityNames = new ArrayList<>(handlers.size());
+        for (ResourceHandler handler : handlers) {
+            Collection<String> entityNames = resourceHandlerEntities.get(handler);
+            resourceEntityNames.add(entityNames == null ? null : new ArrayList<>(entityNames));
+        }
+        int[] counts = {numEntities, numViewEntities, numFields, numRelations, numAutoRelations};
+        return new ModelSnapshot(new HashMap<>(entityCache), entityResourceIndexes, resourceEntityNames, counts);
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(modelName);
+    }
+
+    /**
+     * Serialized form of a reader, the entities only keep the name of their reader. It is resolved
+     * to the reader restoring a model snapshot, or to the cached reader having the same name.
+     */
+    private static final class SerializedForm implements Serializable {
+        private final String modelName;
+
+        SerializedForm(String modelName) {
+            this.modelName = modelName;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            ModelReader reader = ModelSnapshot.getLoadingReader();
+            if (reader == null || !modelName.equals(reader.modelName)) {
+                reader = READERS.get(modelName);
+            }
+            if (reader == null) {
+                throw new InvalidObjectException("No entity model reader named " + modelName);
+            }
+            return reader;
+        }
     }
 
     /**
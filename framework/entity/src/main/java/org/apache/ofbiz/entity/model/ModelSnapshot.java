@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.SafeObjectInputStream;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Snapshot of the entities read by a {@link ModelReader}, serialized on disk so that the next
+ * start reads it instead of parsing and validating all the entity model files again.
+ * <p>
+ * A snapshot is identified by a fingerprint of the content of the entity model files and of the
+ * classes building the model, any change of them makes the snapshot obsolete. It can be disabled
+ * with the <code>entity.model.snapshot</code> property of <code>entity.properties</code>.
+ */
+@SuppressWarnings("serial")
+final class ModelSnapshot implements Serializable {
+
+    private static final String MODULE = ModelSnapshot.class.getName();
+    private static final Path SNAPSHOT_DIR = Paths.get("runtime", "tmp", "entity-model");
+    // classes building the model, with their nested, inner and anonymous classes:
+    // a change in their code can change the model built from the same files
+    private static final Class<?>[] MODEL_CLASSES = {ModelReader.class, ModelEntity.class, ModelViewEntity.class, ModelField.class,
+        ModelRelation.class, ModelIndex.class, ModelKeyMap.class, ModelInfo.class, ModelChild.class};
+    // reader restoring a snapshot, the entities of the snapshot reference it
+    private static final ThreadLocal<ModelReader> LOADING_READER = new ThreadLocal<>();
+
+    private final Map<String, ModelEntity> entityCache;
+    // position of the resource handler of each entity in the resource handlers of the reader
+    private final Map<String, Integer> entityResourceIndexes;
+    // entity names read from each resource handler, by position
+    private final List<List<String>> resourceEntityNames;
+    private final int[] counts;
+
+    ModelSnapshot(Map<String, ModelEntity> entityCache, Map<String, Integer> entityResourceIndexes,
+            List<List<String>> resourceEntityNames, int[] counts) {
+        this.entityCache = entityCache;
+        this.entityResourceIndexes = entityResourceIndexes;
+        this.resourceEntityNames = resourceEntityNames;
+        this.counts = counts;
+    }
+
+    Map<String, ModelEntity> getEntityCache() {
+        return entityCache;
+    }
+
+    Map<String, Integer> getEntityResourceIndexes() {
+        return entityResourceIndexes;
+    }
+
+    List<List<String>> getResourceEntityNames() {
+        return resourceEntityNames;
+    }
+
+    int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns <code>true</code> if the model snapshots are enabled.
+     */
+    static boolean isEnabled() {
+        return !"false".equals(UtilProperties.getPropertyValue("entity", "entity.model.snapshot", "true"));
+    }
+
+    /**
+     * Returns the reader restoring a snapshot in the current thread, or <code>null</code>.
+     */
+    static ModelReader getLoadingReader() {
+        return LOADING_READER.get();
+    }
+
+    /**
+     * Computes the fingerprint of the entity model files of a reader.
+     * @param modelName the name of the reader
+     * @param resourceHandlers the entity model files, in reading order
+     * @return the fingerprint, or <code>null</code> if a file or class can not be read
+     */
+    static String computeFingerprint(String modelName, List<ResourceHandler> resourceHandlers) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            byte[] buffer = new byte[8192];
+            for (Class<?> modelClass : MODEL_CLASSES) {
+                if (!updateClass(digest, modelClass, buffer)) {
+                    return null;
+                }
+            }
+            for (ResourceHandler handler : resourceHandlers) {
+                digest.update(handler.toString().getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = handler.getStream()) {
+                    update(digest, in, buffer);
+                }
+            }
+            return StringUtil.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException | GenericConfigException e) {
+            Debug.logWarning(e, "Unable to compute the fingerprint of the entity model [" + modelName + "]", MODULE);
+            return null;
+        }
+    }
+
+    // adds the code of a class and of all the classes declared in it, returning false if one can not be read
+    private static boolean updateClass(MessageDigest digest, Class<?> modelClass, byte[] buffer) throws IOException {
+        String className = modelClass.getName().substring(modelClass.getPackageName().length() + 1);
+        try (InputStream in = modelClass.getResourceAsStream(className + ".class")) {
+            if (in == null) {
+                return false;
+            }
+            update(digest, in, buffer);
+        }
+        Class<?>[] memberClasses = modelClass.getDeclaredClasses();
+        Arrays.sort(memberClasses, Comparator.comparing(Class::getName));
+        for (Class<?> memberClass : memberClasses) {
+            if (!updateClass(digest, memberClass, buffer)) {
+                return false;
+            }
+        }
+        // the anonymous classes are numbered from 1, in the order of the source
+        for (int i = 1;; i++) {
+            try (InputStream in = modelClass.getResourceAsStream(className + "$" + i + ".class")) {
+                if (in == null) {
+                    return true;
+                }
+                update(digest, in, buffer);
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in, byte[] buffer) throws IOException {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Reads the snapshot of a reader.
+     * @param reader the reader restoring the snapshot
+     * @param modelName the name of the reader
+     * @param fingerprint the fingerprint of the current entity model files
+     * @return the snapshot, or <code>null</code> if there is no snapshot matching the fingerprint
+     */
+    static ModelSnapshot read(ModelReader reader, String modelName, String fingerprint) {
+        Path file = getSnapshotFile(modelName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        LOADING_READER.set(reader);
+        try (SafeObjectInputStream in = new SafeObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            // the fingerprint is written first, an obsolete snapshot is not deserialized
+            if (!fingerprint.equals(in.readUTF())) {
+                Debug.logInfo("The entity model [" + modelName + "] changed since its last snapshot, reading the entity model files", MODULE);
+                return null;
+            }
+            return (ModelSnapshot) in.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // an incompatible snapshot written by another version is expected, the model is read again
+            Debug.logInfo("Unable to read the snapshot of the entity model [" + modelName + "], reading the entity model files: " + e, MODULE);
+            return null;
+        } finally {
+            LOADING_READER.remove();
+        }
+    }
+
+    /**
+     * Writes this snapshot, replacing the previous one of the same reader.
+     * @param modelName the name of the reader
+     * @param fingerprint the fingerprint of the entity model files the snapshot was read from
+     */
+    void write(String modelName, String fingerprint) {
+        Path file = getSnapshotFile(modelName);
+        Path tmp = null;
+        try {
+            Files.createDirectories(SNAPSHOT_DIR);
+            // write in a temporary file first so that a concurrent start never reads a partial snapshot
+            tmp = Files.createTempFile(SNAPSHOT_DIR, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp));
+                    ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeUTF(fingerprint);
+                oos.writeObject(this);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Debug.logWarning(e, "Unable to write the snapshot of the entity model [" + modelName + "]", MODULE);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    Debug.logWarning(e, MODULE);
+                }
+            }
+        }
+    }
+
+    private static Path getSnapshotFile(String modelName) {
+        return SNAPSHOT_DIR.resolve(modelName.replaceAll("[^A-Za-z0-9._-]", "_") + ".ser");
+    }
+}
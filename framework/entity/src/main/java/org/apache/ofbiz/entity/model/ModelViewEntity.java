@@ -1248,7 +1248,7 @@ public class ModelViewEntity extends ModelEntity {
         private final String relEntityAlias;
         private final boolean relOptional;
         private final List<ModelKeyMap> keyMaps = new LinkedList<>();
-        private final transient ViewEntityCondition viewEntityCondition;
+        private final ViewEntityCondition viewEntityCondition;
 
         public ModelViewLink(ModelViewEntity modelViewEntity, Element viewLinkElement) {
             this.entityAlias = UtilXml.checkEmpty(viewLinkElement.getAttribute("entity-alias")).intern();
@@ -1403,7 +1403,7 @@ public class ModelViewEntity extends ModelEntity {
         }
     }
 
-    public static final class ViewEntityCondition {
+    public static final class ViewEntityCondition implements Serializable {
         private final ModelViewEntity modelViewEntity;
         private final ModelViewLink modelViewLink;
         private final boolean filterByDate;
@@ -544,4 +544,82 @@ public class EntityQueryTestSuite extends EntityTestCase {
             TransactionUtil.rollback(transactionStarted, "Transaction is Rolled Back", e);
         }
     }
+
+    /**
+     * prefetch(): The related values of the values returned are read with the query, getRelated() then returns them.
+     * assert 1: Compared the children read by getRelated() with the children created, filtered and ordered in memory.
+     * assert 2: Ensure that the children are not read again from the database.
+     * assert 3: Ensure that the list returned by getRelated() can be changed without changing the next lists returned.
+     */
+    public void testPrefetch() throws GenericEntityException {
+        Delegator delegator = getDelegator();
+        List<GenericValue> testingNodes = new LinkedList<>();
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetch-1", "description", "Parent One"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetch-2", "description", "Parent Two"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetch-1-1", "primaryParentNodeId", "prefetch-1",
+                "description", "Child B"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetch-1-2", "primaryParentNodeId", "prefetch-1",
+                "description", "Child A"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetch-2-1", "primaryParentNodeId", "prefetch-2",
+                "description", "Child C"));
+        delegator.storeAll(testingNodes);
+
+        List<GenericValue> parents = EntityQuery.use(delegator).from("TestingNode")
+                .where(EntityCondition.makeCondition("testingNodeId", EntityOperator.IN, UtilMisc.toList("prefetch-1", "prefetch-2")))
+                .orderBy("testingNodeId").prefetch("PrimaryChild").queryList();
+        assertEquals("prefetch(): Number of parents", 2, parents.size());
+        // the children are now read from the prefetched values only
+        delegator.removeByAnd("TestingNode", "primaryParentNodeId", "prefetch-2");
+
+        List<GenericValue> children = parents.get(0).getRelated("PrimaryChild", null, UtilMisc.toList("description"), false);
+        assertEquals("prefetch(): Number of children of the first parent", 2, children.size());
+        assertEquals("prefetch(): Children ordered by description", "prefetch-1-2", children.get(0).getString("testingNodeId"));
+        List<GenericValue> filteredChildren = parents.get(0).getRelated("PrimaryChild", UtilMisc.toMap("description", "Child B"), null,
+                false);
+        assertEquals("prefetch(): Children filtered by description", 1, filteredChildren.size());
+        assertEquals("prefetch(): Filtered child", "prefetch-1-1", filteredChildren.get(0).getString("testingNodeId"));
+        List<GenericValue> removedChildren = parents.get(1).getRelated("PrimaryChild", null, null, false);
+        assertEquals("prefetch(): Child of the second parent read with the parents", 1, removedChildren.size());
+
+        children.clear();
+        removedChildren.add(parents.get(0));
+        assertEquals("prefetch(): Children of the first parent unchanged", 2,
+                parents.get(0).getRelated("PrimaryChild", null, null, false).size());
+        assertEquals("prefetch(): Children of the second parent unchanged", 1,
+                parents.get(1).getRelated("PrimaryChild", null, null, false).size());
+    }
+
+    /**
+     * prefetchRelated(): The related values are read for a list of values, on demand when the key of a value changes.
+     * assert 1: Compared the parent read by getRelatedOne() with the parent prefetched.
+     * assert 2: Ensure that a value whose key field changed reads the relation from the database.
+     */
+    public void testPrefetchRelated() throws GenericEntityException {
+        Delegator delegator = getDelegator();
+        List<GenericValue> testingNodes = new LinkedList<>();
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetchRelated-1", "description", "Parent One"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetchRelated-2", "description", "Parent Two"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetchRelated-1-1", "primaryParentNodeId",
+                "prefetchRelated-1"));
+        testingNodes.add(delegator.makeValue("TestingNode", "testingNodeId", "prefetchRelated-1-2", "primaryParentNodeId",
+                "prefetchRelated-1"));
+        delegator.storeAll(testingNodes);
+
+        List<GenericValue> nodes = EntityQuery.use(delegator).from("TestingNode")
+                .where(EntityCondition.makeCondition("testingNodeId", EntityOperator.LIKE, "prefetchRelated-%"))
+                .orderBy("testingNodeId").queryList();
+        assertEquals("prefetchRelated(): Number of nodes", 4, nodes.size());
+        delegator.prefetchRelated(nodes, "PrimaryParent");
+
+        GenericValue firstChild = nodes.get(1);
+        GenericValue secondChild = nodes.get(2);
+        assertEquals("prefetchRelated(): Parent of the first child", "prefetchRelated-1",
+                firstChild.getRelatedOne("PrimaryParent", false).getString("testingNodeId"));
+        assertEquals("prefetchRelated(): Parent of the second child", "prefetchRelated-1",
+                secondChild.getRelatedOne("PrimaryParent", false).getString("testingNodeId"));
+
+        secondChild.set("primaryParentNodeId", "prefetchRelated-2");
+        assertEquals("prefetchRelated(): Parent read again after the key changed", "prefetchRelated-2",
+                secondChild.getRelatedOne("PrimaryParent", false).getString("testingNodeId"));
+    }
 }
@@ -19,6 +19,9 @@
 package org.apache.ofbiz.entity.test;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Blob;
 import java.sql.Date;
 import java.sql.Time;
@@ -58,9 +61,11 @@ import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.testtools.EntityTestCase;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityDataImporter;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.SequenceUtil;
 
 public class EntityTestSuite extends EntityTestCase {
@@ -1158,6 +1163,138 @@ public class EntityTestSuite extends EntityTestCase {
         assertNull("Delete TestingType 2", testType);
     }
 
+    /**
+     * Tests creating values of several entities with one call, each run of values of the same entity being written with a batch.
+     * @throws Exception the exception
+     */
+    public void testCreateAll() throws Exception {
+        Delegator delegator = getDelegator();
+        try {
+            List<GenericValue> newValues = new ArrayList<>();
+            newValues.add(delegator.makeValue("TestingType", "testingTypeId", "CREATE-ALL-1", "description", "create all 1"));
+            newValues.add(delegator.makeValue("TestingType", "testingTypeId", "CREATE-ALL-2", "description", "create all 2"));
+            for (int i = 0; i < 3; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("CREATE-ALL-", i), "testingTypeId",
+                        i % 2 == 0 ? "CREATE-ALL-1" : "CREATE-ALL-2", "testingName", "create all " + i));
+            }
+            newValues.add(delegator.makeValue("TestingType", "testingTypeId", "CREATE-ALL-3", "description", "create all 3"));
+            assertEquals("All the values created", 6, delegator.createAll(newValues));
+            assertEquals("No values created from an empty list", 0, delegator.createAll(new ArrayList<>()));
+
+            List<GenericValue> types = EntityQuery.use(delegator).from("TestingType")
+                    .where(EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "CREATE-ALL-%")).orderBy("testingTypeId")
+                    .queryList();
+            assertEquals("TestingTypes created", 3, types.size());
+            List<GenericValue> testings = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "CREATE-ALL-%")).orderBy("testingId").queryList();
+            assertEquals("Testings created", 3, testings.size());
+            for (int i = 0; i < 3; i++) {
+                GenericValue testing = testings.get(i);
+                assertEquals("Testing(" + i + ").testingName", "create all " + i, testing.getString("testingName"));
+                assertEquals("Testing(" + i + ").testingTypeId", i % 2 == 0 ? "CREATE-ALL-1" : "CREATE-ALL-2", testing.getString("testingTypeId"));
+                assertNotNull("Testing(" + i + ") has its create stamp", testing.getTimestamp(ModelEntity.CREATE_STAMP_FIELD));
+            }
+            for (GenericValue value : newValues) {
+                assertFalse("Created value is synchronized with the database", value.isModified());
+            }
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "CREATE-ALL-%"));
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "CREATE-ALL-%"));
+        }
+    }
+
+    /**
+     * Tests a batch holding a value already in the database fails as a whole, none of its values being created.
+     * @throws Exception the exception
+     */
+    public void testCreateAllWithDuplicate() throws Exception {
+        Delegator delegator = getDelegator();
+        try {
+            delegator.create("TestingType", "testingTypeId", "CREATE-ALL-DUP-2", "description", "existing");
+            List<GenericValue> newValues = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                newValues.add(delegator.makeValue("TestingType", "testingTypeId", "CREATE-ALL-DUP-" + i, "description", "new " + i));
+            }
+            GenericEntityException caught = null;
+            try {
+                delegator.createAll(newValues);
+            } catch (GenericEntityException e) {
+                caught = e;
+            }
+            assertNotNull("Creating a duplicate value fails", caught);
+            List<GenericValue> types = EntityQuery.use(delegator).from("TestingType")
+                    .where(EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "CREATE-ALL-DUP-%")).queryList();
+            assertEquals("Only the existing TestingType remains", 1, types.size());
+            assertEquals("Existing TestingType unchanged", "existing", types.get(0).getString("description"));
+        } finally {
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "CREATE-ALL-DUP-%"));
+        }
+    }
+
+    /**
+     * Tests EntityDataImporter: the files are imported by batches, a file waits for the files it depends on, a batch
+     * failing on a row is written again one row at a time and the failing rows are written to the reject file.
+     * @throws Exception the exception
+     */
+    public void testEntityDataImporter() throws Exception {
+        Delegator delegator = getDelegator();
+        boolean useForeignKeys = EntityConfig.getDatasource(delegator.getEntityHelper("Testing").getHelperName()).getUseForeignKeys();
+        Path typeFile = Files.createTempFile("import-types", ".xml");
+        Path testingFile = Files.createTempFile("import-testings", ".xml");
+        Path rejectFile = Files.createTempFile("import-rejects", ".xml");
+        try {
+            Files.write(typeFile, ("<entity-engine-xml>"
+                    + "<TestingType testingTypeId=\"IMPORT-TYPE\" description=\"import\"/>"
+                    + "<Testing testingId=\"IMPORT-T1\" testingTypeId=\"IMPORT-TYPE\" testingName=\"first\"/>"
+                    + "<Testing testingId=\"IMPORT-T2\" testingTypeId=\"IMPORT-TYPE\" testingName=\"second\"/>"
+                    + "<Testing testingId=\"IMPORT-T2\" testingTypeId=\"IMPORT-TYPE\" testingName=\"second updated\"/>"
+                    + "<Testing testingId=\"IMPORT-T3\" testingTypeId=\"IMPORT-TYPE\" testingName=\"third\"/>"
+                    + "<Testing testingId=\"IMPORT-T4\" testingTypeId=\"IMPORT-TYPE\" testingName=\"fourth\"/>"
+                    + "</entity-engine-xml>").getBytes(StandardCharsets.UTF_8));
+            Files.write(testingFile, ("<entity-engine-xml>"
+                    + "<create>"
+                    + "    <Testing testingId=\"IMPORT-T1\" testingTypeId=\"IMPORT-TYPE\" testingName=\"first created again\"/>"
+                    + "    <Testing testingId=\"IMPORT-T5\" testingTypeId=\"IMPORT-TYPE\" testingName=\"fifth\"/>"
+                    + "    <Testing testingId=\"IMPORT-T6\" testingTypeId=\"IMPORT-NO-SUCH-TYPE\" testingName=\"sixth\"/>"
+                    + "</create>"
+                    + "</entity-engine-xml>").getBytes(StandardCharsets.UTF_8));
+
+            EntityDataImporter importer = new EntityDataImporter(delegator);
+            importer.setThreads(2);
+            importer.setBatchSize(3);
+            importer.setRejectFile(rejectFile);
+            EntityDataImporter.Result result = importer.importData(UtilMisc.toList(typeFile.toUri().toURL(), testingFile.toUri().toURL()));
+
+            assertEquals("Values read", 9, result.getRowsRead());
+            assertTrue("No file failed", result.getFailedUrls().isEmpty());
+            assertEquals("Rows written from the first file", Long.valueOf(6), result.getRowsByUrl().get(typeFile.toUri().toURL().toExternalForm()));
+            List<GenericValue> testings = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "IMPORT-%")).orderBy("testingId").queryList();
+            List<String> testingIds = EntityUtil.getFieldListFromEntityList(testings, "testingId", false);
+            assertEquals("Testing(IMPORT-T1) not replaced by the create", "first", testings.get(0).getString("testingName"));
+            assertEquals("Testing(IMPORT-T2) updated by the duplicate row", "second updated", testings.get(1).getString("testingName"));
+            if (useForeignKeys) {
+                assertEquals("Testings imported", UtilMisc.toList("IMPORT-T1", "IMPORT-T2", "IMPORT-T3", "IMPORT-T4", "IMPORT-T5"), testingIds);
+                assertEquals("Rows written", 7, result.getRowsWritten());
+                assertEquals("Rows rejected", 1, result.getRowsRejected());
+                assertTrue("Import has errors", result.hasErrors());
+                String rejects = new String(Files.readAllBytes(rejectFile), StandardCharsets.UTF_8);
+                assertTrue("Rejected Testing(IMPORT-T6) written to the reject file", rejects.contains("IMPORT-T6"));
+                assertFalse("Imported Testing(IMPORT-T5) not in the reject file", rejects.contains("IMPORT-T5"));
+            } else {
+                Debug.logInfo("Datasource use-foreign-keys set to false, no value of testEntityDataImporter is rejected", MODULE);
+                assertEquals("Rows written", 8, result.getRowsWritten());
+                assertFalse("Import has no errors", result.hasErrors());
+            }
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "IMPORT-%"));
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "IMPORT-%"));
+            Files.deleteIfExists(typeFile);
+            Files.deleteIfExists(testingFile);
+            Files.deleteIfExists(rejectFile);
+        }
+    }
+
     /**
      * Test sequence value item.
      */
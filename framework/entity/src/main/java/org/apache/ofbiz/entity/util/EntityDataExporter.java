@@ -0,0 +1,469 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * Exports entities to entity engine XML files with several threads.
+ * <p>
+ * An entity having more rows than the rows per part is split in ranges of primary keys, each range
+ * being written to its own file by a worker thread: <code>Entity.xml</code> for an entity in one part,
+ * <code>Entity.001.xml</code>, <code>Entity.002.xml</code>... otherwise. The files can be compressed
+ * with gzip, they are then named <code>.xml.gz</code> and read as is by the import tools. A manifest,
+ * {@link #MANIFEST_NAME}, lists each file with its entity, number of rows and SHA-256 checksum.
+ * <p>
+ * Like the export of the entities one by one, an entity which can not be exported does not stop the
+ * export of the others: its error is returned with the files written, and its file is not written.
+ * The rows of the entities without <code>createdStamp</code> field are all exported when a from date is set.
+ * <p>
+ * On PostgreSQL all the workers read the same snapshot of the database, exported from a repeatable read
+ * transaction held open during the export. On the other databases each file is read in a single
+ * transaction, so the export is consistent per file, and for the whole export when it uses one thread
+ * on a datasource configured with a repeatable read or serializable isolation level.
+ */
+public class EntityDataExporter {
+
+    private static final String MODULE = EntityDataExporter.class.getName();
+    public static final String MANIFEST_NAME = "manifest.txt";
+
+    private final Delegator delegator;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long rowsPerPart = 100000;
+    private boolean compress = true;
+    private Timestamp fromDate = null;
+    private int transactionTimeout = 7200;
+    // snapshot exported by each helper, by helper name
+    private final Map<String, String> snapshots = new HashMap<>();
+
+    public EntityDataExporter(Delegator delegator) {
+        this.delegator = delegator;
+    }
+
+    /**
+     * Sets the number of files written concurrently.
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the maximum number of rows of an entity written in one file.
+     * @param rowsPerPart the rows per part
+     */
+    public void setRowsPerPart(long rowsPerPart) {
+        this.rowsPerPart = Math.max(1, rowsPerPart);
+    }
+
+    /**
+     * Sets if the files are compressed with gzip.
+     * @param compress <code>true</code> to compress the files
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Sets the date of creation of the oldest rows exported, all the rows are exported if <code>null</code>.
+     * @param fromDate the from date
+     */
+    public void setFromDate(Timestamp fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    /**
+     * Sets the timeout of the transactions reading the rows.
+     * @param transactionTimeout the transaction timeout in seconds
+     */
+    public void setTransactionTimeout(int transactionTimeout) {
+        this.transactionTimeout = transactionTimeout;
+    }
+
+    /**
+     * Exports entities, the view entities are skipped.
+     * @param entityNames the names of the entities to export
+     * @param outDir the directory to write the files and the manifest to
+     * @return the files written, in the order of the manifest, and the entities or parts of entities which
+     *         could not be exported, having an error
+     * @throws GenericEntityException if the export can not be started or the manifest can not be written
+     */
+    public List<ExportedFile> exportData(Collection<String> entityNames, Path outDir) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        List<Part> parts = new ArrayList<>();
+        List<ExportedFile> failures = new ArrayList<>();
+        List<ExportedFile> files;
+        ExecutorService executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE), "entity-export", threads, 0, true);
+        boolean beganTransaction = TransactionUtil.begin(transactionTimeout);
+        try {
+            Files.createDirectories(outDir);
+            for (String entityName : entityNames) {
+                ModelEntity modelEntity = delegator.getModelEntity(entityName);
+                if (modelEntity == null || modelEntity instanceof ModelViewEntity) {
+                    continue;
+                }
+                exportSnapshot(modelEntity);
+                // each entity is split in its own transaction reading the snapshot the workers read, an error
+                // aborting that transaction only, not the one holding the snapshots
+                try {
+                    parts.addAll(TransactionUtil.doNewTransaction(() -> {
+                        useSnapshot(modelEntity);
+                        return splitEntity(modelEntity);
+                    }, "Error counting the rows of " + entityName, transactionTimeout, false));
+                } catch (GenericEntityException | RuntimeException e) {
+                    Debug.logError(e, "Unable to count the rows of " + entityName + ", the entity is not exported", MODULE);
+                    failures.add(new ExportedFile(entityName + (compress ? ".xml.gz" : ".xml"), entityName, 0, null, e.toString()));
+                }
+            }
+            List<CompletableFuture<ExportedFile>> exports = new ArrayList<>(parts.size());
+            for (Part part : parts) {
+                exports.add(CompletableFuture.supplyAsync(() -> exportPart(part, outDir), executor));
+            }
+            files = new ArrayList<>(parts.size() + failures.size());
+            for (CompletableFuture<ExportedFile> export : exports) {
+                ExportedFile file = export.join();
+                if (file.getError() != null) {
+                    failures.add(file);
+                } else if (file.getRows() > 0) {
+                    files.add(file);
+                }
+            }
+            writeManifest(files, outDir);
+            TransactionUtil.commit(beganTransaction);
+        } catch (CompletionException e) {
+            TransactionUtil.rollback(beganTransaction, "Error exporting the entity data", e.getCause());
+            throw e.getCause() instanceof GenericEntityException ? (GenericEntityException) e.getCause()
+                    : new GenericEntityException("Error exporting the entity data", e.getCause());
+        } catch (IOException | GenericEntityException e) {
+            TransactionUtil.rollback(beganTransaction, "Error exporting the entity data", e);
+            throw e instanceof GenericEntityException ? (GenericEntityException) e : new GenericEntityException(e);
+        } finally {
+            executor.shutdownNow();
+            snapshots.clear();
+        }
+        long rows = 0;
+        for (ExportedFile file : files) {
+            rows += file.getRows();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        Debug.logImportant("Exported " + rows + " rows to " + files.size() + " files in " + elapsed + " ms ("
+                + rows * 1000 / Math.max(1, elapsed) + " rows/s)" + (failures.isEmpty() ? "" : ", " + failures.size() + " files failed"), MODULE);
+        files.addAll(failures);
+        return files;
+    }
+
+    // exports the snapshot of the database of an entity, if not done already and supported by the database
+    private void exportSnapshot(ModelEntity modelEntity) throws GenericEntityException {
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName(modelEntity.getEntityName()));
+        if (helperInfo == null || snapshots.containsKey(helperInfo.getHelperFullName())) {
+            return;
+        }
+        String snapshot = null;
+        if (isPostgres(helperInfo)) {
+            try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+                sqlP.getConnection();
+                // must be the first statement of the transaction
+                sqlP.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                sqlP.executeQuery("SELECT pg_export_snapshot()");
+                if (sqlP.next()) {
+                    snapshot = sqlP.getResultSet().getString(1);
+                }
+            } catch (java.sql.SQLException e) {
+                throw new GenericEntityException("Unable to export the snapshot of " + helperInfo.getHelperFullName(), e);
+            }
+        } else if (threads > 1) {
+            Debug.logWarning("The datasource of " + helperInfo.getHelperFullName() + " can not share a snapshot between threads, "
+                    + "each exported file is consistent on its own", MODULE);
+        }
+        snapshots.put(helperInfo.getHelperFullName(), snapshot);
+    }
+
+    private static boolean isPostgres(GenericHelperInfo helperInfo) {
+        Datasource datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        return datasource != null && datasource.getFieldTypeName().toLowerCase(Locale.ROOT).contains("postgres");
+    }
+
+    // makes the current transaction of a worker, or of the split of an entity, read the exported snapshot
+    private void useSnapshot(ModelEntity modelEntity) throws GenericEntityException {
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName(modelEntity.getEntityName()));
+        String snapshot = helperInfo == null ? null : snapshots.get(helperInfo.getHelperFullName());
+        if (snapshot == null) {
+            return;
+        }
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            sqlP.getConnection();
+            sqlP.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            sqlP.executeUpdate("SET TRANSACTION SNAPSHOT '" + snapshot.replace("'", "''") + "'");
+        }
+    }
+
+    /**
+     * Makes the condition on the date of creation of the rows of an entity exported.
+     * @param modelEntity the entity
+     * @param fromDate the date of creation of the oldest rows exported
+     * @return the condition, <code>null</code> if there is no from date or the entity has no <code>createdStamp</code> field
+     */
+    static EntityCondition makeFromDateCondition(ModelEntity modelEntity, Timestamp fromDate) {
+        if (fromDate == null || !modelEntity.isField(ModelEntity.CREATE_STAMP_FIELD)) {
+            return null;
+        }
+        return EntityCondition.makeCondition(ModelEntity.CREATE_STAMP_FIELD, EntityOperator.GREATER_THAN_EQUAL_TO, fromDate);
+    }
+
+    // splits an entity in ranges of primary keys having the rows per part
+    private List<Part> splitEntity(ModelEntity modelEntity) throws GenericEntityException {
+        String entityName = modelEntity.getEntityName();
+        EntityCondition fromDateCondition = makeFromDateCondition(modelEntity, fromDate);
+        long count = EntityQuery.use(delegator).from(entityName).where(fromDateCondition).queryCount();
+        if (count <= rowsPerPart) {
+            return Collections.singletonList(new Part(modelEntity, null, null, 0));
+        }
+        List<String> pkNames = modelEntity.getPkFieldNames();
+        List<Map<String, Object>> boundaries = new ArrayList<>();
+        // only the primary keys are read, to find the first key of each part
+        try (EntityListIterator it = EntityQuery.use(delegator).select(new HashSet<>(pkNames)).from(entityName)
+                .where(fromDateCondition).orderBy(pkNames).cursorForwardOnly().fetchSize(1000).queryIterator()) {
+            long row = 0;
+            GenericValue value;
+            while ((value = it.next()) != null) {
+                if (row > 0 && row % rowsPerPart == 0) {
+                    boundaries.add(value.getPrimaryKey().getAllFields());
+                }
+                row++;
+            }
+        }
+        List<Part> parts = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            parts.add(new Part(modelEntity, i == 0 ? null : boundaries.get(i - 1), i == boundaries.size() ? null : boundaries.get(i), i + 1));
+        }
+        return parts;
+    }
+
+    /**
+     * Makes the condition on the primary key of the rows of an entity greater than (or equal to) a key,
+     * comparing the fields of the key in their order, like the <code>ORDER BY</code> of the key does.
+     * @param pkNames the names of the primary key fields
+     * @param key the value of each primary key field
+     * @param greater <code>true</code> for the rows after the key, <code>false</code> for the rows before it
+     * @param orEqual <code>true</code> to include the row of the key
+     * @return the condition
+     */
+    static EntityCondition makeKeyRangeCondition(List<String> pkNames, Map<String, Object> key, boolean greater, boolean orEqual) {
+        List<EntityCondition> alternatives = new ArrayList<>(pkNames.size() + 1);
+        List<EntityCondition> equalPrefix = new ArrayList<>(pkNames.size());
+        for (String pkName : pkNames) {
+            List<EntityCondition> alternative = new ArrayList<>(equalPrefix);
+            if (greater) {
+                alternative.add(EntityCondition.makeCondition(pkName, EntityOperator.GREATER_THAN, key.get(pkName)));
+            } else {
+                alternative.add(EntityCondition.makeCondition(pkName, EntityOperator.LESS_THAN, key.get(pkName)));
+            }
+            alternatives.add(EntityCondition.makeCondition(alternative));
+            equalPrefix.add(EntityCondition.makeCondition(pkName, EntityOperator.EQUALS, key.get(pkName)));
+        }
+        if (orEqual) {
+            alternatives.add(EntityCondition.makeCondition(equalPrefix));
+        }
+        return EntityCondition.makeCondition(alternatives, EntityOperator.OR);
+    }
+
+    private ExportedFile exportPart(Part part, Path outDir) {
+        ModelEntity modelEntity = part.modelEntity;
+        List<String> pkNames = modelEntity.getPkFieldNames();
+        List<EntityCondition> conditions = new ArrayList<>();
+        EntityCondition fromDateCondition = makeFromDateCondition(modelEntity, fromDate);
+        if (fromDateCondition != null) {
+            conditions.add(fromDateCondition);
+        }
+        if (part.fromKey != null) {
+            conditions.add(makeKeyRangeCondition(pkNames, part.fromKey, true, true));
+        }
+        if (part.toKey != null) {
+            conditions.add(makeKeyRangeCondition(pkNames, part.toKey, false, false));
+        }
+        String fileName = modelEntity.getEntityName() + (part.number > 0 ? String.format(Locale.ROOT, ".%03d", part.number) : "")
+                + (compress ? ".xml.gz" : ".xml");
+        Path file = outDir.resolve(fileName);
+        long rows = 0;
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin(transactionTimeout);
+            useSnapshot(modelEntity);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (EntityListIterator values = EntityQuery.use(delegator).from(modelEntity.getEntityName()).where(conditions)
+                    .orderBy(pkNames).cursorForwardOnly().fetchSize(1000).queryIterator()) {
+                GenericValue value = values.next();
+                if (value != null) {
+                    try (OutputStream out = openFile(file, digest);
+                            PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                        writer.println("<entity-engine-xml>");
+                        do {
+                            value.writeXmlText(writer, "");
+                            rows++;
+                            value = values.next();
+                        } while (value != null);
+                        writer.println("</entity-engine-xml>");
+                        // PrintWriter hides the errors, the end of the file is written explicitly to get them
+                        if (writer.checkError()) {
+                            throw new IOException("Error writing " + file);
+                        }
+                        if (out instanceof GZIPOutputStream) {
+                            ((GZIPOutputStream) out).finish();
+                        }
+                        out.flush();
+                    }
+                }
+            }
+            TransactionUtil.commit(beganTransaction);
+            Debug.logInfo("Exported " + rows + " rows of " + modelEntity.getEntityName() + " to " + fileName, MODULE);
+            return new ExportedFile(fileName, modelEntity.getEntityName(), rows, rows > 0 ? StringUtil.toHexString(digest.digest()) : null,
+                    null);
+        } catch (GenericEntityException | IOException | NoSuchAlgorithmException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error exporting " + fileName, e);
+            } catch (GenericEntityException e2) {
+                Debug.logError(e2, "Unable to roll back the transaction", MODULE);
+            }
+            // like the export of the entities one by one, the other entities are still exported
+            Debug.logError(e, "Error exporting " + modelEntity.getEntityName() + " to " + fileName, MODULE);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e2) {
+                Debug.logWarning(e2, "Unable to delete the incomplete file " + file, MODULE);
+            }
+            return new ExportedFile(fileName, modelEntity.getEntityName(), 0, null, e.toString());
+        }
+    }
+
+    // the checksum is the one of the bytes written to the file, after compression
+    private OutputStream openFile(Path file, MessageDigest digest) throws IOException {
+        OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), digest);
+        return compress ? new GZIPOutputStream(out, 65536) : out;
+    }
+
+    private static void writeManifest(List<ExportedFile> files, Path outDir) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outDir.resolve(MANIFEST_NAME), StandardCharsets.UTF_8))) {
+            writer.println("# file\tentity\trows\tsha256");
+            for (ExportedFile file : files) {
+                writer.println(file.getFileName() + "\t" + file.getEntityName() + "\t" + file.getRows() + "\t" + file.getChecksum());
+            }
+        }
+    }
+
+    private static final class Part {
+        private final ModelEntity modelEntity;
+        // primary key of the first row of the part, null for the first part
+        private final Map<String, Object> fromKey;
+        // primary key of the first row of the next part, null for the last part
+        private final Map<String, Object> toKey;
+        // 0 if the entity is in one part
+        private final int number;
+
+        Part(ModelEntity modelEntity, Map<String, Object> fromKey, Map<String, Object> toKey, int number) {
+            this.modelEntity = modelEntity;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.number = number;
+        }
+    }
+
+    /**
+     * File written by an export, as listed in the manifest.
+     */
+    public static final class ExportedFile {
+        private final String fileName;
+        private final String entityName;
+        private final long rows;
+        private final String checksum;
+        private final String error;
+
+        ExportedFile(String fileName, String entityName, long rows, String checksum, String error) {
+            this.fileName = fileName;
+            this.entityName = entityName;
+            this.rows = rows;
+            this.checksum = checksum;
+            this.error = error;
+        }
+
+        /** Returns the name of the file in the export directory. */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /** Returns the name of the entity exported. */
+        public String getEntityName() {
+            return entityName;
+        }
+
+        /** Returns the number of rows written. */
+        public long getRows() {
+            return rows;
+        }
+
+        /** Returns the hex encoded SHA-256 checksum of the file. */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /** Returns the error which prevented the file from being written, <code>null</code> if it was written. */
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Imports entity engine XML files with several threads, writing the values with JDBC batches.
+ * <p>
+ * The files are first scanned to know the entities each one contains. A file is imported after
+ * the files preceding it in the list which contain the same entities, or entities one of them
+ * references by a foreign key, so the order of the list is kept wherever it matters; the other
+ * files are imported concurrently. A transform file (<code>entity-engine-transform-xml</code>)
+ * waits for all the files preceding it, and all the files following it wait for it.
+ * <p>
+ * Each file is read with an {@link EntitySaxReader} streaming the values. The consecutive values
+ * of the same entity and action are written together in their own transaction: the values not
+ * already in the database are inserted with a single JDBC batch, see {@link Delegator#createAll(List)}.
+ * When a batch fails, its values are written again one by one, and the ones still failing are
+ * written to the reject file, with their error, instead of failing the whole import.
+ */
+public class EntityDataImporter {
+
+    private static final String MODULE = EntityDataImporter.class.getName();
+    private static final long PROGRESS_INTERVAL = 10000;
+
+    private final Delegator delegator;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 500;
+    private int transactionTimeout = -1;
+    private boolean maintainTxStamps = false;
+    private boolean createDummyFks = false;
+    private boolean continueOnFail = false;
+    private Map<String, Object> placeholderValues = null;
+    private Path rejectFile = null;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong lastProgress = new AtomicLong();
+    private long startTime;
+    private PrintWriter rejectWriter = null;
+
+    public EntityDataImporter(Delegator delegator) {
+        this.delegator = delegator;
+    }
+
+    /**
+     * Sets the number of files imported concurrently.
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the maximum number of values written with one JDBC batch, in one transaction.
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Sets the timeout of the transaction of each batch, the default timeout is used if not positive.
+     * @param transactionTimeout the transaction timeout in seconds
+     */
+    public void setTransactionTimeout(int transactionTimeout) {
+        this.transactionTimeout = transactionTimeout;
+    }
+
+    /**
+     * Sets maintain tx stamps.
+     * @param maintainTxStamps the maintain tx stamps
+     */
+    public void setMaintainTxStamps(boolean maintainTxStamps) {
+        this.maintainTxStamps = maintainTxStamps;
+    }
+
+    /**
+     * Sets create dummy fks.
+     * @param createDummyFks the create dummy fks
+     */
+    public void setCreateDummyFks(boolean createDummyFks) {
+        this.createDummyFks = createDummyFks;
+    }
+
+    /**
+     * Sets continue on fail, a file which can not be read is then reported instead of stopping the import.
+     * @param continueOnFail the continue on fail
+     */
+    public void setContinueOnFail(boolean continueOnFail) {
+        this.continueOnFail = continueOnFail;
+    }
+
+    /**
+     * Sets placeholder values.
+     * @param placeholderValues the placeholder values
+     */
+    public void setPlaceholderValues(Map<String, Object> placeholderValues) {
+        this.placeholderValues = placeholderValues;
+    }
+
+    /**
+     * Sets the entity engine XML file the rejected values are written to, with their error. Without
+     * reject file, the rejected values are only logged.
+     * @param rejectFile the reject file, replaced if it exists
+     */
+    public void setRejectFile(Path rejectFile) {
+        this.rejectFile = rejectFile;
+    }
+
+    /**
+     * Imports entity engine XML files.
+     * @param urls the files, in the order they would be imported one after the other
+     * @return the result of the import
+     * @throws GenericEntityException if a file can not be read and continue on fail is not set
+     */
+    public Result importData(List<URL> urls) throws GenericEntityException {
+        startTime = System.currentTimeMillis();
+        lastProgress.set(startTime);
+        Map<String, Long> rowsByUrl = Collections.synchronizedMap(new LinkedHashMap<>());
+        List<URL> failedUrls = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE), "entity-import", threads, 0, true);
+        try {
+            List<Set<String>> fileEntities = scanFiles(urls, executor);
+            List<Set<String>> fileReferences = new ArrayList<>(urls.size());
+            for (Set<String> entityNames : fileEntities) {
+                fileReferences.add(entityNames == null ? null : getReferencedEntities(entityNames));
+            }
+
+            List<CompletableFuture<Void>> imports = new ArrayList<>(urls.size());
+            for (URL url : urls) {
+                rowsByUrl.put(url.toExternalForm(), 0L);
+            }
+            for (int j = 0; j < urls.size(); j++) {
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (int i = 0; i < j; i++) {
+                    if (dependsOn(fileEntities.get(j), fileReferences.get(j), fileEntities.get(i), fileReferences.get(i))) {
+                        dependencies.add(imports.get(i));
+                    }
+                }
+                URL url = urls.get(j);
+                imports.add(CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                        .thenRunAsync(() -> importFile(url, rowsByUrl, failedUrls), executor));
+            }
+            CompletableFuture.allOf(imports.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof GenericEntityException) {
+                throw (GenericEntityException) cause;
+            }
+            throw new GenericEntityException("Error importing the entity data", cause);
+        } finally {
+            executor.shutdownNow();
+            closeRejectFile();
+        }
+        Result result = new Result(rowsRead.get(), rowsWritten.get(), rowsRejected.get(), rowsByUrl, failedUrls,
+                System.currentTimeMillis() - startTime);
+        Debug.logImportant("Imported " + result.getRowsWritten() + " of " + result.getRowsRead() + " values read from " + urls.size()
+                + " files in " + result.getElapsedMillis() + " ms (" + result.getRowsPerSecond() + " rows/s), "
+                + result.getRowsRejected() + " rejected", MODULE);
+        return result;
+    }
+
+    // the entities of each file, null for a transform file
+    private List<Set<String>> scanFiles(List<URL> urls, ExecutorService executor) {
+        List<CompletableFuture<Set<String>>> scans = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            scans.add(CompletableFuture.supplyAsync(() -> scanFile(url), executor));
+        }
+        List<Set<String>> fileEntities = new ArrayList<>(urls.size());
+        for (CompletableFuture<Set<String>> scan : scans) {
+            fileEntities.add(scan.join());
+        }
+        return fileEntities;
+    }
+
+    private static Set<String> scanFile(URL url) {
+        EntityNameScanner scanner = new EntityNameScanner();
+        try (InputStream is = EntitySaxReader.openStream(url)) {
+            SAXParserFactory.newInstance().newSAXParser().parse(is, scanner);
+        } catch (IOException | SAXException | ParserConfigurationException e) {
+            // the file is imported after all the previous ones, its import reports the error
+            Debug.logWarning("Unable to scan the entities of " + url + ": " + e, MODULE);
+            return null;
+        }
+        return scanner.transform ? null : scanner.entityNames;
+    }
+
+    private Set<String> getReferencedEntities(Set<String> entityNames) {
+        Set<String> references = new HashSet<>();
+        for (String entityName : entityNames) {
+            ModelEntity modelEntity = delegator.getModelEntity(entityName);
+            if (modelEntity != null) {
+                for (ModelRelation relation : modelEntity.getRelationsList(true, false, false)) {
+                    references.add(relation.getRelEntityName());
+                }
+            }
+        }
+        return references;
+    }
+
+    private static boolean dependsOn(Set<String> entities, Set<String> references, Set<String> previousEntities,
+            Set<String> previousReferences) {
+        if (entities == null || previousEntities == null) {
+            return true;
+        }
+        return !Collections.disjoint(entities, previousEntities) || !Collections.disjoint(references, previousEntities)
+                || !Collections.disjoint(previousReferences, entities);
+    }
+
+    private void importFile(URL url, Map<String, Long> rowsByUrl, List<URL> failedUrls) {
+        FileImport fileImport = new FileImport();
+        EntitySaxReader reader = new EntitySaxReader(delegator, transactionTimeout);
+        reader.setMaintainTxStamps(maintainTxStamps);
+        reader.setCreateDummyFks(createDummyFks);
+        reader.setContinueOnFail(continueOnFail);
+        reader.setPlaceholderValues(placeholderValues);
+        reader.setValueHandler(fileImport);
+        fileImport.reader = reader;
+        try {
+            reader.parse(url);
+            fileImport.flush();
+        } catch (IOException | SAXException | GenericEntityException e) {
+            String errMsg = "Error importing " + url.toExternalForm() + ": " + e.getMessage();
+            failedUrls.add(url);
+            if (!continueOnFail) {
+                throw new CompletionException(new GenericEntityException(errMsg, e));
+            }
+            Debug.logError(e, errMsg, MODULE);
+        } finally {
+            rowsByUrl.put(url.toExternalForm(), fileImport.written);
+        }
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastProgress.get();
+        if (now - last >= PROGRESS_INTERVAL && lastProgress.compareAndSet(last, now)) {
+            long written = rowsWritten.get();
+            Debug.logImportant("Entity data import: " + rowsRead.get() + " values read, " + written + " written ("
+                    + written * 1000 / Math.max(1, now - startTime) + " rows/s), " + rowsRejected.get() + " rejected", MODULE);
+        }
+    }
+
+    private synchronized void reject(GenericValue value, String action, Exception error) {
+        rowsRejected.incrementAndGet();
+        Debug.logError(error, "Rejected value " + value.getPrimaryKey() + " for action " + action, MODULE);
+        if (rejectFile == null) {
+            return;
+        }
+        try {
+            if (rejectWriter == null) {
+                rejectWriter = new PrintWriter(Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8));
+                rejectWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                rejectWriter.println("<entity-engine-xml>");
+            }
+            String message = String.valueOf(error.getMessage()).replace("--", "- -");
+            rejectWriter.println("    <!-- " + message + " -->");
+            if (!"create-update".equals(action)) {
+                rejectWriter.println("<" + action + ">");
+            }
+            value.writeXmlText(rejectWriter, "");
+            if (!"create-update".equals(action)) {
+                rejectWriter.println("</" + action + ">");
+            }
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to write to the reject file " + rejectFile, MODULE);
+        }
+    }
+
+    private synchronized void closeRejectFile() {
+        if (rejectWriter != null) {
+            rejectWriter.println("</entity-engine-xml>");
+            rejectWriter.close();
+            rejectWriter = null;
+        }
+    }
+
+    private boolean beginTransaction() throws GenericEntityException {
+        return transactionTimeout > 0 ? TransactionUtil.begin(transactionTimeout) : TransactionUtil.begin();
+    }
+
+    /**
+     * Buffers the values read from a file and writes them by batches.
+     */
+    private final class FileImport implements EntitySaxReader.ValueHandler {
+        private EntitySaxReader reader;
+        private final List<GenericValue> values = new ArrayList<>();
+        private String action;
+        private long written;
+
+        @Override
+        public void handle(GenericValue value, String action) throws GenericEntityException {
+            if (!values.isEmpty() && (!action.equals(this.action) || !value.getEntityName().equals(values.get(0).getEntityName()))) {
+                flush();
+            }
+            this.action = action;
+            values.add(value);
+            rowsRead.incrementAndGet();
+            if (values.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws GenericEntityException {
+            if (values.isEmpty()) {
+                return;
+            }
+            boolean beganTransaction = beginTransaction();
+            try {
+                int count = writeBatch();
+                TransactionUtil.commit(beganTransaction);
+                written += count;
+                rowsWritten.addAndGet(count);
+            } catch (GenericEntityException e) {
+                TransactionUtil.rollback(beganTransaction, "Error writing a batch of " + values.size() + " " + values.get(0).getEntityName()
+                        + " values, writing them one by one", e);
+                for (GenericValue value : values) {
+                    writeOne(value);
+                }
+            }
+            values.clear();
+            reportProgress();
+        }
+
+        private int writeBatch() throws GenericEntityException {
+            Delegator valueDelegator = values.get(0).getDelegator();
+            if ("delete".equals(action)) {
+                return valueDelegator.removeAll(values);
+            }
+            Set<GenericPK> existingPks = findExisting(valueDelegator);
+            List<GenericValue> newValues = new ArrayList<>(values.size());
+            List<GenericValue> existingValues = new ArrayList<>();
+            for (GenericValue value : values) {
+                if (existingPks.contains(value.getPrimaryKey())) {
+                    existingValues.add(value);
+                } else {
+                    if (reader.isCreateDummyFks()) {
+                        value.checkFks(true);
+                    }
+                    newValues.add(value);
+                }
+            }
+            int count = valueDelegator.createAll(newValues);
+            if (!"create".equals(action) && !existingValues.isEmpty()) {
+                count += valueDelegator.storeAll(existingValues, new EntityStoreOptions(reader.isCreateDummyFks()));
+            }
+            return count;
+        }
+
+        // the primary keys of the buffered values already in the database, read with one query
+        private Set<GenericPK> findExisting(Delegator valueDelegator) throws GenericEntityException {
+            ModelEntity modelEntity = values.get(0).getModelEntity();
+            List<String> pkNames = modelEntity.getPkFieldNames();
+            EntityCondition condition;
+            if (pkNames.size() == 1) {
+                List<Object> pkValues = new ArrayList<>(values.size());
+                for (GenericValue value : values) {
+                    pkValues.add(value.get(pkNames.get(0)));
+                }
+                condition = EntityCondition.makeCondition(pkNames.get(0), EntityOperator.IN, pkValues);
+            } else {
+                List<EntityCondition> pkConditions = new ArrayList<>(values.size());
+                for (GenericValue value : values) {
+                    pkConditions.add(EntityCondition.makeCondition(value.getPrimaryKey().getAllFields()));
+                }
+                condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+            }
+            Set<GenericPK> existingPks = new HashSet<>();
+            for (GenericValue existing : EntityQuery.use(valueDelegator).select(new HashSet<>(pkNames)).from(modelEntity.getEntityName())
+                    .where(condition).queryList()) {
+                existingPks.add(existing.getPrimaryKey());
+            }
+            return existingPks;
+        }
+
+        private void writeOne(GenericValue value) {
+            boolean beganTransaction = false;
+            try {
+                beganTransaction = beginTransaction();
+                int count;
+                Delegator valueDelegator = value.getDelegator();
+                if ("delete".equals(action)) {
+                    count = valueDelegator.removeValue(value);
+                } else if ("create".equals(action)) {
+                    count = 0;
+                    if (valueDelegator.findOne(value.getEntityName(), value.getPrimaryKey(), false) == null) {
+                        if (reader.isCreateDummyFks()) {
+                            value.checkFks(true);
+                        }
+                        valueDelegator.create(value);
+                        count = 1;
+                    }
+                } else {
+                    count = valueDelegator.storeAll(UtilMisc.toList(value), new EntityStoreOptions(reader.isCreateDummyFks()));
+                }
+                TransactionUtil.commit(beganTransaction);
+                written += count;
+                rowsWritten.addAndGet(count);
+            } catch (GenericEntityException | RuntimeException e) {
+                try {
+                    TransactionUtil.rollback(beganTransaction, "Error writing value " + value.getPrimaryKey(), e);
+                } catch (GenericEntityException e2) {
+                    Debug.logError(e2, "Unable to roll back the transaction", MODULE);
+                }
+                reject(value, action, e);
+            }
+        }
+    }
+
+    /**
+     * Reads the names of the entities of an entity engine XML file.
+     */
+    private static final class EntityNameScanner extends DefaultHandler {
+        private final Set<String> entityNames = new HashSet<>();
+        private boolean transform = false;
+        private int depth = 0;
+        private boolean inAction = false;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            depth++;
+            if (depth == 1) {
+                transform = "entity-engine-transform-xml".equals(qName);
+            } else if (!transform && depth == 2 && isActionTag(qName)) {
+                inAction = true;
+            } else if (!transform && (depth == 2 || (depth == 3 && inAction))) {
+                String entityName = qName;
+                // if a dash or colon is in the tag name, grab what is after it, as the reader does
+                if (entityName.indexOf('-') > 0) {
+                    entityName = entityName.substring(entityName.indexOf('-') + 1);
+                }
+                if (entityName.indexOf(':') > 0) {
+                    entityName = entityName.substring(entityName.indexOf(':') + 1);
+                }
+                entityNames.add(entityName);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (depth == 2) {
+                inAction = false;
+            }
+            depth--;
+        }
+
+        private static boolean isActionTag(String qName) {
+            return "create".equals(qName) || "create-update".equals(qName) || "create-replace".equals(qName) || "delete".equals(qName);
+        }
+    }
+
+    /**
+     * Result of an import.
+     */
+    public static final class Result {
+        private final long rowsRead;
+        private final long rowsWritten;
+        private final long rowsRejected;
+        private final Map<String, Long> rowsByUrl;
+        private final List<URL> failedUrls;
+        private final long elapsedMillis;
+
+        Result(long rowsRead, long rowsWritten, long rowsRejected, Map<String, Long> rowsByUrl, List<URL> failedUrls, long elapsedMillis) {
+            this.rowsRead = rowsRead;
+            this.rowsWritten = rowsWritten;
+            this.rowsRejected = rowsRejected;
+            this.rowsByUrl = rowsByUrl;
+            this.failedUrls = failedUrls;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /** Returns the number of values read. */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /** Returns the number of rows written. */
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /** Returns the number of values rejected. */
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /** Returns the number of rows written from each file by location, in the order of the files imported. */
+        public Map<String, Long> getRowsByUrl() {
+            return rowsByUrl;
+        }
+
+        /** Returns the files which could not be read. */
+        public List<URL> getFailedUrls() {
+            return failedUrls;
+        }
+
+        /** Returns the duration of the import in milliseconds. */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /** Returns the number of rows written per second. */
+        public long getRowsPerSecond() {
+            return rowsWritten * 1000 / Math.max(1, elapsedMillis);
+        }
+
+        /** Returns <code>true</code> if a value was rejected or a file could not be read. */
+        public boolean hasErrors() {
+            return rowsRejected > 0 || UtilValidate.isNotEmpty(failedUrls);
+        }
+    }
+}
@@ -54,6 +54,12 @@ public class EntityFindOptions implements java.io.Serializable {
     /** OFFSET option */
     private int offset = -1;
 
+    /** Allows reading from a read replica of the datasource */
+    private boolean readOnly = false;
+
+    /** Allows an approximate count of the rows */
+    private boolean approximateCount = false;
+
     /** Default constructor. Defaults are as follows:
      *      specifyTypeAndConcur = true
      *      resultSetType = TYPE_FORWARD_ONLY
@@ -173,4 +179,33 @@ public class EntityFindOptions implements java.io.Serializable {
     public void setOffset(int offset) {
         this.offset = offset;
     }
+
+    /** Returns true if the find can be served by a read replica of the datasource. */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Specifies whether the find can be served by a read replica of the datasource, even
+     * inside a transaction. The find is then done outside of the transaction, and the
+     * returned values may be slightly out of date.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /** Returns true if a count can be approximate. */
+    public boolean isApproximateCount() {
+        return approximateCount;
+    }
+
+    /**
+     * Specifies whether a count can be served by the estimate of the database planner or by
+     * a count cached by the delegator and adjusted by its writes, instead of counting the rows.
+     * Only the counts without a having condition, distinct option or fields to select are
+     * approximated.
+     */
+    public void setApproximateCount(boolean approximateCount) {
+        this.approximateCount = approximateCount;
+    }
 }
@@ -33,8 +33,8 @@ import org.apache.ofbiz.entity.GenericResultSetClosedException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.datasource.GenericDAO;
+import org.apache.ofbiz.entity.jdbc.RowMapper;
 import org.apache.ofbiz.entity.jdbc.SQLProcessor;
-import org.apache.ofbiz.entity.jdbc.SqlJdbcUtil;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
@@ -62,6 +62,7 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
 
     private boolean haveShowHasNextWarning = false;
     private Integer resultSize = null;
+    private RowMapper rowMapper = null;
 
     public EntityListIterator(SQLProcessor sqlp, ModelEntity modelEntity, List<ModelField> selectFields, ModelFieldTypeReader modelFieldTypeReader) {
         this(sqlp, modelEntity, selectFields, modelFieldTypeReader, null, null, null, false);
@@ -191,14 +192,16 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
         GenericValue value = GenericValue.create(modelEntity);
         value.setDelegator(this.delegator);
 
-        for (int j = 0; j < selectFields.size(); j++) {
-            ModelField curField = selectFields.get(j);
-
-            SqlJdbcUtil.getValue(resultSet, j + 1, curField, value, modelFieldTypeReader);
+        if (rowMapper == null) {
+            rowMapper = modelEntity.getRowMapper(selectFields, modelFieldTypeReader);
         }
+        rowMapper.map(resultSet, value);
 
         value.synchronizedWithDatasource();
         this.haveMadeValue = true;
+        if (sqlp != null) {
+            sqlp.countRow();
+        }
         return value;
     }
 
@@ -219,6 +222,24 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
         }
     }
 
+    /**
+     * Checks if the cursor can be moved to any row, with {@link #absolute(int)} or {@link #beforeFirst()} for instance.
+     * The iterators of {@link EntityQuery#queryIterator()} are forward only unless a scrollable cursor is asked for.
+     * @return false if the cursor can only move forward with {@link #next()}.
+     * @throws GenericEntityException
+     *             if an error with the database access occurs.
+     */
+    public boolean isScrollable() throws GenericEntityException {
+        if (closed) throw new GenericResultSetClosedException("This EntityListIterator has been closed, this operation cannot be performed");
+
+        try {
+            return resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY;
+        } catch (SQLException e) {
+            closeWithWarning("Warning: auto-closed EntityListIterator because of exception: " + e.toString());
+            throw new GenericEntityException("Error getting the type of the result set", e);
+        }
+    }
+
     /**
      * performs the same function as the {@link ResultSet#absolute(int)} method.
      * if rowNum is positive, goes to that position relative to the beginning of the list;
@@ -486,6 +507,26 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
         return this.last() ? this.currentIndex() : 0;
     }
 
+    /**
+     * Determines the possible result size, approximately when an approximate count is
+     * cheaper: for an entity known by the delegator the count may come from the estimate of
+     * the database planner or from the count cache of the delegator, see
+     * {@link EntityFindOptions#setApproximateCount(boolean)}. Otherwise the result size is
+     * the one of {@link #getResultsSizeAfterPartialList()}.
+     * @return the approximate result size
+     * @throws GenericEntityException
+     *             if there is an issue with the call to the database.
+     */
+    public int getApproximateResultsSize() throws GenericEntityException {
+        if (resultSize == null && genericDAO != null && delegator != null && havingCondition == null && !distinctQuery
+                && delegator.getModelReader().getModelEntityNoCheck(modelEntity.getEntityName()) == modelEntity) {
+            EntityFindOptions efo = new EntityFindOptions();
+            efo.setApproximateCount(true);
+            return (int) delegator.findCountByCondition(modelEntity.getEntityName(), whereCondition, null, efo);
+        }
+        return getResultsSizeAfterPartialList();
+    }
+
     /**
      * Finds the size of the result.
      * @return count of elements returned by a query.
@@ -64,6 +64,8 @@ public class EntityQuery {
     private Integer fetchSize = null;
     private Integer maxRows = null;
     private boolean distinct = false;
+    private boolean readOnly = false;
+    private boolean approximateCount = false;
     private EntityCondition havingEntityCondition = null;
     private boolean filterByDate = false;
     private Timestamp filterByDateMoment;
@@ -72,6 +74,7 @@ public class EntityQuery {
     private Map<String, Object> fieldMap = null;
     private Integer offset;
     private Integer limit;
+    private List<String> prefetchRelations = null;
 
 
     /** Construct an EntityQuery object for use against the specified Delegator
@@ -309,6 +312,54 @@ public class EntityQuery {
         return this;
     }
 
+    /** Specifies that the query can be served by a read replica of the datasource, when one is configured.
+     * The results may then not include the latest changes, even the ones done in the current transaction.
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery readOnly() {
+        this.readOnly = true;
+        return this;
+    }
+
+    /** Specifies whether the query can be served by a read replica of the datasource, when one is configured.
+     * @param readOnly - boolean indicating whether stale results from a read replica are acceptable
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery readOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        return this;
+    }
+
+    /** Specifies that {@link #queryCount()} can return an approximate count: the estimate of the database
+     * planner for all the rows of a large table, or a count cached by the delegator and adjusted by its writes.
+     * Fast enough for the pagination of lists on large entities, but not exact.
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery approximateCount() {
+        this.approximateCount = true;
+        return this;
+    }
+
+    /** Specifies whether {@link #queryCount()} can return an approximate count.
+     * @param approximateCount - boolean indicating whether an approximate count is acceptable
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery approximateCount(boolean approximateCount) {
+        this.approximateCount = approximateCount;
+        return this;
+    }
+
+    /** Specifies relations to load for all the values returned at once, with a query per chunk of related keys, instead of a query
+     * per value when getRelated or getRelatedOne is called on each of them. Applies to queryList, queryFirst and queryOne without cache.
+     * @param relationNames - the names of the relations of the entity queried
+     * @return this EntityQuery object, to enable chaining
+     * @see Delegator#prefetchRelated(List, String)
+     */
+    public EntityQuery prefetch(String... relationNames) {
+        this.prefetchRelations = Arrays.asList(relationNames);
+        return this;
+    }
+
     /** Specifies whether results should be read from the cache (or written to the cache if the results have not yet been cached)
      * @return this EntityQuery object, to enable chaining
      */
@@ -478,6 +529,12 @@ public class EntityQuery {
         if (UtilValidate.isNotEmpty(fieldsToSelect) && useCache) {
             result = EntityUtil.getSelectedFieldValueListFromEntityList(delegator, result, fieldsToSelect);
         }
+        // the cached values are shared, the related values are not attached to them
+        if (UtilValidate.isNotEmpty(prefetchRelations) && !useCache) {
+            for (String relationName : prefetchRelations) {
+                delegator.prefetchRelated(result, relationName);
+            }
+        }
         return result;
     }
 
@@ -499,6 +556,8 @@ public class EntityQuery {
             findOptions.setOffset(offset);
         }
         findOptions.setDistinct(distinct);
+        findOptions.setReadOnly(readOnly);
+        findOptions.setApproximateCount(approximateCount);
         return findOptions;
     }
 
@@ -591,7 +650,7 @@ public class EntityQuery {
      */
     public PagedList<GenericValue> queryPagedList(final int viewIndex, final int viewSize) throws GenericEntityException {
         try (EntityListIterator genericValueEli = queryIterator()) {
-            return EntityUtil.getPagedList(genericValueEli, viewIndex, viewSize);
+            return EntityUtil.getPagedList(genericValueEli, viewIndex, viewSize, approximateCount);
         }
     }
 
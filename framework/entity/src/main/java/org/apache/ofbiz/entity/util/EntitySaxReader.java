@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -112,6 +113,22 @@ public class EntitySaxReader extends DefaultHandler {
     private Document documentForTemplate = null;
     private Map<String, Object> placeholderValues = null;
     //contains map of values for corresponding placeholders (eg. ${key}) in the entity xml data file.
+    private ValueHandler valueHandler = null;
+
+    /**
+     * Receives the values read in place of the reader writing them, see {@link #setValueHandler(ValueHandler)}.
+     */
+    @FunctionalInterface
+    public interface ValueHandler {
+        /**
+         * Handles a value read.
+         * @param value the value read, its primary key is complete
+         * @param action the action of the enclosing tag: <code>create</code>, <code>create-update</code>,
+         *        <code>create-replace</code> or <code>delete</code>
+         * @throws GenericEntityException if the value can not be handled, it stops the parsing
+         */
+        void handle(GenericValue value, String action) throws GenericEntityException;
+    }
 
     protected EntitySaxReader() { }
 
@@ -169,6 +186,15 @@ public class EntitySaxReader extends DefaultHandler {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * Checks if the missing related values are created as dummy values, the
+     * <code>create-dummy-fk</code> attribute of the file read can change it.
+     * @return <code>true</code> if dummy foreign keys are created
+     */
+    public boolean isCreateDummyFks() {
+        return createDummyFks;
+    }
+
     /**
      * Sets check data only.
      * @param checkDataOnly the check data only
@@ -193,6 +219,15 @@ public class EntitySaxReader extends DefaultHandler {
         this.placeholderValues = placeholderValues;
     }
 
+    /**
+     * Sets the handler receiving the values read. When set, the reader neither checks nor writes
+     * the values and does not begin any transaction: the handler is in charge of it.
+     * @param valueHandler the value handler
+     */
+    public void setValueHandler(ValueHandler valueHandler) {
+        this.valueHandler = valueHandler;
+    }
+
     /**
      * Gets message list.
      * @return the message list
@@ -257,12 +292,31 @@ public class EntitySaxReader extends DefaultHandler {
         }
         Debug.logImportant("Beginning import from URL: " + location.toExternalForm(), MODULE);
         long numberRead = 0;
-        try (InputStream is = location.openStream()) {
+        try (InputStream is = openStream(location)) {
             numberRead = this.parse(is, location.toString());
         }
         return numberRead;
     }
 
+    /**
+     * Opens an entity engine XML file, uncompressing it if its name ends with <code>.gz</code>.
+     * @param location the location of the file
+     * @return the input stream of the XML document
+     * @throws IOException if the file can not be opened
+     */
+    static InputStream openStream(URL location) throws IOException {
+        InputStream is = location.openStream();
+        if (!location.getPath().endsWith(".gz")) {
+            return is;
+        }
+        try {
+            return new GZIPInputStream(is, 65536);
+        } catch (IOException e) {
+            is.close();
+            throw e;
+        }
+    }
+
     private long parse(InputStream is, String docDescription) throws SAXException, java.io.IOException {
         SAXParser parser;
         try {
@@ -273,7 +327,7 @@ public class EntitySaxReader extends DefaultHandler {
         numberRead = 0;
         try {
             boolean beganTransaction = false;
-            if (transactionTimeout > -1) {
+            if (transactionTimeout > -1 && valueHandler == null) {
                 beganTransaction = TransactionUtil.begin(transactionTimeout);
                 Debug.logImportant("Transaction Timeout set to " + transactionTimeout / 3600 + " hours (" + transactionTimeout + " seconds)", MODULE);
             }
@@ -401,6 +455,7 @@ public class EntitySaxReader extends DefaultHandler {
 
                     EntitySaxReader reader = new EntitySaxReader(delegator);
                     reader.setUseTryInsertMethod(this.useTryInsertMethod);
+                    reader.setValueHandler(this.valueHandler);
                     try {
                         reader.setTransactionTimeout(this.transactionTimeout);
                     } catch (GenericTransactionException e1) {
@@ -460,6 +515,19 @@ public class EntitySaxReader extends DefaultHandler {
                     }
                 }
 
+                if (valueHandler != null) {
+                    try {
+                        valueHandler.handle(currentValue, actionTags.get(currentAction.ordinal()));
+                    } catch (GenericEntityException e) {
+                        String errMsg = "Error handling value " + currentValue.getPrimaryKey() + " for action " + currentAction;
+                        Debug.logError(e, errMsg, MODULE);
+                        throw new SAXException(errMsg, e);
+                    }
+                    numberRead++;
+                    currentValue = null;
+                    return;
+                }
+
                 try {
                     boolean exist = true;
                     boolean skip = false;
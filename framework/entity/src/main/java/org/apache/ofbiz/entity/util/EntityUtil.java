@@ -555,6 +555,21 @@ public final class EntityUtil {
      * @see org.apache.ofbiz.entity.util.EntityListIterator
      */
     public static PagedList<GenericValue> getPagedList(EntityListIterator iter, int viewIndex, int viewSize) throws GenericEntityException {
+        return getPagedList(iter, viewIndex, viewSize, false);
+    }
+
+    /**
+     * @param iter             EntityListIterator
+     * @param viewIndex
+     * @param viewSize
+     * @param approximateCount whether the size of the list can be approximate, see
+     *                         {@link EntityListIterator#getApproximateResultsSize()}
+     * @return PagedList object with a subset of data items from EntityListIterator based on viewIndex and viewSize
+     * @throws GenericEntityException
+     * @see org.apache.ofbiz.entity.util.EntityListIterator
+     */
+    public static PagedList<GenericValue> getPagedList(EntityListIterator iter, int viewIndex, int viewSize, boolean approximateCount)
+            throws GenericEntityException {
         int startIndex = getStartIndexFromViewIndex(viewIndex, viewSize);
         int endIndex = (startIndex + viewSize) - 1;
 
@@ -563,7 +578,13 @@ public final class EntityUtil {
             endIndex = (endIndex - viewSize) + dataItems.size();
         }
 
-        int size = iter.getResultsSizeAfterPartialList();
+        int size;
+        if (approximateCount) {
+            // the page read is never cut by an estimate lower than the actual count
+            size = Math.max(iter.getApproximateResultsSize(), startIndex - 1 + dataItems.size());
+        } else {
+            size = iter.getResultsSizeAfterPartialList();
+        }
         if (endIndex > size) {
             endIndex = size;
         }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArrayFieldMapTests {
+    private ModelEntity modelEntity;
+
+    @Before
+    public void setUp() {
+        modelEntity = new ModelEntity();
+        modelEntity.addField(ModelField.create(modelEntity, "testId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "description", "description", false));
+        modelEntity.addField(ModelField.create(modelEntity, "amount", "currency-amount", false));
+    }
+
+    private static void fill(Map<String, Object> map) {
+        map.put("testId", "T1");
+        map.put("amount", null);
+        map.put("notAField", "other");
+    }
+
+    @Test
+    public void nullValueIsDifferentFromMissingValue() {
+        ArrayFieldMap fields = new ArrayFieldMap(modelEntity);
+        fields.put("testId", "T1");
+        fields.put("description", null);
+        assertEquals(2, fields.size());
+        assertTrue(fields.containsKey("description"));
+        assertNull(fields.get("description"));
+        assertFalse(fields.containsKey("amount"));
+        assertEquals(null, fields.remove("amount"));
+        assertEquals(2, fields.size());
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        ArrayFieldMap fields = new ArrayFieldMap(modelEntity);
+        Map<String, Object> expected = new HashMap<>();
+        fill(fields);
+        fill(expected);
+        assertEquals(expected, fields);
+        assertEquals(fields, expected);
+        assertEquals(expected.hashCode(), fields.hashCode());
+
+        Iterator<Map.Entry<String, Object>> it = fields.entrySet().iterator();
+        while (it.hasNext()) {
+            if ("testId".equals(it.next().getKey())) {
+                it.remove();
+            }
+        }
+        expected.remove("testId");
+        assertEquals(expected, fields);
+        assertEquals(expected, new ArrayFieldMap(fields));
+    }
+
+    @Test
+    public void tracksOriginalValuesAfterSynchronization() {
+        ArrayFieldMap fields = new ArrayFieldMap(modelEntity);
+        fields.put("testId", "T1");
+        fields.put("description", "before");
+        assertFalse(fields.isSynchronizedWithDatasource());
+        fields.synchronizedWithDatasource();
+        fields.put("description", "after");
+        fields.put("description", "again");
+        fields.put("amount", 1);
+        assertEquals("before", fields.getOriginalValue("description"));
+        assertEquals("T1", fields.getOriginalValue("testId"));
+        assertNull(fields.getOriginalValue("amount"));
+        assertEquals("again", fields.get("description"));
+        fields.synchronizedWithDatasource();
+        assertEquals("again", fields.getOriginalValue("description"));
+    }
+
+    @Test
+    public void handlesFieldsAddedToTheModelLater() {
+        ArrayFieldMap fields = new ArrayFieldMap(modelEntity);
+        fields.put("testId", "T1");
+        modelEntity.addField(ModelField.create(modelEntity, "comments", "comment", false));
+        assertNull(fields.get("comments"));
+        fields.put("comments", "added");
+        assertEquals("added", fields.get("comments"));
+        assertEquals(2, fields.size());
+    }
+
+    @Test
+    public void immutableMapRejectsChanges() {
+        ArrayFieldMap fields = new ArrayFieldMap(modelEntity);
+        fields.put("testId", "T1");
+        fields.setImmutable();
+        assertThrows(UnsupportedOperationException.class, () -> fields.put("testId", "T2"));
+        assertThrows(UnsupportedOperationException.class, () -> fields.remove("testId"));
+        assertEquals("T1", fields.get("testId"));
+    }
+
+    @Test
+    public void nullEntitiesHaveNoFields() {
+        for (GenericEntity nullEntity : new GenericEntity[] {GenericEntity.NULL_ENTITY, GenericValue.NULL_VALUE}) {
+            assertEquals(0, nullEntity.size());
+            assertTrue(nullEntity.keySet().isEmpty());
+            assertEquals(nullEntity.hashCode(), nullEntity.hashCode());
+            assertTrue(nullEntity.equals(nullEntity));
+            assertFalse(nullEntity.isMutable());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ReplicaRoutingHelperTests {
+
+    private static final long NOW = 1_000_000L;
+    private static final int STICKY_SECONDS = 5;
+
+    @After
+    public void tearDown() {
+        ReplicaRoutingHelper.setLastWriteTime(0);
+    }
+
+    @Test
+    public void findsOutsideOfTransactionReadReplica() {
+        assertTrue(ReplicaRoutingHelper.canReadReplica(false, false, 0, NOW, STICKY_SECONDS));
+    }
+
+    @Test
+    public void findsInTransactionReadPrimary() {
+        // even before the first write of the transaction, so that a read-modify-write sees the latest values
+        assertFalse(ReplicaRoutingHelper.canReadReplica(false, true, 0, NOW, STICKY_SECONDS));
+        assertFalse(ReplicaRoutingHelper.canReadReplica(false, true, NOW - 60000, NOW, STICKY_SECONDS));
+    }
+
+    @Test
+    public void readOnlyFindsReadReplica() {
+        assertTrue(ReplicaRoutingHelper.canReadReplica(true, true, 0, NOW, STICKY_SECONDS));
+        assertTrue(ReplicaRoutingHelper.canReadReplica(true, false, NOW - 1, NOW, STICKY_SECONDS));
+    }
+
+    @Test
+    public void recentWritesAreReadFromPrimary() {
+        assertFalse(ReplicaRoutingHelper.canReadReplica(false, false, NOW - 1000, NOW, STICKY_SECONDS));
+        assertFalse(ReplicaRoutingHelper.canReadReplica(false, false, NOW - STICKY_SECONDS * 1000L + 1, NOW, STICKY_SECONDS));
+        assertTrue(ReplicaRoutingHelper.canReadReplica(false, false, NOW - STICKY_SECONDS * 1000L, NOW, STICKY_SECONDS));
+    }
+
+    @Test
+    public void noStickinessWithoutStickySeconds() {
+        assertTrue(ReplicaRoutingHelper.canReadReplica(false, false, NOW, NOW, 0));
+    }
+
+    @Test
+    public void lastWriteTimeIsKeptByThread() {
+        ReplicaRoutingHelper.setLastWriteTime(NOW);
+        assertEquals(NOW, ReplicaRoutingHelper.getLastWriteTime());
+        ReplicaRoutingHelper.setLastWriteTime(0);
+        assertEquals(0, ReplicaRoutingHelper.getLastWriteTime());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class QueryStatisticsTests {
+
+    @After
+    public void tearDown() {
+        QueryStatistics.setEnabled(false);
+        QueryStatistics.clear();
+    }
+
+    @Test
+    public void literalsAndValueListsAreNormalized() {
+        assertEquals("SELECT * FROM PRODUCT WHERE PRODUCT_ID IN (?...) AND QUANTITY > ?",
+                QueryStatistics.normalize("SELECT *  FROM PRODUCT\n WHERE PRODUCT_ID IN (?, ?, ?) AND QUANTITY > 10"));
+        assertEquals("SELECT * FROM PRODUCT WHERE PRODUCT_ID IN (?...) AND NAME = ?",
+                QueryStatistics.normalize("SELECT * FROM PRODUCT WHERE PRODUCT_ID IN ('A', 'B') AND NAME = 'it''s'"));
+        // numbers in identifiers are kept
+        assertEquals("SELECT ADDRESS1 FROM POSTAL_ADDRESS T1 WHERE T1.ID = ?",
+                QueryStatistics.normalize("SELECT ADDRESS1 FROM POSTAL_ADDRESS T1 WHERE T1.ID = 2.5"));
+    }
+
+    @Test
+    public void executionsAreGroupedByShapeAndCaller() {
+        QueryStatistics.setEnabled(true);
+        QueryStatistics.pushCaller("service:test");
+        try {
+            for (int i = 0; i < 100; i++) {
+                QueryStatistics.record("SELECT * FROM PRODUCT WHERE PRODUCT_ID = '" + i + "'", 1000000, 1);
+            }
+            QueryStatistics.record("SELECT * FROM PRODUCT WHERE PRODUCT_ID = 'slow'", 500000000, 1);
+        } finally {
+            QueryStatistics.popCaller();
+        }
+        List<Map<String, Object>> statements = QueryStatistics.getTopStatements(10);
+        assertEquals(1, statements.size());
+        Map<String, Object> statement = statements.get(0);
+        assertEquals(101L, statement.get("count"));
+        assertEquals(101L, statement.get("rows"));
+        assertEquals("service:test", statement.get("topCaller"));
+        assertEquals(600L, statement.get("totalMillis"));
+        assertEquals(500L, statement.get("maxMillis"));
+        // upper bound of the histogram bucket holding 1 ms
+        assertEquals(1.024, (Double) statement.get("p99Millis"), 0.0001);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelFieldType;
+import org.apache.ofbiz.entity.model.ModelFieldTypeReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class RowMapperTests {
+
+    private ModelEntity modelEntity;
+    private ModelFieldTypeReader modelFieldTypeReader;
+
+    private static ModelFieldType fieldType(String type, String sqlType, String javaType) throws Exception {
+        Element element = UtilXml.readXmlDocument("<field-type-def type=\"" + type + "\" sql-type=\"" + sqlType
+                + "\" java-type=\"" + javaType + "\"/>").getDocumentElement();
+        return new ModelFieldType(element);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, ModelFieldType> fieldTypes = new HashMap<>();
+        fieldTypes.put("id", fieldType("id", "VARCHAR(20)", "String"));
+        fieldTypes.put("numeric", fieldType("numeric", "NUMERIC(20,0)", "Long"));
+        modelFieldTypeReader = new ModelFieldTypeReader(fieldTypes);
+        modelEntity = new ModelEntity();
+        modelEntity.addField(ModelField.create(modelEntity, "testId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "quantity", "numeric", false));
+    }
+
+    @Test
+    public void columnsAreReadInSelectionOrder() throws Exception {
+        List<ModelField> selectFields = Arrays.asList(modelEntity.getField("quantity"), modelEntity.getField("testId"));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(0L);
+        when(rs.wasNull()).thenReturn(true);
+        when(rs.getString(2)).thenReturn("T1");
+        GenericValue value = GenericValue.create(modelEntity);
+        modelEntity.getRowMapper(selectFields, modelFieldTypeReader).map(rs, value);
+        assertEquals("T1", value.getString("testId"));
+        assertNull(value.get("quantity"));
+    }
+
+    @Test
+    public void mappersAreBuiltOncePerSelection() {
+        List<ModelField> selectFields = modelEntity.getFieldsUnmodifiable();
+        RowMapper mapper = modelEntity.getRowMapper(selectFields, modelFieldTypeReader);
+        assertSame(mapper, modelEntity.getRowMapper(selectFields, modelFieldTypeReader));
+        assertEquals(2, mapper.getColumnCount());
+        assertNotSame(mapper, modelEntity.getRowMapper(selectFields.subList(0, 1), modelFieldTypeReader));
+        // a change of the fields of the entity drops the mappers
+        modelEntity.addField(ModelField.create(modelEntity, "comments", "id", false));
+        assertNotSame(mapper, modelEntity.getRowMapper(selectFields, modelFieldTypeReader));
+    }
+}
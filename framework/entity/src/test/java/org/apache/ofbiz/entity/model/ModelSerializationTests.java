@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.junit.Test;
+
+public class ModelSerializationTests {
+
+    private static Object roundTrip(Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(object);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            return ois.readObject();
+        }
+    }
+
+    @Test
+    public void operatorsAreResolvedToTheirSingleton() throws Exception {
+        for (EntityOperator<?, ?> operator : Arrays.asList(EntityOperator.EQUALS, EntityOperator.NOT_LIKE, EntityOperator.IN,
+                EntityOperator.BETWEEN, EntityOperator.AND, EntityOperator.OR)) {
+            assertSame(operator, roundTrip(operator));
+        }
+    }
+
+    @Test
+    public void entityKeepsItsFields() throws Exception {
+        ModelEntity modelEntity = new ModelEntity();
+        modelEntity.addField(ModelField.create(modelEntity, "testId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "description", "description", false));
+        ModelEntity copy = (ModelEntity) roundTrip(modelEntity);
+        assertEquals(modelEntity.getAllFieldNames(), copy.getAllFieldNames());
+        assertEquals(modelEntity.getPkFieldNames(), copy.getPkFieldNames());
+        assertEquals(modelEntity.getFieldIndex("description"), copy.getFieldIndex("description"));
+        // the lock of the copy works
+        copy.addField(ModelField.create(copy, "comments", "comment", false));
+        assertEquals(3, copy.getFieldsSize());
+    }
+
+    @Test
+    public void fingerprintReadsTheNestedModelClasses() {
+        // a nested or anonymous class not found would give no fingerprint
+        String fingerprint = ModelSnapshot.computeFingerprint("test", Collections.emptyList());
+        assertNotNull(fingerprint);
+        assertEquals(fingerprint, ModelSnapshot.computeFingerprint("test", Collections.emptyList()));
+        assertNotEquals(fingerprint, ModelSnapshot.computeFingerprint("other", Collections.emptyList()));
+    }
+}
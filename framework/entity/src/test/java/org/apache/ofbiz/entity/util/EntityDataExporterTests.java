@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.entity.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.junit.Test;
+
+public class EntityDataExporterTests {
+
+    private static final List<String> PK_NAMES = Arrays.asList("orderId", "orderItemSeqId");
+    private static final Map<String, Object> KEY = makeKey("WS100", "00002");
+
+    private static Map<String, Object> makeKey(String orderId, String orderItemSeqId) {
+        Map<String, Object> key = new HashMap<>();
+        key.put("orderId", orderId);
+        key.put("orderItemSeqId", orderItemSeqId);
+        return key;
+    }
+
+    private static boolean matches(EntityCondition condition, String orderId, String orderItemSeqId) {
+        return condition.mapMatches(null, makeKey(orderId, orderItemSeqId));
+    }
+
+    @Test
+    public void keysAfterKey() {
+        EntityCondition condition = EntityDataExporter.makeKeyRangeCondition(PK_NAMES, KEY, true, false);
+        assertTrue(matches(condition, "WS100", "00003"));
+        assertTrue(matches(condition, "WS101", "00001"));
+        assertFalse(matches(condition, "WS100", "00002"));
+        assertFalse(matches(condition, "WS100", "00001"));
+        assertFalse(matches(condition, "WS099", "00009"));
+    }
+
+    @Test
+    public void keysAfterOrEqualToKey() {
+        EntityCondition condition = EntityDataExporter.makeKeyRangeCondition(PK_NAMES, KEY, true, true);
+        assertTrue(matches(condition, "WS100", "00002"));
+        assertTrue(matches(condition, "WS100", "00003"));
+        assertFalse(matches(condition, "WS100", "00001"));
+    }
+
+    @Test
+    public void keysBeforeKey() {
+        EntityCondition condition = EntityDataExporter.makeKeyRangeCondition(PK_NAMES, KEY, false, false);
+        assertTrue(matches(condition, "WS100", "00001"));
+        assertTrue(matches(condition, "WS099", "00009"));
+        assertFalse(matches(condition, "WS100", "00002"));
+        assertFalse(matches(condition, "WS100", "00003"));
+        assertFalse(matches(condition, "WS101", "00001"));
+    }
+
+    @Test
+    public void consecutivePartsCoverEachKeyOnce() {
+        // a part is from its first key, included, to the first key of the next part, excluded
+        Map<String, Object> nextKey = makeKey("WS101", "00001");
+        EntityCondition part = EntityCondition.makeCondition(Arrays.asList(
+                EntityDataExporter.makeKeyRangeCondition(PK_NAMES, KEY, true, true),
+                EntityDataExporter.makeKeyRangeCondition(PK_NAMES, nextKey, false, false)));
+        EntityCondition nextPart = EntityDataExporter.makeKeyRangeCondition(PK_NAMES, nextKey, true, true);
+        String[][] keys = {{"WS100", "00001"}, {"WS100", "00002"}, {"WS100", "00009"}, {"WS101", "00001"}, {"WS101", "00002"}};
+        boolean[] inPart = {false, true, true, false, false};
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(String.join("/", keys[i]), inPart[i], matches(part, keys[i][0], keys[i][1]));
+            assertEquals(String.join("/", keys[i]), i >= 3, matches(nextPart, keys[i][0], keys[i][1]));
+        }
+    }
+
+    @Test
+    public void singleFieldKey() {
+        EntityCondition condition = EntityDataExporter.makeKeyRangeCondition(Arrays.asList("orderId"), KEY, true, true);
+        assertTrue(matches(condition, "WS100", "00001"));
+        assertTrue(matches(condition, "WS101", "00001"));
+        assertFalse(matches(condition, "WS099", "00009"));
+    }
+
+    @Test
+    public void fromDateConditionOnCreatedStamp() {
+        ModelEntity modelEntity = mock(ModelEntity.class);
+        when(modelEntity.isField(ModelEntity.CREATE_STAMP_FIELD)).thenReturn(true);
+        Timestamp fromDate = new Timestamp(1000000L);
+        EntityCondition condition = EntityDataExporter.makeFromDateCondition(modelEntity, fromDate);
+        Map<String, Object> row = new HashMap<>();
+        row.put(ModelEntity.CREATE_STAMP_FIELD, new Timestamp(1000000L));
+        assertTrue(condition.mapMatches(null, row));
+        row.put(ModelEntity.CREATE_STAMP_FIELD, new Timestamp(999999L));
+        assertFalse(condition.mapMatches(null, row));
+        assertNull(EntityDataExporter.makeFromDateCondition(modelEntity, null));
+    }
+
+    @Test
+    public void noFromDateConditionWithoutCreatedStamp() {
+        // the entities with no-auto-stamp are exported in full
+        ModelEntity modelEntity = mock(ModelEntity.class);
+        when(modelEntity.isField(ModelEntity.CREATE_STAMP_FIELD)).thenReturn(false);
+        assertNull(EntityDataExporter.makeFromDateCondition(modelEntity, new Timestamp(1000000L)));
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.ofbiz.entityext.data;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,6 +53,7 @@ import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
 import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
 import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.util.EntityDataImporter;
 import org.apache.ofbiz.entity.util.EntityDataLoader;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
@@ -83,6 +85,9 @@ public class EntityDataLoadContainer implements Container {
     private static final String TRY_INSERTS = "try-inserts";
     private static final String REPAIR_COLUMNS = "repair-columns";
     private static final String CONTINUE_ON_FAIL = "continue-on-failure";
+    private static final String THREADS = "threads";
+    private static final String BATCH_SIZE = "batch-size";
+    private static final String REJECT_FILE = "reject-file";
 
     @Override
     public void init(List<StartupCommand> ofbizCommands, String name, String configFile) throws ContainerException {
@@ -427,6 +432,12 @@ public class EntityDataLoadContainer implements Container {
 
         logDataLoadingPlan(urlList, delegator.getDelegatorName());
 
+        int threads = getIntProperty(loadDataProps.get(THREADS), 1);
+        if (threads > 1 && !tryInserts) {
+            loadDataInParallel(delegator, urlList, threads, loadDataProps);
+            return;
+        }
+
         for (URL dataUrl: urlList) {
             try {
                 int rowsChanged = EntityDataLoader.loadData(dataUrl, helperInfo.getHelperBaseName(),
@@ -445,6 +456,52 @@ public class EntityDataLoadContainer implements Container {
         logDataLoadingResults(infoMessages, errorMessages, totalRowsChanged);
     }
 
+    private static void loadDataInParallel(Delegator delegator, List<URL> urlList, int threads,
+            Map<String, String> loadDataProps) throws ContainerException {
+        EntityDataImporter importer = new EntityDataImporter(delegator);
+        importer.setThreads(threads);
+        importer.setBatchSize(getIntProperty(loadDataProps.get(BATCH_SIZE), 500));
+        importer.setTransactionTimeout(getTransactionTimeout(loadDataProps.get(TIMEOUT)));
+        importer.setCreateDummyFks(isPropertySet(loadDataProps, CREATE_F_KEYS));
+        importer.setMaintainTxStamps(isPropertySet(loadDataProps, MAINTAIN_TXS));
+        importer.setContinueOnFail(isPropertySet(loadDataProps, CONTINUE_ON_FAIL));
+        String rejectFile = loadDataProps.get(REJECT_FILE);
+        if (UtilValidate.isNotEmpty(rejectFile)) {
+            importer.setRejectFile(Paths.get(rejectFile));
+        }
+
+        EntityDataImporter.Result result;
+        try {
+            result = importer.importData(urlList);
+        } catch (GenericEntityException e) {
+            throw new ContainerException(e);
+        }
+        List<String> infoMessages = new ArrayList<>();
+        long totalRowsChanged = 0;
+        for (URL dataUrl: urlList) {
+            long rowsChanged = result.getRowsByUrl().getOrDefault(dataUrl.toExternalForm(), 0L);
+            totalRowsChanged += rowsChanged;
+            infoMessages.add(createDataLoadMessage(dataUrl, rowsChanged, totalRowsChanged));
+        }
+        List<Object> errorMessages = new ArrayList<>();
+        result.getFailedUrls().forEach(dataUrl -> errorMessages.add("Error loading data file: " + dataUrl.toExternalForm()));
+        if (result.getRowsRejected() > 0) {
+            errorMessages.add(result.getRowsRejected() + " values rejected"
+                    + (UtilValidate.isNotEmpty(rejectFile) ? ", written to " + rejectFile : ", see the log"));
+        }
+        logDataLoadingResults(infoMessages, errorMessages, totalRowsChanged);
+        Debug.logImportant("=-=-=-=-=-=-= Loaded with " + threads + " threads in " + result.getElapsedMillis() + " ms ("
+                + result.getRowsPerSecond() + " rows/s)", MODULE);
+    }
+
+    private static int getIntProperty(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private static int getTransactionTimeout(String timeout) {
         try {
             return Integer.parseInt(timeout);
@@ -553,7 +610,8 @@ public class EntityDataLoadContainer implements Container {
     private static List<URL> retrieveDataUrlsFromDirectory(String directory) {
         return Optional.ofNullable(directory)
                 .map(dir -> Arrays.asList(new File(dir).listFiles()).stream()
-                        .filter(file -> file.getName().toLowerCase(Locale.getDefault()).endsWith(".xml"))
+                        .filter(file -> file.getName().toLowerCase(Locale.getDefault()).endsWith(".xml")
+                                || file.getName().toLowerCase(Locale.getDefault()).endsWith(".xml.gz"))
                         .map(file -> UtilURL.fromFilename(file.getPath()))
                         .collect(Collectors.toList()))
                 .orElse(new ArrayList<>());
@@ -570,7 +628,7 @@ public class EntityDataLoadContainer implements Container {
         }
     }
 
-    private static String createDataLoadMessage(URL dataUrl, int rowsChanged, int totalRowsChanged) {
+    private static String createDataLoadMessage(URL dataUrl, long rowsChanged, long totalRowsChanged) {
         NumberFormat formatter = NumberFormat.getIntegerInstance();
         formatter.setMinimumIntegerDigits(5);
         formatter.setGroupingUsed(false);
@@ -580,7 +638,7 @@ public class EntityDataLoadContainer implements Container {
     }
 
     private static void logDataLoadingResults(List<String> infoMessages,
-            List<Object> errorMessages, int totalRowsChanged) {
+            List<Object> errorMessages, long totalRowsChanged) {
 
         if (UtilValidate.isNotEmpty(infoMessages)) {
             Debug.logImportant("=-=-=-=-=-=-= Here is a summary of the data load:", MODULE);
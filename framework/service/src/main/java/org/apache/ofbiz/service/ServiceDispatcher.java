@@ -40,6 +40,7 @@ import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.jdbc.QueryStatistics;
 import org.apache.ofbiz.entity.transaction.DebugXaResource;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
@@ -283,6 +284,8 @@ public final class ServiceDispatcher {
         boolean isFailure = false;
         boolean isError = false;
         boolean beganTrans = false;
+        // the entity engine queries run by the service are counted for it in the query statistics
+        QueryStatistics.pushCaller("service:" + modelService.getName());
         try {
             // check for semaphore and acquire a lock
             if ("wait".equals(modelService.getSemaphore()) || "fail".equals(modelService.getSemaphore())) {
@@ -606,6 +609,7 @@ public final class ServiceDispatcher {
             rs.setEndStamp();
             throw new GenericServiceException("Problems with the transaction.", te.getNested());
         } finally {
+            QueryStatistics.popCaller();
             if (lock != null) {
                 // release the semaphore lock
                 lock.release();
@@ -117,7 +117,13 @@ public final class StartupCommandUtil {
                     + System.lineSeparator()
                     + "-l repair-columns"
                     + System.lineSeparator()
-                    + "-l continue-on-failure")
+                    + "-l continue-on-failure"
+                    + System.lineSeparator()
+                    + "-l threads=4"
+                    + System.lineSeparator()
+                    + "-l batch-size=500"
+                    + System.lineSeparator()
+                    + "-l reject-file=runtime/logs/rejected-data.xml")
             .numberOfArgs(2)
             .valueSeparator('=')
             .optionalArg(true)
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.webapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * Registry of the static resources (stylesheets, scripts, images...) served by the
+ * web applications which asked for it at startup.
+ * <p>
+ * For each registered web application, the text based resources are precompressed
+ * once on disk (a {@code .gz} sibling file) so that the Tomcat default servlet running
+ * with its {@code precompressed} option serves them without compressing the same
+ * content again on each request. A content hash is also computed for each resource,
+ * allowing {@link #getVersionedUrl(String)} to produce URLs which change when the
+ * content changes and can therefore be cached by browsers as immutable.
+ * <p>
+ * Brotli files ({@code .br}) are not produced since no encoder is available on the
+ * classpath, but the ones generated by an external build step are served as well.
+ */
+public final class StaticResourceCache {
+
+    private static final String MODULE = StaticResourceCache.class.getName();
+    /** Name of the URL parameter holding the content hash of a versioned resource. */
+    public static final String VERSION_PARAMETER = "v";
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "css", "js", "mjs", "map", "json", "svg", "html", "htm", "txt", "xml", "ttf", "eot", "otf"));
+    private static final Set<String> VERSIONED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "css", "js", "mjs", "svg", "png", "gif", "jpg", "jpeg", "ico", "webp", "woff", "woff2", "ttf", "eot", "otf"));
+    private static final int MIN_COMPRESS_SIZE = 1024;
+    private static final int HASH_LENGTH = 12;
+
+    // url path (mount point + relative path) -> content hash
+    private static final Map<String, String> RESOURCE_HASHES = new ConcurrentHashMap<>();
+    // incremented each time a web application is registered, allows callers to invalidate derived values
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private StaticResourceCache() { }
+
+    /**
+     * Precompresses and hashes the static resources of a web application.
+     * @param mountPoint the context path of the web application, for instance {@code /common}
+     * @param webappRoot the location of the web application on disk
+     * @return the number of registered resources
+     */
+    public static int registerWebapp(String mountPoint, Path webappRoot) {
+        if (!Files.isDirectory(webappRoot)) {
+            Debug.logWarning("Unable to register static resources of [" + mountPoint + "], " + webappRoot + " is not a directory", MODULE);
+            return 0;
+        }
+        String prefix = "/".equals(mountPoint) ? "" : UtilValidate.isEmpty(mountPoint) ? "" : mountPoint;
+        long startTime = System.currentTimeMillis();
+        int compressed = 0;
+        List<Path> resources;
+        try (Stream<Path> stream = Files.walk(webappRoot)) {
+            resources = stream.filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(webappRoot.resolve("WEB-INF")))
+                    .filter(path -> VERSIONED_EXTENSIONS.contains(getExtension(path))
+                            || COMPRESSIBLE_EXTENSIONS.contains(getExtension(path)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to walk static resources of [" + mountPoint + "]", MODULE);
+            return 0;
+        }
+        for (Path resource : resources) {
+            String relativePath = webappRoot.relativize(resource).toString().replace('\\', '/');
+            try {
+                RESOURCE_HASHES.put(prefix + "/" + relativePath, computeHash(resource));
+                if (precompress(resource)) {
+                    compressed++;
+                }
+            } catch (IOException e) {
+                Debug.logWarning(e, "Unable to process static resource " + resource, MODULE);
+            }
+        }
+        GENERATION.incrementAndGet();
+        if (Debug.infoOn()) {
+            Debug.logInfo("Registered " + resources.size() + " static resources for [" + mountPoint + "] (" + compressed
+                    + " compressed) in " + (System.currentTimeMillis() - startTime) + "ms", MODULE);
+        }
+        return resources.size();
+    }
+
+    /**
+     * Returns the given url with the content hash of the resource appended, so the
+     * url changes each time the resource changes. The url is returned unchanged when
+     * the resource is not registered.
+     * @param url the url path of a static resource, for instance {@code /common/css/info.css}
+     * @return the versioned url
+     */
+    public static String getVersionedUrl(String url) {
+        if (UtilValidate.isEmpty(url) || url.charAt(0) != '/' || url.indexOf('?') != -1) {
+            return url;
+        }
+        String hash = RESOURCE_HASHES.get(url);
+        return hash == null ? url : url + "?" + VERSION_PARAMETER + "=" + hash;
+    }
+
+    /**
+     * Checks if the version given for a resource is the current content hash of this resource.
+     * @param path the url path of the resource, including the context path
+     * @param version the version received in the url
+     * @return {@code true} when the response can be cached as immutable
+     */
+    public static boolean isCurrentVersion(String path, String version) {
+        return version != null && version.equals(RESOURCE_HASHES.get(path));
+    }
+
+    /**
+     * Gets the registration generation, incremented each time a web application is registered.
+     * @return the generation
+     */
+    public static int getGeneration() {
+        return GENERATION.get();
+    }
+
+    private static boolean precompress(Path resource) throws IOException {
+        if (!COMPRESSIBLE_EXTENSIONS.contains(getExtension(resource)) || Files.size(resource) < MIN_COMPRESS_SIZE) {
+            return false;
+        }
+        Path gzipped = Paths.get(resource.toString() + ".gz");
+        FileTime lastModified = Files.getLastModifiedTime(resource);
+        if (Files.exists(gzipped) && Files.getLastModifiedTime(gzipped).compareTo(lastModified) >= 0) {
+            return true;
+        }
+        // write in a temporary file first so that a concurrent request never sees a partial file
+        Path tmp = Files.createTempFile(resource.getParent(), resource.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                Files.copy(resource, out);
+            }
+            if (Files.size(tmp) >= Files.size(resource)) {
+                // no gain, let the default servlet serve the original
+                return false;
+            }
+            Files.move(tmp, gzipped, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.setLastModifiedTime(gzipped, lastModified);
+            return true;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String computeHash(Path resource) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(resource)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return StringUtil.toHexString(digest.digest()).substring(0, HASH_LENGTH);
+    }
+
+    private static String getExtension(Path path) {
+        String fileName = path.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot == -1 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
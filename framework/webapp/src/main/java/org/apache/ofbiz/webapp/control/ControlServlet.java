@@ -44,6 +44,8 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.datasource.ReplicaRoutingHelper;
+import org.apache.ofbiz.entity.jdbc.QueryStatistics;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.security.Security;
@@ -62,6 +64,7 @@ import freemarker.template.Template;
 public class ControlServlet extends HttpServlet {
 
     private static final String MODULE = ControlServlet.class.getName();
+    private static final String LAST_WRITE_TIME_ATTR = "_LAST_ENTITY_WRITE_TIME_";
 
     @Override
     public void init() throws ServletException {
@@ -107,6 +110,9 @@ public class ControlServlet extends HttpServlet {
     public void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
         long requestStartTime = System.currentTimeMillis();
         HttpSession session = request.getSession();
+        // keep reading from the primary datasource right after a write done by a previous request of the same user
+        Long lastWriteTime = (Long) session.getAttribute(LAST_WRITE_TIME_ATTR);
+        ReplicaRoutingHelper.setLastWriteTime(lastWriteTime == null ? 0 : lastWriteTime);
 
         // setup DEFAULT character encoding and content type, this will be overridden
         // in the RequestHandler for view rendering
@@ -226,6 +232,8 @@ public class ControlServlet extends HttpServlet {
         request.setAttribute(ControlFilter.FORWARDED_FROM_SERVLET, Boolean.TRUE);
 
         String errorPage = null;
+        // the entity engine queries run by the request are counted for it in the query statistics
+        QueryStatistics.pushCaller("request:" + webappName + "/" + rname);
         try {
             // the ServerHitBin call for the event is done inside the doRequest method
             handler.doRequest(request, response, null, userLogin, delegator);
@@ -260,6 +268,8 @@ public class ControlServlet extends HttpServlet {
             Debug.logError(e, "Error in request handler: ", MODULE);
             request.setAttribute("_ERROR_MESSAGE_", UtilCodec.getEncoder("html").encode(e.toString()));
             errorPage = handler.getDefaultErrorPage(request);
+        } finally {
+            QueryStatistics.popCaller();
         }
 
         if (errorPage != null) {
@@ -349,6 +359,9 @@ public class ControlServlet extends HttpServlet {
         } catch (GenericTransactionException e) {
             Debug.logWarning(e, MODULE);
         }
+        if (ReplicaRoutingHelper.getLastWriteTime() > 0 && request.getSession(false) != null) {
+            request.getSession().setAttribute(LAST_WRITE_TIME_ATTR, ReplicaRoutingHelper.getLastWriteTime());
+        }
 
         // run these two again before the ServerHitBin.countRequest call because on a logout
         // this will end up creating a new visit.
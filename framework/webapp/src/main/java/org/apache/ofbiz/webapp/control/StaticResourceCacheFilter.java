@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.control;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ofbiz.webapp.StaticResourceCache;
+
+/**
+ * Marks the responses of static resources requested with their current content hash
+ * (see {@link StaticResourceCache#getVersionedUrl(String)}) as immutable, so browsers
+ * and proxies keep them until the content, and therefore the url, changes.
+ */
+public class StaticResourceCacheFilter implements javax.servlet.Filter {
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String VERSION_PREFIX = StaticResourceCache.VERSION_PARAMETER + "=";
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        // read the query string directly, no need to parse the request parameters for static resources
+        String queryString = httpRequest.getQueryString();
+        if (queryString != null && queryString.startsWith(VERSION_PREFIX)) {
+            String path = httpRequest.getContextPath() + httpRequest.getServletPath()
+                    + (httpRequest.getPathInfo() != null ? httpRequest.getPathInfo() : "");
+            if (StaticResourceCache.isCurrentVersion(path, queryString.substring(VERSION_PREFIX.length()))) {
+                ((HttpServletResponse) response).setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+}
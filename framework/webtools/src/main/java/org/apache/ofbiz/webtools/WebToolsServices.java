@@ -30,6 +30,7 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.text.NumberFormat;
 import java.util.Collection;
@@ -68,6 +69,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.jdbc.QueryStatistics;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldType;
@@ -80,6 +82,8 @@ import org.apache.ofbiz.entity.model.ModelViewEntity;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityDataAssert;
+import org.apache.ofbiz.entity.util.EntityDataExporter;
+import org.apache.ofbiz.entity.util.EntityDataImporter;
 import org.apache.ofbiz.entity.util.EntityDataLoader;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -252,6 +256,7 @@ public class WebToolsServices {
 
         Integer txTimeout = (Integer) context.get("txTimeout");
         Long filePause = (Long) context.get("filePause");
+        Integer threads = (Integer) context.get("threads");
 
         if (txTimeout == null) {
             txTimeout = 7200;
@@ -272,11 +277,22 @@ public class WebToolsServices {
                     return null;
                 }
                 for (File file : fileArray) {
-                    if (file.getName().toUpperCase().endsWith("XML")) {
+                    String fileName = file.getName().toUpperCase();
+                    if (fileName.endsWith("XML") || fileName.endsWith(".XML.GZ")) {
                         files.add(file);
                     }
                 }
 
+                if (threads != null && threads > 1 && checkDataOnly == null && onlyInserts == null) {
+                    try {
+                        messages.addAll(importFilesInParallel(dctx.getDelegator(), files, threads, context, locale));
+                    } catch (GenericEntityException | MalformedURLException e) {
+                        Debug.logError(e, MODULE);
+                        return ServiceUtil.returnError(e.getMessage());
+                    }
+                    return UtilMisc.toMap("messages", (Object) messages);
+                }
+
                 int passes = 0;
                 int initialListSize = files.size();
                 int lastUnprocessedFilesCount = 0;
@@ -348,6 +364,58 @@ public class WebToolsServices {
         return resp;
     }
 
+    // imports the files of a directory with an EntityDataImporter, the failed values going to the reject file
+    private static List<String> importFilesInParallel(Delegator delegator, List<File> files, int threads, Map<String, ? extends Object> context,
+            Locale locale) throws GenericEntityException, MalformedURLException {
+        List<String> messages = new LinkedList<>();
+        // the directory listing has no order, import the files sorted by name as the data readers do
+        files.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
+        List<URL> urls = new LinkedList<>();
+        for (File file : files) {
+            urls.add(file.toURI().toURL());
+        }
+        EntityDataImporter importer = new EntityDataImporter(delegator);
+        importer.setThreads(threads);
+        Integer batchSize = (Integer) context.get("batchSize");
+        if (batchSize != null) {
+            importer.setBatchSize(batchSize);
+        }
+        Integer txTimeout = (Integer) context.get("txTimeout");
+        importer.setTransactionTimeout(txTimeout == null ? 7200 : txTimeout);
+        importer.setMaintainTxStamps(context.get("maintainTimeStamps") != null);
+        importer.setCreateDummyFks(context.get("createDummyFks") != null);
+        importer.setContinueOnFail(true);
+        importer.setPlaceholderValues(UtilGenerics.cast(context.get("placeholderValues")));
+        String rejectFile = (String) context.get("rejectFile");
+        if (UtilValidate.isNotEmpty(rejectFile)) {
+            importer.setRejectFile(Paths.get(rejectFile));
+        }
+
+        EntityDataImporter.Result result = importer.importData(urls);
+        for (File file : files) {
+            String location = file.toURI().toURL().toExternalForm();
+            if (result.getFailedUrls().contains(file.toURI().toURL())) {
+                continue;
+            }
+            messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportNumberOfEntityToBeProcessed",
+                    UtilMisc.toMap("numberRead", String.valueOf(result.getRowsByUrl().get(location)), "fileName", file.getName()), locale));
+            if (context.get("deleteFiles") != null) {
+                messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportDeletFile", UtilMisc.toMap("fileName", file.getName()), locale));
+                file.delete();
+            }
+        }
+        messages.add("---------------------------------------");
+        messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportParallelResult", UtilMisc.toMap("rowsRead", result.getRowsRead(),
+                "rowsWritten", result.getRowsWritten(), "rowsRejected", result.getRowsRejected(), "elapsed", result.getElapsedMillis(),
+                "rowsPerSecond", result.getRowsPerSecond()), locale));
+        messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportFailedNumberFile", UtilMisc.toMap("failed",
+                result.getFailedUrls().size(), "total", files.size()), locale));
+        for (URL url : result.getFailedUrls()) {
+            messages.add(url.toExternalForm());
+        }
+        return messages;
+    }
+
     public static Map<String, Object> entityImportReaders(DispatchContext dctx, Map<String, Object> context) {
         String readers = (String) context.get("readers");
         String overrideDelegator = (String) context.get("overrideDelegator");
@@ -526,6 +594,34 @@ public class WebToolsServices {
                 } catch (Exception exc) {
                     return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "EntityImportErrorRetrievingEntityNames", locale));
                 }
+                Integer threads = (Integer) context.get("threads");
+                if (threads != null && threads > 1) {
+                    EntityDataExporter exporter = new EntityDataExporter(delegator);
+                    exporter.setThreads(threads);
+                    Long rowsPerPart = (Long) context.get("rowsPerPart");
+                    if (rowsPerPart != null) {
+                        exporter.setRowsPerPart(rowsPerPart);
+                    }
+                    exporter.setCompress(!"false".equals(context.get("compress")));
+                    exporter.setFromDate(fromDate);
+                    exporter.setTransactionTimeout(txTimeout);
+                    try {
+                        int fileNumber = 1;
+                        for (EntityDataExporter.ExportedFile file : exporter.exportData(passedEntityNames, outdir.toPath())) {
+                            if (file.getError() != null) {
+                                results.add("[xxx] Error when writing " + file.getEntityName() + " to " + file.getFileName() + ": "
+                                        + file.getError());
+                                continue;
+                            }
+                            results.add("[" + fileNumber++ + "] [" + file.getRows() + "] " + file.getEntityName() + " wrote "
+                                    + file.getRows() + " records to " + file.getFileName());
+                        }
+                    } catch (GenericEntityException e) {
+                        Debug.logError(e, MODULE);
+                        results.add("[xxx] Error when exporting: " + e);
+                    }
+                    return UtilMisc.<String, Object>toMap("results", results);
+                }
                 int fileNumber = 1;
 
                 for (String curEntityName : passedEntityNames) {
@@ -989,4 +1085,21 @@ public class WebToolsServices {
 
         return ServiceUtil.returnSuccess();
     }
+
+    /**
+     * Enables, disables or clears the statistics of the SQL statements, see {@link QueryStatistics}.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateQueryStatistics(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String enable = (String) context.get("enable");
+        if (UtilValidate.isNotEmpty(enable)) {
+            QueryStatistics.setEnabled("true".equals(enable));
+        }
+        if ("true".equals(context.get("clear"))) {
+            QueryStatistics.clear();
+        }
+        return ServiceUtil.returnSuccess();
+    }
 }
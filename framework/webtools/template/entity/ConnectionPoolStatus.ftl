@@ -30,6 +30,12 @@ under the License.
         <td>Min Idle</td>
         <td>Min Evictable Idle Time</td>
         <td>Max Wait</td>
+        <td>Waiting</td>
+        <td>Borrows</td>
+        <td>Mean Borrow Wait</td>
+        <td>Max Borrow Wait</td>
+        <td>Borrow Timeouts</td>
+        <td>Borrow Wait Histogram</td>
     </tr>
     <#assign alt_row = false>
     <#if (groups?has_content)>
@@ -43,14 +49,45 @@ under the License.
                         <td>${dataSourceInfo.poolNumActive!}</td>
                         <td>${dataSourceInfo.poolNumIdle!}</td>
                         <td>${dataSourceInfo.poolNumTotal!}</td>
-                        <td>${dataSourceInfo.poolMaxActive!}</td>
+                        <td>${dataSourceInfo.poolMaxActive!}<#if dataSourceInfo.poolConfiguredMaxActive?? && dataSourceInfo.poolConfiguredMaxActive != dataSourceInfo.poolMaxActive!> (${dataSourceInfo.poolConfiguredMaxActive})</#if></td>
                         <td>${dataSourceInfo.poolMaxIdle!}</td>
                         <td>${dataSourceInfo.poolMinIdle!}</td>
                         <td>${dataSourceInfo.poolMinEvictableIdleTimeMillis!}</td>
                         <td>${dataSourceInfo.poolMaxWait!}</td>
+                        <td>${dataSourceInfo.poolNumWaiters!}</td>
+                        <td>${dataSourceInfo.poolBorrows!}</td>
+                        <td>${dataSourceInfo.poolMeanBorrowWait!}</td>
+                        <td>${dataSourceInfo.poolMaxBorrowWait!}</td>
+                        <td>${dataSourceInfo.poolBorrowTimeouts!}</td>
+                        <td>${dataSourceInfo.poolBorrowWaitHistogram!}</td>
                     </tr>
+                    <#list dataSourceInfo.poolLongHeldConnections! as longHeld>
+                        <#assign longHeldConnections = (longHeldConnections![]) + [longHeld + {"helper": helper}]/>
+                    </#list>
                 </#if>
             </#if>
         </#list>
     </#if>
 </table>
+
+<#if longHeldConnections?has_content>
+<h2>Long Held Connections</h2>
+<table class="basic-table light-grid hover-bar">
+    <tr class="header-row">
+        <td>Helper Name</td>
+        <td>Held (ms)</td>
+        <td>Thread</td>
+        <td>Service or Request</td>
+        <td>Borrow Trace</td>
+    </tr>
+    <#list longHeldConnections as longHeld>
+        <tr>
+            <td>${longHeld.helper}</td>
+            <td>${longHeld.heldMillis}</td>
+            <td>${longHeld.thread!}</td>
+            <td>${longHeld.caller!}</td>
+            <td><#if longHeld.trace??><pre>${longHeld.trace}</pre></#if></td>
+        </tr>
+    </#list>
+</table>
+</#if>
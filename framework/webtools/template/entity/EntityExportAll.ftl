@@ -54,6 +54,14 @@ under the License.
                 <input type="text" size="6" value="${txTimeout?default('7200')}" name="txTimeout"/>
                 </td>
                 </tr>
+                <tr>
+                    <td class="label">
+                        ${uiLabelMap.WebtoolsExportThreads}:
+                    </td>
+                    <td>
+                        <input type="text" size="6" value="${threads?default('1')}" name="threads"/>
+                    </td>
+                </tr>
                 <tr>
                     <td class="label">
                     </td>
@@ -97,6 +97,14 @@ public abstract class ModelForm extends ModelWidget {
     public static final String DEFAULT_PAG_PREV_STYLE = "nav-previous";
     public static final String DEFAULT_PAG_NEXT_STYLE = "nav-next";
     public static final String DEFAULT_PAG_LAST_STYLE = "nav-last";
+    /** Pagination modes, see {@link org.apache.ofbiz.widget.renderer.Paginator#preparePager(ModelForm, Map)}. */
+    public static final String PAG_MODE_ITERATE = "iterate";
+    public static final String PAG_MODE_STREAM = "stream";
+    public static final String PAG_MODE_HAS_MORE = "has-more";
+    /** Pagination counts, see {@link org.apache.ofbiz.widget.renderer.Paginator#countRows(ModelForm,
+     * org.apache.ofbiz.entity.util.EntityListIterator)}. */
+    public static final String PAG_COUNT_EXACT = "exact";
+    public static final String PAG_COUNT_APPROXIMATE = "approximate";
     /** Sort field default styles. */
     public static final String DEFAULT_SORT_FIELD_STYLE = "sort-order";
     public static final String DEFAULT_SORT_FIELD_ASC_STYLE = "sort-order-asc";
@@ -169,6 +177,8 @@ public abstract class ModelForm extends ModelWidget {
     private final FlexibleStringExpander paginateFirstLabel;
     private final FlexibleStringExpander paginateIndexField;
     private final FlexibleStringExpander paginateLastLabel;
+    private final String paginateMode;
+    private final String paginateCount;
     private final FlexibleStringExpander paginateNextLabel;
     private final FlexibleStringExpander paginatePreviousLabel;
     private final FlexibleStringExpander paginateSizeField;
@@ -593,6 +603,26 @@ public abstract class ModelForm extends ModelWidget {
         } else {
             this.paginateStyle = paginateStyle;
         }
+        String paginateMode = formElement.getAttribute("paginate-mode");
+        if (paginateMode.isEmpty()) {
+            if (parentModel != null) {
+                this.paginateMode = parentModel.paginateMode;
+            } else {
+                this.paginateMode = PAG_MODE_ITERATE;
+            }
+        } else {
+            this.paginateMode = paginateMode;
+        }
+        String paginateCount = formElement.getAttribute("paginate-count");
+        if (paginateCount.isEmpty()) {
+            if (parentModel != null) {
+                this.paginateCount = parentModel.paginateCount;
+            } else {
+                this.paginateCount = PAG_COUNT_EXACT;
+            }
+        } else {
+            this.paginateCount = paginateCount;
+        }
         FlexibleStringExpander paginate = FlexibleStringExpander.getInstance(formElement.getAttribute("paginate"));
         if (paginate.isEmpty() && parentModel != null) {
             paginate = parentModel.paginate;
@@ -1472,6 +1502,22 @@ public abstract class ModelForm extends ModelWidget {
         return field;
     }
 
+    /**
+     * Gets paginate mode, one of {@link #PAG_MODE_ITERATE}, {@link #PAG_MODE_STREAM} or {@link #PAG_MODE_HAS_MORE}.
+     * @return the paginate mode
+     */
+    public String getPaginateMode() {
+        return this.paginateMode;
+    }
+
+    /**
+     * Gets paginate count, {@link #PAG_COUNT_EXACT} or {@link #PAG_COUNT_APPROXIMATE}.
+     * @return the paginate count
+     */
+    public String getPaginateCount() {
+        return this.paginateCount;
+    }
+
     /**
      * Gets paginate style.
      * @return the paginate style
@@ -19,30 +19,42 @@
 package org.apache.ofbiz.widget.model;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.base.util.UtilCodec;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.widget.WidgetFactory;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.AutoEntityParameters;
@@ -51,6 +63,7 @@ import org.apache.ofbiz.widget.model.CommonWidgetModels.Image;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.Link;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.Parameter;
 import org.apache.ofbiz.widget.portal.PortalPageWorker;
+import org.apache.ofbiz.widget.renderer.DetachedServletObjects;
 import org.apache.ofbiz.widget.renderer.FormRenderer;
 import org.apache.ofbiz.widget.renderer.FormStringRenderer;
 import org.apache.ofbiz.widget.renderer.MenuStringRenderer;
@@ -99,14 +112,21 @@ public abstract class ModelScreenWidget extends ModelWidget {
         if (subWidgets == null) {
             return;
         }
+        // start the async sections first, so they are rendered while the other widgets are
+        Map<ModelScreenWidget, Future<String>> asyncSections = Section.startAsyncSections(subWidgets, context, screenStringRenderer);
         for (ModelScreenWidget subWidget: subWidgets) {
             if (Debug.verboseOn()) {
                 Debug.logVerbose("Rendering screen " + subWidget.getModelScreen().getName()
                         + "; widget class is " + subWidget.getClass().getName(), MODULE);
             }
 
-            // render the sub-widget itself
-            subWidget.renderWidgetString(writer, context, screenStringRenderer);
+            Future<String> asyncSection = asyncSections.get(subWidget);
+            if (asyncSection != null) {
+                ((Section) subWidget).renderAsyncResult(asyncSection, writer, context, screenStringRenderer);
+            } else {
+                // render the sub-widget itself
+                subWidget.renderWidgetString(writer, context, screenStringRenderer);
+            }
         }
     }
 
@@ -215,13 +235,31 @@ public abstract class ModelScreenWidget extends ModelWidget {
         }
     }
 
+    /**
+     * A section of a screen.
+     * <p>
+     * A section having {@code async="true"} is rendered concurrently with its sibling widgets, in a thread of a
+     * dedicated pool, with its own transaction and into its own buffer which is then written at the section place.
+     * Such a section works on a copy of the context taken when its parent starts rendering: it does not see the
+     * values set by the preceding widgets, and the values it sets, including in the global context, are not visible
+     * to the rest of the screen. The request and the response are replaced by copies, see {@link DetachedServletObjects},
+     * and the transaction is rolled back when the rendering fails. When it is not rendered after
+     * {@code widget.section.async.timeout} milliseconds, its fail-widgets are rendered instead. Sections nested in an
+     * async section are rendered synchronously.
+     */
     public static final class Section extends ModelScreenWidget {
         public static final String TAG_NAME = "section";
+        /** Context key set in the context of the sections rendered asynchronously. */
+        public static final String ASYNC_CONTEXT_KEY = "_ASYNC_SECTION_";
+        private static final long ASYNC_TIMEOUT = UtilProperties.getPropertyAsLong("widget", "widget.section.async.timeout", 10000);
+        private static final ExecutorService ASYNC_EXECUTOR = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE),
+                "OFBiz-async-section", UtilProperties.getPropertyAsInteger("widget", "widget.section.async.threads", 8), 60, false);
         private final ModelCondition condition;
         private final List<ModelAction> actions;
         private final List<ModelScreenWidget> subWidgets;
         private final List<ModelScreenWidget> failWidgets;
         private final boolean isMainSection;
+        private final boolean async;
 
         public Section(ModelScreen modelScreen, Element sectionElement) {
             this(modelScreen, sectionElement, false);
@@ -265,6 +303,7 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 this.failWidgets = Collections.emptyList();
             }
             this.isMainSection = isMainSection;
+            this.async = "true".equals(sectionElement.getAttribute("async"));
         }
 
         @Override
@@ -272,6 +311,110 @@ public abstract class ModelScreenWidget extends ModelWidget {
             visitor.visit(this);
         }
 
+        /**
+         * Starts the rendering of the async sections of a list of widgets.
+         * @return the rendering results of the async sections which could be started
+         */
+        static Map<ModelScreenWidget, Future<String>> startAsyncSections(List<ModelScreenWidget> widgets, Map<String, Object> context,
+                ScreenStringRenderer screenStringRenderer) throws IOException {
+            Map<ModelScreenWidget, Future<String>> asyncSections = null;
+            for (ModelScreenWidget widget : widgets) {
+                if (widget instanceof Section && ((Section) widget).async && !context.containsKey(ASYNC_CONTEXT_KEY)) {
+                    Future<String> result = ((Section) widget).startAsync(context, screenStringRenderer);
+                    if (result != null) {
+                        if (asyncSections == null) {
+                            asyncSections = new IdentityHashMap<>();
+                        }
+                        asyncSections.put(widget, result);
+                    }
+                }
+            }
+            return asyncSections == null ? Collections.emptyMap() : asyncSections;
+        }
+
+        private Future<String> startAsync(Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws IOException {
+            StringWriter buffer = new StringWriter();
+            // the copy is done in the current thread, the other widgets may change the context while the section is rendered
+            MapStack<String> asyncContext = MapStack.create();
+            asyncContext.putAll(context);
+            Map<String, Object> globalContext = UtilGenerics.cast(context.get("globalContext"));
+            if (globalContext != null) {
+                globalContext = new HashMap<>(globalContext);
+                asyncContext.put("globalContext", globalContext);
+            }
+            // the request and the response may be recycled while the section is still rendered after a timeout
+            if (context.get("request") instanceof HttpServletRequest) {
+                HttpServletRequest request = (HttpServletRequest) context.get("request");
+                detachServletObject(asyncContext, globalContext, "request", DetachedServletObjects.detach(request));
+                if (context.get("response") instanceof HttpServletResponse) {
+                    detachServletObject(asyncContext, globalContext, "response",
+                            DetachedServletObjects.detach(request, (HttpServletResponse) context.get("response")));
+                }
+            }
+            ScreenStringRenderer asyncRenderer = screenStringRenderer.newAsyncRenderer(buffer, asyncContext);
+            if (asyncRenderer == null) {
+                return null;
+            }
+            asyncContext.put(ASYNC_CONTEXT_KEY, Boolean.TRUE);
+            asyncContext.put("screens", new ScreenRenderer(buffer, asyncContext, asyncRenderer));
+            Object sections = context.get("sections");
+            if (sections instanceof SectionsRenderer) {
+                asyncContext.put("sections", new SectionsRenderer((SectionsRenderer) sections, asyncContext, buffer, asyncRenderer));
+            }
+            asyncContext.push();
+            return ASYNC_EXECUTOR.submit(() -> {
+                boolean beganTransaction = false;
+                try {
+                    beganTransaction = TransactionUtil.begin((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(ASYNC_TIMEOUT)));
+                    renderWidgetString(buffer, asyncContext, asyncRenderer);
+                    TransactionUtil.commit(beganTransaction);
+                } catch (GeneralException | RuntimeException e) {
+                    String errMsg = "Error rendering async section [" + getName() + "] in screen named [" + getModelScreen().getName() + "]";
+                    try {
+                        // only rollback the transaction if we started one...
+                        TransactionUtil.rollback(beganTransaction, errMsg, e);
+                    } catch (GenericEntityException e2) {
+                        Debug.logError(e2, "Could not rollback transaction: " + e2.toString(), MODULE);
+                    }
+                    throw e;
+                }
+                return buffer.toString();
+            });
+        }
+
+        private static void detachServletObject(Map<String, Object> asyncContext, Map<String, Object> globalContext, String name,
+                Object detached) {
+            asyncContext.put(name, detached);
+            if (globalContext != null && globalContext.containsKey(name)) {
+                globalContext.put(name, detached);
+            }
+        }
+
+        void renderAsyncResult(Future<String> result, Appendable writer, Map<String, Object> context,
+                ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            try {
+                writer.append(result.get(ASYNC_TIMEOUT, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                result.cancel(true);
+                Debug.logWarning("Section [" + getName() + "] in screen named [" + getModelScreen().getName() + "] was not rendered within "
+                        + ASYNC_TIMEOUT + "ms, rendering its fail-widgets instead", MODULE);
+                renderFailWidgets(writer, context, screenStringRenderer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GeneralException("Interrupted while rendering section [" + getName() + "] in screen named ["
+                        + getModelScreen().getName() + "]", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof GeneralException) {
+                    throw (GeneralException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new GeneralException("Error rendering section [" + getName() + "] in screen named ["
+                        + getModelScreen().getName() + "]", cause);
+            }
+        }
+
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context,
                                        ScreenStringRenderer screenStringRenderer) throws GeneralException {
@@ -304,22 +447,27 @@ public abstract class ModelScreenWidget extends ModelWidget {
                     throw new RuntimeException(errMsg);
                 }
             } else {
-                try {
-                    // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
-                    screenStringRenderer.renderSectionBegin(writer, context, this);
+                renderFailWidgets(writer, context, screenStringRenderer);
+            }
 
-                    // render sub-widgets
-                    renderSubWidgetsString(this.failWidgets, writer, context, screenStringRenderer);
+        }
 
-                    screenStringRenderer.renderSectionEnd(writer, context, this);
-                } catch (IOException e) {
-                    String errMsg = "Error rendering fail-widgets section [" + this.getName() + "] in screen named ["
-                            + getModelScreen().getName() + "]: " + e.toString();
-                    Debug.logError(e, errMsg, MODULE);
-                    throw new RuntimeException(errMsg);
-                }
-            }
+        private void renderFailWidgets(Appendable writer, Map<String, Object> context,
+                                       ScreenStringRenderer screenStringRenderer) throws GeneralException {
+            try {
+                // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
+                screenStringRenderer.renderSectionBegin(writer, context, this);
+
+                // render sub-widgets
+                renderSubWidgetsString(this.failWidgets, writer, context, screenStringRenderer);
 
+                screenStringRenderer.renderSectionEnd(writer, context, this);
+            } catch (IOException e) {
+                String errMsg = "Error rendering fail-widgets section [" + this.getName() + "] in screen named ["
+                        + getModelScreen().getName() + "]: " + e.toString();
+                Debug.logError(e, errMsg, MODULE);
+                throw new RuntimeException(errMsg);
+            }
         }
 
         @Override
@@ -346,6 +494,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
             return isMainSection;
         }
 
+        public boolean isAsync() {
+            return async;
+        }
+
         public ModelCondition getCondition() {
             return condition;
         }
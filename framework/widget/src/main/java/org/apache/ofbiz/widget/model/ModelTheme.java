@@ -33,6 +33,7 @@ import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
+import org.apache.ofbiz.webapp.StaticResourceCache;
 import org.apache.ofbiz.widget.renderer.VisualTheme;
 import org.w3c.dom.Element;
 
@@ -71,6 +72,9 @@ public class ModelTheme implements Serializable {
 
     //dedicate theme properties
     private final Map<String, Object> themePropertiesMap;
+    // theme properties with static resource urls carrying their content hash, see StaticResourceCache
+    private transient volatile Map<String, Object> versionedThemePropertiesMap;
+    private transient volatile int versionedGeneration;
 
     //template rendering
     private final Map<String, ModelTemplate> modelTemplateMap;
@@ -420,7 +424,37 @@ public class ModelTheme implements Serializable {
      * @return
      */
     public Map<String, Object> getThemeResources() {
-        return themePropertiesMap;
+        int generation = StaticResourceCache.getGeneration();
+        if (generation == 0) {
+            // no static resource registered
+            return themePropertiesMap;
+        }
+        if (versionedGeneration != generation) {
+            Map<String, Object> versionedMap = new HashMap<>();
+            themePropertiesMap.forEach((key, value) -> versionedMap.put(key, versionResourceUrls(value)));
+            versionedThemePropertiesMap = Collections.unmodifiableMap(versionedMap);
+            versionedGeneration = generation;
+        }
+        return versionedThemePropertiesMap;
+    }
+
+    /**
+     * replace the static resource urls present in a theme property by their versioned form
+     * @param value the theme property value
+     * @return the value with versioned urls
+     */
+    private static Object versionResourceUrls(Object value) {
+        if (value instanceof String) {
+            return StaticResourceCache.getVersionedUrl((String) value);
+        }
+        if (value instanceof List) {
+            List<Object> versionedList = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                versionedList.add(item instanceof String ? StaticResourceCache.getVersionedUrl((String) item) : item);
+            }
+            return versionedList;
+        }
+        return value;
     }
 
     /**
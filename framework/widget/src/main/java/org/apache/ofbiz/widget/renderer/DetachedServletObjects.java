@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.apache.ofbiz.base.util.Debug;
+
+/**
+ * Copies of the request and the response of a screen rendering, for the widgets rendered by other
+ * threads, such as the async sections.
+ * <p>
+ * Neither the request nor the response is thread-safe, and the servlet container may recycle them
+ * as soon as the request thread is done, while an async section which timed out is still being
+ * rendered. The copies are made in the request thread and hold what the widgets read: attributes,
+ * parameters, headers, paths, locales, session and the URL encoding of the response. The other
+ * methods return neutral values, null, false, zero or empty, rather than reaching the objects of
+ * the request thread, a warning being logged the first time each of them is called.
+ */
+public final class DetachedServletObjects {
+
+    private static final String MODULE = DetachedServletObjects.class.getName();
+    // the methods already warned about, logged once each
+    private static final Set<String> WARNED_METHODS = ConcurrentHashMap.newKeySet();
+
+    private DetachedServletObjects() { }
+
+    /**
+     * Copies a request, in the thread of the request.
+     * @param request the request
+     * @return the copy, whose attributes can be changed without changing the request
+     */
+    public static HttpServletRequest detach(HttpServletRequest request) {
+        return new DetachedRequest(request);
+    }
+
+    /**
+     * Copies a response, in the thread of the request.
+     * @param request the request of the response
+     * @param response the response
+     * @return the copy, only encoding URLs
+     */
+    public static HttpServletResponse detach(HttpServletRequest request, HttpServletResponse response) {
+        return new DetachedResponse(request, response);
+    }
+
+    private static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Detached " + type.getSimpleName();
+            default:
+                String methodName = type.getSimpleName() + "." + method.getName();
+                if (WARNED_METHODS.add(methodName)) {
+                    Debug.logWarning(methodName + " is not available to the widgets rendered outside of the request thread,"
+                            + " a neutral value is returned", MODULE);
+                }
+                return neutralValue(method.getReturnType());
+            }
+        }));
+    }
+
+    private static Object neutralValue(Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == int.class) {
+            return 0;
+        } else if (returnType == long.class) {
+            return 0L;
+        } else if (returnType.isPrimitive()) {
+            // void, and the primitive types the servlet objects don't return
+            return null;
+        } else if (returnType == Enumeration.class) {
+            return Collections.emptyEnumeration();
+        } else if (returnType == Map.class) {
+            return Collections.emptyMap();
+        } else if (returnType == Set.class) {
+            return Collections.emptySet();
+        } else if (Collection.class.isAssignableFrom(returnType)) {
+            return Collections.emptyList();
+        } else if (returnType == PrintWriter.class) {
+            return new PrintWriter(Writer.nullWriter());
+        }
+        return null;
+    }
+
+    private static final class DetachedRequest extends HttpServletRequestWrapper {
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final Map<String, String[]> parameters;
+        private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final List<Locale> locales;
+        private final Cookie[] cookies;
+        private final HttpSession session;
+        private final ServletContext servletContext;
+        private final String characterEncoding;
+        private final String contextPath;
+        private final String servletPath;
+        private final String pathInfo;
+        private final String requestURI;
+        private final String requestURL;
+        private final String queryString;
+        private final String method;
+        private final String scheme;
+        private final String serverName;
+        private final int serverPort;
+        private final boolean secure;
+        private final String remoteAddr;
+        private final String remoteHost;
+        private final String remoteUser;
+        private final String requestedSessionId;
+        private final boolean requestedSessionIdFromCookie;
+        private final boolean requestedSessionIdFromURL;
+
+        DetachedRequest(HttpServletRequest request) {
+            super(unsupported(HttpServletRequest.class));
+            for (Enumeration<String> names = request.getAttributeNames(); names.hasMoreElements();) {
+                String name = names.nextElement();
+                Object value = request.getAttribute(name);
+                if (value != null) {
+                    attributes.put(name, value);
+                }
+            }
+            Map<String, String[]> parameterMap = new LinkedHashMap<>();
+            for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+                parameterMap.put(parameter.getKey(), parameter.getValue().clone());
+            }
+            this.parameters = Collections.unmodifiableMap(parameterMap);
+            for (Enumeration<String> names = request.getHeaderNames(); names != null && names.hasMoreElements();) {
+                String name = names.nextElement();
+                headers.put(name, Collections.list(request.getHeaders(name)));
+            }
+            this.locales = Collections.unmodifiableList(new ArrayList<>(Collections.list(request.getLocales())));
+            this.cookies = request.getCookies() != null ? request.getCookies().clone() : null;
+            this.session = request.getSession(false);
+            this.servletContext = request.getServletContext();
+            this.characterEncoding = request.getCharacterEncoding();
+            this.contextPath = request.getContextPath();
+            this.servletPath = request.getServletPath();
+            this.pathInfo = request.getPathInfo();
+            this.requestURI = request.getRequestURI();
+            this.requestURL = request.getRequestURL() != null ? request.getRequestURL().toString() : null;
+            this.queryString = request.getQueryString();
+            this.method = request.getMethod();
+            this.scheme = request.getScheme();
+            this.serverName = request.getServerName();
+            this.serverPort = request.getServerPort();
+            this.secure = request.isSecure();
+            this.remoteAddr = request.getRemoteAddr();
+            this.remoteHost = request.getRemoteHost();
+            this.remoteUser = request.getRemoteUser();
+            this.requestedSessionId = request.getRequestedSessionId();
+            this.requestedSessionIdFromCookie = request.isRequestedSessionIdFromCookie();
+            this.requestedSessionIdFromURL = request.isRequestedSessionIdFromURL();
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            String[] values = parameters.get(name);
+            return values != null ? values.clone() : null;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameters;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            List<String> values = headers.get(name);
+            return Collections.enumeration(values != null ? values : Collections.emptyList());
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(headers.keySet());
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            String value = getHeader(name);
+            return value != null ? Integer.parseInt(value) : -1;
+        }
+
+        @Override
+        public Locale getLocale() {
+            return locales.isEmpty() ? Locale.getDefault() : locales.get(0);
+        }
+
+        @Override
+        public Enumeration<Locale> getLocales() {
+            return Collections.enumeration(locales);
+        }
+
+        @Override
+        public Cookie[] getCookies() {
+            return cookies != null ? cookies.clone() : null;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return session;
+        }
+
+        // a session can't be created once the response may be committed
+        @Override
+        public HttpSession getSession(boolean create) {
+            return session;
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return servletContext;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public String getContextPath() {
+            return contextPath;
+        }
+
+        @Override
+        public String getServletPath() {
+            return servletPath;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return pathInfo;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return requestURI;
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+            return requestURL != null ? new StringBuffer(requestURL) : null;
+        }
+
+        @Override
+        public String getQueryString() {
+            return queryString;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getScheme() {
+            return scheme;
+        }
+
+        @Override
+        public String getServerName() {
+            return serverName;
+        }
+
+        @Override
+        public int getServerPort() {
+            return serverPort;
+        }
+
+        @Override
+        public boolean isSecure() {
+            return secure;
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return remoteAddr;
+        }
+
+        @Override
+        public String getRemoteHost() {
+            return remoteHost;
+        }
+
+        @Override
+        public String getRemoteUser() {
+            return remoteUser;
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            return requestedSessionId;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return requestedSessionIdFromCookie;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return requestedSessionIdFromURL;
+        }
+    }
+
+    private static final class DetachedResponse extends HttpServletResponseWrapper {
+        // the session path parameter added by the response to the URLs, such as ";jsessionid=...", or empty
+        private final String sessionParameter;
+        private final String characterEncoding;
+        private final String contentType;
+        private final Locale locale;
+
+        DetachedResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(unsupported(HttpServletResponse.class));
+            String url = request.getContextPath() + "/";
+            String encodedUrl = response.encodeURL(url);
+            this.sessionParameter = encodedUrl != null && encodedUrl.startsWith(url + ";") ? encodedUrl.substring(url.length()) : "";
+            this.characterEncoding = response.getCharacterEncoding();
+            this.contentType = response.getContentType();
+            this.locale = response.getLocale();
+        }
+
+        @Override
+        public String encodeURL(String url) {
+            if (url == null || sessionParameter.isEmpty() || url.contains(";jsessionid=")) {
+                return url;
+            }
+            int end = url.length();
+            int queryIndex = url.indexOf('?');
+            int anchorIndex = url.indexOf('#');
+            if (queryIndex >= 0) {
+                end = queryIndex;
+            }
+            if (anchorIndex >= 0 && anchorIndex < end) {
+                end = anchorIndex;
+            }
+            return url.substring(0, end) + sessionParameter + url.substring(end);
+        }
+
+        @Override
+        public String encodeRedirectURL(String url) {
+            return encodeURL(url);
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public Locale getLocale() {
+            return locale;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            // the widgets render into their own buffer, the response must not be changed
+            return true;
+        }
+    }
+}
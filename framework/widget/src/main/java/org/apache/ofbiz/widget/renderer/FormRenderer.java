@@ -46,6 +46,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.collections.MapStack;
+import org.apache.ofbiz.base.util.collections.PagedList;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -715,6 +716,8 @@ public class FormRenderer {
             iter = (Iterator<?>) obj;
         } else if (obj instanceof List<?>) {
             iter = ((List<?>) obj).listIterator();
+        } else if (obj instanceof PagedList<?>) {
+            iter = ((PagedList<?>) obj).iterator();
         }
 
         // set low and high index
@@ -739,7 +742,8 @@ public class FormRenderer {
                     context.put("parentItemIndex", modelForm.getItemIndexSeparator() + context.get("itemIndex"));
                 }
             }
-            int itemIndex = -1;
+            // a paged list only holds the rows of the page, and a scrollable EntityListIterator is moved directly to the page
+            int itemIndex = Math.max(Paginator.getFirstItemIndex(obj), Paginator.positionIterator(iter, lowIndex)) - 1;
             Object item = null;
             context.put("wholeFormContext", context);
             // Initialize previousItem with a sentry value since the first Item has no previous Item.
@@ -750,7 +754,6 @@ public class FormRenderer {
                     break;
                 }
 
-                // TODO: this is a bad design, for EntityListIterators we should skip to the lowIndex and go from there, MUCH more efficient...
                 if (itemIndex < lowIndex) {
                     continue;
                 }
@@ -1249,6 +1252,8 @@ public class FormRenderer {
             iter = (Iterator<?>) obj;
         } else if (obj instanceof List<?>) {
             iter = ((List<?>) obj).listIterator();
+        } else if (obj instanceof PagedList<?>) {
+            iter = ((PagedList<?>) obj).iterator();
         }
         int itemIndex = -1;
         if (iter instanceof EntityListIterator) {
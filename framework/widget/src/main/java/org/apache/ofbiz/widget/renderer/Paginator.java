@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.widget.renderer;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.collections.PagedList;
 import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.widget.WidgetWorker;
 import org.apache.ofbiz.widget.model.ModelForm;
@@ -64,7 +66,7 @@ public final class Paginator {
         } else if (entryList instanceof EntityListIterator) {
             EntityListIterator iter = (EntityListIterator) entryList;
             try {
-                listSize = iter.getResultsSizeAfterPartialList();
+                listSize = countRows(modelForm, iter);
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Error getting list size", MODULE);
                 listSize = 0;
@@ -100,6 +102,22 @@ public final class Paginator {
         context.put("highIndex", highIndex);
     }
 
+    /**
+     * Counts the rows of the list of a form. The count is approximate when the form uses the
+     * {@link ModelForm#PAG_COUNT_APPROXIMATE} paginate count, see
+     * {@link EntityListIterator#getApproximateResultsSize()}.
+     * @param modelForm the list form
+     * @param eli the iterator of the list
+     * @return the number of rows
+     * @throws GenericEntityException if the rows can't be counted
+     */
+    public static int countRows(ModelForm modelForm, EntityListIterator eli) throws GenericEntityException {
+        if (ModelForm.PAG_COUNT_APPROXIMATE.equals(modelForm.getPaginateCount())) {
+            return eli.getApproximateResultsSize();
+        }
+        return eli.getResultsSizeAfterPartialList();
+    }
+
     public static int getListSize(Map<String, Object> context) {
         Integer value = (Integer) context.get("listSize");
         return value != null ? value : 0;
@@ -174,6 +192,15 @@ public final class Paginator {
         return viewSize;
     }
 
+    /**
+     * Prepares the pagination of a list form: computes the list size and the low and high index of the page.
+     * <p>
+     * When the list is an {@link EntityListIterator} and the form uses the {@link ModelForm#PAG_MODE_STREAM} or
+     * {@link ModelForm#PAG_MODE_HAS_MORE} paginate mode, only the rows of the page are read and the iterator is
+     * replaced in the context by a {@link PagedList} holding them, see {@link #readPage(ModelForm, Map, EntityListIterator)}.
+     * @param modelForm the list form
+     * @param context the rendering context
+     */
     public static void preparePager(ModelForm modelForm, Map<String, Object> context) {
 
         String lookupName = modelForm.getListName();
@@ -188,6 +215,11 @@ public final class Paginator {
             }
             return;
         }
+        if (obj instanceof EntityListIterator && !ModelForm.PAG_MODE_ITERATE.equals(modelForm.getPaginateMode())
+                && modelForm.getPaginate(context) && !modelForm.isOverridenListSize()) {
+            obj = readPage(modelForm, context, (EntityListIterator) obj);
+            context.put(lookupName, obj);
+        }
         // if list is empty, do not render rows
         Iterator<?> iter = null;
         if (obj instanceof Iterator<?>) {
@@ -216,7 +248,7 @@ public final class Paginator {
         }
 
         // count item rows
-        int itemIndex = -1;
+        int itemIndex = Math.max(getFirstItemIndex(obj), positionIterator(iter, lowIndex)) - 1;
         Object item = safeNext(iter);
         while (item != null && itemIndex < highIndex) {
             itemIndex++;
@@ -244,6 +276,126 @@ public final class Paginator {
         }
     }
 
+    /**
+     * Reads the rows of the current page from an {@link EntityListIterator} and closes it.
+     * <p>
+     * The cursor is positioned on the row preceding the page with {@link #skipTo(EntityListIterator, int)}, so the
+     * rows of the previous pages are not read when the iterator is scrollable. The total count is computed according
+     * to the paginate mode:
+     * <ul>
+     * <li>{@link ModelForm#PAG_MODE_STREAM}: a page which is not full is the last one, so the count is only
+     * queried when the page is full;</li>
+     * <li>{@link ModelForm#PAG_MODE_HAS_MORE}: one more row is read to know if a next page exists and the count
+     * is never queried, the returned size is then the high index plus one when there are more rows.</li>
+     * </ul>
+     * @param modelForm the list form
+     * @param context the rendering context
+     * @param eli the iterator, scrollable or forward only
+     * @return the rows of the page
+     */
+    public static PagedList<GenericValue> readPage(ModelForm modelForm, Map<String, Object> context, EntityListIterator eli) {
+        int viewIndex = getViewIndex(modelForm, context);
+        int viewSize = getViewSize(modelForm, context);
+        int lowIndex = viewIndex * viewSize;
+        boolean hasMoreMode = ModelForm.PAG_MODE_HAS_MORE.equals(modelForm.getPaginateMode());
+        int rowsToRead = hasMoreMode ? viewSize + 1 : viewSize;
+        List<GenericValue> rows = new ArrayList<>(rowsToRead);
+        int listSize = 0;
+        try {
+            if (skipTo(eli, lowIndex)) {
+                GenericValue row;
+                while (rows.size() < rowsToRead && (row = eli.next()) != null) {
+                    rows.add(row);
+                }
+            }
+            if (hasMoreMode) {
+                listSize = lowIndex + rows.size();
+                if (rows.size() > viewSize) {
+                    rows.remove(viewSize);
+                }
+            } else if (rows.size() < viewSize && (!rows.isEmpty() || lowIndex == 0)) {
+                listSize = lowIndex + rows.size();
+            } else {
+                // an approximate count must not hide the rows already read
+                listSize = Math.max(countRows(modelForm, eli), lowIndex + rows.size());
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error reading the page of list form [" + modelForm.getName() + "]: " + e.toString(), MODULE);
+            listSize = lowIndex + rows.size();
+        } finally {
+            try {
+                // CHECKSTYLE_OFF: ALMOST_ALL
+                eli.close();
+                // CHECKSTYLE_ON: ALMOST_ALL
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error closing list form render EntityListIterator: " + e.toString(), MODULE);
+            }
+        }
+        return new PagedList<>(lowIndex + 1, lowIndex + rows.size(), listSize, viewIndex, viewSize, rows);
+    }
+
+    /**
+     * Gets the index of the first item of a list, which is not 0 when the list only holds the rows of a page.
+     * @param list the list or iterator
+     * @return the index of the first item
+     */
+    public static int getFirstItemIndex(Object list) {
+        if (list instanceof PagedList<?>) {
+            return Math.max(((PagedList<?>) list).getStartIndex() - 1, 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Moves a scrollable {@link EntityListIterator} on the row preceding the given index, so that the rows of the
+     * previous pages are not read. Other iterators, forward only ones included, are left unchanged and their rows
+     * are skipped by the caller.
+     * @param iter the iterator
+     * @param lowIndex the index of the first row to read
+     * @return the index of the next row returned by the iterator
+     */
+    static int positionIterator(Iterator<?> iter, int lowIndex) {
+        if (!(iter instanceof EntityListIterator) || lowIndex <= 0) {
+            return 0;
+        }
+        EntityListIterator eli = (EntityListIterator) iter;
+        try {
+            if (!eli.isScrollable()) {
+                return 0;
+            }
+            // when the list is shorter than lowIndex, the cursor is after the last row and next() returns null
+            eli.absolute(lowIndex);
+            return lowIndex;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error positioning list form render EntityListIterator: " + e.toString(), MODULE);
+            return 0;
+        }
+    }
+
+    /**
+     * Moves a new {@link EntityListIterator} on the row preceding the given index: with
+     * {@link EntityListIterator#absolute(int)} when it is scrollable, by reading and skipping the rows otherwise,
+     * as absolute() would close a forward only iterator.
+     * @param eli the iterator, not read yet
+     * @param lowIndex the index of the first row to read
+     * @return false when the list is shorter than lowIndex
+     * @throws GenericEntityException if the rows can't be read
+     */
+    static boolean skipTo(EntityListIterator eli, int lowIndex) throws GenericEntityException {
+        if (lowIndex <= 0) {
+            return true;
+        }
+        if (eli.isScrollable()) {
+            return eli.absolute(lowIndex);
+        }
+        for (int i = 0; i < lowIndex; i++) {
+            if (eli.next() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static <X> X safeNext(Iterator<X> iterator) {
         try {
             return iterator.next();
@@ -74,6 +74,17 @@ public interface ScreenStringRenderer {
                                      GenericValue portalPortlet) throws GeneralException, IOException;
     void renderPortalPagePortletEnd(Appendable writer, Map<String, Object> context, ModelScreenWidget.PortalPage portalPage,
                                     GenericValue portalPortlet) throws GeneralException, IOException;
+
+    /**
+     * Creates a renderer for a part of the screen rendered in another thread, see {@link ModelScreenWidget.Section}.
+     * The form, menu and tree renderers of the given context are replaced by new instances as well.
+     * @param writer the writer the part of the screen will be rendered into
+     * @param context the context the part of the screen will be rendered with
+     * @return the new renderer, or {@code null} when the screen can only be rendered by the current thread
+     */
+    default ScreenStringRenderer newAsyncRenderer(Appendable writer, Map<String, Object> context) throws IOException {
+        return null;
+    }
 }
 
 
@@ -874,7 +874,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         sr.append(" formName=\"");
         sr.append(modelForm.getName());
         sr.append("\" style=\"");
-        sr.append(FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context));
+        FlexibleStringExpander.expandString(sr, modelForm.getDefaultTableStyle(), context);
         sr.append("\" columnStyles=[");
         if (UtilValidate.isNotEmpty(columnStyleListString)) {
             // this is a fix for forms with no fields
@@ -931,11 +931,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
 
     @Override
     public void renderFormatHeaderRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        String headerStyle = FlexibleStringExpander.expandString(modelForm.getHeaderRowStyle(), context);
         StringWriter sr = new StringWriter();
         sr.append("<@renderFormatHeaderRowOpen ");
         sr.append(" style=\"");
-        sr.append(headerStyle);
+        FlexibleStringExpander.expandString(sr, modelForm.getHeaderRowStyle(), context);
         sr.append("\" />");
         executeMacro(writer, sr.toString());
     }
@@ -1012,7 +1011,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
             if (itemIndex % 2 == 0) {
                 evenRowStyle = modelForm.getEvenRowStyle();
             } else {
-                oddRowStyle = FlexibleStringExpander.expandString(modelForm.getOddRowStyle(), context);
+                oddRowStyle = modelForm.getOddRowStyle();
             }
         }
         StringWriter sr = new StringWriter();
@@ -1026,7 +1025,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         sr.append("\" evenRowStyle=\"");
         sr.append(evenRowStyle);
         sr.append("\" oddRowStyle=\"");
-        sr.append(oddRowStyle);
+        FlexibleStringExpander.expandString(sr, oddRowStyle, context);
         sr.append("\" />");
         executeMacro(writer, sr.toString());
     }
@@ -1088,13 +1087,12 @@ public final class MacroFormRenderer implements FormStringRenderer {
 
     @Override
     public void renderFormatSingleWrapperOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        String style = FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context);
         StringWriter sr = new StringWriter();
         sr.append("<@renderFormatSingleWrapperOpen ");
         sr.append(" formName=\"");
         sr.append(modelForm.getName());
         sr.append("\" style=\"");
-        sr.append(style);
+        FlexibleStringExpander.expandString(sr, modelForm.getDefaultTableStyle(), context);
         sr.append("\" />");
         executeMacro(writer, sr.toString());
     }
@@ -1589,6 +1587,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
         int lowIndex = Paginator.getLowIndex(context);
         int highIndex = Paginator.getHighIndex(context);
         int actualPageSize = Paginator.getActualPageSize(context);
+        // in has-more mode the list size is only known up to the next page
+        boolean listSizeKnown = !ModelForm.PAG_MODE_HAS_MORE.equals(modelForm.getPaginateMode());
         // needed for the "Page" and "rows" labels
         Map<String, String> uiLabelMap = UtilGenerics.cast(context.get("uiLabelMap"));
         String pageLabel = "";
@@ -1598,7 +1598,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
         } else {
             pageLabel = uiLabelMap.get("CommonPage");
             Map<String, Integer> messageMap = UtilMisc.toMap("lowCount", lowIndex + 1, "highCount", lowIndex + actualPageSize, "total", listSize);
-            commonDisplaying = UtilProperties.getMessage("CommonUiLabels", "CommonDisplaying", messageMap, (Locale) context.get("locale"));
+            commonDisplaying = UtilProperties.getMessage("CommonUiLabels", listSizeKnown ? "CommonDisplaying" : "CommonDisplayingRange",
+                    messageMap, (Locale) context.get("locale"));
         }
         // for legacy support, the viewSizeParam is VIEW_SIZE and viewIndexParam is VIEW_INDEX when the fields are "viewSize" and "viewIndex"
         if (("viewIndex" + "_" + paginatorNumber).equals(viewIndexParam)) {
@@ -1712,7 +1713,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
         }
         // Last button
-        if (highIndex < listSize) {
+        if (highIndex < listSize && listSizeKnown) {
             int lastIndex = UtilMisc.getViewLastIndex(listSize, viewSize);
             if (ajaxEnabled) {
                 ajaxLastUrl = MacroCommonRenderer.createAjaxParamsFromUpdateAreas(updateAreas, null,
@@ -81,6 +81,9 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
     private int elementId = 999;
     private boolean widgetCommentsEnabled = false;
     private int screenLetsIdCounter = 1;
+    // distinguishes the element ids generated by the renderers of the async sections
+    private String idPrefix = "";
+    private int asyncRendererCounter = 0;
 
     public MacroScreenRenderer(ModelTheme theme, String modelTemplateName) throws TemplateException, IOException {
         this(theme.getType(modelTemplateName), theme.getScreenRendererLocation(modelTemplateName));
@@ -96,9 +99,16 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
         this(name, macroLibraryPath);
     }
 
+    private MacroScreenRenderer(MacroScreenRenderer parent) {
+        this.macroLibrary = parent.macroLibrary;
+        this.rendererName = parent.rendererName;
+        this.widgetCommentsEnabled = parent.widgetCommentsEnabled;
+        this.idPrefix = parent.idPrefix + "a" + (++parent.asyncRendererCounter) + "_";
+    }
+
     private String getNextElementId() {
         elementId++;
-        return "hsr" + elementId;
+        return "hsr" + idPrefix + elementId;
     }
 
     private void executeMacro(Appendable writer, String macro) throws IOException {
@@ -151,6 +161,34 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
         return rendererName;
     }
 
+    @Override
+    public ScreenStringRenderer newAsyncRenderer(Appendable writer, Map<String, Object> context) throws IOException {
+        HttpServletRequest request = (HttpServletRequest) context.get("request");
+        HttpServletResponse response = (HttpServletResponse) context.get("response");
+        if (request == null || response == null) {
+            return null;
+        }
+        ModelTheme modelTheme = UtilHttp.getVisualTheme(request).getModelTheme();
+        try {
+            Object formStringRenderer = context.get("formStringRenderer");
+            if (formStringRenderer instanceof MacroFormRenderer) {
+                MacroFormRenderer renderer = new MacroFormRenderer(modelTheme.getFormRendererLocation("screen"), request, response);
+                renderer.setRenderPagination(((MacroFormRenderer) formStringRenderer).getRenderPagination());
+                context.put("formStringRenderer", renderer);
+            }
+            if (context.get("menuStringRenderer") instanceof MacroMenuRenderer) {
+                context.put("menuStringRenderer", new MacroMenuRenderer(modelTheme.getMenuRendererLocation("screen"), request, response));
+            }
+            if (context.get("treeStringRenderer") instanceof MacroTreeRenderer) {
+                context.put("treeStringRenderer", new MacroTreeRenderer(modelTheme.getTreeRendererLocation("screen"), writer));
+            }
+        } catch (TemplateException e) {
+            Debug.logError(e, "Error initializing the renderers of an async section, rendering it synchronously", MODULE);
+            return null;
+        }
+        return new MacroScreenRenderer(this);
+    }
+
     @Override
     public void renderBegin(Appendable writer, Map<String, Object> context) throws IOException {
         executeMacro(writer, "renderBegin", null);
@@ -698,8 +736,8 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
             parameters.put("id", screenlet.getId(context));
             parameters.put("collapsibleAreaId", screenlet.getId(context) + "_col");
         } else {
-            parameters.put("id", "screenlet_" + screenLetsIdCounter);
-            parameters.put("collapsibleAreaId", "screenlet_" + screenLetsIdCounter + "_col");
+            parameters.put("id", "screenlet_" + idPrefix + screenLetsIdCounter);
+            parameters.put("collapsibleAreaId", "screenlet_" + idPrefix + screenLetsIdCounter + "_col");
             screenLetsIdCounter++;
         }
         parameters.put("expandToolTip", expandToolTip);
@@ -842,7 +880,7 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
         // these links in reverse order
         // Last button
         String lastLinkUrl = "";
-        if (highIndex < listSize) {
+        if (highIndex < listSize && !ModelForm.PAG_MODE_HAS_MORE.equals(modelForm.getPaginateMode())) {
             int lastIndex = UtilMisc.getViewLastIndex(listSize, viewSize);
             linkText = prepLinkText + lastIndex + anchor;
             lastLinkUrl = rh.makeLink(request, response, linkText);
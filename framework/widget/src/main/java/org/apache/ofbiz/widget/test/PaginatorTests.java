@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.test;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.collections.PagedList;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.widget.model.ModelForm;
+import org.apache.ofbiz.widget.model.ModelGrid;
+import org.apache.ofbiz.widget.renderer.Paginator;
+
+public class PaginatorTests extends EntityTestCase {
+
+    public PaginatorTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        Delegator delegator = getDelegator();
+        List<GenericValue> testingTypes = new LinkedList<>();
+        for (int i = 1; i <= 5; i++) {
+            testingTypes.add(delegator.makeValue("TestingType", "testingTypeId", "paginator-" + i, "description", "Paginator " + i));
+        }
+        delegator.storeAll(testingTypes);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getDelegator().removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "paginator-%"));
+    }
+
+    private static ModelForm makeGrid(String paginateMode) throws Exception {
+        String grid = "<grid name=\"PaginatorTestsGrid\" list-name=\"rows\" view-size=\"2\" paginate-mode=\"" + paginateMode + "\"/>";
+        return new ModelGrid(UtilXml.readXmlDocument(grid, false).getDocumentElement(), "PaginatorTests", null, null, null);
+    }
+
+    private EntityListIterator queryRows() throws Exception {
+        // a default iterator, which is forward only
+        return EntityQuery.use(getDelegator()).from("TestingType")
+                .where(EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "paginator-%"))
+                .orderBy("testingTypeId").queryIterator();
+    }
+
+    /**
+     * The second page of a stream mode list is read from a forward only iterator, the rows of the first page being skipped.
+     */
+    public void testStreamModeSecondPageForwardOnly() throws Exception {
+        ModelForm modelForm = makeGrid(ModelForm.PAG_MODE_STREAM);
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            EntityListIterator eli = queryRows();
+            assertFalse("Default queryIterator() is forward only", eli.isScrollable());
+            Map<String, Object> context = new HashMap<>();
+            context.put("viewIndex", 1);
+            context.put("rows", eli);
+            Paginator.preparePager(modelForm, context);
+
+            PagedList<?> page = (PagedList<?>) context.get("rows");
+            assertEquals("Rows of the second page", 2, page.getData().size());
+            assertEquals("First row of the second page", "paginator-3", ((GenericValue) page.getData().get(0)).getString("testingTypeId"));
+            assertEquals("Second row of the second page", "paginator-4", ((GenericValue) page.getData().get(1)).getString("testingTypeId"));
+            assertEquals("List size", 5, Paginator.getListSize(context));
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+    }
+
+    /**
+     * The last page of a has-more mode list is read from a forward only iterator.
+     */
+    public void testHasMoreModeLastPageForwardOnly() throws Exception {
+        ModelForm modelForm = makeGrid(ModelForm.PAG_MODE_HAS_MORE);
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            Map<String, Object> context = new HashMap<>();
+            context.put("viewIndex", 2);
+            PagedList<GenericValue> page = Paginator.readPage(modelForm, context, queryRows());
+            assertEquals("Rows of the last page", 1, page.getData().size());
+            assertEquals("Row of the last page", "paginator-5", page.getData().get(0).getString("testingTypeId"));
+            assertEquals("No more rows", 5, page.getSize());
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+    }
+}
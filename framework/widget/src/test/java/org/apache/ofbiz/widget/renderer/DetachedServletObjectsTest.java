@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.widget.renderer;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class DetachedServletObjectsTest {
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private HttpSession session;
+
+    @Before
+    public void setUp() {
+        request = Mockito.mock(HttpServletRequest.class);
+        response = Mockito.mock(HttpServletResponse.class);
+        session = Mockito.mock(HttpSession.class);
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("orderId", new String[] {"WS10000"});
+        when(request.getAttributeNames()).thenReturn(Collections.enumeration(Arrays.asList("delegatorName", "empty")));
+        when(request.getAttribute("delegatorName")).thenReturn("default");
+        when(request.getParameterMap()).thenReturn(parameters);
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(Collections.singletonList("User-Agent")));
+        when(request.getHeaders("User-Agent")).thenReturn(Collections.enumeration(Collections.singletonList("test")));
+        when(request.getLocales()).thenReturn(Collections.enumeration(Collections.singletonList(Locale.FRENCH)));
+        when(request.getSession(false)).thenReturn(session);
+        when(request.getContextPath()).thenReturn("/ordermgr");
+        when(request.getServerName()).thenReturn("localhost");
+        when(request.getServerPort()).thenReturn(8443);
+        when(request.isSecure()).thenReturn(true);
+    }
+
+    @Test
+    public void testRequestIsCopied() {
+        HttpServletRequest detached = DetachedServletObjects.detach(request);
+        // the request is recycled by the container
+        Mockito.reset(request);
+        Assert.assertEquals("default", detached.getAttribute("delegatorName"));
+        Assert.assertNull(detached.getAttribute("empty"));
+        Assert.assertEquals("WS10000", detached.getParameter("orderId"));
+        Assert.assertEquals("test", detached.getHeader("user-agent"));
+        Assert.assertEquals(Locale.FRENCH, detached.getLocale());
+        Assert.assertSame(session, detached.getSession());
+        Assert.assertSame(session, detached.getSession(true));
+        Assert.assertEquals("/ordermgr", detached.getContextPath());
+        Assert.assertEquals("localhost", detached.getServerName());
+        Assert.assertEquals(8443, detached.getServerPort());
+        Assert.assertTrue(detached.isSecure());
+        Mockito.verifyNoInteractions(request);
+    }
+
+    @Test
+    public void testAttributesAreNotWrittenToRequest() {
+        HttpServletRequest detached = DetachedServletObjects.detach(request);
+        detached.setAttribute("_ERROR_MESSAGE_", "error");
+        detached.removeAttribute("delegatorName");
+        Assert.assertEquals("error", detached.getAttribute("_ERROR_MESSAGE_"));
+        Assert.assertNull(detached.getAttribute("delegatorName"));
+        verify(request, never()).setAttribute(Mockito.anyString(), Mockito.any());
+        verify(request, never()).removeAttribute(Mockito.anyString());
+    }
+
+    @Test
+    public void testOtherRequestMethodsReturnNeutralValues() throws Exception {
+        HttpServletRequest detached = DetachedServletObjects.detach(request);
+        Mockito.reset(request);
+        Assert.assertNull(detached.getRequestDispatcher("main"));
+        Assert.assertNull(detached.getPathTranslated());
+        Assert.assertFalse(detached.isAsyncStarted());
+        Assert.assertEquals(0, detached.getContentLength());
+        Assert.assertTrue(detached.getParts().isEmpty());
+        Mockito.verifyNoInteractions(request);
+    }
+
+    @Test
+    public void testResponseEncodesSessionInUrls() {
+        when(response.encodeURL("/ordermgr/")).thenReturn("/ordermgr/;jsessionid=ABC");
+        HttpServletResponse detached = DetachedServletObjects.detach(request, response);
+        Mockito.reset(response);
+        Assert.assertEquals("/ordermgr/control/orderview;jsessionid=ABC?orderId=WS10000",
+                detached.encodeURL("/ordermgr/control/orderview?orderId=WS10000"));
+        Assert.assertEquals("/ordermgr/control/main;jsessionid=ABC#top", detached.encodeURL("/ordermgr/control/main#top"));
+        Assert.assertTrue(detached.isCommitted());
+        Mockito.verifyNoInteractions(response);
+    }
+
+    @Test
+    public void testResponseWithoutUrlSession() {
+        when(response.encodeURL("/ordermgr/")).thenReturn("/ordermgr/");
+        HttpServletResponse detached = DetachedServletObjects.detach(request, response);
+        Assert.assertEquals("/ordermgr/control/main", detached.encodeURL("/ordermgr/control/main"));
+    }
+
+    @Test
+    public void testResponseWritesNothing() throws Exception {
+        when(response.encodeURL("/ordermgr/")).thenReturn("/ordermgr/");
+        HttpServletResponse detached = DetachedServletObjects.detach(request, response);
+        Mockito.reset(response);
+        detached.getWriter().write("ignored");
+        detached.setStatus(500);
+        Assert.assertEquals(0, detached.getStatus());
+        Assert.assertTrue(detached.getHeaderNames().isEmpty());
+        Mockito.verifyNoInteractions(response);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.widget.renderer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.collections.PagedList;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.widget.model.ModelForm;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class PaginatorTest {
+    private static final int VIEW_SIZE = 2;
+
+    private Map<String, Object> context;
+    private ModelForm modelForm;
+    private EntityListIterator eli;
+
+    @Before
+    public void setUp() {
+        context = new HashMap<>();
+        context.put("viewIndex", 1);
+        modelForm = Mockito.mock(ModelForm.class);
+        when(modelForm.getListName()).thenReturn("rows");
+        when(modelForm.getPaginate(any())).thenReturn(true);
+        when(modelForm.getMultiPaginateIndexField(any())).thenReturn("viewIndex");
+        when(modelForm.getDefaultViewSize()).thenReturn(VIEW_SIZE);
+        eli = Mockito.mock(EntityListIterator.class);
+        context.put("rows", eli);
+    }
+
+    /**
+     * Simulates a result having the given number of rows after the first page.
+     */
+    private void mockRows(int remainingRows) throws GenericEntityException {
+        GenericValue row = Mockito.mock(GenericValue.class);
+        GenericValue[] nextRows = new GenericValue[remainingRows];
+        Arrays.fill(nextRows, row);
+        if (remainingRows > 0) {
+            // next() returns null after the last row
+            nextRows[remainingRows - 1] = null;
+        }
+        when(eli.isScrollable()).thenReturn(true);
+        when(eli.absolute(anyInt())).thenReturn(remainingRows > 0);
+        when(eli.next()).thenReturn(remainingRows > 0 ? row : null, nextRows);
+        when(eli.getResultsSizeAfterPartialList()).thenReturn(VIEW_SIZE + remainingRows);
+    }
+
+    @Test
+    public void testStreamModeSkipsCountOnLastPage() throws GenericEntityException {
+        when(modelForm.getPaginateMode()).thenReturn(ModelForm.PAG_MODE_STREAM);
+        mockRows(1);
+        Paginator.preparePager(modelForm, context);
+        verify(eli).absolute(VIEW_SIZE);
+        verify(eli, never()).getResultsSizeAfterPartialList();
+        verify(eli).close();
+        Assert.assertTrue(context.get("rows") instanceof PagedList);
+        Assert.assertEquals(3, Paginator.getListSize(context));
+        Assert.assertEquals(1, Paginator.getActualPageSize(context));
+    }
+
+    @Test
+    public void testStreamModeCountsFullPage() throws GenericEntityException {
+        when(modelForm.getPaginateMode()).thenReturn(ModelForm.PAG_MODE_STREAM);
+        mockRows(5);
+        Paginator.preparePager(modelForm, context);
+        verify(eli).getResultsSizeAfterPartialList();
+        Assert.assertEquals(7, Paginator.getListSize(context));
+        Assert.assertEquals(VIEW_SIZE, Paginator.getActualPageSize(context));
+    }
+
+    @Test
+    public void testHasMoreModeNeverCounts() throws GenericEntityException {
+        when(modelForm.getPaginateMode()).thenReturn(ModelForm.PAG_MODE_HAS_MORE);
+        mockRows(5);
+        Paginator.preparePager(modelForm, context);
+        verify(eli, never()).getResultsSizeAfterPartialList();
+        PagedList<?> page = (PagedList<?>) context.get("rows");
+        Assert.assertEquals(VIEW_SIZE, page.getData().size());
+        // one more than the high index, so that the next page link is rendered
+        Assert.assertEquals(2 * VIEW_SIZE + 1, Paginator.getListSize(context));
+        Assert.assertEquals(VIEW_SIZE, Paginator.getActualPageSize(context));
+    }
+
+    @Test
+    public void testApproximateCountNeverBelowRowsRead() throws GenericEntityException {
+        when(modelForm.getPaginateMode()).thenReturn(ModelForm.PAG_MODE_STREAM);
+        when(modelForm.getPaginateCount()).thenReturn(ModelForm.PAG_COUNT_APPROXIMATE);
+        mockRows(5);
+        when(eli.getApproximateResultsSize()).thenReturn(1);
+        Paginator.preparePager(modelForm, context);
+        verify(eli, never()).getResultsSizeAfterPartialList();
+        verify(eli).getApproximateResultsSize();
+        Assert.assertEquals(2 * VIEW_SIZE, Paginator.getListSize(context));
+    }
+
+    @Test
+    public void testStreamModeSkipsRowsOfForwardOnlyIterator() throws GenericEntityException {
+        when(modelForm.getPaginateMode()).thenReturn(ModelForm.PAG_MODE_STREAM);
+        GenericValue row = Mockito.mock(GenericValue.class);
+        // the two rows of the first page, then one row and the end of the list
+        when(eli.isScrollable()).thenReturn(false);
+        when(eli.next()).thenReturn(row, row, row, null);
+        Paginator.preparePager(modelForm, context);
+        verify(eli, never()).absolute(anyInt());
+        verify(eli, never()).getResultsSizeAfterPartialList();
+        PagedList<?> page = (PagedList<?>) context.get("rows");
+        Assert.assertEquals(1, page.getData().size());
+        Assert.assertEquals(3, Paginator.getListSize(context));
+    }
+
+    @Test
+    public void testForwardOnlyIteratorIsNotPositioned() throws GenericEntityException {
+        when(eli.isScrollable()).thenReturn(false);
+        Assert.assertEquals(0, Paginator.positionIterator(eli, VIEW_SIZE));
+        verify(eli, never()).absolute(anyInt());
+        verify(eli, never()).next();
+    }
+
+    @Test
+    public void testScrollableIteratorIsPositioned() throws GenericEntityException {
+        when(eli.isScrollable()).thenReturn(true);
+        Assert.assertEquals(VIEW_SIZE, Paginator.positionIterator(eli, VIEW_SIZE));
+        verify(eli).absolute(VIEW_SIZE);
+    }
+}